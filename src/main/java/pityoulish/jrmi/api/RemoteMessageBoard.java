@@ -11,12 +11,19 @@ import java.rmi.RemoteException;
 
 /**
  * Remote interface for the Message Board.
+ * <br>
+ * A server may host several boards, called channels.
+ * The methods without a channel argument refer to the default channel.
+ * Markers from one channel are meaningless for other channels.
  */
 public interface RemoteMessageBoard extends Remote
 {
   /** The maximum <code>limit</code> allowed in {@link #listMessages}. */
   public final static int MAX_LIMIT = 127;
 
+  /** The maximum <code>timeout</code> allowed in {@link #awaitMessages}. */
+  public final static int MAX_TIMEOUT = 127;
+
 
   /**
    * Lists messages from this board.
@@ -40,6 +47,30 @@ public interface RemoteMessageBoard extends Remote
     ;
 
 
+  /**
+   * Lists messages from this board, waiting for new ones if necessary.
+   * If there are no messages newer than the <code>marker</code>,
+   * the call blocks until a message is put on this board,
+   * or until the timeout expires.
+   *
+   * @param limit       the maximum number of messages to list
+   * @param marker      the continuation {@link MessageList#getMarker marker}
+   *                    from a preceding call, or
+   *                    <code>null</code> to fetch the oldest messages
+   *                    from this board
+   * @param timeout     the maximum time to wait, in seconds
+   *
+   * @return    the same as {@link #listMessages listMessages}.
+   *            The list is empty only if the timeout expired.
+   *
+   * @throws APIException       in case of an application-level problem
+   * @throws RemoteException    in case of an infrastructure problem
+   */
+  public MessageList awaitMessages(int limit, String marker, int timeout)
+    throws RemoteException, APIException
+    ;
+
+
   /**
    * Puts a message on this board.
    * Boards have a limited capacity, so this might drop an old message.
@@ -55,4 +86,157 @@ public interface RemoteMessageBoard extends Remote
     throws RemoteException, APIException
     ;
 
+
+  /**
+   * Lists messages from a channel.
+   *
+   * @param channel     the name of the channel, or
+   *                    <code>null</code> for the default channel
+   * @param limit       see {@link #listMessages listMessages}
+   * @param marker      see {@link #listMessages listMessages}
+   *
+   * @return    see {@link #listMessages listMessages}
+   *
+   * @throws APIException       in case of an application-level problem,
+   *                            including an unavailable channel
+   * @throws RemoteException    in case of an infrastructure problem
+   */
+  public MessageList listChannelMessages(String channel,
+                                         int limit, String marker)
+    throws RemoteException, APIException
+    ;
+
+
+  /**
+   * Lists selected messages from a channel.
+   * The server selects the messages, so that only those are transferred.
+   *
+   * @param channel     the name of the channel, or
+   *                    <code>null</code> for the default channel
+   * @param originator  the originator of the messages to list, or
+   *                    <code>null</code> for any originator
+   * @param useronly    <code>true</code> to list only user messages,
+   *                    <code>false</code> to list system messages, too
+   * @param limit       see {@link #listMessages listMessages}
+   * @param marker      see {@link #listMessages listMessages}
+   *
+   * @return    the oldest selected messages newer than the marker.
+   *            The marker of the result also covers the messages
+   *            that were not selected.
+   *
+   * @throws APIException       in case of an application-level problem,
+   *                            including an unavailable channel
+   * @throws RemoteException    in case of an infrastructure problem
+   */
+  public MessageList listFilteredMessages(String channel, String originator,
+                                          boolean useronly,
+                                          int limit, String marker)
+    throws RemoteException, APIException
+    ;
+
+
+  /**
+   * Lists messages from a channel, waiting for new ones if necessary.
+   *
+   * @param channel     the name of the channel, or
+   *                    <code>null</code> for the default channel
+   * @param limit       see {@link #awaitMessages awaitMessages}
+   * @param marker      see {@link #awaitMessages awaitMessages}
+   * @param timeout     see {@link #awaitMessages awaitMessages}
+   *
+   * @return    see {@link #awaitMessages awaitMessages}
+   *
+   * @throws APIException       in case of an application-level problem,
+   *                            including an unavailable channel
+   * @throws RemoteException    in case of an infrastructure problem
+   */
+  public MessageList awaitChannelMessages(String channel, int limit,
+                                          String marker, int timeout)
+    throws RemoteException, APIException
+    ;
+
+
+  /**
+   * Puts a message on a channel.
+   *
+   * @param ticket      see {@link #putMessage putMessage}
+   * @param channel     the name of the channel, or
+   *                    <code>null</code> for the default channel
+   * @param text        see {@link #putMessage putMessage}
+   *
+   * @throws APIException       in case of an application-level problem,
+   *                            including an unavailable channel
+   * @throws RemoteException    in case of an infrastructure problem
+   */
+  public void putChannelMessage(String ticket, String channel, String text)
+    throws RemoteException, APIException
+    ;
+
+
+  /**
+   * Puts several messages on a channel, in one call.
+   * Each message punches the ticket. If the ticket allows fewer actions
+   * than there are texts, only the first texts are put on the channel.
+   *
+   * @param ticket      see {@link #putMessage putMessage}
+   * @param channel     the name of the channel, or
+   *                    <code>null</code> for the default channel
+   * @param texts       the contents of the messages, in order
+   *
+   * @return    the markers of the new messages, in the order of the texts.
+   *            Listing with a marker returns the messages after that one.
+   *
+   * @throws APIException       in case of an application-level problem,
+   *                            including an unavailable channel
+   * @throws RemoteException    in case of an infrastructure problem
+   */
+  public String[] putChannelMessages(String ticket, String channel,
+                                     String[] texts)
+    throws RemoteException, APIException
+    ;
+
+
+  /**
+   * Searches for messages on the board.
+   * Only messages that contain all words of the query are returned.
+   * Words are sequences of letters and digits, case is ignored.
+   *
+   * @param query       the words to search for
+   * @param limit       see {@link #listMessages listMessages}
+   * @param marker      the marker from a preceding search with the same
+   *                    query, or <code>null</code> to search from the
+   *                    oldest messages on the board
+   *
+   * @return    the oldest matching messages newer than the marker.
+   *            The marker of the result continues the search.
+   *
+   * @throws APIException       in case of an application-level problem,
+   *                            including a server that does not search
+   * @throws RemoteException    in case of an infrastructure problem
+   */
+  public MessageList searchMessages(String query, int limit, String marker)
+    throws RemoteException, APIException
+    ;
+
+
+  /**
+   * Searches for messages on a channel.
+   *
+   * @param channel     the name of the channel, or
+   *                    <code>null</code> for the default channel
+   * @param query       see {@link #searchMessages searchMessages}
+   * @param limit       see {@link #searchMessages searchMessages}
+   * @param marker      see {@link #searchMessages searchMessages}
+   *
+   * @return    see {@link #searchMessages searchMessages}
+   *
+   * @throws APIException       in case of an application-level problem,
+   *                            including an unavailable channel
+   * @throws RemoteException    in case of an infrastructure problem
+   */
+  public MessageList searchChannelMessages(String channel, String query,
+                                           int limit, String marker)
+    throws RemoteException, APIException
+    ;
+
 }
@@ -55,6 +55,18 @@ public class MsgBoardClientHandlerImpl
   }
 
 
+  // non-javadoc, see interface MsgBoardClientHandler
+  public void awaitMessages(int limit, String marker, int timeout)
+    throws Exception
+  {
+    RemoteMessageBoard rmb = regBackend.getRemoteMessageBoard();
+
+    MessageList msglist = rmb.awaitMessages(limit, marker, timeout);
+
+    userOutput.printMessageList(msglist);
+  }
+
+
   // non-javadoc, see interface MsgBoardClientHandler
   public void putMessage(String ticket, String text)
     throws Exception
@@ -6,6 +6,8 @@
 package pityoulish.jrmi.follow;
 
 import java.io.IOException;
+import java.rmi.ServerException;
+import java.rmi.UnmarshalException;
 
 import pityoulish.cmdline.Command;
 import pityoulish.cmdline.SingleCommandHandlerBase;
@@ -34,6 +36,9 @@ public class FollowTheBoardHandler extends SingleCommandHandlerBase
   /** The marker from which to list subsequent messages. Initially null. */
   protected String listMarker;
 
+  /** Whether the server supports waiting for messages. Initially true. */
+  protected boolean awaitSupported = true;
+
 
   /**
    * Creates a new command handler.
@@ -91,6 +96,8 @@ public class FollowTheBoardHandler extends SingleCommandHandlerBase
   /**
    * Polls for messages, forever.
    * Actually, until an exception is thrown, for whatever reason.
+   * The server waits for new messages up to the polling interval.
+   * If it does not wait, the client sleeps for the rest of the interval.
    *
    * @throws Exception  in case of a problem
    */
@@ -99,40 +106,71 @@ public class FollowTheBoardHandler extends SingleCommandHandlerBase
   {
     while (true)
      {
-       listAvailableMessages();
-
-       try {
-         Thread.sleep(pollingSeconds * 1000L);
-       } catch (InterruptedException ix) {
-         // ignore
-       }
+       long start = System.currentTimeMillis();
+       int count = awaitAvailableMessages();
+       long elapsed = System.currentTimeMillis() - start;
+
+       // A waiting server returns an empty list after at least a second.
+       if (!awaitSupported || ((count == 0) && (elapsed < 1000L)))
+        {
+          try {
+            Thread.sleep(Math.max(0L, pollingSeconds * 1000L - elapsed));
+          } catch (InterruptedException ix) {
+            // ignore
+          }
+        }
      }
   }
 
 
   /**
-   * Lists as many messages as are available.
+   * Waits for messages, then lists as many messages as are available.
    * If {@link #listMarker} is set, messages are listed from there.
    * The marker is updated here, for subsequent calls.
+   * If the server does not know the method to wait, {@link #awaitSupported}
+   * is cleared and messages are only listed from then on.
+   *
+   * @return the number of messages in the last list
    *
    * @throws Exception  in case of a problem
    */
-  protected void listAvailableMessages()
+  protected int awaitAvailableMessages()
     throws Exception
   {
     RemoteMessageBoard rmb = regBackend.getRemoteMessageBoard();
 
     final int batchsize = 125; // magic number to reduce server logging
+    final int timeout =
+      Math.min(pollingSeconds, RemoteMessageBoard.MAX_TIMEOUT);
 
-    boolean more = true;
+    MessageList msglist = null;
+    if (awaitSupported)
+     {
+       try {
+         msglist = rmb.awaitMessages(batchsize, listMarker, timeout);
+       } catch (ServerException sx) {
+         // an old server cannot unmarshal a call to an unknown method
+         if (!(sx.getCause() instanceof UnmarshalException))
+            throw sx;
+         awaitSupported = false;
+       }
+     }
+    if (msglist == null)
+       msglist = rmb.listMessages(batchsize, listMarker);
+    userOutput.printMessageList(msglist);
+    listMarker = msglist.getMarker();
+
+    boolean more = (msglist.getMessages().size() >= batchsize);
     while (more)
      {
-       MessageList msglist = rmb.listMessages(batchsize, listMarker);
+       msglist = rmb.listMessages(batchsize, listMarker);
        userOutput.printMessageList(msglist);
 
        more = (msglist.getMessages().size() >= batchsize);
        listMarker = msglist.getMarker();
      }
+
+    return msglist.getMessages().size();
   }
 
 
@@ -34,6 +34,10 @@ public enum Catalog implements TextEntry
    OUTLET_NONE_1,
 
    LIMIT_OUT_OF_RANGE_1,
+   TIMEOUT_OUT_OF_RANGE_1,
+   CHANNELS_UNSUPPORTED_0,
+   SEARCH_UNSUPPORTED_0,
+   RATE_LIMITED_1,
 
    REPORT_CREATE_REGISTRY_1,
    REPORT_JRMI_HOSTNAME_1,
@@ -44,7 +48,8 @@ public enum Catalog implements TextEntry
    REPORT_RETURN_TICKET_1,
    REPORT_REPLACE_TICKET_2,
    REPORT_PUBLISH_OUTLET_1,
-   REPORT_UNPUBLISH_OUTLET_1
+   REPORT_UNPUBLISH_OUTLET_1,
+   REPORT_PUT_MESSAGES_2
    ;
 
 
@@ -8,6 +8,7 @@ package pityoulish.jrmi.server;
 import java.util.ArrayList;
 import java.util.List;
 
+import pityoulish.msgboard.EncodableMessage;
 import pityoulish.msgboard.Message;
 import pityoulish.msgboard.MessageBatch;
 
@@ -25,9 +26,19 @@ import pityoulish.jrmi.api.MessageListImpl;
  * the interfaces and classes in the remote API have different names
  * from those in the internal server API.
  * </p>
+ * <p>
+ * Messages on the board are immutable, and so are the {@link MessageItem}s.
+ * If a message can {@link EncodableMessage cache encodings}, the converted
+ * item is cached there and shared by all subsequent calls.
+ * </p>
  */
 public class DataConverter
 {
+  /** The key for caching message items on an {@link EncodableMessage}. */
+  public final static String MESSAGE_ITEM_KEY =
+    "pityoulish.jrmi.MessageItem";
+
+
   /** Disabled default constructor. */
   private DataConverter()
   {
@@ -43,11 +54,7 @@ public class DataConverter
     List<MessageItem> messages = new ArrayList<>(mb.getMessages().size());
     for(Message msg : mb.getMessages())
      {
-       // convert a single message
-       MessageItem mi = new MessageItemImpl(msg.getOriginator(),
-                                            msg.getTimestamp(),
-                                            msg.getText());
-       messages.add(mi);
+       messages.add(toMessageItem(msg));
      }
 
     // convert the batch itself
@@ -57,4 +64,36 @@ public class DataConverter
     return ml;
   }
 
+
+  /**
+   * Converts a single message.
+   * The result is cached on the message, if possible.
+   *
+   * @param msg   the message to convert
+   *
+   * @return the message item for the message
+   */
+  public static MessageItem toMessageItem(Message msg)
+  {
+    if (msg == null)
+       throw new NullPointerException("Message");
+
+    EncodableMessage em = null;
+    if (msg instanceof EncodableMessage)
+     {
+       em = (EncodableMessage) msg;
+       Object cached = em.getEncoding(MESSAGE_ITEM_KEY);
+       if (cached instanceof MessageItem)
+          return (MessageItem) cached;
+     }
+
+    MessageItem mi = new MessageItemImpl(msg.getOriginator(),
+                                         msg.getTimestamp(),
+                                         msg.getText());
+    if (em != null)
+       em.putEncoding(MESSAGE_ITEM_KEY, mi);
+
+    return mi;
+  }
+
 }
@@ -5,6 +5,7 @@
  */
 package pityoulish.jrmi.server;
 
+import java.io.File;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -19,9 +20,11 @@ import pityoulish.logutil.LogConfig;
 import pityoulish.jrmi.api.RegistryNames;
 import pityoulish.jrmi.api.dm.RemoteOutletManager;
 import pityoulish.msgboard.MixedMessageBoard;
-import pityoulish.msgboard.MixedMessageBoardImpl;
+import pityoulish.msgboard.JournaledMessageBoardImpl;
+import pityoulish.msgboard.RingMessageBoardImpl;
 import pityoulish.tickets.TicketManager;
 import pityoulish.tickets.DefaultTicketManager;
+import pityoulish.tickets.LocalTicketStore;
 
 
 /**
@@ -45,12 +48,15 @@ public final class Main
     //@@@ Use ArgsInterpreter and SingleCommandHandlerBase?
     int port = 1088; // default for the exercises (RMI default is 1099)
     int capacity = 8;
+    File journal = null;
 
     try {
       if (args.length > 0)
          port = Integer.parseInt(args[0]);
       if (args.length > 1)
          capacity = Integer.parseInt(args[1]);
+      if (args.length > 2)
+         journal = new File(args[2]);
     } catch (NumberFormatException nfx) {
       System.out.println(Catalog.fixEOL(Catalog.USAGE.lookup()));
       System.exit(1);
@@ -64,8 +70,19 @@ public final class Main
     LogConfig.configure(Main.class);
     LOGGER.log(Level.INFO, "starting Message Board server");
 
-    MixedMessageBoard       mmb  = new MixedMessageBoardImpl(capacity);
-    TicketManager           tim  = new DefaultTicketManager();
+    MixedMessageBoard       mmb  = null;
+    if (journal != null)
+     {
+       JournaledMessageBoardImpl jmb =
+         new JournaledMessageBoardImpl(capacity, journal);
+       jmb.startSnapshots(JournaledMessageBoardImpl.DEFAULT_SNAPSHOT_INTERVAL);
+       mmb = jmb;
+     }
+    else
+       mmb = new RingMessageBoardImpl(capacity);
+    LocalTicketStore        lts  = new LocalTicketStore();
+    lts.startReaper();
+    DefaultTicketManager    tim  = new DefaultTicketManager(lts);
 
     RemoteMessageBoardImpl  rmbi = new RemoteMessageBoardImpl(mmb, tim);
     RemoteTicketIssuerImpl  rtii = new RemoteTicketIssuerImpl(tim, true);
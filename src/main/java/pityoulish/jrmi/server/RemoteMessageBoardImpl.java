@@ -7,10 +7,16 @@ package pityoulish.jrmi.server;
 
 import java.rmi.RemoteException;
 import java.rmi.server.RemoteObject;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Logger;
 
 import pityoulish.logutil.Log;
+import pityoulish.mbserver.RateLimiter;
 import pityoulish.msgboard.MessageBatch;
+import pityoulish.msgboard.MessageChannels;
+import pityoulish.msgboard.MessageFilter;
+import pityoulish.msgboard.SearchableMessageBoard;
 import pityoulish.msgboard.UserMessageBoard;
 import pityoulish.msgboard.MSanityChecker;
 import pityoulish.tickets.Ticket;
@@ -26,7 +32,8 @@ import pityoulish.jrmi.api.RemoteMessageBoard;
 /**
  * Default implementation of the {@link RemoteMessageBoard}.
  * The remote message board is backed by a local message board
- * and a local ticket manager.
+ * and a local ticket manager. Both must be thread-safe.
+ * Optionally, it is backed by local message channels instead of a board.
  */
 public class RemoteMessageBoardImpl extends RemoteObject
   implements RemoteMessageBoard
@@ -35,12 +42,24 @@ public class RemoteMessageBoardImpl extends RemoteObject
 
   protected final UserMessageBoard msgBoard;
 
+  /**
+   * The channels to serve from, or <code>null</code>.
+   * If present, {@link #msgBoard} is the default channel.
+   */
+  protected final MessageChannels msgChannels;
+
   protected final TicketManager ticketMgr;
 
   protected final MSanityChecker<APIException> mboardSanityChecker;
 
   protected final TSanityChecker<APIException> ticketSanityChecker;
 
+  /** Limits putting messages per username, or <code>null</code>. */
+  protected RateLimiter<String> userLimiter;
+
+  /** Limits putting messages per client host, or <code>null</code>. */
+  protected RateLimiter<String> hostLimiter;
+
 
   /**
    * Creates a new remote message board.
@@ -49,6 +68,33 @@ public class RemoteMessageBoardImpl extends RemoteObject
    * @param tm   the underlying ticket manager
    */
   public RemoteMessageBoardImpl(UserMessageBoard umb, TicketManager tm)
+  {
+    this(umb, null, tm);
+  }
+
+
+  /**
+   * Creates a new remote message board with several channels.
+   *
+   * @param mc   the underlying message channels
+   * @param tm   the underlying ticket manager
+   */
+  public RemoteMessageBoardImpl(MessageChannels mc, TicketManager tm)
+  {
+    this(mc.getDefaultChannel(), mc, tm);
+  }
+
+
+  /**
+   * Creates a new remote message board.
+   * Called by the public constructors.
+   *
+   * @param umb  the underlying message board, or default channel
+   * @param mc   the underlying message channels, or <code>null</code>
+   * @param tm   the underlying ticket manager
+   */
+  protected RemoteMessageBoardImpl(UserMessageBoard umb, MessageChannels mc,
+                                   TicketManager tm)
   {
     if (umb == null)
        throw new NullPointerException("UserMessageBoard");
@@ -56,6 +102,7 @@ public class RemoteMessageBoardImpl extends RemoteObject
        throw new NullPointerException("TicketManager");
 
     msgBoard  = umb;
+    msgChannels = mc;
     ticketMgr = tm;
 
     APIProblemFactory apf = new APIProblemFactory();
@@ -64,24 +111,121 @@ public class RemoteMessageBoardImpl extends RemoteObject
   }
 
 
+  /**
+   * Enables rate limits for putting messages.
+   * Requests that exceed them are rejected before they reach
+   * the message board.
+   * Call this before the object is exported.
+   *
+   * @param users       the limits per username, or <code>null</code>
+   * @param hosts       the limits per client host, or <code>null</code>
+   */
+  public void enableRateLimits(RateLimiter<String> users,
+                               RateLimiter<String> hosts)
+  {
+    userLimiter = users;
+    hostLimiter = hosts;
+  }
+
+
+  /**
+   * Checks a channel, without creating it.
+   *
+   * @param channel     the name of the channel, or <code>null</code>
+   *
+   * @return    the problem, or
+   *            <code>null</code> if the channel can be used
+   */
+  protected APIException checkChannel(String channel)
+  {
+    if (channel == null)
+       return null;
+
+    if (msgChannels == null)
+       return Catalog.CHANNELS_UNSUPPORTED_0.asApiX();
+
+    return mboardSanityChecker.checkChannel(channel);
+  }
+
+
+  /**
+   * Selects the board for a channel.
+   * Only calls with a valid ticket should create channels,
+   * because channels are never removed.
+   *
+   * @param channel     the name of the channel, or <code>null</code>
+   * @param create      whether to create the channel if it doesn't exist
+   *
+   * @return    the board of the channel, or
+   *            the default board if there is no channel
+   *
+   * @throws APIException   if the channel cannot be used
+   */
+  protected UserMessageBoard selectBoard(String channel, boolean create)
+    throws APIException
+  {
+    if (channel == null)
+       return msgBoard;
+
+    APIException apix = checkChannel(channel);
+    if (apix != null)
+       throw apix;
+
+    try {
+      return msgChannels.getChannel(channel, create);
+    } catch (IllegalArgumentException iax) {
+      // unknown channel or too many channels, the message describes it
+      throw new APIException(iax.getMessage());
+    }
+  }
+
+
   // non-javadoc, see interface
   public MessageList listMessages(int limit, String marker)
     throws APIException // does not throw RemoteException
+  {
+    return listChannelMessages(null, limit, marker);
+  }
+
+
+  // non-javadoc, see interface
+  public MessageList listChannelMessages(String channel,
+                                         int limit, String marker)
+    throws APIException // does not throw RemoteException
+  {
+    return listFilteredMessages(channel, null, false, limit, marker);
+  }
+
+
+  // non-javadoc, see interface
+  public MessageList listFilteredMessages(String channel, String originator,
+                                          boolean useronly,
+                                          int limit, String marker)
+    throws APIException // does not throw RemoteException
   {
     APIException apix = null;
     if ((limit < 1) || (limit > MAX_LIMIT))
        apix = Catalog.LIMIT_OUT_OF_RANGE_1.asApiX(limit);
     if (marker != null) // optional
        apix = mboardSanityChecker.checkMarker(marker);
+    if ((apix == null) && (originator != null)) // optional
+       apix = mboardSanityChecker.checkOriginator(originator);
     if (apix != null)
        throw Catalog.log(logger, "listMessages", apix);
 
-    MessageBatch mb = null;
-    synchronized (msgBoard) {
-      // the default message board implementation is not thread safe
-      mb = msgBoard.listMessages(limit, marker);
+    UserMessageBoard umb = null;
+    try {
+      umb = selectBoard(channel, false);
+    } catch (APIException apx) {
+      throw Catalog.log(logger, "listMessages", apx);
     }
 
+    MessageFilter filter = null;
+    if ((originator != null) || useronly)
+       filter = MessageFilter.newMixedFilter(originator, useronly);
+
+    MessageBatch mb = umb.listMessages(limit, marker, filter);
+
     boolean silent = (limit == 125); // magic used by Follow-the-Board clients
     if (!silent)
        System.out.println(Catalog.REPORT_LIST_MESSAGES_2.format
@@ -95,24 +239,138 @@ public class RemoteMessageBoardImpl extends RemoteObject
   }
 
 
+  // non-javadoc, see interface
+  public MessageList awaitMessages(int limit, String marker, int timeout)
+    throws APIException // does not throw RemoteException
+  {
+    return awaitChannelMessages(null, limit, marker, timeout);
+  }
+
+
+  // non-javadoc, see interface
+  public MessageList awaitChannelMessages(String channel, int limit,
+                                          String marker, int timeout)
+    throws APIException // does not throw RemoteException
+  {
+    APIException apix = null;
+    if ((limit < 1) || (limit > MAX_LIMIT))
+       apix = Catalog.LIMIT_OUT_OF_RANGE_1.asApiX(limit);
+    if ((apix == null) && ((timeout < 1) || (timeout > MAX_TIMEOUT)))
+       apix = Catalog.TIMEOUT_OUT_OF_RANGE_1.asApiX(timeout);
+    if ((apix == null) && (marker != null)) // optional
+       apix = mboardSanityChecker.checkMarker(marker);
+    if (apix != null)
+       throw Catalog.log(logger, "awaitMessages", apix);
+
+    UserMessageBoard umb = null;
+    try {
+      umb = selectBoard(channel, false);
+    } catch (APIException apx) {
+      throw Catalog.log(logger, "awaitMessages", apx);
+    }
+
+    // RMI calls each have their own thread, waiting blocks nobody else
+    MessageBatch mb = umb.awaitMessages(limit, marker, timeout*1000L);
+
+    boolean silent = (limit == 125); // magic used by Follow-the-Board clients
+    if (!silent)
+       System.out.println(Catalog.REPORT_LIST_MESSAGES_2.format
+                          (mb.getMessages().size(), mb.getMarker()));
+
+    return DataConverter.toMessageList(mb);
+  }
+
+
+  // non-javadoc, see interface
+  public MessageList searchMessages(String query, int limit, String marker)
+    throws APIException // does not throw RemoteException
+  {
+    return searchChannelMessages(null, query, limit, marker);
+  }
+
+
+  // non-javadoc, see interface
+  public MessageList searchChannelMessages(String channel, String query,
+                                           int limit, String marker)
+    throws APIException // does not throw RemoteException
+  {
+    APIException apix = null;
+    if ((limit < 1) || (limit > MAX_LIMIT))
+       apix = Catalog.LIMIT_OUT_OF_RANGE_1.asApiX(limit);
+    if (apix == null)
+       apix = mboardSanityChecker.checkText(query);
+    if ((apix == null) && (marker != null)) // optional
+       apix = mboardSanityChecker.checkMarker(marker);
+    if (apix != null)
+       throw Catalog.log(logger, "searchMessages", apix);
+
+    SearchableMessageBoard smb = null;
+    try {
+      UserMessageBoard umb = selectBoard(channel, false);
+      if (!(umb instanceof SearchableMessageBoard) ||
+          !((SearchableMessageBoard) umb).isSearchEnabled())
+         throw Catalog.SEARCH_UNSUPPORTED_0.asApiX();
+      smb = (SearchableMessageBoard) umb;
+    } catch (APIException apx) {
+      throw Catalog.log(logger, "searchMessages", apx);
+    }
+
+    MessageBatch mb = null;
+    try {
+      mb = smb.searchMessages(query, limit, marker);
+    } catch (IllegalArgumentException iax) {
+      // bad query, the message is a problem description
+      throw Catalog.log(logger, "searchMessages",
+                        new APIException(iax.getMessage()));
+    }
+
+    System.out.println(Catalog.REPORT_LIST_MESSAGES_2.format
+                       (mb.getMessages().size(), mb.getMarker()));
+
+    return DataConverter.toMessageList(mb);
+  }
+
+
   // non-javadoc, see interface
   public void putMessage(String tictok, String text)
     throws APIException // does not throw RemoteException
+  {
+    putChannelMessage(tictok, null, text);
+  }
+
+
+  // non-javadoc, see interface
+  public void putChannelMessage(String tictok, String channel, String text)
+    throws APIException // does not throw RemoteException
   {
     APIException apix = ticketSanityChecker.checkToken(tictok);
     if (apix == null)
        apix = mboardSanityChecker.checkText(text);
+    if (apix == null)
+       apix = Util.checkRateLimit(hostLimiter, Util.getClientHost());
+    if (apix == null)
+       apix = checkChannel(channel);
     if (apix != null)
        throw Catalog.log(logger, "putMessage", apix);
 
     try {
-      // Ticket and TicketManager are thread safe, MessageBoard is not
+      // Ticket, TicketManager, and MessageBoard are thread safe
       Ticket tick = ticketMgr.lookupTicket(tictok, null, Util.getClientHost());
+      apix = Util.checkRateLimit(userLimiter, tick.getUsername());
+      if (apix != null)
+         throw Catalog.log(logger, "putMessage", apix);
+
+      // a valid ticket is needed to create a channel
+      UserMessageBoard umb = null;
+      try {
+        umb = selectBoard(channel, true);
+      } catch (APIException apx) {
+        throw Catalog.log(logger, "putMessage", apx);
+      }
+
       if (tick.punch())
        {
-         synchronized (msgBoard) {
-           msgBoard.putMessage(tick.getUsername(), text);
-         }
+         umb.putMessage(tick.getUsername(), text);
          System.out.println(Catalog.REPORT_PUT_MESSAGE_1.format
                             (tick.getUsername()));
        }
@@ -129,4 +387,68 @@ public class RemoteMessageBoardImpl extends RemoteObject
     }
   }
 
+
+
+  // non-javadoc, see interface
+  public String[] putChannelMessages(String tictok, String channel,
+                                     String[] texts)
+    throws APIException // does not throw RemoteException
+  {
+    int size = (texts == null) ? 0 : texts.length;
+    APIException apix = ticketSanityChecker.checkToken(tictok);
+    if (apix == null)
+       apix = mboardSanityChecker.checkBatchSize(size);
+    for (int i=0; (apix == null) && (i < size); i++)
+       apix = mboardSanityChecker.checkText(texts[i]);
+    if (apix == null)
+       apix = Util.checkRateLimit(hostLimiter, Util.getClientHost());
+    if (apix == null)
+       apix = checkChannel(channel);
+    if (apix != null)
+       throw Catalog.log(logger, "putMessages", apix);
+
+    try {
+      // Ticket, TicketManager, and MessageBoard are thread safe
+      Ticket tick = ticketMgr.lookupTicket(tictok, null, Util.getClientHost());
+      apix = Util.checkRateLimit(userLimiter, tick.getUsername(), size);
+      if (apix != null)
+         throw Catalog.log(logger, "putMessages", apix);
+
+      // a valid ticket is needed to create a channel
+      UserMessageBoard umb = null;
+      try {
+        umb = selectBoard(channel, true);
+      } catch (APIException apx) {
+        throw Catalog.log(logger, "putMessages", apx);
+      }
+
+      // each message punches the ticket, those paid for are put together
+      int punched = 0;
+      while ((punched < size) && tick.punch())
+         punched++;
+      if (punched == 0)
+         throw Catalog.log(logger, "putMessages", Catalog.TICKET_USED_UP_1
+                           .asApiX(tick.getToken()));
+
+      List<String> markers = null;
+      try {
+        markers = umb.putMessages
+          (tick.getUsername(), Arrays.asList(texts).subList(0, punched));
+      } catch (RuntimeException rx) {
+        // the batch failed, the punches are given back
+        tick.refund(punched);
+        throw rx;
+      }
+      System.out.println(Catalog.REPORT_PUT_MESSAGES_2.format
+                         (tick.getUsername(), String.valueOf(punched)));
+
+      return markers.toArray(new String[markers.size()]);
+
+    } catch (TicketException tx) {
+      // clients couldn't deserialize class TicketException
+      throw Catalog.log(logger, "putMessages", Catalog.TICKET_BAD_2
+                        .asApiX(tictok, tx.getLocalizedMessage()));
+    }
+  }
+
 }
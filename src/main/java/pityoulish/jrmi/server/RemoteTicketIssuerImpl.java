@@ -10,6 +10,7 @@ import java.rmi.server.RemoteObject;
 import java.util.logging.Logger;
 
 import pityoulish.logutil.Log;
+import pityoulish.mbserver.RateLimiter;
 import pityoulish.tickets.Ticket;
 import pityoulish.tickets.TicketException;
 import pityoulish.tickets.TicketManager;
@@ -35,6 +36,12 @@ public class RemoteTicketIssuerImpl extends RemoteObject
 
   protected final TSanityChecker<APIException> ticketSanityChecker;
 
+  /** Limits ticket replacements per username, or <code>null</code>. */
+  protected RateLimiter<String> userLimiter;
+
+  /** Limits ticket requests per client host, or <code>null</code>. */
+  protected RateLimiter<String> hostLimiter;
+
 
   /**
    * Creates a new remote ticket issuer.
@@ -58,6 +65,25 @@ public class RemoteTicketIssuerImpl extends RemoteObject
   }
 
 
+  /**
+   * Enables rate limits for ticket requests.
+   * Requests that exceed them are rejected before they reach
+   * the ticket manager.
+   * Obtaining a ticket is limited per client host only, because
+   * the username is not authenticated yet.
+   * Call this before the object is exported.
+   *
+   * @param users       the limits per username, or <code>null</code>
+   * @param hosts       the limits per client host, or <code>null</code>
+   */
+  public void enableRateLimits(RateLimiter<String> users,
+                               RateLimiter<String> hosts)
+  {
+    userLimiter = users;
+    hostLimiter = hosts;
+  }
+
+
   // non-javadoc, see interface
   public String obtainTicket(String username)
     throws APIException // does not throw RemoteException
@@ -66,6 +92,9 @@ public class RemoteTicketIssuerImpl extends RemoteObject
     // The ticket manager doesn't know about a message board, so
     // it cannot check the username against restrictions there.
     // Luckily, the ticket manager is stricter anyway.
+    // the username is not authenticated, so only the host is charged
+    if (apix == null)
+       apix = Util.checkRateLimit(hostLimiter, Util.getClientHost());
     if (apix != null)
        throw Catalog.log(logger, "obtainTicket", apix);
 
@@ -91,6 +120,8 @@ public class RemoteTicketIssuerImpl extends RemoteObject
     throws APIException // does not throw RemoteException
   {
     APIException apix = ticketSanityChecker.checkToken(tictok);
+    if (apix == null)
+       apix = Util.checkRateLimit(hostLimiter, Util.getClientHost());
     if (apix != null)
        throw Catalog.log(logger, "returnTicket", apix);
 
@@ -114,11 +145,16 @@ public class RemoteTicketIssuerImpl extends RemoteObject
     throws APIException // does not throw RemoteException
   {
     APIException apix = ticketSanityChecker.checkToken(tictok);
+    if (apix == null)
+       apix = Util.checkRateLimit(hostLimiter, Util.getClientHost());
     if (apix != null)
        throw Catalog.log(logger, "replaceTicket", apix);
 
     try {
       Ticket tick = ticketMgr.lookupTicket(tictok, null, Util.getClientHost());
+      apix = Util.checkRateLimit(userLimiter, tick.getUsername());
+      if (apix != null)
+         throw Catalog.log(logger, "replaceTicket", apix);
       ticketMgr.returnTicket(tick);
 
       tick = ticketMgr.obtainTicket(tick.getUsername(), null,
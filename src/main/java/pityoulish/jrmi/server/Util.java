@@ -8,6 +8,9 @@ package pityoulish.jrmi.server;
 import java.rmi.server.RemoteServer;
 import java.rmi.server.ServerNotActiveException;
 
+import pityoulish.mbserver.RateLimiter;
+import pityoulish.jrmi.api.APIException;
+
 
 /**
  * Server-side utility methods.
@@ -39,4 +42,43 @@ public class Util
     return host;
   }
 
-} 
+
+
+  /**
+   * Checks a rate limit for a remote call.
+   *
+   * @param limiter     the rate limiter, or <code>null</code>
+   * @param key         the username or client host, or <code>null</code>
+   *
+   * @return    an exception to throw if the rate limit is exceeded,
+   *            <code>null</code> otherwise
+   */
+  public static APIException checkRateLimit(RateLimiter<String> limiter,
+                                            String key)
+  {
+    return checkRateLimit(limiter, key, 1);
+  }
+
+
+  /**
+   * Checks a rate limit for a remote call that counts as several,
+   * like putting a batch of messages.
+   *
+   * @param limiter     the rate limiter, or <code>null</code>
+   * @param key         the username or client host, or <code>null</code>
+   * @param permits     the number of tokens to take
+   *
+   * @return    an exception to throw if the rate limit is exceeded,
+   *            <code>null</code> otherwise
+   */
+  public static APIException checkRateLimit(RateLimiter<String> limiter,
+                                            String key, int permits)
+  {
+    if ((limiter == null) || (key == null) ||
+        limiter.tryAcquire(key, permits))
+       return null;
+
+    return Catalog.RATE_LIMITED_1.asApiX(key);
+  }
+
+}
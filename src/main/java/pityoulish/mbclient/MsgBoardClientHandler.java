@@ -27,6 +27,23 @@ public interface MsgBoardClientHandler
     ;
 
 
+  /**
+   * Lists messages from the board, waiting for new ones if necessary.
+   * The server may return an empty batch before the timeout expires,
+   * for example if it does not support waiting.
+   *
+   * @param limit       the maximum batch size
+   * @param marker      the marker where to start, or
+   *                    <code>null</code> for the oldest available messages
+   * @param timeout     the maximum time to wait, in seconds
+   *
+   * @throws Exception  in case of a problem
+   */
+  public void awaitMessages(int limit, String marker, int timeout)
+    throws Exception
+    ;
+
+
   /**
    * Puts a message on the board.
    *
@@ -0,0 +1,106 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.mbserver;
+
+
+/**
+ * A set of US-ASCII characters, checked with a lookup table.
+ * Replaces simple regular expressions like <code>[A-Za-z0-9]+</code>
+ * in sanity checks, which run for every request.
+ * Objects of this class are immutable.
+ */
+public class AsciiCharClass
+{
+  /** The lookup table, indexed by character. */
+  protected final boolean[] members;
+
+  /** The specification, for printing. */
+  protected final String specification;
+
+
+  /**
+   * Creates a new character class.
+   * The specification has the syntax of a character class in a
+   * regular expression, without the brackets. It consists of
+   * single characters and ranges like <code>a-z</code>.
+   * A hyphen at the start or end is a single character.
+   * There is no escaping or negation.
+   *
+   * @param spec   the specification of the characters
+   */
+  public AsciiCharClass(String spec)
+  {
+    if (spec == null)
+       throw new NullPointerException("spec");
+
+    members = new boolean[128];
+    specification = spec;
+
+    final int length = spec.length();
+    for (int i=0; i<length; i++)
+     {
+       char first = spec.charAt(i);
+       char last  = first;
+       if ((i+2 < length) && (spec.charAt(i+1) == '-'))
+        {
+          last = spec.charAt(i+2);
+          i += 2;
+        }
+       if ((last >= members.length) || (first > last))
+          throw new IllegalArgumentException(spec);
+
+       for (char c=first; c<=last; c++)
+          members[c] = true;
+     }
+  }
+
+
+  /**
+   * Checks whether a character belongs to this class.
+   *
+   * @param c   the character to check
+   *
+   * @return  <code>true</code> if it belongs to this class,
+   *          <code>false</code> otherwise
+   */
+  public final boolean contains(char c)
+  {
+    return (c < members.length) && members[c];
+  }
+
+
+  /**
+   * Checks whether a string consists of characters from this class.
+   * This is the equivalent of matching the regular expression
+   * <code>[</code><i>spec</i><code>]+</code>.
+   *
+   * @param s   the string to check
+   *
+   * @return  <code>true</code> if the string is not empty and all its
+   *          characters belong to this class, <code>false</code> otherwise
+   */
+  public final boolean matches(CharSequence s)
+  {
+    final int length = s.length();
+    if (length < 1)
+       return false;
+
+    for (int i=0; i<length; i++)
+     {
+       if (!contains(s.charAt(i)))
+          return false;
+     }
+
+    return true;
+  }
+
+
+  public String toString()
+  {
+    return "AsciiCharClass[" + specification + "]";
+  }
+
+}
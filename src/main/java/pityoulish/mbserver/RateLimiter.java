@@ -0,0 +1,182 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.mbserver;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Limits the rate of requests, with a token bucket for each key.
+ * Keys are usernames or client addresses, for example.
+ * Each bucket holds up to <i>burst</i> tokens and is refilled at a
+ * fixed rate. A request takes one token, or is rejected if there is none.
+ * Requests that count as several take as many tokens at once.
+ * <br>
+ * A bucket is stored as a single timestamp, the time at which it will be
+ * full again. Taking a token is a compare-and-set on that timestamp,
+ * without locking. Full buckets are the same as missing ones, they are
+ * purged from time to time, when new ones are added.
+ * Objects of this class are thread safe.
+ *
+ * @param <K>   the class of keys
+ */
+public class RateLimiter<K>
+{
+  /** The number of new buckets between purges of full ones. */
+  public final static int PURGE_INTERVAL = 1024;
+
+  /** The time to refill one token, in nanoseconds. */
+  protected final long refillNanos;
+
+  /** The time to refill a full bucket, in nanoseconds. */
+  protected final long burstNanos;
+
+  /** The buckets, by key. The values are the times when they are full. */
+  protected final ConcurrentMap<K,AtomicLong> tokenBuckets;
+
+  /** Counts new buckets, to trigger a purge. */
+  protected final AtomicInteger newBuckets;
+
+  /** The number of rejected requests. */
+  protected final AtomicLong rejectedCount;
+
+
+  /**
+   * Creates a new rate limiter.
+   *
+   * @param perminute   the number of requests per minute and key,
+   *                    in the long run
+   * @param burst       the number of requests per key that can be
+   *                    made in quick succession
+   */
+  public RateLimiter(int perminute, int burst)
+  {
+    if (perminute < 1)
+       throw new IllegalArgumentException("perminute "+perminute);
+    if (burst < 1)
+       throw new IllegalArgumentException("burst "+burst);
+
+    refillNanos   = 60000000000L / perminute;
+    burstNanos    = refillNanos * burst;
+    tokenBuckets  = new ConcurrentHashMap<K,AtomicLong>();
+    newBuckets    = new AtomicInteger();
+    rejectedCount = new AtomicLong();
+  }
+
+
+  /**
+   * Takes a token for a request.
+   *
+   * @param key   the key for which the request is made
+   *
+   * @return    <code>true</code> if the request is allowed,
+   *            <code>false</code> if it exceeds the rate
+   */
+  public boolean tryAcquire(K key)
+  {
+    return tryAcquire(key, 1);
+  }
+
+
+  /**
+   * Takes several tokens for a request, all or none.
+   * This is for requests that count as several, like a batch of messages.
+   * A request for more tokens than the burst is always rejected.
+   *
+   * @param key       the key for which the request is made
+   * @param permits   the number of tokens to take
+   *
+   * @return    <code>true</code> if the request is allowed,
+   *            <code>false</code> if it exceeds the rate
+   */
+  public boolean tryAcquire(K key, int permits)
+  {
+    if (key == null)
+       throw new NullPointerException("key");
+    if (permits < 1)
+       throw new IllegalArgumentException("permits "+permits);
+
+    final long now = System.nanoTime();
+    final long cost = refillNanos * permits;
+    AtomicLong bucket = getOrCreate(key, now);
+
+    while (true)
+     {
+       final long full = bucket.get();
+       // an overdue timestamp means a full bucket
+       final long next = ((full - now > 0) ? full : now) + cost;
+       if (next - now > burstNanos)
+        {
+          rejectedCount.incrementAndGet();
+          return false;
+        }
+       if (bucket.compareAndSet(full, next))
+          return true;
+     }
+  }
+
+
+  /**
+   * Obtains the number of rejected requests.
+   *
+   * @return    the number of times {@link #tryAcquire tryAcquire}
+   *            returned <code>false</code>
+   */
+  public long getRejectedCount()
+  {
+    return rejectedCount.get();
+  }
+
+
+  /**
+   * Obtains the bucket for a key, creating it if necessary.
+   *
+   * @param key   the key
+   * @param now   the current time, from {@link System#nanoTime}
+   *
+   * @return    the bucket
+   */
+  protected AtomicLong getOrCreate(K key, long now)
+  {
+    AtomicLong bucket = tokenBuckets.get(key);
+    if (bucket != null)
+       return bucket;
+
+    bucket = new AtomicLong(now);
+    AtomicLong old = tokenBuckets.putIfAbsent(key, bucket);
+    if (old != null)
+       return old;
+
+    if (newBuckets.incrementAndGet() % PURGE_INTERVAL == 0)
+       purgeFull(now);
+
+    return bucket;
+  }
+
+
+  /**
+   * Removes the buckets that are full.
+   * A request racing with the purge may take a token from a bucket
+   * that was just removed. That token is refunded, which is harmless.
+   *
+   * @param now   the current time, from {@link System#nanoTime}
+   */
+  protected void purgeFull(long now)
+  {
+    Iterator<Map.Entry<K,AtomicLong>> it = tokenBuckets.entrySet().iterator();
+    while (it.hasNext())
+     {
+       if (it.next().getValue().get() - now <= 0)
+          it.remove();
+     }
+  }
+
+}
@@ -0,0 +1,704 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import pityoulish.mbserver.ProblemFactory;
+import pityoulish.mbserver.StringProblemFactory;
+import pityoulish.msgboard.MixedMessageBoardImpl.MT;
+import pityoulish.msgboard.MixedMessageBoardImpl.MTMsg;
+
+
+/**
+ * A thread-safe implementation of {@link MixedMessageBoard} that keeps
+ * messages outside of the Java heap. This implementation is intended for
+ * boards with hundreds of thousands of messages, which would otherwise
+ * burden the garbage collector with millions of small objects.
+ * <br>
+ * Messages are stored as records in a {@link ByteBuffer}, called the arena,
+ * which is used as a circular log. The buffer can be direct or memory-mapped.
+ * Each record holds the number, type, originator, timestamp, and text
+ * of a message, the strings in UTF-8 encoding. A record never wraps around
+ * the end of the arena. If it doesn't fit there, the rest of the arena is
+ * skipped. The oldest messages are dropped when the arena is full,
+ * or when the board holds as many messages as its capacity.
+ * The only objects per message are the record offsets, in a primitive array.
+ * <br>
+ * {@link Message}s are created only when a request lists them.
+ * They copy their record from the arena, and decode the strings on demand.
+ * They implement {@link Utf8Message}, so that the text can be copied
+ * into a response without decoding it.
+ * <br>
+ * Writers hold the write lock of a read-write lock, readers the read lock.
+ * Readers that {@link #awaitMessages await} new messages wait on a monitor,
+ * which writers notify only if there are waiting readers.
+ */
+public class ArenaMessageBoardImpl implements MixedMessageBoard
+{
+  /** The minimum size of the arena, in bytes. */
+  public final static int MIN_ARENA_BYTES = 4096;
+
+  /** Offset of the record length, an int. */
+  protected final static int REC_LENGTH = 0;
+
+  /** Offset of the message number, a long. */
+  protected final static int REC_NUMBER = 4;
+
+  /** Offset of the message type, a byte with the ordinal of {@link MT}. */
+  protected final static int REC_TYPE = 12;
+
+  /**
+   * Offset of the strings.
+   * Originator, timestamp, and text follow each other, each preceded by
+   * its length in bytes as an unsigned short.
+   */
+  protected final static int REC_STRINGS = 13;
+
+  /** The message types, indexed by ordinal. */
+  protected final static MT[] REC_TYPES = MT.values();
+
+
+  /**
+   * A message that was read from the arena.
+   * Holds a copy of its record, starting at the type.
+   * The strings are decoded when they are first needed.
+   */
+  protected static class ArenaMessage
+    implements TypedMessage<MT>, Utf8Message
+  {
+    /** The record, from the type to the end. */
+    protected final byte[] record;
+
+    /** Offsets of the string values in the record. */
+    protected final int origStart, timeStart, textStart;
+
+    /** The decoded strings, or <code>null</code>. */
+    protected String originator, timestamp, text;
+
+
+    /**
+     * Creates a new message from a record.
+     *
+     * @param rec   the record, without length and number
+     */
+    public ArenaMessage(byte[] rec)
+    {
+      record    = rec;
+      origStart = REC_STRINGS - REC_TYPE + 2;
+      timeStart = origStart + getShort(origStart - 2) + 2;
+      textStart = timeStart + getShort(timeStart - 2) + 2;
+    }
+
+
+    /**
+     * Reads the length of a string.
+     *
+     * @param pos   the index of the length in the record
+     *
+     * @return  the length, an unsigned short
+     */
+    protected final int getShort(int pos)
+    {
+      return ((record[pos] & 0xff) << 8) | (record[pos+1] & 0xff);
+    }
+
+
+    /**
+     * Decodes a string from the record.
+     *
+     * @param start   the index of the string value in the record
+     *
+     * @return  the decoded string
+     */
+    protected final String decode(int start)
+    {
+      return new String(record, start, getShort(start - 2),
+                        StandardCharsets.UTF_8);
+    }
+
+
+    // non-javadoc, see interface Message
+    public String getOriginator()
+    {
+      // racy but safe, strings are immutable
+      if (originator == null)
+         originator = decode(origStart);
+      return originator;
+    }
+
+    // non-javadoc, see interface Message
+    public String getTimestamp()
+    {
+      if (timestamp == null)
+         timestamp = decode(timeStart);
+      return timestamp;
+    }
+
+    // non-javadoc, see interface Message
+    public String getText()
+    {
+      if (text == null)
+         text = decode(textStart);
+      return text;
+    }
+
+    // non-javadoc, see interface TypedMessage
+    public MT getType()
+    {
+      return REC_TYPES[record[0]];
+    }
+
+    // non-javadoc, see interface Utf8Message
+    public int getTextLength()
+    {
+      return getShort(textStart - 2);
+    }
+
+    // non-javadoc, see interface Utf8Message
+    public int copyText(byte[] dst, int pos)
+    {
+      int len = getTextLength();
+      System.arraycopy(record, textStart, dst, pos, len);
+      return len;
+    }
+
+
+    public String toString()
+    {
+      return "ArenaMessage" + getType() + "[" + getOriginator() + "@" +
+        getTimestamp() + ":" + getText() + "]";
+    }
+  }
+
+
+  /** The number of messages that fit on this board. */
+  protected final int boardCapacity;
+
+  /** The arena with the message records. */
+  protected final ByteBuffer boardArena;
+
+  /** The size of the arena, in bytes. */
+  protected final int arenaSize;
+
+  /** The sequencer for generating message numbers and IDs. */
+  protected final NumericSequencer boardSequencer;
+
+  /** The timestamp generator. */
+  protected final Timestamper boardTimer;
+
+  /**
+   * The offsets of the records, in an unbounded address space.
+   * The offset of message number <i>n</i> is stored at index <i>n</i>
+   * modulo capacity. The position in the arena is the offset modulo
+   * the arena size.
+   */
+  protected final long[] recordOffsets;
+
+  /** The number of the oldest message on this board. */
+  protected long oldestNumber;
+
+  /**
+   * The number of the newest message on this board.
+   * Lower than the oldest number if the board is empty.
+   */
+  protected long newestNumber;
+
+  /** The offset of the oldest record. */
+  protected long arenaHead;
+
+  /** The offset after the newest record. */
+  protected long arenaTail;
+
+  /** Number of the last dropped user message, or a dummy number. */
+  protected long lastDroppedUserMessage;
+
+  /** Guards the arena and the fields describing its content. */
+  protected final ReadWriteLock boardLock;
+
+  /** The monitor on which readers wait for new messages. */
+  protected final Object awaitMonitor;
+
+  /** The number of readers waiting on the {@link #awaitMonitor}. */
+  protected final AtomicInteger awaitingReaders;
+
+  /** The subscriptions to new messages on this board. */
+  protected final List<MessageSubscriptionImpl> boardSubscriptions;
+
+  protected final MSanityChecker<String> sanityChecker;
+
+
+  /**
+   * Creates a new message board in a direct buffer.
+   *
+   * @param capacity    the number of messages that fit on the new board
+   * @param bytes       the size of the arena, in bytes
+   */
+  public ArenaMessageBoardImpl(int capacity, int bytes)
+  {
+    this(capacity, ByteBuffer.allocateDirect(Math.max(0, bytes)));
+  }
+
+
+  /**
+   * Creates a new message board in a buffer.
+   * The buffer might be memory-mapped, but messages from a previous
+   * use of the buffer are not recovered.
+   *
+   * @param capacity    the number of messages that fit on the new board
+   * @param arena       the buffer for the messages, from position 0
+   *                    to its capacity. It must not be used elsewhere.
+   */
+  public ArenaMessageBoardImpl(int capacity, ByteBuffer arena)
+  {
+    if (capacity < 1)
+       throw new IllegalArgumentException("capacity " + capacity);
+    if (arena == null)
+       throw new NullPointerException("ByteBuffer");
+    if (arena.capacity() < MIN_ARENA_BYTES)
+       throw new IllegalArgumentException("arena " + arena.capacity());
+
+    boardCapacity  = capacity;
+    boardArena     = arena;
+    arenaSize      = arena.capacity();
+    boardSequencer = new LongSequencerImpl();
+    boardTimer     = new CachedTimestamperImpl();
+    recordOffsets  = new long[capacity];
+    boardLock      = new ReentrantReadWriteLock();
+    awaitMonitor   = new Object();
+    awaitingReaders = new AtomicInteger();
+    boardSubscriptions = new CopyOnWriteArrayList<>();
+
+    long dummy = boardSequencer.createMessageNumber();
+    oldestNumber           = dummy+1;
+    newestNumber           = dummy;
+    lastDroppedUserMessage = dummy;
+
+    sanityChecker  = newSanityChecker(new StringProblemFactory());
+  }
+
+
+  // non-javadoc, see interface UserMessageBoard
+  public <P> MSanityChecker<P> newSanityChecker(ProblemFactory<P> pf)
+  {
+    return new DefaultMSanityChecker<P>(pf, boardSequencer);
+  }
+
+
+  // non-javadoc, see interface MessageBoard
+  public MessageBatch listMessages(int limit, String marker)
+  {
+    return listMessages(limit, marker, null);
+  }
+
+
+  // non-javadoc, see interface MessageBoard
+  public MessageBatch listMessages(int limit, String marker,
+                                   MessageFilter filter)
+  {
+    String problem = null;
+    if (marker != null)
+       problem = sanityChecker.checkMarker(marker);
+    if (problem != null)
+       throw new IllegalArgumentException(problem);
+
+    final int max = (limit > 0) ? limit : Integer.MAX_VALUE;
+    List<Message> messages = new ArrayList<>(Math.min(max, boardCapacity));
+    boolean discontinuous = false;
+    long from = 0;
+    long tailNumber = 0; // becomes the marker in the result
+
+    boardLock.readLock().lock();
+    try {
+      from = oldestNumber;
+      if (marker != null)
+       {
+         long markerNumber = boardSequencer.toMessageNumber(marker);
+         from = Math.max(oldestNumber, markerNumber+1);
+         discontinuous = (lastDroppedUserMessage > markerNumber);
+       }
+
+      // each reader needs its own position in the arena
+      ByteBuffer arena = boardArena.duplicate();
+      tailNumber = from-1;
+      for (long number = from;
+           (number <= newestNumber) && (messages.size() < max);
+           number++)
+       {
+         ArenaMessage msg = readMessage(arena, number);
+         tailNumber = number; // skipped by the filter or listed
+         if ((filter == null) || filter.matches(msg))
+            messages.add(msg);
+       }
+    } finally {
+      boardLock.readLock().unlock();
+    }
+
+    String tailMarker = null;
+    if ((tailNumber >= from) || (marker == null))
+       tailMarker = boardSequencer.toMessageID(tailNumber);
+    else
+       tailMarker = marker; // no messages since marker
+
+    return new MessageBatchImpl
+      (Collections.unmodifiableList(messages), tailMarker, discontinuous);
+  }
+
+
+  // non-javadoc, see interface MessageBoard
+  public MessageBatch awaitMessages(int limit, String marker, long timeout)
+  {
+    MessageBatch mb = listMessages(limit, marker);
+    if (!mb.getMessages().isEmpty() || (timeout <= 0))
+       return mb;
+
+    final long deadline =
+      System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+    synchronized (awaitMonitor)
+     {
+       // Register before listing again, see RingMessageBoardImpl.
+       awaitingReaders.incrementAndGet();
+       try {
+         while (true)
+          {
+            mb = listMessages(limit, marker);
+            if (!mb.getMessages().isEmpty())
+               break;
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+               break;
+            TimeUnit.NANOSECONDS.timedWait(awaitMonitor, remaining);
+          }
+       } catch (InterruptedException ix) {
+         // return what is there, the caller should check the interrupt
+         Thread.currentThread().interrupt();
+       } finally {
+         awaitingReaders.decrementAndGet();
+       }
+     }
+
+    return mb;
+  }
+
+
+  // non-javadoc, see interface MixedMessageBoard
+  public MessageSubscription subscribe(int capacity)
+  {
+    boardLock.writeLock().lock();
+    try {
+      // subscribed exactly after the newest message
+      MessageSubscriptionImpl sub = new MessageSubscriptionImpl
+        (capacity, boardSequencer.toMessageID(newestNumber),
+         boardSubscriptions);
+      boardSubscriptions.add(sub);
+
+      return sub;
+    } finally {
+      boardLock.writeLock().unlock();
+    }
+  }
+
+
+  // non-javadoc, see interface UserMessageBoard
+  public Message putMessage(String originator, String text)
+  {
+    String problem = sanityChecker.checkOriginator(originator);
+    if (problem == null)
+       problem = sanityChecker.checkText(text);
+    if (problem != null)
+       throw new IllegalArgumentException(problem);
+
+    MTMsg msg = new MTMsg
+      (originator, boardTimer.getTimestamp(), text, MT.USER);
+
+    addMessageToBoard(msg);
+
+    return msg;
+  }
+
+
+  // non-javadoc, see interface UserMessageBoard
+  public List<String> putMessages(String originator, List<String> texts)
+  {
+    List<MTMsg> msgs = MixedMessageBoardImpl.newUserMessages
+      (sanityChecker, boardTimer, originator, texts);
+
+    long[] numbers = addMessagesToBoard(msgs);
+
+    List<String> markers = new ArrayList<>(numbers.length);
+    for (long number: numbers)
+       markers.add(boardSequencer.toMessageID(number));
+
+    return markers;
+  }
+
+
+  // non-javadoc, see interface SystemMessageBoard
+  public Message putSystemMessage(String slot, String text)
+  {
+    String problem = null;
+    if (slot != null)
+       problem = sanityChecker.checkOriginator(slot);
+    if (problem == null)
+       problem = sanityChecker.checkText(text);
+    if (problem != null)
+       throw new IllegalArgumentException(problem);
+
+    if (slot != null)
+     {
+       //@@@ slots would need removal from the middle of the arena
+       throw new UnsupportedOperationException("@@@ slot not yet supported");
+     }
+
+    MTMsg msg = new MTMsg
+      ("_", boardTimer.getTimestamp(), text, MT.SYSTEM);
+
+    addMessageToBoard(msg);
+
+    return msg;
+  }
+
+
+  // non-javadoc, see interface SystemMessageBoard
+  public boolean removeSystemMessage(String slot)
+  {
+    throw new UnsupportedOperationException("@@@ not yet implemented");
+  }
+
+
+  /**
+   * Adds a message to the board.
+   * This might drop old messages. All book-keeping is taken care of here.
+   *
+   * @param msg   the message to add
+   *
+   * @return      number of the added message
+   */
+  protected long addMessageToBoard(MTMsg msg)
+  {
+    if (msg == null)
+       throw new NullPointerException("TypedMessage");
+
+    return addMessagesToBoard(Collections.singletonList(msg))[0];
+  }
+
+
+  /**
+   * Adds several messages to the board, with consecutive numbers.
+   * The messages are encoded before the write lock is taken,
+   * then written to the arena in one critical section.
+   *
+   * @param msgs  the messages to add
+   *
+   * @return      the numbers of the added messages
+   */
+  protected long[] addMessagesToBoard(List<MTMsg> msgs)
+  {
+    // encode outside of the lock
+    byte[][] strings = new byte[3 * msgs.size()][];
+    int[]    reclens = new int[msgs.size()];
+    for (int i=0; i<reclens.length; i++)
+     {
+       MTMsg  msg  = msgs.get(i);
+       byte[] orig = msg.getOriginator().getBytes(StandardCharsets.UTF_8);
+       byte[] time = msg.getTimestamp().getBytes(StandardCharsets.UTF_8);
+       byte[] text = msg.getText().getBytes(StandardCharsets.UTF_8);
+       int reclen  = REC_STRINGS + 6 + orig.length + time.length + text.length;
+       if ((reclen > arenaSize) ||
+           (Math.max(orig.length, Math.max(time.length, text.length)) > 0xffff))
+          throw new IllegalArgumentException("record length " + reclen);
+
+       strings[3*i]   = orig;
+       strings[3*i+1] = time;
+       strings[3*i+2] = text;
+       reclens[i]     = reclen;
+     }
+
+    long[] numbers = new long[msgs.size()];
+    if (numbers.length == 0)
+       return numbers;
+
+    boardLock.writeLock().lock();
+    try {
+      for (int i=0; i<numbers.length; i++)
+       {
+         numbers[i] = writeRecord(msgs.get(i), reclens[i],
+                                  strings[3*i], strings[3*i+1], strings[3*i+2]);
+       }
+    } finally {
+      boardLock.writeLock().unlock();
+    }
+
+    if (awaitingReaders.get() > 0)
+     {
+       synchronized (awaitMonitor)
+        {
+          awaitMonitor.notifyAll();
+        }
+     }
+
+    return numbers;
+  }
+
+
+  /**
+   * Writes the record for a new message into the arena.
+   * This might drop old messages.
+   * The caller must hold the write lock.
+   *
+   * @param msg         the message
+   * @param reclen      the length of the record
+   * @param orig        the encoded originator
+   * @param time        the encoded timestamp
+   * @param text        the encoded text
+   *
+   * @return    the number of the new message
+   */
+  protected long writeRecord(MTMsg msg, int reclen,
+                             byte[] orig, byte[] time, byte[] text)
+  {
+    long offset = makeRoom(reclen);
+    int  pos    = (int) (offset % arenaSize);
+
+    long number = boardSequencer.createMessageNumber();
+    boardArena.putInt(pos + REC_LENGTH, reclen);
+    boardArena.putLong(pos + REC_NUMBER, number);
+    boardArena.put(pos + REC_TYPE, (byte) msg.getType().ordinal());
+
+    ByteBuffer arena = boardArena.duplicate();
+    arena.position(pos + REC_STRINGS);
+    putString(arena, orig);
+    putString(arena, time);
+    putString(arena, text);
+
+    recordOffsets[slotIndex(number)] = offset;
+    newestNumber = number;
+    arenaTail    = offset + reclen;
+
+    if (!boardSubscriptions.isEmpty())
+     {
+       String msgid = boardSequencer.toMessageID(number);
+       for (MessageSubscriptionImpl sub: boardSubscriptions)
+          sub.deliver(msgid, msg);
+     }
+
+    return number;
+  }
+
+
+  /**
+   * Drops old messages until a new record fits into the arena,
+   * and the board holds less messages than its capacity.
+   * The caller must hold the write lock.
+   *
+   * @param reclen      the length of the new record
+   *
+   * @return    the offset for the new record
+   */
+  protected long makeRoom(int reclen)
+  {
+    // records don't wrap, skip the end of the arena if necessary
+    long offset = arenaTail;
+    int  pos    = (int) (offset % arenaSize);
+    if (pos + reclen > arenaSize)
+       offset += arenaSize - pos;
+
+    while ((oldestNumber <= newestNumber) &&
+           ((newestNumber - oldestNumber + 1 >= boardCapacity) ||
+            (offset + reclen - arenaHead > arenaSize)))
+     {
+       int oldpos = (int) (recordOffsets[slotIndex(oldestNumber)] % arenaSize);
+       if (boardArena.get(oldpos + REC_TYPE) == MT.USER.ordinal())
+          lastDroppedUserMessage = oldestNumber;
+
+       oldestNumber++;
+       arenaHead = (oldestNumber <= newestNumber) ?
+         recordOffsets[slotIndex(oldestNumber)] : arenaTail;
+     }
+
+    if (oldestNumber > newestNumber) // board empty
+       arenaHead = offset;
+
+    return offset;
+  }
+
+
+  /**
+   * Writes a string value into the arena.
+   *
+   * @param arena       the arena, positioned where to write
+   * @param value       the encoded string
+   */
+  protected static void putString(ByteBuffer arena, byte[] value)
+  {
+    arena.putShort((short) value.length);
+    arena.put(value);
+  }
+
+
+  /**
+   * Reads a message from the arena.
+   * The caller must hold the read or write lock.
+   *
+   * @param arena       a duplicate of the arena, for use by the caller only
+   * @param number      the number of a message on the board
+   *
+   * @return    the message
+   */
+  protected ArenaMessage readMessage(ByteBuffer arena, long number)
+  {
+    int pos = (int) (recordOffsets[slotIndex(number)] % arenaSize);
+    int len = arena.getInt(pos + REC_LENGTH);
+
+    byte[] rec = new byte[len - REC_TYPE];
+    arena.position(pos + REC_TYPE);
+    arena.get(rec);
+
+    return new ArenaMessage(rec);
+  }
+
+
+  /**
+   * Obtains the number of bytes used in the arena.
+   * This includes skipped bytes at the end of the arena.
+   *
+   * @return    the distance from the oldest record to the end of the newest
+   */
+  public long getArenaUsage()
+  {
+    boardLock.readLock().lock();
+    try {
+      return arenaTail - arenaHead;
+    } finally {
+      boardLock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Computes the index in the record offsets for a message number.
+   *
+   * @param number      the message number
+   *
+   * @return  the index of the offset for that message
+   */
+  protected final int slotIndex(long number)
+  {
+    return (int) Math.floorMod(number, (long) boardCapacity);
+  }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+
+/**
+ * Thread-safe implementation of {@link Timestamper}.
+ * Formatting is done with an immutable <code>java.time</code> formatter.
+ * Because timestamps have a resolution of one second, the last formatted
+ * timestamp is cached and returned for all calls within the same second.
+ * <br>
+ * The cache is a single immutable entry in a volatile field.
+ * Concurrent callers in a new second may format the same timestamp,
+ * but they never block each other.
+ */
+public class CachedTimestamperImpl implements Timestamper
+{
+  /** The formatter, same format as {@link TimestamperImpl}. */
+  public final static DateTimeFormatter FORMATTER =
+    DateTimeFormatter.ofPattern(TimestamperImpl.FORMAT_STRING)
+    .withZone(ZoneOffset.UTC);
+
+
+  /**
+   * A formatted timestamp, along with the second it represents.
+   * Objects of this class are immutable.
+   */
+  protected static class Entry
+  {
+    /** The second since the epoch. */
+    public final long second;
+
+    /** The formatted timestamp for that second. */
+    public final String timestamp;
+
+
+    public Entry(long second, String timestamp)
+    {
+      this.second    = second;
+      this.timestamp = timestamp;
+    }
+  }
+
+
+  /** The most recently formatted timestamp. */
+  protected volatile Entry cached;
+
+
+  /**
+   * Creates a new timestamper.
+   */
+  public CachedTimestamperImpl()
+  {
+    cached = format(0L);
+  }
+
+
+  /**
+   * Obtains a timestamp for the current time.
+   * This method calls {@link #getTimestamp(long)}.
+   * Same as in {@link TimestamperImpl#getTimestamp()}.
+   */
+  public final String getTimestamp()
+  {
+    return this.getTimestamp(System.currentTimeMillis());
+  }
+
+
+  // non-javadoc, see interface
+  public String getTimestamp(long when)
+  {
+    long second = Math.floorDiv(when, 1000L);
+
+    Entry entry = cached;
+    if (entry.second != second)
+     {
+       entry = format(second);
+       cached = entry;
+     }
+
+    return entry.timestamp;
+  }
+
+
+  /**
+   * Formats the timestamp for a second.
+   *
+   * @param second    the second since the epoch
+   *
+   * @return  a new cache entry for that second
+   */
+  protected Entry format(long second)
+  {
+    return new Entry(second, FORMATTER.format(Instant.ofEpochSecond(second)));
+  }
+
+}
@@ -21,7 +21,23 @@ public enum Catalog implements TextEntry
    TEXT_BAD_CHARACTER,
    ORIGINATOR_EMPTY,
    ORIGINATOR_TOO_LONG_1,
-   ORIGINATOR_BAD_CHARACTER
+   ORIGINATOR_BAD_CHARACTER,
+
+   JOURNAL_NO_DIRECTORY_1,
+   JOURNAL_BAD_SEGMENT_1,
+   JOURNAL_FAILED,
+
+   CHANNEL_EMPTY,
+   CHANNEL_TOO_LONG_1,
+   CHANNEL_BAD_CHARACTER,
+   CHANNEL_LIMIT_REACHED_1,
+   CHANNEL_UNKNOWN_1,
+
+   QUERY_NO_WORDS,
+   QUERY_TOO_MANY_WORDS_1,
+
+   BATCH_EMPTY,
+   BATCH_TOO_LARGE_1
    ;
 
 
@@ -7,6 +7,7 @@ package pityoulish.msgboard;
 
 import java.util.regex.Pattern;
 
+import pityoulish.mbserver.AsciiCharClass;
 import pityoulish.mbserver.ProblemFactory;
 import pityoulish.mbserver.SanityCheckerBase;
 
@@ -28,8 +29,18 @@ public class DefaultMSanityChecker<P> extends SanityCheckerBase<P>
   public final static
     Pattern DEFAULT_TEXT_PATTERN = Pattern.compile("(?U)[\\p{Print}\\s]+");
 
+  /**
+   * The US-ASCII characters valid by the {@link #DEFAULT_TEXT_PATTERN}.
+   * That is all except control characters, but including the whitespace
+   * control characters tab, line feed, vertical tab, form feed, and
+   * carriage return.
+   */
+  protected final static
+    AsciiCharClass DEFAULT_TEXT_ASCII = new AsciiCharClass(" -~\t-\r");
+
   protected final int textMaxLength;
 
+  /** The custom text pattern, or <code>null</code> for the default. */
   protected final Pattern textPattern;
 
   /**
@@ -44,10 +55,34 @@ public class DefaultMSanityChecker<P> extends SanityCheckerBase<P>
   public final static
     Pattern DEFAULT_ORIGINATOR_PATTERN = Pattern.compile("[A-Za-z0-9.@-]+");
 
+  /** The characters of the {@link #DEFAULT_ORIGINATOR_PATTERN}. */
+  protected final static
+    AsciiCharClass DEFAULT_ORIGINATOR_CHARS =
+    new AsciiCharClass("A-Za-z0-9.@-");
+
   protected final int originatorMaxLength;
 
+  /** The custom originator pattern, or <code>null</code> for the default. */
   protected final Pattern originatorPattern;
 
+  /**
+   * The pattern for valid characters in channel names.
+   * The length requirements are not encoded in the pattern.
+   */
+  public final static
+    Pattern DEFAULT_CHANNEL_PATTERN = Pattern.compile("[A-Za-z0-9._-]+");
+
+  /** The characters of the {@link #DEFAULT_CHANNEL_PATTERN}. */
+  protected final static
+    AsciiCharClass DEFAULT_CHANNEL_CHARS =
+    new AsciiCharClass("A-Za-z0-9._-");
+
+  /** The maximum length of a channel name. */
+  public final static int DEFAULT_CHANNEL_MAX_LENGTH = 32;
+
+  /** The maximum number of messages in a batch. */
+  public final static int DEFAULT_BATCH_MAX_SIZE = 64;
+
 
 
   /**
@@ -78,13 +113,12 @@ public class DefaultMSanityChecker<P> extends SanityCheckerBase<P>
 
     boardSequencer = seq;
 
+    // the default patterns are not used, there are faster equivalents
     textMaxLength = tmaxlen;
-    textPattern =
-      (tpattern != null) ? tpattern : DEFAULT_TEXT_PATTERN;
+    textPattern = tpattern;
 
     originatorMaxLength = omaxlen;
-    originatorPattern =
-      (opattern != null) ? opattern : DEFAULT_ORIGINATOR_PATTERN;
+    originatorPattern = opattern;
   }
 
 
@@ -127,13 +161,85 @@ public class DefaultMSanityChecker<P> extends SanityCheckerBase<P>
        return problemFactory.newProblem(Catalog.TEXT_TOO_LONG_1,
                                         String.valueOf(textMaxLength));
 
-    if (!textPattern.matcher(text).matches())
+    boolean valid = (textPattern != null) ?
+      textPattern.matcher(text).matches() : isDefaultText(text);
+    if (!valid)
        return problemFactory.newProblem(Catalog.TEXT_BAD_CHARACTER);
 
     return null;
   }
 
 
+  /**
+   * Checks a text against the {@link #DEFAULT_TEXT_PATTERN},
+   * without a regular expression.
+   * The result is the same as from matching the pattern.
+   *
+   * @param text   the text to check
+   *
+   * @return  <code>true</code> if the text is not empty and all its
+   *          code points are {@link #isDefaultTextChar valid},
+   *          <code>false</code> otherwise
+   */
+  public static boolean isDefaultText(String text)
+  {
+    final int length = text.length();
+    if (length < 1)
+       return false;
+
+    int i = 0;
+    while (i < length)
+     {
+       char c = text.charAt(i);
+       if (c < 0x80)
+        {
+          // the common case, no code point decoding needed
+          if (!DEFAULT_TEXT_ASCII.contains(c))
+             return false;
+          i++;
+        }
+       else
+        {
+          int cp = text.codePointAt(i);
+          if (!isDefaultTextChar(cp))
+             return false;
+          i += Character.charCount(cp);
+        }
+     }
+
+    return true;
+  }
+
+
+  /**
+   * Checks a code point against the {@link #DEFAULT_TEXT_PATTERN}.
+   * With Unicode character classes, <code>\p{Print}</code> excludes
+   * controls, surrogates, unassigned code points, and most whitespace.
+   * <code>\s</code> adds all whitespace back in.
+   *
+   * @param cp     the code point to check
+   *
+   * @return  <code>true</code> if the code point is valid in a text,
+   *          <code>false</code> otherwise
+   */
+  public static boolean isDefaultTextChar(int cp)
+  {
+    switch (Character.getType(cp))
+     {
+      case Character.CONTROL:
+        // whitespace controls: tab, line feed, ..., and next line
+        return ((cp >= 0x09) && (cp <= 0x0d)) || (cp == 0x85);
+
+      case Character.SURROGATE:
+      case Character.UNASSIGNED:
+        return false;
+
+      default:
+        return true;
+     }
+  }
+
+
   // non-javadoc, see interface
   public P checkOriginator(String originator)
   {
@@ -151,10 +257,49 @@ public class DefaultMSanityChecker<P> extends SanityCheckerBase<P>
        return problemFactory.newProblem(Catalog.ORIGINATOR_TOO_LONG_1,
                                         String.valueOf(originatorMaxLength));
 
-    if (!originatorPattern.matcher(originator).matches())
+    boolean valid = (originatorPattern != null) ?
+      originatorPattern.matcher(originator).matches() :
+      DEFAULT_ORIGINATOR_CHARS.matches(originator);
+    if (!valid)
        return problemFactory.newProblem(Catalog.ORIGINATOR_BAD_CHARACTER);
 
     return null;
   }
 
+
+  // non-javadoc, see interface
+  public P checkChannel(String channel)
+  {
+    if (channel == null)
+       throw new NullPointerException("channel");
+
+    if (channel.length() < 1)
+       return problemFactory.newProblem(Catalog.CHANNEL_EMPTY);
+
+    if (channel.length() > DEFAULT_CHANNEL_MAX_LENGTH)
+       return problemFactory.newProblem
+         (Catalog.CHANNEL_TOO_LONG_1,
+          String.valueOf(DEFAULT_CHANNEL_MAX_LENGTH));
+
+    if (!DEFAULT_CHANNEL_CHARS.matches(channel))
+       return problemFactory.newProblem(Catalog.CHANNEL_BAD_CHARACTER);
+
+    return null;
+  }
+
+
+  // non-javadoc, see interface
+  public P checkBatchSize(int size)
+  {
+    if (size < 1)
+       return problemFactory.newProblem(Catalog.BATCH_EMPTY);
+
+    if (size > DEFAULT_BATCH_MAX_SIZE)
+       return problemFactory.newProblem
+         (Catalog.BATCH_TOO_LARGE_1,
+          String.valueOf(DEFAULT_BATCH_MAX_SIZE));
+
+    return null;
+  }
+
 }
@@ -0,0 +1,44 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+
+/**
+ * A {@link Message} that caches encoded forms of itself.
+ * Messages are immutable, so the encoding of a message for a protocol
+ * does not change either. A protocol layer can cache it on the message,
+ * instead of encoding the same message again for every reader.
+ * <br>
+ * Encodings are identified by a key. Each protocol layer should define
+ * a constant key, so that different layers do not overwrite each other.
+ * The cached value must be treated as immutable by all callers.
+ */
+public interface EncodableMessage extends Message
+{
+  /**
+   * Obtains a cached encoding of this message.
+   *
+   * @param key         the key of the encoding
+   *
+   * @return    the cached encoding, or
+   *            <code>null</code> if none is cached for the key
+   */
+  public Object getEncoding(Object key)
+    ;
+
+
+  /**
+   * Caches an encoding of this message.
+   * If two threads cache an encoding with the same key concurrently,
+   * either one is kept. Both should be equivalent anyway.
+   *
+   * @param key         the key of the encoding
+   * @param encoding    the encoding to cache
+   */
+  public void putEncoding(Object key, Object encoding)
+    ;
+
+}
@@ -0,0 +1,268 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import pityoulish.logutil.Log;
+import pityoulish.msgboard.MixedMessageBoardImpl.MTMsg;
+
+
+/**
+ * A {@link RingMessageBoardImpl} that survives a restart of the server.
+ * All messages are recorded in a {@link MessageJournal} before they get
+ * published. On construction, the messages from the journal are restored
+ * with their original message IDs. Followers can continue with the marker
+ * they obtained before the restart, without a discontinuity.
+ * <br>
+ * Writers wait for their message to be on disk. Concurrent writers share
+ * the cost of syncing the journal, see {@link MessageJournal#awaitDurable}.
+ * Readers and subscriptions see a message only after it is on disk.
+ * If appending to the journal fails, the message is not stored and its
+ * number is used for the next one. If syncing fails, the journal is broken
+ * and all further puts fail. Either way, putting messages fails with an
+ * <code>UncheckedIOException</code>.
+ * <br>
+ * Snapshots of the board can be written periodically in the background,
+ * see {@link #startSnapshots}. Writers are blocked only while the
+ * references to the messages are copied, not while the snapshot is written.
+ * Old parts of the journal are deleted after each snapshot.
+ */
+public class JournaledMessageBoardImpl extends RingMessageBoardImpl
+{
+  /** The default interval for snapshots, in milliseconds. */
+  public final static long DEFAULT_SNAPSHOT_INTERVAL = 60000L;
+
+  protected final Logger logger = Log.getPackageLogger(this.getClass());
+
+  /** The journal of this board. */
+  protected final MessageJournal boardJournal;
+
+  /** The executor for periodic snapshots, or <code>null</code>. */
+  protected ScheduledExecutorService snapshotExecutor;
+
+  /**
+   * The number of the last message in the latest snapshot.
+   * Guarded by {@link #boardJournal}.
+   */
+  protected long lastSnapshot;
+
+
+  /**
+   * Creates a message board with a journal.
+   * Messages in an existing journal are restored.
+   *
+   * @param capacity    the number of messages that fit on the new board
+   * @param dir         the directory for the journal
+   *
+   * @throws IOException  if the journal cannot be read or created
+   */
+  public JournaledMessageBoardImpl(int capacity, File dir)
+    throws IOException
+  {
+    this(capacity, new MessageJournal(dir));
+  }
+
+
+  /**
+   * Creates a message board with a journal.
+   * Messages in the journal are restored.
+   *
+   * @param capacity    the number of messages that fit on the new board
+   * @param journal     the journal, not yet replayed
+   *
+   * @throws IOException  if the journal cannot be read or continued
+   */
+  protected JournaledMessageBoardImpl(int capacity, MessageJournal journal)
+    throws IOException
+  {
+    super(capacity, journal.createSequencer());
+
+    boardJournal = journal;
+    boardJournal.replay(this);
+    boardJournal.startSegment(lastPublished.get()+1);
+  }
+
+
+  /**
+   * Appends the message to the journal.
+   * If that fails, the message is not stored on the board.
+   *
+   * @param number      the number of the message
+   * @param msg         the message to store
+   */
+  protected void messageAccepted(long number, MTMsg msg)
+  {
+    try {
+      boardJournal.append(number, msg);
+    } catch (IOException iox) {
+      throw new UncheckedIOException(iox);
+    }
+  }
+
+
+  /**
+   * Appends the messages to the journal, all or none.
+   * If that fails, none of the messages is stored on the board.
+   *
+   * @param first       the number of the first message
+   * @param msgs        the messages to store
+   */
+  protected void messagesAccepted(long first, List<MTMsg> msgs)
+  {
+    try {
+      boardJournal.append(first, msgs);
+    } catch (IOException iox) {
+      throw new UncheckedIOException(iox);
+    }
+  }
+
+
+  /**
+   * Waits until the message is in the journal, then publishes it.
+   * If the message cannot be synced, the journal is broken. The message
+   * is never published then, and no further message is accepted.
+   *
+   * @param number      the number of the last message to publish
+   */
+  protected void publishMessages(long number)
+  {
+    try {
+      boardJournal.awaitDurable(number);
+    } catch (IOException iox) {
+      throw new UncheckedIOException(iox);
+    }
+
+    super.publishMessages(number);
+  }
+
+
+  /**
+   * Writes a snapshot of this board to the journal.
+   * Does nothing if there is no new message since the last snapshot.
+   *
+   * @throws IOException  if the snapshot cannot be written
+   */
+  public void writeSnapshot()
+    throws IOException
+  {
+    List<Slot> slots = new ArrayList<>(boardCapacity);
+    long last    = 0;
+    long dropped = 0;
+
+    synchronized (writeLock)
+     {
+       // copying references is quick, writers have to wait for that only
+       last    = lastStored;
+       dropped = lastDroppedUserMessage;
+       long oldest = Math.max(firstMessageNumber, last - boardCapacity + 1);
+       for (long number = oldest; number <= last; number++)
+        {
+          Slot slot = boardRing.get(slotIndex(number));
+          if ((slot != null) && (slot.number == number))
+             slots.add(slot);
+        }
+     }
+
+    // the snapshot must not contain messages that might get lost
+    boardJournal.awaitDurable(last);
+
+    synchronized (boardJournal)
+     {
+       if (last <= lastSnapshot)
+          return;
+
+       boardJournal.writeSnapshot(last, dropped, slots);
+       lastSnapshot = last;
+     }
+  }
+
+
+  /**
+   * Starts writing snapshots periodically, in a background thread.
+   *
+   * @param interval    the time between snapshots, in milliseconds
+   */
+  public synchronized void startSnapshots(long interval)
+  {
+    if (interval < 1)
+       throw new IllegalArgumentException("interval "+interval);
+    if (snapshotExecutor != null)
+       throw new IllegalStateException("already started");
+
+    snapshotExecutor =
+      Executors.newSingleThreadScheduledExecutor(new SnapshotThreadFactory());
+    snapshotExecutor.scheduleWithFixedDelay
+      (new SnapshotTask(), interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+
+  /**
+   * Closes the journal. Call this before a planned shutdown.
+   * Stops periodic snapshots, if started.
+   * The board must not be used afterwards.
+   *
+   * @throws IOException  in case of a problem
+   */
+  public void close()
+    throws IOException
+  {
+    ScheduledExecutorService executor = null;
+    synchronized (this)
+     {
+       executor = snapshotExecutor;
+       snapshotExecutor = null;
+     }
+    if (executor != null)
+       executor.shutdownNow();
+
+    boardJournal.close();
+  }
+
+
+
+  /**
+   * Writes a snapshot, when scheduled.
+   */
+  protected class SnapshotTask implements Runnable
+  {
+    // non-javadoc, see interface Runnable
+    public void run()
+    {
+      try {
+        writeSnapshot();
+      } catch (Exception x) {
+        // try again next time, the journal still has all messages
+        Log.log(logger, "writeSnapshot", x);
+      }
+    }
+  }
+
+
+  /**
+   * Creates the daemon thread for snapshots.
+   */
+  protected static class SnapshotThreadFactory implements ThreadFactory
+  {
+    // non-javadoc, see interface ThreadFactory
+    public Thread newThread(Runnable r)
+    {
+      Thread t = new Thread(r, "board-snapshots");
+      t.setDaemon(true);
+      return t;
+    }
+  }
+
+}
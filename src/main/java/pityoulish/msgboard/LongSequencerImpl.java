@@ -0,0 +1,281 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * A {@link NumericSequencer} with a 64-bit counter.
+ * This implementation satisfies all of the MUST requirements,
+ * and one of the SHOULD requirements. It rejects IDs from
+ * other sequencer instances, with a high probability.
+ * <br>
+ * A message ID consists of a two-letter instance tag, chosen at random,
+ * followed by the message number in base 32. The tag uses uppercase letters
+ * and distinguishes up to 676 different sequencers. The digits of the
+ * number are <code>0-9</code> and the lowercase letters without
+ * <code>i l o u</code>, in that order. The number has no leading zeros,
+ * so an ID has between 3 and 15 characters.
+ * <br>
+ * Neither the sanity check nor the comparator allocate objects.
+ * The comparator decodes both IDs into numbers and compares those.
+ */
+public class LongSequencerImpl implements NumericSequencer
+{
+  /** The digits of the base 32 encoding, in ascending order. */
+  public final static String DIGITS = "0123456789abcdefghjkmnpqrstvwxyz";
+
+  /**
+   * The values of the digits, indexed by character.
+   * -1 for characters that are not a digit.
+   */
+  protected final static byte[] DIGIT_VALUES = new byte[128];
+  static {
+    Arrays.fill(DIGIT_VALUES, (byte) -1);
+    for (int i=0; i<DIGITS.length(); i++)
+       DIGIT_VALUES[DIGITS.charAt(i)] = (byte) i;
+  }
+
+  /** The length of the instance tag. */
+  public final static int TAG_LENGTH = 2;
+
+  /** The maximum number of digits, enough for any non-negative long. */
+  public final static int MAX_DIGITS = 13;
+
+
+  /** The first character of the instance tag. */
+  protected final char tag0;
+
+  /** The second character of the instance tag. */
+  protected final char tag1;
+
+  /** The counter for messages. */
+  protected long counter;
+
+
+  /**
+   * Creates a new instance.
+   */
+  public LongSequencerImpl()
+  {
+    this(randomTag());
+  }
+
+
+  /**
+   * Creates a new instance with a specific tag.
+   * Used to re-create a sequencer, for example after a restart.
+   *
+   * @param tag   the instance tag, two uppercase letters as returned by
+   *              {@link #getInstanceTag} of the original sequencer
+   */
+  public LongSequencerImpl(String tag)
+  {
+    if (tag == null)
+       throw new NullPointerException("tag");
+    if ((tag.length() != TAG_LENGTH) ||
+        (tag.charAt(0) < 'A') || (tag.charAt(0) > 'Z') ||
+        (tag.charAt(1) < 'A') || (tag.charAt(1) > 'Z'))
+       throw new IllegalArgumentException("tag "+tag);
+
+    tag0 = tag.charAt(0);
+    tag1 = tag.charAt(1);
+
+    // Numbers 0-31 can be encoded with a single digit.
+    // Start with two digits, the shortest IDs are not special.
+    counter = DIGITS.length();
+  }
+
+
+  /**
+   * Chooses an instance tag at random.
+   *
+   * @return  two uppercase letters
+   */
+  protected static String randomTag()
+  {
+    ThreadLocalRandom rnd = ThreadLocalRandom.current();
+    char[] tag = new char[TAG_LENGTH];
+    for (int i=0; i<tag.length; i++)
+       tag[i] = (char) rnd.nextInt('A', 'Z'+1);
+
+    return new String(tag);
+  }
+
+
+  /**
+   * Obtains the instance tag of this sequencer.
+   *
+   * @return  the instance tag, which is the prefix of every message ID
+   */
+  public String getInstanceTag()
+  {
+    return new String(new char[]{ tag0, tag1 });
+  }
+
+
+  // non-javadoc, see interface Sequencer
+  public String createMessageID()
+  {
+    return toMessageID(createMessageNumber());
+  }
+
+
+  // non-javadoc, see interface NumericSequencer
+  public long createMessageNumber()
+  {
+    if (counter < 0)
+       throw new IllegalStateException("counter overflow");
+
+    return counter++;
+  }
+
+
+  // non-javadoc, see interface NumericSequencer
+  public void skipTo(long number)
+  {
+    if (counter < number)
+       counter = number;
+  }
+
+
+  // non-javadoc, see interface NumericSequencer
+  public String toMessageID(long number)
+  {
+    if (number < 0)
+       throw new IllegalArgumentException("number "+number);
+
+    char[] chars = new char[TAG_LENGTH + MAX_DIGITS];
+
+    // generate digits in reverse order, from the end of the buffer
+    int  pos = chars.length;
+    long num = number;
+    do
+     {
+       chars[--pos] = DIGITS.charAt((int) (num & 0x1f));
+       num = num >>> 5;
+     }
+    while (num > 0);
+    chars[--pos] = tag1;
+    chars[--pos] = tag0;
+
+    return new String(chars, pos, chars.length - pos);
+  }
+
+
+  // non-javadoc, see interface NumericSequencer
+  public long toMessageNumber(String msgid)
+  {
+    return decode(msgid);
+  }
+
+
+  // non-javadoc, see interface Sequencer
+  public boolean isSane(String candidate)
+  {
+    if (candidate == null)
+       return false;
+
+    final int length = candidate.length();
+    if ((length <= TAG_LENGTH) || (length > TAG_LENGTH + MAX_DIGITS))
+       return false;
+
+    if ((candidate.charAt(0) != tag0) || (candidate.charAt(1) != tag1))
+       return false;
+
+    // no leading zeros, that would break uniqueness
+    if ((candidate.charAt(TAG_LENGTH) == '0') && (length > TAG_LENGTH+1))
+       return false;
+
+    // 13 digits hold 65 bits, the first digit must not exceed 63 bits
+    if ((length == TAG_LENGTH + MAX_DIGITS) &&
+        (digitValue(candidate.charAt(TAG_LENGTH)) > 7))
+       return false;
+
+    for (int i=TAG_LENGTH; i<length; i++)
+     {
+       if (digitValue(candidate.charAt(i)) < 0)
+          return false;
+     }
+
+    return true;
+  }
+
+
+  // non-javadoc, see interface Sequencer
+  public Comparator<String> getComparator()
+  {
+    return LongComp.INSTANCE;
+  }
+
+
+  /**
+   * Obtains the value of a digit.
+   *
+   * @param c     the character
+   *
+   * @return  the value of the digit, or -1 if the character is not a digit
+   */
+  protected final static int digitValue(char c)
+  {
+    return (c < DIGIT_VALUES.length) ? DIGIT_VALUES[c] : -1;
+  }
+
+
+  /**
+   * Decodes the message number from a message ID.
+   * The instance tag is ignored.
+   *
+   * @param msgid       a message ID that is sane for some instance
+   *
+   * @return  the message number
+   */
+  protected final static long decode(String msgid)
+  {
+    long num = 0;
+    for (int i=TAG_LENGTH; i<msgid.length(); i++)
+       num = (num << 5) | digitValue(msgid.charAt(i));
+
+    return num;
+  }
+
+
+  /**
+   * A comparator for the IDs generated by {@link LongSequencerImpl}.
+   * It decodes the message numbers and compares them as primitives.
+   */
+  public static class LongComp implements Comparator<String>
+  {
+    /**
+     * The singleton instance of this comparator.
+     * The implementation is thread-safe, there is no need to create another.
+     */
+    public final static LongComp INSTANCE = new LongComp();
+
+    /** Restricted default constructor. */
+    private LongComp()
+    {
+      // no body
+    }
+
+
+    // non-javadoc, see interface
+    public int compare(String o1, String o2)
+    {
+      if (o1 == null)
+         throw new NullPointerException("o1");
+      if (o2 == null)
+         throw new NullPointerException("o2");
+
+      return Long.compare(decode(o1), decode(o2));
+    }
+
+  } // class LongComp
+
+}
@@ -49,4 +49,28 @@ public interface MSanityChecker<P>
   public P checkOriginator(String originator)
     ;
 
+
+  /**
+   * Sanity-checks a channel name.
+   *
+   * @param channel   the channel name to check
+   *
+   * @return <code>null</code> if the argument seems valid,
+   *         or a problem description otherwise
+   */
+  public P checkChannel(String channel)
+    ;
+
+
+  /**
+   * Sanity-checks the number of messages in a batch.
+   *
+   * @param size   the number of messages to put in one call
+   *
+   * @return <code>null</code> if the argument seems valid,
+   *         or a problem description otherwise
+   */
+  public P checkBatchSize(int size)
+    ;
+
 }
@@ -38,4 +38,52 @@ public interface MessageBoard
   public MessageBatch listMessages(int limit, String marker)
     ;
 
+
+  /**
+   * Lists selected messages from this board.
+   * The filter is evaluated by the board, so that only the selected
+   * messages are returned to the caller.
+   *
+   * @param limit       the maximum number of messages to list,
+   *                    0 or negative to list all selected messages
+   * @param marker      see {@link #listMessages(int,String) listMessages}
+   * @param filter      the filter to select messages, or
+   *                    <code>null</code> to select all messages
+   *
+   * @return    the oldest selected messages that are newer than the
+   *            <code>marker</code>, like
+   *            {@link #listMessages(int,String) listMessages}.
+   *            The continuation marker of the returned batch covers
+   *            the messages that were skipped by the filter, too.
+   */
+  public MessageBatch listMessages(int limit, String marker,
+                                   MessageFilter filter)
+    ;
+
+
+  /**
+   * Lists messages from this board, waiting for new ones if necessary.
+   * If there are no messages newer than the <code>marker</code>,
+   * the calling thread waits until another thread puts a message on
+   * this board, or until the timeout expires.
+   * Implementations that are not thread-safe cannot be changed while
+   * a thread waits, so they return immediately, like
+   * {@link #listMessages listMessages}.
+   *
+   * @param limit       the maximum number of messages to list,
+   *                    0 or negative to list all available messages
+   * @param marker      the continuation {@link MessageBatch#getMarker marker}
+   *                    from a preceding call, or
+   *                    <code>null</code> to fetch the oldest messages
+   *                    from this board
+   * @param timeout     the maximum time to wait, in milliseconds.
+   *                    0 or negative to return immediately.
+   *
+   * @return    the same as {@link #listMessages listMessages}.
+   *            The batch is empty only if the timeout expired,
+   *            or if the waiting thread was interrupted.
+   */
+  public MessageBatch awaitMessages(int limit, String marker, long timeout)
+    ;
+
 }
@@ -0,0 +1,58 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+
+/**
+ * A set of named {@link MixedMessageBoard message boards}, called channels.
+ * Each channel has its own board, with its own sequence of messages,
+ * markers, and capacity. Markers from one channel are meaningless
+ * for another channel.
+ * <br>
+ * There is always a default channel, which is not named.
+ * Other channels are created when they are first written to.
+ */
+public interface MessageChannels
+{
+  /**
+   * Obtains the board of the default channel.
+   *
+   * @return    the default board, never <code>null</code>
+   */
+  public MixedMessageBoard getDefaultChannel()
+    ;
+
+
+  /**
+   * Obtains the board of a channel.
+   * Channels are never removed, so only requests that put messages
+   * with a valid ticket should create them.
+   *
+   * @param name        the name of the channel, or
+   *                    <code>null</code> for the default channel
+   * @param create      whether to create the channel if it doesn't exist
+   *
+   * @return    the board of the channel, never <code>null</code>
+   *
+   * @throws IllegalArgumentException
+   *    if the name is not valid for a channel, or
+   *    if the channel does not exist and <code>create</code> is false, or
+   *    if the channel does not exist and no more channels can be created
+   */
+  public MixedMessageBoard getChannel(String name, boolean create)
+    ;
+
+
+  /**
+   * Obtains the number of named channels.
+   * The default channel is not counted.
+   *
+   * @return    the number of channels created so far
+   */
+  public int countChannels()
+    ;
+
+}
@@ -0,0 +1,123 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+import pityoulish.msgboard.MixedMessageBoardImpl.MT;
+
+
+/**
+ * A filter for listing messages, evaluated by the board.
+ * Selects messages by originator, by type, or both.
+ * Objects of this class are immutable.
+ */
+public class MessageFilter
+{
+  /** The originator to select, or <code>null</code>. */
+  protected final String filterOriginator;
+
+  /** The message type to select, or <code>null</code>. */
+  protected final Enum<?> filterType;
+
+
+  /**
+   * Creates a new message filter.
+   *
+   * @param originator  the originator of the messages to select, or
+   *                    <code>null</code> to select any originator
+   * @param type        the type of the messages to select, or
+   *                    <code>null</code> to select any type.
+   *                    Only {@link TypedMessage}s have a type.
+   */
+  public MessageFilter(String originator, Enum<?> type)
+  {
+    filterOriginator = originator;
+    filterType       = type;
+  }
+
+
+  /**
+   * Creates a filter for messages on a {@link MixedMessageBoard}.
+   *
+   * @param originator  the originator of the messages to select, or
+   *                    <code>null</code> to select any originator
+   * @param useronly    <code>true</code> to select only user messages,
+   *                    <code>false</code> to select system messages, too
+   *
+   * @return    the new filter
+   */
+  public static MessageFilter newMixedFilter(String originator,
+                                             boolean useronly)
+  {
+    return new MessageFilter(originator, useronly ? MT.USER : null);
+  }
+
+
+  /**
+   * Obtains the originator to select.
+   *
+   * @return    the originator, or <code>null</code> for any
+   */
+  public final String getOriginator()
+  {
+    return filterOriginator;
+  }
+
+
+  /**
+   * Obtains the message type to select.
+   *
+   * @return    the type, or <code>null</code> for any
+   */
+  public final Enum<?> getType()
+  {
+    return filterType;
+  }
+
+
+  /**
+   * Checks whether this filter selects all messages.
+   *
+   * @return    <code>true</code> if there is neither originator nor type,
+   *            <code>false</code> otherwise
+   */
+  public final boolean isEmpty()
+  {
+    return (filterOriginator == null) && (filterType == null);
+  }
+
+
+  /**
+   * Checks whether a message is selected by this filter.
+   *
+   * @param msg   the message to check
+   *
+   * @return    <code>true</code> if the message is selected,
+   *            <code>false</code> otherwise
+   */
+  public boolean matches(Message msg)
+  {
+    if ((filterOriginator != null) &&
+        !filterOriginator.equals(msg.getOriginator()))
+       return false;
+
+    if (filterType != null)
+     {
+       if (!(msg instanceof TypedMessage))
+          return false;
+       if (((TypedMessage<?>) msg).getType() != filterType)
+          return false;
+     }
+
+    return true;
+  }
+
+
+  public String toString()
+  {
+    return "MessageFilter@" + filterOriginator + "#" + filterType;
+  }
+
+}
@@ -5,16 +5,26 @@
  */
 package pityoulish.msgboard;
 
+import java.util.Arrays;
+
 
 /**
  * Default implementation of {@link Message}.
+ * Encodings are cached in a small array, which is replaced as a whole
+ * when an encoding is added. Lookups do not lock.
  */
-public class MessageImpl implements Message
+public class MessageImpl implements EncodableMessage
 {
   public final String originator;
   public final String timestamp;
   public final String text;
 
+  /**
+   * The cached encodings, alternating keys and values.
+   * There are only a few of them, one per protocol layer.
+   */
+  private volatile Object[] encodings;
+
 
   /**
    * Creates a new message.
@@ -61,6 +71,53 @@ public class MessageImpl implements Message
   }
 
 
+  // non-javadoc, see interface EncodableMessage
+  public final Object getEncoding(Object key)
+  {
+    if (key == null)
+       throw new NullPointerException("key");
+
+    final Object[] cache = encodings;
+    if (cache != null)
+     {
+       for (int i=0; i<cache.length; i+=2)
+        {
+          if (key.equals(cache[i]))
+             return cache[i+1];
+        }
+     }
+
+    return null;
+  }
+
+
+  // non-javadoc, see interface EncodableMessage
+  public final synchronized void putEncoding(Object key, Object encoding)
+  {
+    if (key == null)
+       throw new NullPointerException("key");
+    if (encoding == null)
+       throw new NullPointerException("encoding");
+
+    Object[] cache = encodings;
+    int pos = 0;
+    if (cache == null)
+     {
+       cache = new Object[2];
+     }
+    else
+     {
+       while ((pos < cache.length) && !key.equals(cache[pos]))
+          pos += 2;
+       cache = Arrays.copyOf(cache, Math.max(cache.length, pos+2));
+     }
+
+    cache[pos]   = key;
+    cache[pos+1] = encoding;
+    encodings = cache;
+  }
+
+
   /**
    * Generates a human-readable description of this message.
    *
@@ -0,0 +1,384 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * An inverted index over the texts of messages on a board.
+ * Maps each word to the numbers of the messages that contain it.
+ * The originator and type of each message are indexed as keys as well,
+ * with prefixes that cannot occur in words. They serve as a secondary
+ * index for {@link MessageFilter filtered} listings.
+ * An index can be limited to the words, or to the keys.
+ * <br>
+ * Messages are added in the order of their numbers, and removed in the
+ * same order when they drop off the board. Each posting list is therefore
+ * sorted, and removing a message takes it and anything older from the
+ * heads of the lists for its words.
+ * Posting lists are ring buffers of primitive <code>long</code> values,
+ * so that the index stays small for boards with many messages.
+ * <br>
+ * This class is not thread-safe. The board has to synchronize access.
+ */
+public class MessageIndex
+{
+  /** The maximum number of words in a query. */
+  public final static int MAX_QUERY_WORDS = 8;
+
+  /**
+   * The numbers of the messages that contain a word.
+   * A ring buffer, in ascending order, which grows as needed.
+   */
+  protected static class Postings
+  {
+    /** The message numbers. */
+    protected long[] numbers = new long[4];
+
+    /** The index of the lowest number. */
+    protected int head;
+
+    /** The number of message numbers. */
+    protected int size;
+
+
+    /**
+     * Appends a number, which must be higher than all others.
+     *
+     * @param number    the number to append
+     */
+    public void append(long number)
+    {
+      if (size == numbers.length)
+       {
+         long[] grown = new long[numbers.length * 2];
+         for (int i=0; i<size; i++)
+            grown[i] = get(i);
+         numbers = grown;
+         head    = 0;
+       }
+      numbers[(head + size) % numbers.length] = number;
+      size++;
+    }
+
+
+    /**
+     * Removes the lowest numbers, up to and including a threshold.
+     *
+     * @param number    the highest number to remove
+     */
+    public void removeUpTo(long number)
+    {
+      while ((size > 0) && (numbers[head] <= number))
+       {
+         head = (head + 1) % numbers.length;
+         size--;
+       }
+    }
+
+
+    /**
+     * Obtains a number by its position in ascending order.
+     *
+     * @param pos   the position, from 0 to size-1
+     *
+     * @return  the number at that position
+     */
+    public long get(int pos)
+    {
+      return numbers[(head + pos) % numbers.length];
+    }
+
+
+    /**
+     * Finds the position of the lowest number above a threshold.
+     *
+     * @param after     the threshold
+     *
+     * @return  the position of the lowest number greater than
+     *          <code>after</code>, or size if there is none
+     */
+    public int positionAfter(long after)
+    {
+      int low  = 0;
+      int high = size;
+      while (low < high)
+       {
+         int mid = (low + high) >>> 1;
+         if (get(mid) <= after)
+            low = mid+1;
+         else
+            high = mid;
+       }
+      return low;
+    }
+
+
+    /**
+     * Checks whether a number is in this list.
+     *
+     * @param number    the number to look for
+     *
+     * @return  <code>true</code> if present, <code>false</code> otherwise
+     */
+    public boolean contains(long number)
+    {
+      int pos = positionAfter(number-1);
+      return (pos < size) && (get(pos) == number);
+    }
+  }
+
+
+  /** The posting lists by word or key. */
+  protected final Map<String,Postings> indexPostings;
+
+  /** Whether the words of the texts are indexed. */
+  protected final boolean indexWords;
+
+  /** Whether the originators and types are indexed. */
+  protected final boolean indexKeys;
+
+
+  /**
+   * Creates a new, empty index of words and keys.
+   */
+  public MessageIndex()
+  {
+    this(true, true);
+  }
+
+
+  /**
+   * Creates a new, empty index.
+   *
+   * @param words   whether to index the words of the texts
+   * @param keys    whether to index the originators and types
+   */
+  public MessageIndex(boolean words, boolean keys)
+  {
+    indexPostings = new HashMap<>();
+    indexWords    = words;
+    indexKeys     = keys;
+  }
+
+
+  /**
+   * Splits a text into distinct, lower-case words.
+   * Words are sequences of letters and digits.
+   *
+   * @param text    the text to split
+   *
+   * @return  the words in the text, each only once
+   */
+  public static List<String> toWords(String text)
+  {
+    List<String> words = new ArrayList<>();
+    int start = -1;
+    for (int i=0; i<=text.length(); i++)
+     {
+       boolean inword =
+         (i < text.length()) && Character.isLetterOrDigit(text.charAt(i));
+       if (inword && (start < 0))
+        {
+          start = i;
+        }
+       else if (!inword && (start >= 0))
+        {
+          String word = text.substring(start, i).toLowerCase(Locale.ROOT);
+          if (!words.contains(word))
+             words.add(word);
+          start = -1;
+        }
+     }
+    return words;
+  }
+
+
+  /**
+   * Obtains the index key for an originator.
+   *
+   * @param originator  the originator
+   *
+   * @return    the key under which messages from that originator are indexed
+   */
+  public static String originatorKey(String originator)
+  {
+    return "@" + originator;
+  }
+
+
+  /**
+   * Obtains the index key for a message type.
+   *
+   * @param type        the type of {@link TypedMessage typed} messages
+   *
+   * @return    the key under which messages of that type are indexed
+   */
+  public static String typeKey(Enum<?> type)
+  {
+    return "#" + type.name();
+  }
+
+
+  /**
+   * Obtains the index keys for a filter.
+   *
+   * @param filter      the filter
+   *
+   * @return    the keys of all messages selected by the filter,
+   *            empty if the filter selects all messages
+   */
+  public static List<String> toKeys(MessageFilter filter)
+  {
+    List<String> keys = new ArrayList<>(2);
+    if (filter.getOriginator() != null)
+       keys.add(originatorKey(filter.getOriginator()));
+    if (filter.getType() != null)
+       keys.add(typeKey(filter.getType()));
+    return keys;
+  }
+
+
+  /**
+   * Obtains the index keys for a message.
+   *
+   * @param msg   the message
+   *
+   * @return    the words of the text, the originator key,
+   *            and the type key if the message is typed,
+   *            as far as they are indexed
+   */
+  protected List<String> toKeys(Message msg)
+  {
+    List<String> keys = indexWords ?
+      toWords(msg.getText()) : new ArrayList<String>(2);
+    if (indexKeys)
+     {
+       keys.add(originatorKey(msg.getOriginator()));
+       if (msg instanceof TypedMessage)
+          keys.add(typeKey(((TypedMessage<?>) msg).getType()));
+     }
+    return keys;
+  }
+
+
+  /**
+   * Adds a message to this index.
+   * The number must be higher than that of every message added before.
+   *
+   * @param number    the number of the message
+   * @param msg       the message
+   */
+  public void add(long number, Message msg)
+  {
+    for (String key: toKeys(msg))
+     {
+       Postings postings = indexPostings.get(key);
+       if (postings == null)
+        {
+          postings = new Postings();
+          indexPostings.put(key, postings);
+        }
+       postings.append(number);
+     }
+  }
+
+
+  /**
+   * Removes a message from this index.
+   * Older messages with the same words are removed, too.
+   *
+   * @param number    the number of the message
+   * @param msg       the message
+   */
+  public void remove(long number, Message msg)
+  {
+    for (String key: toKeys(msg))
+     {
+       Postings postings = indexPostings.get(key);
+       if (postings != null)
+        {
+          postings.removeUpTo(number);
+          if (postings.size == 0)
+             indexPostings.remove(key);
+        }
+     }
+  }
+
+
+  /**
+   * Searches for messages that contain all words of a query,
+   * or have all keys of a filter.
+   *
+   * @param words   the words to search for, as returned by
+   *                {@link #toWords toWords}, or the keys of a filter
+   * @param after   the number after which to start searching
+   * @param limit   the maximum number of results,
+   *                0 or negative for all results
+   *
+   * @return  the numbers of matching messages, in ascending order
+   */
+  public long[] search(List<String> words, long after, int limit)
+  {
+    if (words.isEmpty())
+       return new long[0];
+
+    // iterate over the shortest list, check the others
+    Postings[] lists = new Postings[words.size()];
+    int shortest = 0;
+    for (int i=0; i<lists.length; i++)
+     {
+       lists[i] = indexPostings.get(words.get(i));
+       if (lists[i] == null)
+          return new long[0];
+       if (lists[i].size < lists[shortest].size)
+          shortest = i;
+     }
+
+    Postings driver = lists[shortest];
+    int pos = driver.positionAfter(after);
+    int max = driver.size - pos;
+    if (limit > 0)
+       max = Math.min(max, limit);
+
+    long[] found = new long[max];
+    int count = 0;
+    while ((count < max) && (pos < driver.size))
+     {
+       long number = driver.get(pos++);
+       boolean match = true;
+       for (int i=0; match && (i<lists.length); i++)
+          match = (i == shortest) || lists[i].contains(number);
+       if (match)
+          found[count++] = number;
+     }
+
+    if (count < found.length)
+     {
+       long[] shrunk = new long[count];
+       System.arraycopy(found, 0, shrunk, 0, count);
+       found = shrunk;
+     }
+    return found;
+  }
+
+
+  /**
+   * Obtains the number of distinct words and keys in this index.
+   *
+   * @return  the number of posting lists
+   */
+  public int countKeys()
+  {
+    return indexPostings.size();
+  }
+
+}
@@ -0,0 +1,804 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import pityoulish.logutil.Log;
+import pityoulish.msgboard.MixedMessageBoardImpl.MT;
+import pityoulish.msgboard.MixedMessageBoardImpl.MTMsg;
+
+
+/**
+ * Append-only journal of the messages put on a board.
+ * The journal is a directory with segment files. Each start of the server
+ * replays the existing segments and begins a new one. A segment starts
+ * with a header that holds the instance tag of the {@link LongSequencerImpl},
+ * so that restored messages keep their IDs. It is followed by records,
+ * one per message, with the message number, type, timestamp, originator,
+ * and text. Each record is protected by a CRC. Replay of a segment stops
+ * at the first incomplete or damaged record.
+ * <br>
+ * Appending uses group commit. Writers {@link #append append} records
+ * to a buffer in memory, in the order of their message numbers.
+ * Then they {@link #awaitDurable wait} until their record is on disk.
+ * One of the waiting threads writes the whole buffer and forces it to disk,
+ * while the others wait for it. The cost of a sync is thereby shared
+ * by all writers that appended in the meantime.
+ * When a segment exceeds a size limit, the thread that writes to disk
+ * starts a new segment.
+ * <br>
+ * A snapshot holds all messages of the board up to some message number,
+ * along with the last dropped user message. After a snapshot is written,
+ * older snapshots and segments with only older messages are deleted.
+ * Replay starts with the latest snapshot, then reads the remaining
+ * segments. The time to restart is thereby bounded by the capacity of
+ * the board and the snapshot interval, rather than by the uptime.
+ */
+public class MessageJournal
+{
+  /** The magic number at the start of a segment, "PYJ1". */
+  public final static int SEGMENT_MAGIC = 0x50594a31;
+
+  /** The file name prefix of segments. */
+  public final static String SEGMENT_PREFIX = "board-";
+
+  /** The file name suffix of segments. */
+  public final static String SEGMENT_SUFFIX = ".journal";
+
+  /** The magic number at the start of a snapshot, "PYS1". */
+  public final static int SNAPSHOT_MAGIC = 0x50595331;
+
+  /** The file name suffix of snapshots. */
+  public final static String SNAPSHOT_SUFFIX = ".snapshot";
+
+  /** The default size of a segment, after which a new one is started. */
+  public final static long DEFAULT_SEGMENT_LIMIT = 4L*1024*1024;
+
+  /** The maximum length of a record, to detect damaged lengths. */
+  public final static int MAX_RECORD_LENGTH = 3*65536 + 16;
+
+
+  protected final Logger logger = Log.getPackageLogger(this.getClass());
+
+  /** The directory with the segments. */
+  protected final File journalDir;
+
+  /** The instance tag of the sequencer for the journaled board. */
+  protected final String instanceTag;
+
+  /** The size of a segment, after which a new one is started. */
+  protected final long segmentLimit;
+
+  /** The segment being appended to, or <code>null</code>. */
+  protected FileChannel segmentChannel;
+
+  /** The records appended but not yet written. */
+  protected ByteArrayOutputStream pendingBytes;
+
+  /** The output stream for {@link #pendingBytes}. */
+  protected DataOutputStream pendingOut;
+
+  /** Reusable buffer for encoding a record. */
+  protected ByteArrayOutputStream recordBytes;
+
+  /** The number of the last appended message. */
+  protected long appendedNumber;
+
+  /** The number of the last message that is on disk. */
+  protected long durableNumber;
+
+  /** Whether some thread is currently writing to disk. */
+  protected boolean flushing;
+
+  /** The problem that broke the journal, or <code>null</code>. */
+  protected IOException failure;
+
+
+
+  /**
+   * Opens a journal.
+   * The directory is created if it does not exist.
+   * Existing segments must be {@link #replay replayed}
+   * before a new one is {@link #startSegment started}.
+   *
+   * @param dir     the directory with the segments
+   *
+   * @throws IOException  if the directory or an existing segment is bad
+   */
+  public MessageJournal(File dir)
+    throws IOException
+  {
+    this(dir, DEFAULT_SEGMENT_LIMIT);
+  }
+
+
+  /**
+   * Opens a journal with a specific segment size.
+   *
+   * @param dir     the directory with the segments
+   * @param limit   the size of a segment, after which a new one is started
+   *
+   * @throws IOException  if the directory or an existing segment is bad
+   */
+  public MessageJournal(File dir, long limit)
+    throws IOException
+  {
+    if (dir == null)
+       throw new NullPointerException("File");
+    if (limit < 1)
+       throw new IllegalArgumentException("limit "+limit);
+
+    if (!dir.isDirectory() && !dir.mkdirs())
+       throw new IOException(Catalog.JOURNAL_NO_DIRECTORY_1.format(dir));
+
+    journalDir   = dir;
+    segmentLimit = limit;
+
+    File[] snapshots = listFiles(SNAPSHOT_SUFFIX);
+    File[] segments  = listFiles(SEGMENT_SUFFIX);
+    if (snapshots.length > 0)
+       instanceTag = readHeader(snapshots[snapshots.length-1],
+                                SNAPSHOT_MAGIC, null);
+    else if (segments.length > 0)
+       instanceTag = readHeader(segments[0], SEGMENT_MAGIC, null);
+    else
+       instanceTag = new LongSequencerImpl().getInstanceTag();
+
+    pendingBytes = new ByteArrayOutputStream(4096);
+    pendingOut   = new DataOutputStream(pendingBytes);
+    recordBytes  = new ByteArrayOutputStream(256);
+  }
+
+
+  /**
+   * Creates a sequencer that generates the message IDs of this journal.
+   *
+   * @return  a new sequencer with the instance tag of this journal
+   */
+  public LongSequencerImpl createSequencer()
+  {
+    return new LongSequencerImpl(instanceTag);
+  }
+
+
+  /**
+   * Lists the segments or snapshots of this journal.
+   *
+   * @param suffix  {@link #SEGMENT_SUFFIX} or {@link #SNAPSHOT_SUFFIX}
+   *
+   * @return  the files, oldest first
+   *
+   * @throws IOException  if the directory cannot be listed
+   */
+  protected File[] listFiles(String suffix)
+    throws IOException
+  {
+    File[] files = journalDir.listFiles();
+    if (files == null)
+       throw new IOException(Catalog.JOURNAL_NO_DIRECTORY_1.format
+                             (journalDir));
+
+    List<File> segments = new ArrayList<>(files.length);
+    for (File file: files)
+     {
+       String name = file.getName();
+       if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(suffix))
+          segments.add(file);
+     }
+
+    // names contain a message number as fixed-length hex
+    File[] result = segments.toArray(new File[segments.size()]);
+    Arrays.sort(result);
+
+    return result;
+  }
+
+
+  /**
+   * Obtains the segment or snapshot file for a message number.
+   *
+   * @param number  the number of the first message in a segment,
+   *                or the last message in a snapshot
+   * @param suffix  {@link #SEGMENT_SUFFIX} or {@link #SNAPSHOT_SUFFIX}
+   *
+   * @return  the file
+   */
+  protected File journalFile(long number, String suffix)
+  {
+    return new File(journalDir, String.format
+                    ("%s%016x%s", SEGMENT_PREFIX, number, suffix));
+  }
+
+
+  /**
+   * Obtains the message number from the name of a journal file.
+   *
+   * @param file    a segment or snapshot
+   *
+   * @return  the number in the file name
+   */
+  protected static long fileNumber(File file)
+  {
+    String name = file.getName();
+    int    pos  = SEGMENT_PREFIX.length();
+    return Long.parseUnsignedLong(name.substring(pos, pos+16), 16);
+  }
+
+
+  /**
+   * Reads and checks the header of a segment or snapshot.
+   *
+   * @param segment     the segment or snapshot file
+   * @param magic       the expected magic number
+   * @param in          the input stream for the file, or
+   *                    <code>null</code> to open and close one here
+   *
+   * @return  the instance tag from the header
+   *
+   * @throws IOException  if the header is bad or does not match
+   */
+  protected String readHeader(File segment, int magic, DataInputStream in)
+    throws IOException
+  {
+    DataInputStream dis = in;
+    try {
+      if (dis == null)
+         dis = new DataInputStream(new FileInputStream(segment));
+
+      if (dis.readInt() != magic)
+         throw new IOException(Catalog.JOURNAL_BAD_SEGMENT_1.format(segment));
+
+      String tag = new String(new char[]{ dis.readChar(), dis.readChar() });
+      if ((instanceTag != null) && !instanceTag.equals(tag))
+         throw new IOException(Catalog.JOURNAL_BAD_SEGMENT_1.format(segment));
+
+      return tag;
+
+    } catch (EOFException eofx) {
+      throw new IOException(Catalog.JOURNAL_BAD_SEGMENT_1.format(segment),
+                            eofx);
+    } finally {
+      if ((in == null) && (dis != null))
+         dis.close();
+    }
+  }
+
+
+  /**
+   * Replays the latest snapshot and the existing segments into a board.
+   * Segments without any messages are deleted.
+   *
+   * @param board   the board on which to restore the messages
+   *
+   * @return  the number of messages restored
+   *
+   * @throws IOException  if a snapshot or segment cannot be read
+   */
+  public int replay(RingMessageBoardImpl board)
+    throws IOException
+  {
+    int total = 0;
+
+    File[] snapshots = listFiles(SNAPSHOT_SUFFIX);
+    if (snapshots.length > 0)
+       total += readSnapshot(snapshots[snapshots.length-1], board);
+
+    for (File segment: listFiles(SEGMENT_SUFFIX))
+     {
+       int count = replaySegment(segment, board);
+       if (count == 0)
+          segment.delete();
+       total += count;
+     }
+
+    logger.log(Level.INFO, "restored {0} messages from {1}",
+               new Object[]{ total, journalDir });
+
+    return total;
+  }
+
+
+  /**
+   * Replays a single segment into a board.
+   * Stops at the end of the segment or at the first damaged record.
+   *
+   * @param segment     the segment file
+   * @param board       the board on which to restore the messages
+   *
+   * @return  the number of records read from the segment
+   *
+   * @throws IOException  if the segment cannot be read
+   */
+  protected int replaySegment(File segment, RingMessageBoardImpl board)
+    throws IOException
+  {
+    int count = 0;
+    try (DataInputStream in = new DataInputStream
+         (new BufferedInputStream(new FileInputStream(segment)))) {
+
+      readHeader(segment, SEGMENT_MAGIC, in);
+
+      CRC32  crc    = new CRC32();
+      byte[] record = new byte[256];
+      while (true)
+       {
+         int length   = 0;
+         int checksum = 0;
+         try {
+           length   = in.readInt();
+           checksum = in.readInt();
+           if ((length < 0) || (length > MAX_RECORD_LENGTH))
+              break;
+           if (length > record.length)
+              record = new byte[length];
+           in.readFully(record, 0, length);
+         } catch (EOFException eofx) {
+           break; // end of segment, or incomplete record
+         }
+
+         crc.reset();
+         crc.update(record, 0, length);
+         if ((int) crc.getValue() != checksum)
+            break;
+
+         DataInputStream rin = new DataInputStream
+           (new ByteArrayInputStream(record, 0, length));
+         long  number = rin.readLong();
+         MTMsg msg    = readMessage(rin);
+         if (msg == null)
+            break;
+
+         board.restoreMessage(number, msg);
+         count++;
+       }
+    }
+
+    return count;
+  }
+
+
+  /**
+   * Reads the message part of a record.
+   *
+   * @param in      the input stream, positioned after the message number
+   *
+   * @return  the message, or <code>null</code> if the type is invalid
+   *
+   * @throws IOException  if the message cannot be read
+   */
+  protected MTMsg readMessage(DataInputStream in)
+    throws IOException
+  {
+    int type = in.readByte();
+    if ((type < 0) || (type >= MT.values().length))
+       return null;
+
+    return new MTMsg(in.readUTF(), in.readUTF(), in.readUTF(),
+                     MT.values()[type]);
+  }
+
+
+  /**
+   * Writes a message number and message.
+   *
+   * @param out     the output stream
+   * @param number  the number of the message
+   * @param msg     the message
+   *
+   * @throws IOException  if the message cannot be written
+   */
+  protected void writeMessage(DataOutputStream out, long number, MTMsg msg)
+    throws IOException
+  {
+    out.writeLong(number);
+    out.writeByte(msg.getType().ordinal());
+    out.writeUTF(msg.getOriginator());
+    out.writeUTF(msg.getTimestamp());
+    out.writeUTF(msg.getText());
+  }
+
+
+  /**
+   * Starts a new segment for appending.
+   *
+   * @param number  the number of the next message to be appended
+   *
+   * @throws IOException  if the segment cannot be created
+   */
+  public synchronized void startSegment(long number)
+    throws IOException
+  {
+    if (segmentChannel != null)
+       throw new IllegalStateException("segment already started");
+
+    segmentChannel = openSegment(number);
+    appendedNumber = number-1;
+    durableNumber  = number-1;
+  }
+
+
+  /**
+   * Creates a segment file and writes the header.
+   *
+   * @param number  the number of the first message in the segment
+   *
+   * @return  the channel for appending to the new segment
+   *
+   * @throws IOException  if the segment cannot be created
+   */
+  protected FileChannel openSegment(long number)
+    throws IOException
+  {
+    // a previous segment with the same name has no restorable records
+    FileChannel channel = FileChannel.open
+      (journalFile(number, SEGMENT_SUFFIX).toPath(),
+       StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+       StandardOpenOption.TRUNCATE_EXISTING);
+
+    ByteBuffer header = ByteBuffer.allocate(8);
+    header.putInt(SEGMENT_MAGIC);
+    header.putChar(instanceTag.charAt(0));
+    header.putChar(instanceTag.charAt(1));
+    header.flip();
+    while (header.hasRemaining())
+       channel.write(header);
+    channel.force(true);
+
+    return channel;
+  }
+
+
+  /**
+   * Appends a message to this journal.
+   * The record is buffered in memory, see {@link #awaitDurable}.
+   * Messages must be appended in the order of their numbers.
+   *
+   * @param number  the number of the message
+   * @param msg     the message
+   *
+   * @throws IOException  if the journal is broken
+   */
+  public synchronized void append(long number, MTMsg msg)
+    throws IOException
+  {
+    append(number, Collections.singletonList(msg));
+  }
+
+
+  /**
+   * Appends messages with consecutive numbers to this journal.
+   * All records are encoded before the first one is buffered,
+   * so either all or none of the messages are appended.
+   *
+   * @param first   the number of the first message
+   * @param msgs    the messages
+   *
+   * @throws IOException  if the journal is broken,
+   *                      or a message cannot be encoded
+   */
+  public synchronized void append(long first, List<MTMsg> msgs)
+    throws IOException
+  {
+    if (failure != null)
+       throw new IOException(Catalog.JOURNAL_FAILED.lookup(), failure);
+    if (segmentChannel == null)
+       throw new IllegalStateException("no segment started");
+
+    ByteArrayOutputStream framed = new ByteArrayOutputStream(msgs.size()*80);
+    DataOutputStream      fout   = new DataOutputStream(framed);
+    CRC32 crc = new CRC32();
+    for (int i=0; i<msgs.size(); i++)
+     {
+       recordBytes.reset();
+       DataOutputStream rout = new DataOutputStream(recordBytes);
+       writeMessage(rout, first+i, msgs.get(i));
+       rout.flush();
+
+       crc.reset();
+       crc.update(recordBytes.toByteArray());
+
+       fout.writeInt(recordBytes.size());
+       fout.writeInt((int) crc.getValue());
+       recordBytes.writeTo(fout);
+     }
+    fout.flush();
+
+    framed.writeTo(pendingOut);
+    appendedNumber = first + msgs.size() - 1;
+  }
+
+
+  /**
+   * Waits until an appended message is on disk.
+   * If no other thread is writing to disk, the calling thread writes
+   * all records appended so far, on behalf of all waiting threads.
+   * If writing fails, the journal is broken for good. Nothing can be
+   * appended afterwards, because it is unknown which records are on disk.
+   * Waiting cannot be interrupted, the interrupt status is set on return.
+   *
+   * @param number  the number of the appended message
+   *
+   * @throws IOException  if the message could not be written
+   */
+  public void awaitDurable(long number)
+    throws IOException
+  {
+    // an interrupt would close the channel during IO, defer it until done
+    boolean interrupted = Thread.interrupted();
+    try {
+      byte[] batch = null;
+      long   batchNumber = 0;
+
+      synchronized (this)
+       {
+         while (batch == null)
+          {
+            if (failure != null)
+               throw new IOException(Catalog.JOURNAL_FAILED.lookup(),
+                                     failure);
+            if (durableNumber >= number)
+               return;
+
+            if (!flushing)
+             {
+               // become the leader for the next group commit
+               flushing    = true;
+               pendingOut.flush();
+               batch       = pendingBytes.toByteArray();
+               batchNumber = appendedNumber;
+               pendingBytes.reset();
+             }
+            else
+             {
+               try {
+                 wait();
+               } catch (InterruptedException ix) {
+                 interrupted = true;
+               }
+             }
+          }
+       }
+
+      writeBatch(batch, batchNumber);
+
+    } finally {
+      if (interrupted)
+         Thread.currentThread().interrupt();
+    }
+  }
+
+
+  /**
+   * Writes a batch of records to disk, as the leader of a group commit.
+   * Records appended meanwhile are numbered after this batch.
+   * If writing fails, the journal is broken.
+   *
+   * @param batch         the records
+   * @param batchNumber   the number of the last message in the batch
+   *
+   * @throws IOException  if the batch could not be written
+   */
+  protected void writeBatch(byte[] batch, long batchNumber)
+    throws IOException
+  {
+    IOException problem = null;
+    try {
+      ByteBuffer bb = ByteBuffer.wrap(batch);
+      while (bb.hasRemaining())
+         segmentChannel.write(bb);
+      segmentChannel.force(false);
+
+      // only the leader uses the channel, it can switch to a new segment
+      if (segmentChannel.size() >= segmentLimit)
+       {
+         FileChannel next = openSegment(batchNumber+1);
+         segmentChannel.close();
+         segmentChannel = next;
+       }
+
+    } catch (IOException iox) {
+      problem = iox;
+      throw iox;
+
+    } finally {
+      synchronized (this)
+       {
+         flushing = false;
+         if (problem == null)
+            durableNumber = batchNumber;
+         else
+            failure = problem;
+         notifyAll();
+       }
+    }
+  }
+
+
+  /**
+   * Writes all appended messages and closes the current segment.
+   *
+   * @throws IOException  in case of a problem
+   */
+  public void close()
+    throws IOException
+  {
+    long number = 0;
+    synchronized (this)
+     {
+       if (segmentChannel == null)
+          return;
+       number = appendedNumber;
+     }
+
+    try {
+      awaitDurable(number);
+    } finally {
+      synchronized (this)
+       {
+         segmentChannel.close();
+         segmentChannel = null;
+       }
+    }
+  }
+
+
+  /**
+   * Writes a snapshot of a board.
+   * The snapshot is written to a temporary file which is then renamed,
+   * so that there is always a complete snapshot.
+   * Older snapshots and segments are deleted afterwards.
+   * All messages in the snapshot must be on disk already,
+   * see {@link #awaitDurable}.
+   *
+   * @param last        the number of the last message in the snapshot
+   * @param dropped     the number of the last dropped user message
+   * @param slots       the messages on the board, oldest first
+   *
+   * @throws IOException  if the snapshot cannot be written
+   */
+  public void writeSnapshot(long last, long dropped,
+                            List<RingMessageBoardImpl.Slot> slots)
+    throws IOException
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(slots.size()*64);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(SNAPSHOT_MAGIC);
+    out.writeChar(instanceTag.charAt(0));
+    out.writeChar(instanceTag.charAt(1));
+    out.writeLong(last);
+    out.writeLong(dropped);
+    out.writeInt(slots.size());
+    for (RingMessageBoardImpl.Slot slot: slots)
+       writeMessage(out, slot.number, slot.message);
+    out.flush();
+
+    CRC32 crc = new CRC32();
+    crc.update(bytes.toByteArray());
+    out.writeInt((int) crc.getValue());
+    out.flush();
+
+    File snapshot = journalFile(last, SNAPSHOT_SUFFIX);
+    File temp = new File(journalDir, snapshot.getName()+".tmp");
+    try (FileChannel channel = FileChannel.open
+         (temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer bb = ByteBuffer.wrap(bytes.toByteArray());
+      while (bb.hasRemaining())
+         channel.write(bb);
+      channel.force(true);
+    }
+    Files.move(temp.toPath(), snapshot.toPath(),
+               StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+
+    compact(last);
+  }
+
+
+  /**
+   * Deletes snapshots and segments that are older than a snapshot.
+   * A segment is deleted if the next segment starts before or right
+   * after the last message in the snapshot.
+   * The current segment is never deleted.
+   *
+   * @param last    the number of the last message in the latest snapshot
+   *
+   * @throws IOException  if the directory cannot be listed
+   */
+  protected void compact(long last)
+    throws IOException
+  {
+    for (File snapshot: listFiles(SNAPSHOT_SUFFIX))
+     {
+       if (fileNumber(snapshot) < last)
+          snapshot.delete();
+     }
+
+    File[] segments = listFiles(SEGMENT_SUFFIX);
+    for (int i=0; i<segments.length-1; i++)
+     {
+       if (fileNumber(segments[i+1]) <= last+1)
+          segments[i].delete();
+     }
+  }
+
+
+  /**
+   * Restores a board from a snapshot.
+   *
+   * @param snapshot    the snapshot file
+   * @param board       the board on which to restore the messages
+   *
+   * @return  the number of messages in the snapshot
+   *
+   * @throws IOException  if the snapshot is invalid
+   */
+  protected int readSnapshot(File snapshot, RingMessageBoardImpl board)
+    throws IOException
+  {
+    byte[] bytes = Files.readAllBytes(snapshot.toPath());
+
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, Math.max(0, bytes.length-4));
+    if ((bytes.length < 4) ||
+        ((int) crc.getValue() != ByteBuffer.wrap(bytes, bytes.length-4, 4)
+                                           .getInt()))
+       throw new IOException(Catalog.JOURNAL_BAD_SEGMENT_1.format(snapshot));
+
+    DataInputStream in = new DataInputStream
+      (new ByteArrayInputStream(bytes, 0, bytes.length-4));
+    try {
+      readHeader(snapshot, SNAPSHOT_MAGIC, in);
+      long last    = in.readLong();
+      long dropped = in.readLong();
+      int  count   = in.readInt();
+      for (int i=0; i<count; i++)
+       {
+         long  number = in.readLong();
+         MTMsg msg    = readMessage(in);
+         if ((msg == null) || (number > last))
+            throw new IOException(Catalog.JOURNAL_BAD_SEGMENT_1
+                                  .format(snapshot));
+         board.restoreMessage(number, msg);
+       }
+      board.restoreDroppedUserMessage(dropped);
+
+      return count;
+
+    } catch (EOFException eofx) {
+      throw new IOException(Catalog.JOURNAL_BAD_SEGMENT_1.format(snapshot),
+                            eofx);
+    }
+  }
+
+
+  public String toString()
+  {
+    return "MessageJournal("+journalDir+","+instanceTag+")";
+  }
+
+}
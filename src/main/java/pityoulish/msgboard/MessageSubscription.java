@@ -0,0 +1,59 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+
+/**
+ * A subscription to new messages on a {@link MixedMessageBoard}.
+ * The board pushes every message it adds into a bounded queue of the
+ * subscription, from where the subscriber polls them in batches.
+ * <br>
+ * The board never waits for a subscriber. If the queue is full,
+ * new messages are not queued, and the next batch with messages
+ * after the gap is {@link MessageBatch#isDiscontinuous discontinuous}.
+ * The missed messages may still be on the board. They can be listed
+ * with the {@link MessageBatch#getMarker marker} of the batch before.
+ */
+public interface MessageSubscription
+{
+  /**
+   * Polls messages from this subscription.
+   * Waits for new messages if none are queued.
+   *
+   * @param limit       the maximum number of messages to return,
+   *                    0 or negative to return all queued messages
+   * @param timeout     the maximum time to wait, in milliseconds.
+   *                    0 or negative to return immediately.
+   *
+   * @return    the oldest queued messages.
+   *            The batch is empty if the timeout expired, if the waiting
+   *            thread was interrupted, or if the subscription is cancelled.
+   *            The marker of the batch can be used to
+   *            {@link MessageBoard#listMessages list} the same
+   *            messages from the board that follow this batch.
+   */
+  public MessageBatch poll(int limit, long timeout)
+    ;
+
+
+  /**
+   * Cancels this subscription.
+   * The board stops pushing messages, and threads waiting in
+   * {@link #poll poll} return.
+   */
+  public void cancel()
+    ;
+
+
+  /**
+   * Indicates whether this subscription has been cancelled.
+   *
+   * @return  <code>true</code> if cancelled, <code>false</code> otherwise
+   */
+  public boolean isCancelled()
+    ;
+
+}
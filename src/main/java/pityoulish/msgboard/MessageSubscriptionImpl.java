@@ -0,0 +1,215 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Default implementation of {@link MessageSubscription}.
+ * The queue is a ring buffer guarded by the monitor of the subscription.
+ * A board calls {@link #deliver deliver} after publishing a message, so the
+ * monitor is shared only between the board and the subscriber.
+ * Different subscriptions do not contend with each other.
+ * <br>
+ * A message delivered after a full queue carries a gap flag.
+ * Polling stops before such a message, so that it starts the next batch,
+ * which is then discontinuous.
+ */
+public class MessageSubscriptionImpl implements MessageSubscription
+{
+  /**
+   * A queued message, along with its ID.
+   * Objects of this class are immutable.
+   */
+  protected static class Entry
+  {
+    /** The ID of the message. */
+    public final String msgid;
+
+    /** The message. */
+    public final Message message;
+
+    /** Whether messages have been missed before this one. */
+    public final boolean afterGap;
+
+
+    public Entry(String msgid, Message message, boolean afterGap)
+    {
+      this.msgid    = msgid;
+      this.message  = message;
+      this.afterGap = afterGap;
+    }
+  }
+
+
+  /** The queued messages, a ring buffer. */
+  protected final Entry[] queue;
+
+  /** The index of the oldest queued message. */
+  protected int queueHead;
+
+  /** The number of queued messages. */
+  protected int queueSize;
+
+  /** The marker of the last batch, or of the board when subscribing. */
+  protected String lastMarker;
+
+  /** Whether messages have been missed since the last queued one. */
+  protected boolean missed;
+
+  /** Whether this subscription has been cancelled. */
+  protected boolean cancelled;
+
+  /** The collection from which to remove this subscription on cancel. */
+  protected final Collection<? super MessageSubscriptionImpl> registry;
+
+
+  /**
+   * Creates a new subscription.
+   * The caller is expected to add it to the <code>registry</code>.
+   *
+   * @param capacity    the maximum number of queued messages
+   * @param marker      the marker of the board when subscribing,
+   *                    for batches without messages
+   * @param registry    the collection of subscriptions of the board
+   */
+  public MessageSubscriptionImpl(int capacity, String marker,
+                                 Collection<? super MessageSubscriptionImpl>
+                                 registry)
+  {
+    if (capacity < 1)
+       throw new IllegalArgumentException("capacity " + capacity);
+    if (marker == null)
+       throw new NullPointerException("marker");
+    if (registry == null)
+       throw new NullPointerException("Collection");
+
+    this.queue      = new Entry[capacity];
+    this.lastMarker = marker;
+    this.registry   = registry;
+  }
+
+
+  /**
+   * Delivers a message to this subscription.
+   * Called by the board, in the order in which messages are added.
+   * Never waits. If the queue is full, the message is missed.
+   *
+   * @param msgid       the ID of the message
+   * @param msg         the message
+   */
+  public synchronized void deliver(String msgid, Message msg)
+  {
+    if (cancelled)
+       return;
+
+    if (queueSize == queue.length)
+     {
+       missed = true;
+       return;
+     }
+
+    queue[(queueHead + queueSize) % queue.length] =
+      new Entry(msgid, msg, missed);
+    missed = false;
+    queueSize++;
+
+    if (queueSize == 1)
+       notifyAll(); // the subscriber might be waiting for this one
+  }
+
+
+  /**
+   * Reports a message that cannot be delivered to this subscription.
+   * Called by the board if the message was dropped before delivery.
+   * The next delivered message starts a discontinuous batch.
+   */
+  public synchronized void deliverGap()
+  {
+    if (!cancelled)
+       missed = true;
+  }
+
+
+  // non-javadoc, see interface MessageSubscription
+  public synchronized MessageBatch poll(int limit, long timeout)
+  {
+    final long deadline =
+      System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+    try {
+      while ((queueSize == 0) && !cancelled)
+       {
+         long remaining = deadline - System.nanoTime();
+         if (remaining <= 0)
+            break;
+         TimeUnit.NANOSECONDS.timedWait(this, remaining);
+       }
+    } catch (InterruptedException ix) {
+      // return what is there, the caller should check the interrupt
+      Thread.currentThread().interrupt();
+    }
+
+    int count = queueSize;
+    if (limit > 0)
+       count = Math.min(count, limit);
+
+    List<Message> messages = new ArrayList<>(count);
+    boolean discontinuous  = (queueSize == 0) && missed;
+    if (discontinuous)
+       missed = false; // reported now, not again with the next message
+
+    while (messages.size() < count)
+     {
+       Entry entry = queue[queueHead];
+       if (entry.afterGap)
+        {
+          if (!messages.isEmpty())
+             break; // the gap starts the next batch
+          discontinuous = true;
+        }
+
+       messages.add(entry.message);
+       lastMarker = entry.msgid;
+
+       queue[queueHead] = null;
+       queueHead = (queueHead + 1) % queue.length;
+       queueSize--;
+     }
+
+    return new MessageBatchImpl
+      (Collections.<Message> unmodifiableList(messages),
+       lastMarker, discontinuous);
+  }
+
+
+  // non-javadoc, see interface MessageSubscription
+  public void cancel()
+  {
+    synchronized (this)
+     {
+       cancelled = true;
+       for (int i=0; i<queue.length; i++)
+          queue[i] = null;
+       queueSize = 0;
+       notifyAll();
+     }
+    registry.remove(this);
+  }
+
+
+  // non-javadoc, see interface MessageSubscription
+  public synchronized boolean isCancelled()
+  {
+    return cancelled;
+  }
+
+}
@@ -26,6 +26,18 @@ package pityoulish.msgboard;
  */
 public interface MixedMessageBoard extends UserMessageBoard, SystemMessageBoard
 {
-  // no extra methods
+  /**
+   * Subscribes to new messages on this board.
+   * Every user or system message put on the board after this call
+   * is pushed to the subscription, until it is cancelled.
+   *
+   * @param capacity    the maximum number of messages queued
+   *                    for the subscriber
+   *
+   * @return    the new subscription
+   */
+  public MessageSubscription subscribe(int capacity)
+    ;
+
 }
 
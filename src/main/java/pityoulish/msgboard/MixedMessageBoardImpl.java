@@ -7,11 +7,13 @@ package pityoulish.msgboard;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import pityoulish.mbserver.ProblemFactory;
 import pityoulish.mbserver.StringProblemFactory;
@@ -21,9 +23,26 @@ import pityoulish.mbserver.StringProblemFactory;
  * An implementation of {@link MixedMessageBoard}.
  * This implementation is intended for dozens of messages.
  * To handle thousands of messages, you'd probably use other data structures.
+ * <br>
+ * The capacity can be {@link ResizableMessageBoard changed} at runtime,
+ * and may include a byte limit. Messages in the sorted map are simply
+ * dropped from the head until the board fits, the map is not rebuilt.
+ * <br>
+ * The messages are also kept in sorted maps by originator and by type.
+ * {@link MessageFilter Filtered} listings iterate over one of these,
+ * rather than over all messages on the board.
  */
-public class MixedMessageBoardImpl implements MixedMessageBoard
+public class MixedMessageBoardImpl
+  implements MixedMessageBoard, ResizableMessageBoard
 {
+  /**
+   * The estimated fixed size of a message on the board, in bytes.
+   * Covers the headers of the message object, three strings with their
+   * arrays, and the entries in the map and in the index by originator
+   * and type. Characters are counted separately.
+   */
+  public final static int MESSAGE_OVERHEAD = 280;
+
   /** The message types distinguished by this board. */
   public enum MT { USER, SYSTEM };
 
@@ -45,6 +64,12 @@ public class MixedMessageBoardImpl implements MixedMessageBoard
   /** The number of messages that fit on this board. */
   protected int boardCapacity;
 
+  /** The number of bytes that fit on this board, or 0 for no limit. */
+  protected long boardByteCapacity;
+
+  /** The estimated number of bytes of all messages on this board. */
+  protected long boardByteSize;
+
   /** The sequencer for generating message IDs. */
   protected final Sequencer boardSequencer;
 
@@ -58,9 +83,20 @@ public class MixedMessageBoardImpl implements MixedMessageBoard
    */
   protected NavigableMap<String,MTMsg> boardMessages;
 
+  /**
+   * The messages on this board by originator and by type.
+   * Keys are those of a {@link MessageIndex}, for example
+   * {@link MessageIndex#originatorKey}. Values are ordered maps like
+   * {@link #boardMessages}, with the messages that have the key.
+   */
+  protected Map<String,NavigableMap<String,MTMsg>> boardKeyIndex;
+
   /** ID of the last dropped user message. */
   protected String lastDroppedUserMessageID;
 
+  /** The subscriptions to new messages on this board. */
+  protected final List<MessageSubscriptionImpl> boardSubscriptions;
+
   protected final MSanityChecker<String> sanityChecker;
 
 
@@ -70,15 +106,33 @@ public class MixedMessageBoardImpl implements MixedMessageBoard
    * @param capacity    the number of messages that fit on the new board
    */
   public MixedMessageBoardImpl(int capacity)
+  {
+    this(capacity, 0L);
+  }
+
+
+  /**
+   * Creates a new message board with a byte limit.
+   *
+   * @param capacity    the number of messages that fit on the new board
+   * @param bytes       the number of bytes that fit on the new board,
+   *                    or 0 for no byte limit
+   */
+  public MixedMessageBoardImpl(int capacity, long bytes)
   {
     if (capacity < 1)
        throw new IllegalArgumentException("capacity " + capacity);
+    if (bytes < 0)
+       throw new IllegalArgumentException("bytes " + bytes);
 
     boardCapacity  = capacity;
+    boardByteCapacity = bytes;
     boardSequencer = newSequencer();
     boardTimer     = newTimestamper();
     boardMessages  = new TreeMap<>(boardSequencer.getComparator());
+    boardKeyIndex  = new HashMap<>();
     lastDroppedUserMessageID = boardSequencer.createMessageID(); // dummy ID
+    boardSubscriptions = new CopyOnWriteArrayList<>();
 
     sanityChecker  = newSanityChecker(new StringProblemFactory());
   }
@@ -106,7 +160,7 @@ public class MixedMessageBoardImpl implements MixedMessageBoard
    */
   protected Timestamper newTimestamper()
   {
-    return new TimestamperImpl();
+    return new CachedTimestamperImpl();
   }
 
 
@@ -119,6 +173,14 @@ public class MixedMessageBoardImpl implements MixedMessageBoard
 
   // non-javadoc, see interface MessageBoard
   public MessageBatch listMessages(int limit, String marker)
+  {
+    return listMessages(limit, marker, null);
+  }
+
+
+  // non-javadoc, see interface MessageBoard
+  public MessageBatch listMessages(int limit, String marker,
+                                   MessageFilter filter)
   {
     String problem = null;
     if (marker != null)
@@ -126,6 +188,18 @@ public class MixedMessageBoardImpl implements MixedMessageBoard
     if (problem != null)
        throw new IllegalArgumentException(problem);
 
+    // with a filter, iterate only over messages with one of its keys
+    NavigableMap<String,MTMsg> source = boardMessages;
+    if ((filter != null) && !filter.isEmpty())
+     {
+       String ikey = (filter.getOriginator() != null) ?
+         MessageIndex.originatorKey(filter.getOriginator()) :
+         MessageIndex.typeKey(filter.getType());
+       source = boardKeyIndex.get(ikey);
+       if (source == null)
+          source = Collections.emptyNavigableMap();
+     }
+
     Iterator<Map.Entry<String,MTMsg>> iter = null;
     int     count = 0;
     boolean discontinuous = false;
@@ -133,8 +207,8 @@ public class MixedMessageBoardImpl implements MixedMessageBoard
     if (marker == null)
      {
        // list oldest messages
-       iter  = boardMessages.entrySet().iterator();
-       count = boardMessages.size();
+       iter  = source.entrySet().iterator();
+       count = source.size();
        if (limit > 0)
           count = Math.min(count, limit);
      }
@@ -142,7 +216,7 @@ public class MixedMessageBoardImpl implements MixedMessageBoard
      {
        // list messages newer than marker
        NavigableMap<String,MTMsg>
-         newerMessages = boardMessages.tailMap(marker, false);
+         newerMessages = source.tailMap(marker, false);
        count = newerMessages.size();
        if (limit > 0)
           count = Math.min(count, limit);
@@ -154,14 +228,22 @@ public class MixedMessageBoardImpl implements MixedMessageBoard
     List<MTMsg> messages = new ArrayList<>(count);
     String    tailMarker = null; // becomes the marker in the result
 
-    while ((count > 0) && iter.hasNext())
+    // the filter might have a second key, which is checked here
+    while ((messages.size() < count) && iter.hasNext())
      {
        Map.Entry<String,MTMsg> entry = iter.next();
-       messages.add(entry.getValue());
+       if ((filter == null) || filter.matches(entry.getValue()))
+          messages.add(entry.getValue());
        tailMarker = entry.getKey();
-       count--;
      }
 
+    // all selected messages listed, the marker covers the others
+    if ((source != boardMessages) && !iter.hasNext() &&
+        !boardMessages.isEmpty() &&
+        ((marker == null) || (boardSequencer.getComparator().compare
+                              (boardMessages.lastKey(), marker) > 0)))
+       tailMarker = boardMessages.lastKey();
+
     if (tailMarker == null) // no messages since marker
        tailMarker = marker;
 
@@ -174,6 +256,38 @@ public class MixedMessageBoardImpl implements MixedMessageBoard
   }
 
 
+  /**
+   * Lists messages from this board, without waiting.
+   * This implementation is not thread-safe, so no other thread can
+   * put a message on the board while the caller waits.
+   * {@link MixedMessageBoardSync} provides a waiting implementation.
+   *
+   * @param limit       see {@link MessageBoard#listMessages listMessages}
+   * @param marker      see {@link MessageBoard#listMessages listMessages}
+   * @param timeout     ignored
+   *
+   * @return    the result of {@link #listMessages listMessages}
+   */
+  public MessageBatch awaitMessages(int limit, String marker, long timeout)
+  {
+    return listMessages(limit, marker);
+  }
+
+
+  // non-javadoc, see interface MixedMessageBoard
+  public MessageSubscription subscribe(int capacity)
+  {
+    String marker = boardMessages.isEmpty() ?
+      lastDroppedUserMessageID : boardMessages.lastKey();
+
+    MessageSubscriptionImpl sub =
+      new MessageSubscriptionImpl(capacity, marker, boardSubscriptions);
+    boardSubscriptions.add(sub);
+
+    return sub;
+  }
+
+
   // non-javadoc, see interface UserMessageBoard
   public Message putMessage(String originator, String text)
   {
@@ -192,6 +306,60 @@ public class MixedMessageBoardImpl implements MixedMessageBoard
   }
 
 
+  // non-javadoc, see interface UserMessageBoard
+  public List<String> putMessages(String originator, List<String> texts)
+  {
+    List<MTMsg> msgs =
+      newUserMessages(sanityChecker, boardTimer, originator, texts);
+
+    List<String> markers = new ArrayList<>(msgs.size());
+    for (MTMsg msg: msgs)
+       markers.add(addMessageToBoard(msg));
+
+    return markers;
+  }
+
+
+  /**
+   * Checks a batch of texts and creates the user messages.
+   * Shared by the boards that store {@link MTMsg}s.
+   * The messages share a timestamp, which is generated only once.
+   *
+   * @param checker     the sanity checker of the board
+   * @param timer       the timestamp generator of the board
+   * @param originator  the originator of the messages
+   * @param texts       the texts of the messages
+   *
+   * @return    the new messages, in the order of the texts
+   *
+   * @throws IllegalArgumentException
+   *    if the originator, the number of texts, or any text is not valid
+   */
+  protected static List<MTMsg> newUserMessages(MSanityChecker<String> checker,
+                                               Timestamper timer,
+                                               String originator,
+                                               List<String> texts)
+  {
+    if (texts == null)
+       throw new NullPointerException("texts");
+
+    String problem = checker.checkOriginator(originator);
+    if (problem == null)
+       problem = checker.checkBatchSize(texts.size());
+    for (int i=0; (problem == null) && (i < texts.size()); i++)
+       problem = checker.checkText(texts.get(i));
+    if (problem != null)
+       throw new IllegalArgumentException(problem);
+
+    String timestamp = timer.getTimestamp();
+    List<MTMsg> msgs = new ArrayList<>(texts.size());
+    for (String text: texts)
+       msgs.add(new MTMsg(originator, timestamp, text, MT.USER));
+
+    return msgs;
+  }
+
+
   // non-javadoc, see interface SystemMessageBoard
   public Message putSystemMessage(String slot, String text)
   {
@@ -248,16 +416,122 @@ public class MixedMessageBoardImpl implements MixedMessageBoard
 
     String key = boardSequencer.createMessageID();
     boardMessages.put(key, msg);
+    boardByteSize += estimateBytes(msg);
+    for (String ikey: toIndexKeys(msg))
+     {
+       NavigableMap<String,MTMsg> indexed = boardKeyIndex.get(ikey);
+       if (indexed == null)
+        {
+          indexed = new TreeMap<>(boardSequencer.getComparator());
+          boardKeyIndex.put(ikey, indexed);
+        }
+       indexed.put(key, msg);
+     }
+
+    trimBoard();
 
-    // if the capacity remains constant, at most one message will be dropped
-    while (boardMessages.size() > boardCapacity)
+    for (MessageSubscriptionImpl sub: boardSubscriptions)
+       sub.deliver(key, msg);
+
+    return key;
+  }
+
+
+  /**
+   * Drops the oldest messages until the board fits its capacity.
+   * With a constant count limit, at most one message is dropped for that.
+   * The byte limit might drop several small messages for a large one.
+   * The newest message is always kept.
+   */
+  protected void trimBoard()
+  {
+    while ((boardMessages.size() > boardCapacity) ||
+           ((boardByteCapacity > 0) &&
+            (boardByteSize > boardByteCapacity) &&
+            (boardMessages.size() > 1)))
      {
        Map.Entry<String,MTMsg> entry = boardMessages.pollFirstEntry();
+       boardByteSize -= estimateBytes(entry.getValue());
        if (entry.getValue().getType() == MT.USER)
           lastDroppedUserMessageID = entry.getKey();
+
+       // the oldest message is also the first one for each of its keys
+       for (String ikey: toIndexKeys(entry.getValue()))
+        {
+          NavigableMap<String,MTMsg> indexed = boardKeyIndex.get(ikey);
+          indexed.pollFirstEntry();
+          if (indexed.isEmpty())
+             boardKeyIndex.remove(ikey);
+        }
      }
+  }
 
-    return key;
+
+  /**
+   * Obtains the keys under which a message is in the
+   * {@link #boardKeyIndex}.
+   *
+   * @param msg   the message
+   *
+   * @return    the originator key and the type key of the message
+   */
+  protected static String[] toIndexKeys(MTMsg msg)
+  {
+    return new String[]{ MessageIndex.originatorKey(msg.getOriginator()),
+                         MessageIndex.typeKey(msg.getType()) };
+  }
+
+
+  /**
+   * Estimates the memory used by a message on the board.
+   * Characters are counted with two bytes each. That is an upper bound,
+   * compact strings need only one byte for Latin-1 characters.
+   *
+   * @param msg   the message
+   *
+   * @return    the estimated size of the message, in bytes
+   */
+  protected long estimateBytes(Message msg)
+  {
+    return MESSAGE_OVERHEAD + 2L * (msg.getOriginator().length() +
+                                    msg.getTimestamp().length() +
+                                    msg.getText().length());
+  }
+
+
+  // non-javadoc, see interface ResizableMessageBoard
+  public void setCapacity(int count, long bytes)
+  {
+    if (count < 1)
+       throw new IllegalArgumentException("capacity " + count);
+    if (bytes < 0)
+       throw new IllegalArgumentException("bytes " + bytes);
+
+    boardCapacity     = count;
+    boardByteCapacity = bytes;
+
+    trimBoard();
+  }
+
+
+  // non-javadoc, see interface ResizableMessageBoard
+  public int getCapacity()
+  {
+    return boardCapacity;
+  }
+
+
+  // non-javadoc, see interface ResizableMessageBoard
+  public long getByteCapacity()
+  {
+    return boardByteCapacity;
+  }
+
+
+  // non-javadoc, see interface ResizableMessageBoard
+  public long getByteSize()
+  {
+    return boardByteSize;
   }
 
 }
@@ -5,14 +5,21 @@
  */
 package pityoulish.msgboard;
 
+import java.util.List;
+
 import pityoulish.mbserver.ProblemFactory;
 
 
 /**
  * A synchronization wrapper for {@link MixedMessageBoard}.
  * This wrapper calls the underlying implementation in a thread-safe way.
+ * Threads in {@link #awaitMessages awaitMessages} wait on the wrapper,
+ * and are notified whenever a message is put on the board.
+ * If the underlying board is a {@link ResizableMessageBoard},
+ * so is the wrapper.
  */
-public class MixedMessageBoardSync implements MixedMessageBoard
+public class MixedMessageBoardSync
+  implements MixedMessageBoard, ResizableMessageBoard
 {
   private final MixedMessageBoard board;
 
@@ -47,17 +54,71 @@ public class MixedMessageBoardSync implements MixedMessageBoard
   }
 
 
+  // non-javadoc, see interface MessageBoard
+  public synchronized MessageBatch listMessages(int limit, String marker,
+                                                MessageFilter filter)
+  {
+    return board.listMessages(limit, marker, filter);
+  }
+
+
+  // non-javadoc, see interface MessageBoard
+  public synchronized
+    MessageBatch awaitMessages(int limit, String marker, long timeout)
+  {
+    MessageBatch mb = board.listMessages(limit, marker);
+    long deadline   = System.currentTimeMillis() + timeout;
+    long remaining  = timeout;
+
+    try {
+      while (mb.getMessages().isEmpty() && (remaining > 0))
+       {
+         wait(remaining);
+         mb = board.listMessages(limit, marker);
+         remaining = deadline - System.currentTimeMillis();
+       }
+    } catch (InterruptedException ix) {
+      // return what is there, the caller should check the interrupt
+      Thread.currentThread().interrupt();
+    }
+
+    return mb;
+  }
+
+
+  // non-javadoc, see interface MixedMessageBoard
+  public synchronized MessageSubscription subscribe(int capacity)
+  {
+    return board.subscribe(capacity);
+  }
+
+
   // non-javadoc, see interface UserMessageBoard
   public synchronized Message putMessage(String originator, String text)
   {
-    return board.putMessage(originator, text);
+    Message msg = board.putMessage(originator, text);
+    notifyAll();
+    return msg;
+  }
+
+
+  // non-javadoc, see interface UserMessageBoard
+  public synchronized List<String> putMessages(String originator,
+                                               List<String> texts)
+  {
+    // one monitor acquisition and one wakeup for the whole batch
+    List<String> markers = board.putMessages(originator, texts);
+    notifyAll();
+    return markers;
   }
 
 
   // non-javadoc, see interface SystemMessageBoard
   public synchronized Message putSystemMessage(String slot, String text)
   {
-    return board.putSystemMessage(slot, text);
+    Message msg = board.putSystemMessage(slot, text);
+    notifyAll();
+    return msg;
   }
 
 
@@ -68,6 +129,52 @@ public class MixedMessageBoardSync implements MixedMessageBoard
   }
 
 
+  /**
+   * Obtains the underlying board as a resizable one.
+   *
+   * @return    the underlying board
+   *
+   * @throws UnsupportedOperationException
+   *    if the underlying board is not resizable
+   */
+  private ResizableMessageBoard resizable()
+  {
+    if (!(board instanceof ResizableMessageBoard))
+       throw new UnsupportedOperationException
+         ("not resizable: " + board.getClass().getName());
+
+    return (ResizableMessageBoard) board;
+  }
+
+
+  // non-javadoc, see interface ResizableMessageBoard
+  public synchronized void setCapacity(int count, long bytes)
+  {
+    resizable().setCapacity(count, bytes);
+  }
+
+
+  // non-javadoc, see interface ResizableMessageBoard
+  public synchronized int getCapacity()
+  {
+    return resizable().getCapacity();
+  }
+
+
+  // non-javadoc, see interface ResizableMessageBoard
+  public synchronized long getByteCapacity()
+  {
+    return resizable().getByteCapacity();
+  }
+
+
+  // non-javadoc, see interface ResizableMessageBoard
+  public synchronized long getByteSize()
+  {
+    return resizable().getByteSize();
+  }
+
+
   // non-javadoc, see Object
   public synchronized String toString()
   {
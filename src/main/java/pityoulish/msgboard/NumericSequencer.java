@@ -0,0 +1,68 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+
+/**
+ * A {@link Sequencer} that numbers the message identifiers it generates.
+ * Boards can work with the numbers internally and convert them into
+ * message IDs only when a {@link MessageBatch#getMarker marker} is needed.
+ * <br>
+ * Message numbers are consecutive. Each call to
+ * {@link #createMessageNumber} returns the previous number plus one.
+ * The chronological ordering of message IDs, as defined by the
+ * {@link #getComparator comparator}, is the natural ordering of their
+ * message numbers.
+ */
+public interface NumericSequencer extends Sequencer
+{
+  /**
+   * Generates a message number.
+   * The message ID for the number is obtained by {@link #toMessageID}.
+   * Calling {@link #createMessageID} generates a number, too.
+   *
+   * @return the next message number
+   */
+  public long createMessageNumber()
+    ;
+
+
+  /**
+   * Converts a message number into a message ID.
+   * Must be thread-safe, it does not change the state of this sequencer.
+   *
+   * @param number      a message number generated by this sequencer
+   *
+   * @return the message ID for that number
+   */
+  public String toMessageID(long number)
+    ;
+
+
+  /**
+   * Converts a message ID into a message number.
+   * Must be thread-safe, it does not change the state of this sequencer.
+   *
+   * @param msgid       a message ID that is {@link #isSane sane}
+   *
+   * @return the message number for that ID.
+   *         For IDs that are not sane, the result is unpredictable.
+   */
+  public long toMessageNumber(String msgid)
+    ;
+
+
+  /**
+   * Skips message numbers.
+   * After this call, {@link #createMessageNumber} returns at least
+   * the argument. Used when restoring messages generated before.
+   *
+   * @param number      the lowest number to generate next
+   */
+  public void skipTo(long number)
+    ;
+
+}
@@ -0,0 +1,61 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+
+/**
+ * A {@link MessageBoard} with a capacity that can be changed at runtime.
+ * The capacity is a maximum number of messages, and optionally
+ * a maximum number of bytes for all messages on the board.
+ * When either limit is exceeded, the oldest messages drop off the board.
+ * <br>
+ * The size of a message in bytes is an estimate of the memory it uses,
+ * based on the lengths of originator, timestamp, and text.
+ * The newest message is never dropped because of the byte limit,
+ * so a board with a tiny byte limit still holds one message.
+ */
+public interface ResizableMessageBoard extends MessageBoard
+{
+  /**
+   * Changes the capacity of this board.
+   * If the board holds more messages than the new capacity allows,
+   * the oldest ones are dropped immediately.
+   *
+   * @param count       the maximum number of messages, at least 1
+   * @param bytes       the maximum number of bytes for all messages,
+   *                    or 0 for no byte limit
+   */
+  public void setCapacity(int count, long bytes)
+    ;
+
+
+  /**
+   * Obtains the maximum number of messages on this board.
+   *
+   * @return    the count limit
+   */
+  public int getCapacity()
+    ;
+
+
+  /**
+   * Obtains the maximum number of bytes for all messages on this board.
+   *
+   * @return    the byte limit, or 0 if there is none
+   */
+  public long getByteCapacity()
+    ;
+
+
+  /**
+   * Obtains the estimated number of bytes for all messages on this board.
+   *
+   * @return    the current size of the board in bytes
+   */
+  public long getByteSize()
+    ;
+
+}
@@ -0,0 +1,843 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import pityoulish.mbserver.ProblemFactory;
+import pityoulish.mbserver.StringProblemFactory;
+import pityoulish.msgboard.MixedMessageBoardImpl.MT;
+import pityoulish.msgboard.MixedMessageBoardImpl.MTMsg;
+
+
+/**
+ * A thread-safe implementation of {@link MixedMessageBoard} on a ring buffer.
+ * This implementation is intended for thousands of messages and many
+ * concurrent readers. It does not need a {@link MixedMessageBoardSync}.
+ * <br>
+ * Messages are numbered by a {@link NumericSequencer}. The slot of a
+ * message in the ring is its number modulo the capacity, so that adding
+ * a message, dropping the oldest one, and finding the messages after a
+ * marker all take constant time.
+ * <br>
+ * Writers are serialized by a lock. They store the message in its slot
+ * and then publish its number with a release store. Readers do not lock.
+ * They read the number of the last published message and scan the slots
+ * up to there. A slot that has been overwritten by a writer during the scan
+ * is skipped, and the batch is reported as discontinuous.
+ * <br>
+ * Readers that {@link #awaitMessages await} new messages wait on a monitor.
+ * Writers notify that monitor after publishing, but only if there are
+ * waiting readers. Otherwise, writers do not touch it.
+ * <br>
+ * {@link #subscribe Subscriptions} are pushed new messages after they
+ * have been published, in order. Delivery is serialized by a lock of its
+ * own, which writers take only if there are subscriptions.
+ * <br>
+ * Writers maintain a {@link MessageIndex} of the originators and types
+ * of the messages in the ring, which serves {@link MessageFilter filtered}
+ * listings. {@link #enableSearch Search} is optional. If enabled, writers
+ * also maintain an index of the words. Each index has its own monitor,
+ * which readers lock only while they look up messages.
+ */
+public class RingMessageBoardImpl
+  implements MixedMessageBoard, SearchableMessageBoard
+{
+  /**
+   * A message in the ring, along with its number.
+   * Objects of this class are immutable.
+   */
+  protected static class Slot
+  {
+    /** The number of the message. */
+    public final long number;
+
+    /** The message. */
+    public final MTMsg message;
+
+
+    public Slot(long number, MTMsg message)
+    {
+      this.number  = number;
+      this.message = message;
+    }
+  }
+
+
+  /** The number of messages that fit on this board. */
+  protected final int boardCapacity;
+
+  /** The sequencer for generating message numbers and IDs. */
+  protected final NumericSequencer boardSequencer;
+
+  /** The timestamp generator. */
+  protected final Timestamper boardTimer;
+
+  /**
+   * The slots for messages on this board.
+   * Message number <i>n</i> is stored at index <i>n</i> modulo capacity.
+   */
+  protected final AtomicReferenceArray<Slot> boardRing;
+
+  /**
+   * The number of the first message put on this board.
+   * Changes only while restoring messages, see {@link #restoreMessage}.
+   */
+  protected volatile long firstMessageNumber;
+
+  /**
+   * The number of the last published message.
+   * Before the first message is put on the board, this is a dummy number.
+   */
+  protected final AtomicLong lastPublished;
+
+  /** Number of the last dropped user message, or a dummy number. */
+  protected volatile long lastDroppedUserMessage;
+
+  /**
+   * The number of the last stored message, or a dummy number.
+   * Stored messages might not be published yet.
+   * Guarded by the {@link #writeLock}.
+   */
+  protected long lastStored;
+
+  /** Serializes writers. Readers do not use it. */
+  protected final Object writeLock;
+
+  /** The monitor on which readers wait for new messages. */
+  protected final Object awaitMonitor;
+
+  /** The number of readers waiting on the {@link #awaitMonitor}. */
+  protected final AtomicInteger awaitingReaders;
+
+  /** The subscriptions to new messages on this board. */
+  protected final List<MessageSubscriptionImpl> boardSubscriptions;
+
+  /** Serializes delivery to the {@link #boardSubscriptions}. */
+  protected final Object deliverLock;
+
+  /**
+   * The number of the last message delivered to subscriptions,
+   * or of the last published message when the latest subscription
+   * was added. Guarded by the {@link #deliverLock}.
+   */
+  protected long lastDelivered;
+
+  /**
+   * The index of originators and types, for filtered listings.
+   * Access to the index must be synchronized on the index.
+   */
+  protected final MessageIndex filterIndex;
+
+  /**
+   * The index of words for searching messages, or <code>null</code>.
+   * Set only once, by {@link #enableSearch}.
+   * Access to the index must be synchronized on the index.
+   */
+  protected volatile MessageIndex boardIndex;
+
+  protected final MSanityChecker<String> sanityChecker;
+
+
+  /**
+   * Creates a new message board.
+   *
+   * @param capacity    the number of messages that fit on the new board
+   */
+  public RingMessageBoardImpl(int capacity)
+  {
+    this(capacity, null);
+  }
+
+
+  /**
+   * Creates a new message board with a specific sequencer.
+   * Subclasses that restore messages need a sequencer that generates
+   * the same message IDs as the one used when the messages were created.
+   *
+   * @param capacity    the number of messages that fit on the new board
+   * @param seq         the sequencer, or <code>null</code> to call
+   *                    {@link #newSequencer}
+   */
+  protected RingMessageBoardImpl(int capacity, NumericSequencer seq)
+  {
+    if (capacity < 1)
+       throw new IllegalArgumentException("capacity " + capacity);
+
+    boardCapacity  = capacity;
+    boardSequencer = (seq != null) ? seq : newSequencer();
+    boardTimer     = newTimestamper();
+    boardRing      = new AtomicReferenceArray<Slot>(capacity);
+    writeLock      = new Object();
+    awaitMonitor   = new Object();
+    awaitingReaders = new AtomicInteger();
+    boardSubscriptions = new CopyOnWriteArrayList<>();
+    deliverLock    = new Object();
+    filterIndex    = new MessageIndex(false, true);
+
+    long dummy = boardSequencer.createMessageNumber();
+    firstMessageNumber     = dummy+1;
+    lastPublished          = new AtomicLong(dummy);
+    lastDroppedUserMessage = dummy;
+    lastStored             = dummy;
+    lastDelivered          = dummy;
+
+    sanityChecker  = newSanityChecker(new StringProblemFactory());
+  }
+
+
+  /**
+   * Creates the sequencer for this board.
+   * Called by the constructor.
+   * Override this method to use a different sequencer implementation.
+   *
+   * @return a new sequential marker generator
+   */
+  protected NumericSequencer newSequencer()
+  {
+    return new LongSequencerImpl();
+  }
+
+
+  /**
+   * Creates the timestamp generator for this board.
+   * Called by the constructor.
+   * Override this method to use a different timestamp format.
+   *
+   * @return a new timestamp generator
+   */
+  protected Timestamper newTimestamper()
+  {
+    return new CachedTimestamperImpl();
+  }
+
+
+  // non-javadoc, see interface UserMessageBoard
+  public <P> MSanityChecker<P> newSanityChecker(ProblemFactory<P> pf)
+  {
+    return new DefaultMSanityChecker<P>(pf, boardSequencer);
+  }
+
+
+  // non-javadoc, see interface MessageBoard
+  public MessageBatch listMessages(int limit, String marker)
+  {
+    return listMessages(limit, marker, null);
+  }
+
+
+  // non-javadoc, see interface MessageBoard
+  public MessageBatch listMessages(int limit, String marker,
+                                   MessageFilter filter)
+  {
+    String problem = null;
+    if (marker != null)
+       problem = sanityChecker.checkMarker(marker);
+    if (problem != null)
+       throw new IllegalArgumentException(problem);
+
+    if ((filter != null) && filter.isEmpty())
+       filter = null;
+
+    // the index skips the messages that the filter doesn't select
+    if (filter != null)
+       return findMessages(filterIndex, MessageIndex.toKeys(filter),
+                           limit, marker);
+
+    // Read the drop before the messages. A user message dropped later
+    // has either been listed already, or its slot is found overwritten.
+    long dropped = lastDroppedUserMessage;
+    long last    = lastPublished.get();
+    long oldest  = Math.max(firstMessageNumber, last - boardCapacity + 1);
+    long from    = oldest;
+    boolean discontinuous = false;
+
+    if (marker != null)
+     {
+       long markerNumber = boardSequencer.toMessageNumber(marker);
+       from = Math.max(oldest, markerNumber+1);
+       discontinuous = (dropped > markerNumber);
+     }
+
+    long count = Math.max(0L, last - from + 1);
+    if (limit > 0)
+       count = Math.min(count, limit);
+
+    List<MTMsg> messages = new ArrayList<>((int) count);
+    long    tailNumber = from-1; // becomes the marker in the result
+
+    // exactly count slots are scanned
+    for (long number = from;
+         (number <= last) && (messages.size() < count);
+         number++)
+     {
+       Slot slot = boardRing.get(slotIndex(number));
+       if ((slot == null) || (slot.number != number))
+        {
+          // overwritten since reading lastPublished
+          discontinuous = (marker != null);
+          count--;
+          continue;
+        }
+       tailNumber = number;
+       messages.add(slot.message);
+     }
+
+    String tailMarker = null;
+    if ((tailNumber >= from) || (marker == null))
+       tailMarker = boardSequencer.toMessageID(tailNumber);
+    else
+       tailMarker = marker; // no messages since marker
+
+    return new MessageBatchImpl
+      (Collections.<Message> unmodifiableList(messages),
+       tailMarker, discontinuous);
+  }
+
+
+  // non-javadoc, see interface MessageBoard
+  public MessageBatch awaitMessages(int limit, String marker, long timeout)
+  {
+    MessageBatch mb = listMessages(limit, marker);
+    if (!mb.getMessages().isEmpty() || (timeout <= 0))
+       return mb;
+
+    final long deadline =
+      System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+    synchronized (awaitMonitor)
+     {
+       // Register before listing again. A writer that publishes after
+       // the listing sees the registration and notifies the monitor,
+       // which it can do only after this thread started to wait.
+       awaitingReaders.incrementAndGet();
+       try {
+         while (true)
+          {
+            mb = listMessages(limit, marker);
+            if (!mb.getMessages().isEmpty())
+               break;
+            if (mb.isDiscontinuous())
+               continue; // all listed slots overwritten, list again
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+               break;
+            TimeUnit.NANOSECONDS.timedWait(awaitMonitor, remaining);
+          }
+       } catch (InterruptedException ix) {
+         // return what is there, the caller should check the interrupt
+         Thread.currentThread().interrupt();
+       } finally {
+         awaitingReaders.decrementAndGet();
+       }
+     }
+
+    return mb;
+  }
+
+
+  /**
+   * Enables search on this board.
+   * Messages already on the board are indexed immediately.
+   * Calling this method more than once has no effect.
+   */
+  public void enableSearch()
+  {
+    synchronized (writeLock)
+     {
+       if (boardIndex != null)
+          return;
+
+       MessageIndex index = new MessageIndex(true, false);
+       long oldest = Math.max(firstMessageNumber, lastStored-boardCapacity+1);
+       for (long number = oldest; number <= lastStored; number++)
+        {
+          Slot slot = boardRing.get(slotIndex(number));
+          if ((slot != null) && (slot.number == number))
+             index.add(number, slot.message);
+        }
+       boardIndex = index;
+     }
+  }
+
+
+  // non-javadoc, see interface SearchableMessageBoard
+  public boolean isSearchEnabled()
+  {
+    return (boardIndex != null);
+  }
+
+
+  // non-javadoc, see interface SearchableMessageBoard
+  public MessageBatch searchMessages(String query, int limit, String marker)
+  {
+    String problem = sanityChecker.checkText(query);
+    if ((problem == null) && (marker != null))
+       problem = sanityChecker.checkMarker(marker);
+    if (problem != null)
+       throw new IllegalArgumentException(problem);
+
+    List<String> words = MessageIndex.toWords(query);
+    if (words.isEmpty())
+       throw new IllegalArgumentException
+         (Catalog.QUERY_NO_WORDS.lookup());
+    if (words.size() > MessageIndex.MAX_QUERY_WORDS)
+       throw new IllegalArgumentException
+         (Catalog.QUERY_TOO_MANY_WORDS_1.format(MessageIndex.MAX_QUERY_WORDS));
+
+    MessageIndex index = boardIndex;
+    if (index == null)
+       throw new UnsupportedOperationException("search not enabled");
+
+    return findMessages(index, words, limit, marker);
+  }
+
+
+  /**
+   * Finds messages by the keys in the index.
+   * The caller must have checked the arguments.
+   *
+   * @param index       the index of this board
+   * @param keys        the words or keys that all found messages have
+   * @param limit       the maximum number of messages to find,
+   *                    0 or negative to find all
+   * @param marker      the marker after which to search, or
+   *                    <code>null</code> to search all messages
+   *
+   * @return    the batch of found messages, with a marker after them
+   */
+  protected MessageBatch findMessages(MessageIndex index, List<String> keys,
+                                      int limit, String marker)
+  {
+    // same order of reads as in listMessages
+    long dropped = lastDroppedUserMessage;
+    long last    = lastPublished.get();
+    long oldest  = Math.max(firstMessageNumber, last - boardCapacity + 1);
+    long after   = oldest-1;
+    boolean discontinuous = false;
+
+    if (marker != null)
+     {
+       long markerNumber = boardSequencer.toMessageNumber(marker);
+       after = Math.max(after, markerNumber);
+       discontinuous = (dropped > markerNumber);
+     }
+
+    long[] found = null;
+    synchronized (index)
+     {
+       found = index.search(keys, after, limit);
+     }
+
+    List<MTMsg> messages = new ArrayList<>(found.length);
+    long tailNumber = last; // searched up to here, unless limit reached
+    for (long number: found)
+     {
+       if (number > last)
+          break; // stored but not yet published
+
+       Slot slot = boardRing.get(slotIndex(number));
+       if ((slot == null) || (slot.number != number))
+        {
+          // overwritten since reading lastPublished
+          discontinuous = (marker != null);
+          continue;
+        }
+       messages.add(slot.message);
+     }
+    if ((limit > 0) && (found.length == limit))
+       tailNumber = Math.min(found[found.length-1], last);
+    if (tailNumber < after)
+       tailNumber = after;
+
+    return new MessageBatchImpl
+      (Collections.<Message> unmodifiableList(messages),
+       boardSequencer.toMessageID(tailNumber), discontinuous);
+  }
+
+
+  // non-javadoc, see interface MixedMessageBoard
+  public MessageSubscription subscribe(int capacity)
+  {
+    synchronized (deliverLock)
+     {
+       // bring the others up to date, then subscribe right after that
+       long published = lastPublished.get();
+       deliverMessages(published);
+
+       MessageSubscriptionImpl sub = new MessageSubscriptionImpl
+         (capacity, boardSequencer.toMessageID(published),
+          boardSubscriptions);
+       boardSubscriptions.add(sub);
+
+       // a writer that published without seeing the subscription
+       // did not deliver, catch up on its messages
+       deliverMessages(lastPublished.get());
+
+       return sub;
+     }
+  }
+
+
+  // non-javadoc, see interface UserMessageBoard
+  public Message putMessage(String originator, String text)
+  {
+    String problem = sanityChecker.checkOriginator(originator);
+    if (problem == null)
+       problem = sanityChecker.checkText(text);
+    if (problem != null)
+       throw new IllegalArgumentException(problem);
+
+    MTMsg msg = new MTMsg
+      (originator, boardTimer.getTimestamp(), text, MT.USER);
+
+    addMessageToBoard(msg);
+
+    return msg;
+  }
+
+
+  // non-javadoc, see interface UserMessageBoard
+  public List<String> putMessages(String originator, List<String> texts)
+  {
+    List<MTMsg> msgs = MixedMessageBoardImpl.newUserMessages
+      (sanityChecker, boardTimer, originator, texts);
+
+    long[] numbers = addMessagesToBoard(msgs);
+
+    List<String> markers = new ArrayList<>(numbers.length);
+    for (long number: numbers)
+       markers.add(boardSequencer.toMessageID(number));
+
+    return markers;
+  }
+
+
+  // non-javadoc, see interface SystemMessageBoard
+  public Message putSystemMessage(String slot, String text)
+  {
+    String problem = null;
+    if (slot != null)
+       problem = sanityChecker.checkOriginator(slot);
+    if (problem == null)
+       problem = sanityChecker.checkText(text);
+    if (problem != null)
+       throw new IllegalArgumentException(problem);
+
+    if (slot != null)
+     {
+       //@@@ slots would need removal from the middle of the ring
+       throw new UnsupportedOperationException("@@@ slot not yet supported");
+     }
+
+    MTMsg msg = new MTMsg
+      ("_", boardTimer.getTimestamp(), text, MT.SYSTEM);
+
+    addMessageToBoard(msg);
+
+    return msg;
+  }
+
+
+  // non-javadoc, see interface SystemMessageBoard
+  public boolean removeSystemMessage(String slot)
+  {
+    throw new UnsupportedOperationException("@@@ not yet implemented");
+  }
+
+
+  /**
+   * Adds a message to the board.
+   * This might drop an old message. All book-keeping is taken care of here.
+   *
+   * @param msg   the message to add
+   *
+   * @return      number of the added message
+   */
+  protected long addMessageToBoard(MTMsg msg)
+  {
+    if (msg == null)
+       throw new NullPointerException("TypedMessage");
+
+    long number = 0;
+    synchronized (writeLock)
+     {
+       // the number is used up only if the message is accepted
+       number = lastStored+1;
+       messageAccepted(number, msg);
+       boardSequencer.skipTo(number+1);
+       storeMessage(number, msg);
+     }
+    publishMessages(number);
+
+    return number;
+  }
+
+
+  /**
+   * Adds several messages to the board, with consecutive numbers.
+   * The write lock is taken once, and the messages are published together.
+   * This might drop old messages, including some of the new ones
+   * if there are more than fit on the board.
+   *
+   * @param msgs  the messages to add
+   *
+   * @return      the numbers of the added messages
+   */
+  protected long[] addMessagesToBoard(List<MTMsg> msgs)
+  {
+    long[] numbers = new long[msgs.size()];
+    if (numbers.length == 0)
+       return numbers;
+
+    synchronized (writeLock)
+     {
+       // the numbers are used up only if all messages are accepted
+       final long first = lastStored+1;
+       messagesAccepted(first, msgs);
+       boardSequencer.skipTo(first+numbers.length);
+       for (int i=0; i<numbers.length; i++)
+        {
+          numbers[i] = first+i;
+          storeMessage(numbers[i], msgs.get(i));
+        }
+     }
+    publishMessages(numbers[numbers.length-1]);
+
+    return numbers;
+  }
+
+
+  /**
+   * Stores a message in its slot, without publishing it.
+   * This might drop an old message.
+   * The caller must hold the {@link #writeLock}.
+   *
+   * @param number      the number of the message
+   * @param msg         the message to store
+   */
+  protected void storeMessage(long number, MTMsg msg)
+  {
+    int  index   = slotIndex(number);
+    Slot evicted = boardRing.get(index);
+    if ((evicted != null) && (evicted.message.getType() == MT.USER))
+       lastDroppedUserMessage = evicted.number;
+
+    synchronized (filterIndex)
+     {
+       if (evicted != null)
+          filterIndex.remove(evicted.number, evicted.message);
+       filterIndex.add(number, msg);
+     }
+
+    MessageIndex msgindex = boardIndex;
+    if (msgindex != null)
+     {
+       synchronized (msgindex)
+        {
+          if (evicted != null)
+             msgindex.remove(evicted.number, evicted.message);
+          msgindex.add(number, msg);
+        }
+     }
+
+    // release store, the slot is visible before the number gets published
+    boardRing.lazySet(index, new Slot(number, msg));
+    lastStored = number;
+  }
+
+
+  /**
+   * Called for a new message before it is stored.
+   * If this method throws an exception, the message is not stored,
+   * and its number is used for the next message instead.
+   * The caller holds the {@link #writeLock}, so this method is called
+   * in the order of the message numbers.
+   * This default implementation does nothing.
+   *
+   * @param number      the number of the message
+   * @param msg         the message to store
+   */
+  protected void messageAccepted(long number, MTMsg msg)
+  {
+    // no body
+  }
+
+
+  /**
+   * Called for several new messages before they are stored.
+   * If this method throws an exception, none of the messages is stored.
+   * Overriding methods must then make sure that none of them is accepted.
+   * This default implementation calls {@link #messageAccepted} for
+   * each message.
+   *
+   * @param first       the number of the first message,
+   *                    the others follow consecutively
+   * @param msgs        the messages to store
+   */
+  protected void messagesAccepted(long first, List<MTMsg> msgs)
+  {
+    for (int i=0; i<msgs.size(); i++)
+       messageAccepted(first+i, msgs.get(i));
+  }
+
+
+  /**
+   * Pushes published messages to all subscriptions, in order.
+   * Messages that have been overwritten before they could be pushed
+   * are reported to the subscriptions as missed.
+   * The caller must hold the {@link #deliverLock}.
+   *
+   * @param number      the number of the last published message
+   */
+  protected void deliverMessages(long number)
+  {
+    if (number <= lastDelivered)
+       return;
+
+    if (boardSubscriptions.isEmpty())
+     {
+       lastDelivered = number;
+       return;
+     }
+
+    long from = lastDelivered+1;
+    if (from <= number - boardCapacity)
+     {
+       // more than the ring holds, the older ones are gone anyway
+       from = number - boardCapacity + 1;
+       for (MessageSubscriptionImpl sub: boardSubscriptions)
+          sub.deliverGap();
+     }
+
+    for (long n = from; n <= number; n++)
+     {
+       Slot slot = boardRing.get(slotIndex(n));
+       if ((slot == null) || (slot.number != n))
+        {
+          // overwritten since it was published
+          for (MessageSubscriptionImpl sub: boardSubscriptions)
+             sub.deliverGap();
+          continue;
+        }
+
+       String msgid = boardSequencer.toMessageID(n);
+       for (MessageSubscriptionImpl sub: boardSubscriptions)
+          sub.deliver(msgid, slot.message);
+     }
+    lastDelivered = number;
+  }
+
+
+  /**
+   * Publishes all stored messages up to a number, so that readers see them.
+   * Called without holding the {@link #writeLock}.
+   * Publishing a lower number after a higher one has no effect.
+   * Readers waiting for new messages are notified, and the messages
+   * are pushed to subscriptions.
+   *
+   * @param number      the number of the last message to publish
+   */
+  protected void publishMessages(long number)
+  {
+    long published = lastPublished.get();
+    while ((published < number) &&
+           !lastPublished.compareAndSet(published, number))
+       published = lastPublished.get();
+
+    if (awaitingReaders.get() > 0)
+     {
+       synchronized (awaitMonitor)
+        {
+          awaitMonitor.notifyAll();
+        }
+     }
+
+    if (!boardSubscriptions.isEmpty())
+     {
+       synchronized (deliverLock)
+        {
+          // higher numbers might have been published meanwhile
+          deliverMessages(lastPublished.get());
+        }
+     }
+  }
+
+
+  /**
+   * Restores a message that was on this board before, for example after
+   * a restart of the server. The message keeps its number, and therefore
+   * its message ID. Messages must be restored in the order of their numbers,
+   * before new messages are added.
+   *
+   * @param number      the number of the message
+   * @param msg         the message to restore
+   *
+   * @return  <code>true</code> if the message was restored, or
+   *          <code>false</code> if it is not newer than the messages
+   *          already on this board
+   */
+  protected boolean restoreMessage(long number, MTMsg msg)
+  {
+    if (msg == null)
+       throw new NullPointerException("TypedMessage");
+
+    synchronized (writeLock)
+     {
+       long last = lastPublished.get();
+       if (number <= last)
+          return false;
+
+       if (last < firstMessageNumber) // board still empty
+          firstMessageNumber = number;
+
+       boardSequencer.skipTo(number+1);
+       storeMessage(number, msg);
+       lastPublished.set(number);
+     }
+
+    return true;
+  }
+
+
+  /**
+   * Restores the number of the last dropped user message.
+   * Used when restoring a board from a snapshot, along with
+   * {@link #restoreMessage}. Lower numbers than the current one are ignored.
+   *
+   * @param number      the number of a dropped user message
+   */
+  protected void restoreDroppedUserMessage(long number)
+  {
+    synchronized (writeLock)
+     {
+       if (lastDroppedUserMessage < number)
+          lastDroppedUserMessage = number;
+     }
+  }
+
+
+  /**
+   * Computes the index in the ring for a message number.
+   *
+   * @param number      the message number
+   *
+   * @return  the index of the slot for that message
+   */
+  protected final int slotIndex(long number)
+  {
+    return (int) Math.floorMod(number, (long) boardCapacity);
+  }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+
+/**
+ * A {@link MessageBoard} that can search the texts of its messages.
+ * A search query is split into words, which are sequences of letters
+ * and digits. A message matches if its text contains all words of the
+ * query, ignoring case. Search may have to be enabled before use.
+ */
+public interface SearchableMessageBoard extends MessageBoard
+{
+  /**
+   * Searches for messages on this board.
+   *
+   * @param query       the words to search for
+   * @param limit       the maximum number of messages to return,
+   *                    0 or negative to return all matching messages
+   * @param marker      the continuation {@link MessageBatch#getMarker marker}
+   *                    from a preceding call, or
+   *                    <code>null</code> to search from the oldest messages
+   *                    on this board
+   *
+   * @return    the oldest matching messages that are newer than the
+   *            <code>marker</code>, like
+   *            {@link #listMessages listMessages} would return them.
+   *            The continuation marker of the returned batch can be used
+   *            to continue the search with newer messages.
+   *
+   * @throws IllegalArgumentException
+   *    if the query or marker is not valid
+   * @throws UnsupportedOperationException
+   *    if search is not {@link #isSearchEnabled enabled}
+   */
+  public MessageBatch searchMessages(String query, int limit, String marker)
+    ;
+
+
+  /**
+   * Checks whether this board can be searched.
+   *
+   * @return    <code>true</code> if {@link #searchMessages searchMessages}
+   *            is supported, <code>false</code> otherwise
+   */
+  public boolean isSearchEnabled()
+    ;
+
+}
@@ -0,0 +1,186 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pityoulish.mbserver.StringProblemFactory;
+
+
+/**
+ * An implementation of {@link MessageChannels} with a fixed set of shards.
+ * Each channel is assigned to a shard by the hash code of its name.
+ * A shard holds an immutable map of its channels, which is replaced
+ * whenever a channel is created. Looking up a channel doesn't lock,
+ * creating one locks only its shard.
+ * <br>
+ * Every channel has a {@link RingMessageBoardImpl board} of its own,
+ * so that threads working with different channels never contend.
+ * The default channel is provided by the caller, and may be of any
+ * thread-safe implementation.
+ */
+public class ShardedMessageChannelsImpl implements MessageChannels
+{
+  /** The default number of shards. */
+  public final static int DEFAULT_SHARDS = 16;
+
+  /**
+   * A shard with some of the channels.
+   * The map is never modified, only replaced.
+   */
+  protected static class Shard
+  {
+    protected volatile Map<String,MixedMessageBoard> boards =
+      Collections.emptyMap();
+  }
+
+
+  /** The board of the default channel. */
+  protected final MixedMessageBoard defaultBoard;
+
+  /** The shards with the named channels. */
+  protected final Shard[] channelShards;
+
+  /** The capacity of the board for each named channel. */
+  protected final int channelCapacity;
+
+  /** The maximum number of named channels. */
+  protected final int maxChannels;
+
+  /** The number of named channels. */
+  protected final AtomicInteger channelCount;
+
+  protected final MSanityChecker<String> sanityChecker;
+
+
+  /**
+   * Creates a new set of channels.
+   *
+   * @param mmb         the board of the default channel, must be thread-safe
+   * @param capacity    the capacity of the board for each named channel
+   * @param shards      the number of shards
+   * @param max         the maximum number of named channels
+   */
+  public ShardedMessageChannelsImpl(MixedMessageBoard mmb, int capacity,
+                                    int shards, int max)
+  {
+    if (mmb == null)
+       throw new NullPointerException("MixedMessageBoard");
+    if (capacity < 1)
+       throw new IllegalArgumentException("capacity " + capacity);
+    if (shards < 1)
+       throw new IllegalArgumentException("shards " + shards);
+    if (max < 0)
+       throw new IllegalArgumentException("max " + max);
+
+    defaultBoard    = mmb;
+    channelCapacity = capacity;
+    maxChannels     = max;
+    channelCount    = new AtomicInteger();
+
+    channelShards = new Shard[shards];
+    for (int i=0; i<channelShards.length; i++)
+       channelShards[i] = new Shard();
+
+    sanityChecker = mmb.newSanityChecker(new StringProblemFactory());
+  }
+
+
+  /**
+   * Creates a new set of channels, with the default number of shards.
+   *
+   * @param mmb         the board of the default channel, must be thread-safe
+   * @param capacity    the capacity of the board for each named channel
+   * @param max         the maximum number of named channels
+   */
+  public ShardedMessageChannelsImpl(MixedMessageBoard mmb, int capacity,
+                                    int max)
+  {
+    this(mmb, capacity, DEFAULT_SHARDS, max);
+  }
+
+
+  /**
+   * Creates the board for a new channel.
+   * Called while the shard of the channel is locked.
+   * Override this method to use a different board implementation.
+   * If search is enabled on the default board, it is enabled on the new one.
+   *
+   * @param name        the name of the channel
+   *
+   * @return    a new, thread-safe message board
+   */
+  protected MixedMessageBoard newChannelBoard(String name)
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(channelCapacity);
+    if ((defaultBoard instanceof SearchableMessageBoard) &&
+        ((SearchableMessageBoard) defaultBoard).isSearchEnabled())
+       board.enableSearch();
+
+    return board;
+  }
+
+
+  // non-javadoc, see interface MessageChannels
+  public MixedMessageBoard getDefaultChannel()
+  {
+    return defaultBoard;
+  }
+
+
+  // non-javadoc, see interface MessageChannels
+  public MixedMessageBoard getChannel(String name, boolean create)
+  {
+    if (name == null)
+       return defaultBoard;
+
+    Shard shard = channelShards[(name.hashCode() & Integer.MAX_VALUE) %
+                                channelShards.length];
+    MixedMessageBoard mmb = shard.boards.get(name);
+    if (mmb != null)
+       return mmb;
+
+    String problem = sanityChecker.checkChannel(name);
+    if (problem != null)
+       throw new IllegalArgumentException(problem);
+    if (!create)
+       throw new IllegalArgumentException
+         (Catalog.CHANNEL_UNKNOWN_1.format(name));
+
+    synchronized (shard)
+     {
+       mmb = shard.boards.get(name);
+       if (mmb == null)
+        {
+          if (channelCount.incrementAndGet() > maxChannels)
+           {
+             channelCount.decrementAndGet();
+             throw new IllegalArgumentException
+               (Catalog.CHANNEL_LIMIT_REACHED_1.format(maxChannels));
+           }
+
+          mmb = newChannelBoard(name);
+
+          Map<String,MixedMessageBoard> boards = new HashMap<>(shard.boards);
+          boards.put(name, mmb);
+          shard.boards = boards;
+        }
+     }
+
+    return mmb;
+  }
+
+
+  // non-javadoc, see interface MessageChannels
+  public int countChannels()
+  {
+    return channelCount.get();
+  }
+
+}
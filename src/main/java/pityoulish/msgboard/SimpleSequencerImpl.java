@@ -19,16 +19,20 @@ import java.util.regex.Pattern;
  * The messages are internally numbered. The number is translated into
  * an alphabetic sequence instead of digits. A single-letter prefix,
  * chosen at random, distinguishes up to 26 different sequencers.
+ * The message numbers are available through {@link NumericSequencer}.
  */
-public class SimpleSequencerImpl implements Sequencer
+public class SimpleSequencerImpl implements NumericSequencer
 {
   /** The instance identifier. */
   protected final char instance;
 
   /** The counter for messages. */
-  protected int counter;
+  protected long counter;
 
-  /** The pattern for checking sanity. */
+  /**
+   * The pattern of sane message IDs.
+   * {@link #isSane isSane} checks the same without a regular expression.
+   */
   protected final static
     Pattern SANITY_PATTERN = Pattern.compile("[A-Z][a-z]+");
 
@@ -53,7 +57,32 @@ public class SimpleSequencerImpl implements Sequencer
   // non-javadoc, see interface
   public String createMessageID()
   {
-    int num = counter++;
+    return toMessageID(createMessageNumber());
+  }
+
+
+  // non-javadoc, see interface NumericSequencer
+  public long createMessageNumber()
+  {
+    return counter++;
+  }
+
+
+  // non-javadoc, see interface NumericSequencer
+  public void skipTo(long number)
+  {
+    if (counter < number)
+       counter = number;
+  }
+
+
+  // non-javadoc, see interface NumericSequencer
+  public String toMessageID(long number)
+  {
+    if (number < 0)
+       throw new IllegalArgumentException("number "+number);
+
+    long num = number;
 
     StringBuilder sb = new StringBuilder(); // default length suffices
 
@@ -72,15 +101,37 @@ public class SimpleSequencerImpl implements Sequencer
   }
 
 
+  // non-javadoc, see interface NumericSequencer
+  public long toMessageNumber(String msgid)
+  {
+    // skip the instance identifier, decode the letters
+    long num = 0;
+    for (int i=1; i<msgid.length(); i++)
+       num = num*26 + (msgid.charAt(i) - 'a');
+
+    return num;
+  }
+
+
   // non-javadoc, see interface
   public boolean isSane(String candidate)
   {
     // Message IDs start with the instance identifier and match the regex.
+    // The instance identifier is an uppercase letter, the rest is checked
+    // without the regex.
+
+    if ((candidate == null) || (candidate.length() < 2) ||
+        (candidate.charAt(0) != instance))
+       return false;
+
+    for (int i=1; i<candidate.length(); i++)
+     {
+       char c = candidate.charAt(i);
+       if ((c < 'a') || (c > 'z'))
+          return false;
+     }
 
-    return ((candidate != null) && (candidate.length() > 1) &&
-            (candidate.charAt(0) == instance) &&
-            SANITY_PATTERN.matcher(candidate).matches()
-            );
+    return true;
   }
 
 
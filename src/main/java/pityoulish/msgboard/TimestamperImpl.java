@@ -11,7 +11,9 @@ import java.util.TimeZone;
 
 
 /**
- * Default implementation of {@link Timestamper}.
+ * Simple implementation of {@link Timestamper}.
+ * This implementation is not thread-safe.
+ * See {@link CachedTimestamperImpl} for a thread-safe alternative.
  */
 public class TimestamperImpl implements Timestamper
 {
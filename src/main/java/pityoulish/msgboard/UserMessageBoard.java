@@ -5,6 +5,8 @@
  */
 package pityoulish.msgboard;
 
+import java.util.List;
+
 import pityoulish.mbserver.ProblemFactory;
 
 
@@ -43,4 +45,24 @@ public interface UserMessageBoard extends MessageBoard
   public Message putMessage(String originator, String text)
     ;
 
+
+  /**
+   * Puts several messages from the same originator on this board.
+   * All texts are checked before the first message is put.
+   * The messages are put in one step, and get consecutive positions
+   * on the board. They share a timestamp.
+   *
+   * @param originator  the source of the messages, a user name
+   * @param texts       the contents of the messages, in order
+   *
+   * @return    the markers for the new messages, in the same order.
+   *            Listing with a marker returns the messages put after
+   *            the respective one.
+   *
+   * @throws IllegalArgumentException
+   *    if the originator, the number of texts, or any text is not valid
+   */
+  public List<String> putMessages(String originator, List<String> texts)
+    ;
+
 }
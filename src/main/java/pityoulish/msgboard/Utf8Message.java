@@ -0,0 +1,37 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+
+/**
+ * A {@link Message} that holds its text in UTF-8 encoding.
+ * Protocols which send the text in UTF-8 can copy the bytes directly,
+ * without creating the text as a string and encoding it again.
+ */
+public interface Utf8Message extends Message
+{
+  /**
+   * Obtains the length of the text in UTF-8 encoding.
+   *
+   * @return    the number of bytes in the encoded text
+   */
+  public int getTextLength()
+    ;
+
+
+  /**
+   * Copies the text in UTF-8 encoding.
+   *
+   * @param dst   the array to copy to
+   * @param pos   the index in the array where to put the first byte
+   *
+   * @return    the number of bytes copied,
+   *            the same as {@link #getTextLength getTextLength}
+   */
+  public int copyText(byte[] dst, int pos)
+    ;
+
+}
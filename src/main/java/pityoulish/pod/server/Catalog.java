@@ -19,7 +19,14 @@ public enum Catalog implements TextEntry
    SYSMSG_CAPACITY_1,
 
    ARG_NUMBER_TOO_LOW_0,
-   ARG_NUMBER_TOO_HIGH_0
+   ARG_NUMBER_TOO_HIGH_0,
+   ARG_NOT_BOOLEAN_0,
+   ARG_NO_JOURNAL_0,
+   ARG_NO_BYTE_LIMIT_0,
+   ARG_NEEDS_BYTE_LIMIT_0,
+   ARG_KEY_TOO_SHORT_0,
+   ARG_HOST_PORT_0,
+   ARG_BLOCKS_SELECTOR_0
    ;
 
 
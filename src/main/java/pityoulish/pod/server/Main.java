@@ -5,6 +5,9 @@
  */
 package pityoulish.pod.server;
 
+import java.io.File;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -19,12 +22,27 @@ import pityoulish.logutil.LogConfig;
 import pityoulish.jrmi.api.RegistryNames;
 import pityoulish.jrmi.server.RemoteMessageBoardImpl;
 import pityoulish.jrmi.server.RemoteTicketIssuerImpl;
+import pityoulish.mbserver.RateLimiter;
+import pityoulish.msgboard.ArenaMessageBoardImpl;
+import pityoulish.msgboard.JournaledMessageBoardImpl;
+import pityoulish.msgboard.MessageChannels;
 import pityoulish.msgboard.MixedMessageBoard;
 import pityoulish.msgboard.MixedMessageBoardImpl;
 import pityoulish.msgboard.MixedMessageBoardSync;
+import pityoulish.msgboard.RingMessageBoardImpl;
+import pityoulish.msgboard.ShardedMessageChannelsImpl;
 import pityoulish.sockets.server.SocketHandler;
+import pityoulish.sockets.server.SocketHandlerType;
+import pityoulish.sockets.server.TLVHandlerOptions;
+import pityoulish.sockets.server.WorkerPoolConfig;
 import pityoulish.tickets.TicketManager;
 import pityoulish.tickets.DefaultTicketManager;
+import pityoulish.tickets.HmacTicketManager;
+import pityoulish.tickets.LocalPunchStore;
+import pityoulish.tickets.LocalTicketStore;
+import pityoulish.tickets.PunchStore;
+import pityoulish.tickets.RemotePunchStore;
+import pityoulish.tickets.RemoteTicketStore;
 
 
 
@@ -43,6 +61,129 @@ public final class Main
   public final static
     String BOARD_CAPACITY_ENV = "PITYOULISH_BOARD_CAPACITY";
 
+  /**
+   * Maximum number of kilobytes for the messages on the board, 0 for none.
+   * With a byte limit, the board can be sized to the memory of the pod,
+   * and the maximum number of messages can be much higher.
+   * Not supported with a {@link #board_journal journal}.
+   */
+  protected static int board_kbytes = 0;
+
+  /** Name of the env variable for setting {@link #board_kbytes}. */
+  public final static
+    String BOARD_KBYTES_ENV = "PITYOULISH_BOARD_KBYTES";
+
+  /** Maximum number of messages on the board without a byte limit. */
+  public final static int MAX_COUNT_CAPACITY = 8000;
+
+  /** Maximum number of messages on the board with a byte limit. */
+  public final static int MAX_BYTES_CAPACITY = 1000000;
+
+  /**
+   * Directory for the journal of the board, or <code>null</code>.
+   * Without a journal, the messages are lost when the server stops.
+   */
+  protected static File board_journal = null;
+
+  /** Name of the env variable for setting {@link #board_journal}. */
+  public final static
+    String BOARD_JOURNAL_ENV = "PITYOULISH_BOARD_JOURNAL";
+
+  /**
+   * Seconds between snapshots of the board, 0 for none.
+   * Only relevant with a {@link #board_journal}.
+   */
+  protected static int board_snapshot_interval = (int)
+    (JournaledMessageBoardImpl.DEFAULT_SNAPSHOT_INTERVAL / 1000);
+
+  /** Name of the env variable for setting {@link #board_snapshot_interval}. */
+  public final static
+    String BOARD_SNAPSHOT_INTERVAL_ENV = "PITYOULISH_BOARD_SNAPSHOT_INTERVAL";
+
+  /**
+   * Maximum number of named channels besides the default board, 0 for none.
+   * Each channel is a ring board of its own, with the same capacity.
+   * Channels are not supported with a journal or a byte limit.
+   */
+  protected static int board_channels = 0;
+
+  /** Name of the env variable for setting {@link #board_channels}. */
+  public final static
+    String BOARD_CHANNELS_ENV = "PITYOULISH_BOARD_CHANNELS";
+
+  /**
+   * Whether messages on the board and its channels can be searched.
+   * The boards keep an index of the words in their messages.
+   * Not supported with a {@link #board_kbytes byte limit}.
+   */
+  protected static boolean board_search = false;
+
+  /** Name of the env variable for setting {@link #board_search}. */
+  public final static
+    String BOARD_SEARCH_ENV = "PITYOULISH_BOARD_SEARCH";
+
+  /**
+   * Whether messages on the board are kept outside of the Java heap.
+   * Requires a {@link #board_kbytes byte limit}, which is the arena size.
+   */
+  protected static boolean board_offheap = false;
+
+  /** Name of the env variable for setting {@link #board_offheap}. */
+  public final static
+    String BOARD_OFFHEAP_ENV = "PITYOULISH_BOARD_OFFHEAP";
+
+  /**
+   * Key for signing stateless tickets, or <code>null</code>.
+   * With a key, tickets are not kept on the server, their tokens are signed.
+   * Replicas with the same key accept each other's tokens. Each replica
+   * counts the punches itself, unless there is a {@link #tickets_store}.
+   */
+  protected static String tickets_hmac_key = null;
+
+  /** Name of the env variable for setting {@link #tickets_hmac_key}. */
+  public final static
+    String TICKETS_HMAC_KEY_ENV = "PITYOULISH_TICKETS_HMAC_KEY";
+
+  /**
+   * Ticket store server as <i>host</i>:<i>port</i>, or <code>null</code>.
+   * With a store server, tickets are kept there instead of in this replica.
+   * Replicas with the same store server accept each other's tickets.
+   * With a {@link #tickets_hmac_key}, only the punches are counted there.
+   */
+  protected static String tickets_store = null;
+
+  /** Name of the env variable for setting {@link #tickets_store}. */
+  public final static
+    String TICKETS_STORE_ENV = "PITYOULISH_TICKETS_STORE";
+
+  /**
+   * Write requests per minute and username, 0 for no limit.
+   * Putting messages and obtaining, returning, or replacing tickets
+   * are write requests. The limit applies across both protocols.
+   */
+  protected static int rate_user_per_minute = 0;
+
+  /** Name of the env variable for setting {@link #rate_user_per_minute}. */
+  public final static
+    String RATE_USER_PER_MINUTE_ENV = "PITYOULISH_RATE_USER_PER_MINUTE";
+
+  /**
+   * Write requests per minute and client address, 0 for no limit.
+   * The limit applies to each protocol separately.
+   */
+  protected static int rate_client_per_minute = 0;
+
+  /** Name of the env variable for setting {@link #rate_client_per_minute}. */
+  public final static
+    String RATE_CLIENT_PER_MINUTE_ENV = "PITYOULISH_RATE_CLIENT_PER_MINUTE";
+
+  /** Write requests in quick succession, before the rate limits apply. */
+  protected static int rate_burst = 10;
+
+  /** Name of the env variable for setting {@link #rate_burst}. */
+  public final static
+    String RATE_BURST_ENV = "PITYOULISH_RATE_BURST";
+
   /**
    * Name of the env variable for setting the hostname in JRMI stubs.
    * The value will be set as system property "java.rmi.server.hostname".
@@ -78,6 +219,45 @@ public final class Main
   public final static
     String SOCKETS_PORT_ENV = "PITYOULISH_SOCKETS_PORT";
 
+  /** Type of socket handler for the Sockets exercise. */
+  protected static SocketHandlerType sockets_handler =
+    SocketHandlerType.SIMPLISTIC;
+
+  /** Name of the env variable for setting {@link #sockets_handler}. */
+  public final static
+    String SOCKETS_HANDLER_ENV = "PITYOULISH_SOCKETS_HANDLER";
+
+  /** Number of worker threads for pooled socket handlers. */
+  protected static int sockets_pool_size =
+    WorkerPoolConfig.DEFAULT.poolSize;
+
+  /** Name of the env variable for setting {@link #sockets_pool_size}. */
+  public final static
+    String SOCKETS_POOL_SIZE_ENV = "PITYOULISH_SOCKETS_POOL_SIZE";
+
+  /** Number of connections waiting for a worker in pooled socket handlers. */
+  protected static int sockets_queue_bound =
+    WorkerPoolConfig.DEFAULT.queueBound;
+
+  /** Name of the env variable for setting {@link #sockets_queue_bound}. */
+  public final static
+    String SOCKETS_QUEUE_BOUND_ENV = "PITYOULISH_SOCKETS_QUEUE_BOUND";
+
+  /** What pooled socket handlers do when all workers are busy. */
+  protected static WorkerPoolConfig.Rejection sockets_rejection =
+    WorkerPoolConfig.DEFAULT.rejection;
+
+  /** Name of the env variable for setting {@link #sockets_rejection}. */
+  public final static
+    String SOCKETS_REJECTION_ENV = "PITYOULISH_SOCKETS_REJECTION";
+
+  /** Whether to cache encoded messages for the Sockets exercise. */
+  protected static boolean sockets_tlv_cache = false;
+
+  /** Name of the env variable for setting {@link #sockets_tlv_cache}. */
+  public final static
+    String SOCKETS_TLV_CACHE_ENV = "PITYOULISH_SOCKETS_TLV_CACHE";
+
 
   /**
    * Main entry point.
@@ -99,20 +279,97 @@ public final class Main
     LogConfig.configure(Main.class);
     LOGGER.log(Level.INFO, "starting Message Board server");
 
-    // use a thread-safe wrapper around the unsafe message board impl
-    MixedMessageBoard mmb  =
-      new MixedMessageBoardSync(new MixedMessageBoardImpl(board_capacity));
-    TicketManager tim  = new DefaultTicketManager();
+    // the ring board is thread-safe, readers don't block each other
+    MixedMessageBoard mmb  = null;
+    if (board_journal != null)
+     {
+       JournaledMessageBoardImpl jmb =
+         new JournaledMessageBoardImpl(board_capacity, board_journal);
+       if (board_snapshot_interval > 0)
+          jmb.startSnapshots(board_snapshot_interval * 1000L);
+       if (board_search)
+          jmb.enableSearch();
+       mmb = jmb;
+     }
+    else if (board_offheap)
+     {
+       // records in a direct buffer, the heap holds only their offsets
+       mmb = new ArenaMessageBoardImpl(board_capacity, board_kbytes * 1024);
+     }
+    else if (board_kbytes > 0)
+     {
+       // a byte limit needs variable slots, the ring board has fixed ones
+       mmb = new MixedMessageBoardSync
+         (new MixedMessageBoardImpl(board_capacity, board_kbytes * 1024L));
+     }
+    else
+     {
+       RingMessageBoardImpl rmb = new RingMessageBoardImpl(board_capacity);
+       if (board_search)
+          rmb.enableSearch();
+       mmb = rmb;
+     }
+    TicketManager tim = null;
+    if (tickets_hmac_key != null)
+     {
+       // without a store server, the punch counts are local to this replica
+       PunchStore pus = new LocalPunchStore();
+       if (tickets_store != null)
+        {
+          final int colon = tickets_store.lastIndexOf(':');
+          pus = new RemotePunchStore
+            (tickets_store.substring(0, colon),
+             Integer.parseInt(tickets_store.substring(colon+1)));
+        }
+       tim = new HmacTicketManager
+         (tickets_hmac_key.getBytes(StandardCharsets.UTF_8), pus);
+     }
+    else if (tickets_store != null)
+     {
+       final int colon = tickets_store.lastIndexOf(':');
+       tim = new DefaultTicketManager(new RemoteTicketStore
+         (tickets_store.substring(0, colon),
+          Integer.parseInt(tickets_store.substring(colon+1))));
+     }
+    else
+     {
+       LocalTicketStore lts = new LocalTicketStore();
+       lts.startReaper();
+       tim = new DefaultTicketManager(lts);
+     }
 
     mmb.putSystemMessage(null, Catalog.SYSMSG_OPEN.lookup());
     mmb.putSystemMessage(null,(Catalog.SYSMSG_CAPACITY_1
                                .format(board_capacity)));
 
+    // channels are sharded, unrelated channels don't contend
+    MessageChannels mch = null;
+    if (board_channels > 0)
+       mch = new ShardedMessageChannelsImpl(mmb, board_capacity,
+                                            board_channels);
+
+
+    // token buckets, rejecting floods before they reach the board
+    RateLimiter<String>      userlim = null;
+    RateLimiter<String>      hostlim = null;
+    RateLimiter<InetAddress> addrlim = null;
+    if (rate_user_per_minute > 0)
+       userlim = new RateLimiter<>(rate_user_per_minute, rate_burst);
+    if (rate_client_per_minute > 0)
+     {
+       hostlim = new RateLimiter<>(rate_client_per_minute, rate_burst);
+       addrlim = new RateLimiter<>(rate_client_per_minute, rate_burst);
+     }
+
 
     // initialize Java RMI external interface
 
-    RemoteMessageBoardImpl  rmbi = new RemoteMessageBoardImpl(mmb, tim);
+    RemoteMessageBoardImpl  rmbi = (mch != null) ?
+      new RemoteMessageBoardImpl(mch, tim) :
+      new RemoteMessageBoardImpl(mmb, tim);
     RemoteTicketIssuerImpl  rtii = new RemoteTicketIssuerImpl(tim, false);
+    rmbi.enableRateLimits(userlim, hostlim);
+    rtii.enableRateLimits(userlim, hostlim);
 
     Remote rmbistub = UnicastRemoteObject.exportObject(rmbi, jrmi_objects_port);
     Remote rtiistub = UnicastRemoteObject.exportObject(rtii, jrmi_objects_port);
@@ -129,9 +386,16 @@ public final class Main
 
     // initialize binary protocol external interface
 
-    SocketHandler shandler =
-      pityoulish.sockets.server.Main.createTLVSocketHandler(mmb, tim,
-                                                            false, false);
+    TLVHandlerOptions opts = new TLVHandlerOptions()
+      .setHandlerType(sockets_handler)
+      .setWorkerPool(new WorkerPoolConfig(sockets_pool_size,
+                                          sockets_queue_bound,
+                                          sockets_rejection))
+      .setCacheTLV(sockets_tlv_cache)
+      .setRateLimits(userlim, addrlim);
+    SocketHandler shandler = (mch != null) ?
+      pityoulish.sockets.server.Main.createTLVSocketHandler(mch, tim, opts) :
+      pityoulish.sockets.server.Main.createTLVSocketHandler(mmb, tim, opts);
     shandler.startup(sockets_port, 0); // adjusting the backlog is pointless
 
     //@@@ NLS light?
@@ -158,7 +422,73 @@ public final class Main
       envvar = BOARD_CAPACITY_ENV;
       value = System.getenv(envvar);
       if (value != null)
-         board_capacity = toInt(value, 1, 8000);
+         board_capacity = toInt(value, 1, MAX_BYTES_CAPACITY);
+
+      envvar = BOARD_KBYTES_ENV;
+      value = System.getenv(envvar);
+      if (value != null)
+         board_kbytes = toInt(value, 0, Integer.MAX_VALUE / 1024);
+
+      envvar = BOARD_JOURNAL_ENV;
+      value = System.getenv(envvar);
+      if ((value != null) && (value.length() > 0))
+         board_journal = new File(value);
+
+      envvar = BOARD_SNAPSHOT_INTERVAL_ENV;
+      value = System.getenv(envvar);
+      if (value != null)
+         board_snapshot_interval = toInt(value, 0, 86400);
+
+      envvar = BOARD_CHANNELS_ENV;
+      value = System.getenv(envvar);
+      if (value != null)
+         board_channels = toInt(value, 0, 1000);
+
+      envvar = BOARD_SEARCH_ENV;
+      value = System.getenv(envvar);
+      if (value != null)
+         board_search = toBoolean(value);
+
+      envvar = BOARD_OFFHEAP_ENV;
+      value = System.getenv(envvar);
+      if (value != null)
+         board_offheap = toBoolean(value);
+
+      envvar = TICKETS_HMAC_KEY_ENV;
+      value = System.getenv(envvar);
+      if ((value != null) && (value.length() > 0))
+       {
+         if (value.getBytes(StandardCharsets.UTF_8).length <
+             HmacTicketManager.MIN_KEY_LENGTH)
+            throw new Exception(Catalog.ARG_KEY_TOO_SHORT_0.format());
+         tickets_hmac_key = value;
+       }
+
+      envvar = TICKETS_STORE_ENV;
+      value = System.getenv(envvar);
+      if ((value != null) && (value.length() > 0))
+       {
+         final int colon = value.lastIndexOf(':');
+         if (colon < 1)
+            throw new Exception(Catalog.ARG_HOST_PORT_0.format());
+         toInt(value.substring(colon+1), 1, 65535);
+         tickets_store = value;
+       }
+
+      envvar = RATE_USER_PER_MINUTE_ENV;
+      value = System.getenv(envvar);
+      if (value != null)
+         rate_user_per_minute = toInt(value, 0, 60000);
+
+      envvar = RATE_CLIENT_PER_MINUTE_ENV;
+      value = System.getenv(envvar);
+      if (value != null)
+         rate_client_per_minute = toInt(value, 0, 60000);
+
+      envvar = RATE_BURST_ENV;
+      value = System.getenv(envvar);
+      if (value != null)
+         rate_burst = toInt(value, 1, 1000);
 
       envvar = JRMI_HOSTNAME_ENV;
       value = System.getenv(envvar);
@@ -180,6 +510,66 @@ public final class Main
       if (value != null)
          sockets_port = toInt(value, 1025, 65535);
 
+      envvar = SOCKETS_HANDLER_ENV;
+      value = System.getenv(envvar);
+      if (value != null)
+         sockets_handler = SocketHandlerType.forName(value);
+
+      envvar = SOCKETS_POOL_SIZE_ENV;
+      value = System.getenv(envvar);
+      if (value != null)
+         sockets_pool_size = toInt(value, 1, 4096);
+
+      envvar = SOCKETS_QUEUE_BOUND_ENV;
+      value = System.getenv(envvar);
+      if (value != null)
+         sockets_queue_bound = toInt(value, 0, 65536);
+
+      envvar = SOCKETS_REJECTION_ENV;
+      value = System.getenv(envvar);
+      if (value != null)
+         sockets_rejection = WorkerPoolConfig.Rejection.forName(value);
+
+      envvar = SOCKETS_TLV_CACHE_ENV;
+      value = System.getenv(envvar);
+      if (value != null)
+         sockets_tlv_cache = toBoolean(value);
+
+      // without a byte limit, the number of messages is the only bound
+      envvar = BOARD_CAPACITY_ENV;
+      if ((board_kbytes == 0) && (board_capacity > MAX_COUNT_CAPACITY))
+         throw new Exception(Catalog.ARG_NUMBER_TOO_HIGH_0.format());
+
+      envvar = BOARD_KBYTES_ENV;
+      if ((board_kbytes > 0) && (board_journal != null))
+         throw new Exception(Catalog.ARG_NO_JOURNAL_0.format());
+
+      envvar = BOARD_SEARCH_ENV;
+      if (board_search && (board_kbytes > 0))
+         throw new Exception(Catalog.ARG_NO_BYTE_LIMIT_0.format());
+
+      // channel boards have no byte limit and would not be journaled
+      envvar = BOARD_CHANNELS_ENV;
+      if ((board_channels > 0) && (board_journal != null))
+         throw new Exception(Catalog.ARG_NO_JOURNAL_0.format());
+      if ((board_channels > 0) && (board_kbytes > 0))
+         throw new Exception(Catalog.ARG_NO_BYTE_LIMIT_0.format());
+
+      envvar = BOARD_OFFHEAP_ENV;
+      if (board_offheap && (board_kbytes == 0))
+         throw new Exception(Catalog.ARG_NEEDS_BYTE_LIMIT_0.format());
+
+      // the selector thread handles requests, they must not wait for IO
+      envvar = SOCKETS_HANDLER_ENV;
+      if ((sockets_handler == SocketHandlerType.NIO) &&
+          ((board_journal != null) || (tickets_store != null)))
+         throw new Exception(Catalog.ARG_BLOCKS_SELECTOR_0.format());
+
+      envvar = BOARD_KBYTES_ENV;
+      if (board_offheap &&
+          (board_kbytes * 1024 < ArenaMessageBoardImpl.MIN_ARENA_BYTES))
+         throw new Exception(Catalog.ARG_NUMBER_TOO_LOW_0.format());
+
     } catch (Exception x) {
       LOGGER.log(Level.CONFIG, envvar, x);
       throw new Exception(envvar+": "+x.getMessage(), x);
@@ -209,4 +599,26 @@ public final class Main
     return number;
   }
 
+
+  /**
+   * Converts a string to a boolean.
+   * Unlike {@link Boolean#parseBoolean}, this does not treat
+   * every unexpected input as <code>false</code>.
+   *
+   * @param input   the string to parse, "true" or "false"
+   *
+   * @return the parsed value
+   *
+   * @throws Exception   if the input is neither "true" nor "false"
+   */
+  protected static boolean toBoolean(String input)
+    throws Exception
+  {
+    if ("true".equalsIgnoreCase(input))
+       return true;
+    if ("false".equalsIgnoreCase(input))
+       return false;
+    throw new Exception(Catalog.ARG_NOT_BOOLEAN_0.format());
+  }
+
 }
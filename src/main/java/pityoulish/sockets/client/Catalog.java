@@ -41,6 +41,9 @@ public enum Catalog implements TextEntry
    RECEIVE_EXCESS_DATA_2,
    RECEIVE_HTTP_INSTEAD_OF_TLV_0,
 
+   INFO_KEEP_ALIVE_0,
+   INFO_KEEP_ALIVE_REFUSED_0,
+
    CONSOLE_INFO_TEXT_1,
    CONSOLE_ERROR_TEXT_1,
    CONSOLE_MSG_BATCH_ENTER,
@@ -49,6 +49,14 @@ public abstract class MsgBoardClientHandlerBase
   }
 
 
+  public void awaitMessages(int limit, String marker, int timeout)
+    throws Exception
+  {
+    ByteBuffer request = reqBuilder.buildAwaitMessages(limit, marker, timeout);
+    fireRequest(request);
+  }
+
+
   public void putMessage(String ticket, String text)
     throws Exception
   {
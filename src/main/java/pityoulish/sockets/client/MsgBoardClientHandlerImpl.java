@@ -5,13 +5,17 @@
  */
 package pityoulish.sockets.client;
 
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.net.SocketException;
 import java.nio.ByteBuffer;
 
 //@@@ some TLV parsing is duplicated here... refactor to avoid that!
 import pityoulish.sockets.tlv.MsgBoardTLV;
+import pityoulish.sockets.tlv.MsgBoardType;
 
 
 /**
@@ -27,6 +31,12 @@ public class MsgBoardClientHandlerImpl extends MsgBoardClientHandlerBase
   /** Indicates whether to print what's going on. */
   protected boolean beVerbose;
 
+  /**
+   * The timeout for reading a response, in milliseconds.
+   * Extended while awaiting messages, because the server may wait, too.
+   */
+  protected int responseTimeout = RCV_SO_TIMEOUT;
+
 
   public final static int  MAX_RESPONSE_SIZE = 32768; // bytes
   public final static int  RCV_SO_TIMEOUT    =  3500; // milliseconds
@@ -78,8 +88,23 @@ public class MsgBoardClientHandlerImpl extends MsgBoardClientHandlerBase
   }
 
 
+  // non-javadoc, see interface MsgBoardClientHandler
+  public void awaitMessages(int limit, String marker, int timeout)
+    throws Exception
+  {
+    responseTimeout = RCV_SO_TIMEOUT + timeout*1000;
+    try {
+      super.awaitMessages(limit, marker, timeout);
+    } finally {
+      responseTimeout = RCV_SO_TIMEOUT;
+    }
+  }
+
+
   /**
    * Sends a request and processes the response, with blocking IO.
+   * If {@link SocketBackendHandler#isKeepAlive keep-alive} is enabled,
+   * the connection is reused for subsequent requests.
    *
    * @param request     the request data to send
    *
@@ -88,6 +113,12 @@ public class MsgBoardClientHandlerImpl extends MsgBoardClientHandlerBase
   protected void fireRequest(ByteBuffer request)
     throws Exception
   {
+    if (socketBackend.isKeepAlive())
+     {
+       fireRequestKeepAlive(request);
+       return;
+     }
+
     Socket sock = socketBackend.connect(false);
     ByteBuffer response = null;
     try {
@@ -102,6 +133,134 @@ public class MsgBoardClientHandlerImpl extends MsgBoardClientHandlerBase
   }
 
 
+  /**
+   * Sends a request over a kept-alive connection and processes the response.
+   * A new connection asks the server for keep-alive first. If the server
+   * refuses, keep-alive is disabled and the request sent the normal way.
+   * A reused connection that is obviously unusable is replaced before
+   * sending. That check does not block, so it cannot detect a connection
+   * which the server has closed while idle. If a reused connection fails,
+   * the request is sent once more over a new connection, but only if the
+   * server cannot have processed it. That is the case if sending failed,
+   * or if the server closed or reset the connection without responding.
+   * Requests which only read from the board are always sent again.
+   *
+   * @param request     the request data to send
+   *
+   * @throws Exception   in case of a problem
+   */
+  protected void fireRequestKeepAlive(ByteBuffer request)
+    throws Exception
+  {
+    Socket previous = socketBackend.getSocket();
+    if ((previous != null) && isStale(previous))
+       socketBackend.disconnect();
+
+    Socket sock = socketBackend.connect(false);
+    boolean reused = (sock == previous);
+    boolean sent   = false;
+
+    ByteBuffer response = null;
+    try {
+      if (!reused && !requestKeepAlive(sock))
+       {
+         socketBackend.disconnect();
+         socketBackend.setKeepAlive(false);
+         fireRequest(request);
+         return;
+       }
+
+      sendRequest(sock, request);
+      sent = true;
+      response = readResponse(sock);
+
+    } catch (Exception x) {
+      try {
+        socketBackend.disconnect();
+      } catch (Exception ignore) {
+        x.addSuppressed(ignore);
+      }
+      if (!reused)
+         throw x;
+      if (sent && !(x instanceof EOFException) && !isReadOnly(request))
+         throw x;
+
+      fireRequestKeepAlive(request);
+      return;
+    }
+
+    rspParser.parse(response, rspVisitor);
+  }
+
+
+  /**
+   * Checks whether a kept-alive connection is unusable, without blocking.
+   * The server sends nothing unless asked, so unread data means that
+   * the connection is out of step. A connection that the server has
+   * closed cannot be detected here, that requires a read which blocks
+   * while the connection is fine. Requests over such a connection fail
+   * and are sent again, see {@link #fireRequestKeepAlive}.
+   *
+   * @param sock        the kept-alive connection
+   *
+   * @return  <code>true</code> if the connection is stale,
+   *          <code>false</code> if it can be used
+   */
+  protected static boolean isStale(Socket sock)
+  {
+    try {
+      return sock.isClosed() || sock.isInputShutdown() ||
+        (sock.getInputStream().available() > 0);
+    } catch (IOException x) {
+      return true;
+    }
+  }
+
+
+  /**
+   * Checks whether a request only reads from the board.
+   * Sending such a request twice has the same effect as sending it once.
+   *
+   * @param request     the request data
+   *
+   * @return  <code>true</code> if the request is safe to repeat,
+   *          <code>false</code> if it might change something
+   */
+  protected static boolean isReadOnly(ByteBuffer request)
+  {
+    byte type = request.get(request.position());
+    return ((type == MsgBoardType.LIST_MESSAGES.getTypeByte())  ||
+            (type == MsgBoardType.AWAIT_MESSAGES.getTypeByte()) ||
+            (type == MsgBoardType.SEARCH_MESSAGES.getTypeByte())  );
+  }
+
+
+  /**
+   * Asks the server to keep a new connection alive.
+   *
+   * @param sock        the new connection
+   *
+   * @return  <code>true</code> if the server keeps the connection alive,
+   *          <code>false</code> if it refused
+   *
+   * @throws Exception   in case of a problem
+   */
+  protected boolean requestKeepAlive(Socket sock)
+    throws Exception
+  {
+    sendRequest(sock, reqBuilder.buildKeepAlive());
+    ByteBuffer response = readResponse(sock);
+
+    boolean granted = (response.get(response.position()) ==
+                       MsgBoardType.INFO_RESPONSE.getTypeByte());
+    if (beVerbose)
+       System.out.println(granted ?
+                          Catalog.INFO_KEEP_ALIVE_0.format() :
+                          Catalog.INFO_KEEP_ALIVE_REFUSED_0.format());
+    return granted;
+  }
+
+
   /**
    * Sends a request over a socket.
    *
@@ -152,7 +311,7 @@ public class MsgBoardClientHandlerImpl extends MsgBoardClientHandlerBase
   public ByteBuffer readResponse(Socket sock)
     throws Exception
   {
-    sock.setSoTimeout(RCV_SO_TIMEOUT);
+    sock.setSoTimeout(responseTimeout);
 
     byte[] data = new byte[MAX_RESPONSE_SIZE];
     int    pos  = 0;
@@ -169,7 +328,19 @@ public class MsgBoardClientHandlerImpl extends MsgBoardClientHandlerBase
     // need the first 4 bytes to determine the length of the response
     while (pos < 4)
      {
-       int count = is.read(data, pos, data.length-pos);
+       int count = 0;
+       try {
+         count = is.read(data, pos, data.length-pos);
+       } catch (SocketException sx) {
+         // A reset before the response means that the server closed the
+         // connection before reading the request. Treat it like EOF.
+         if (pos > 0)
+            throw sx;
+         count = -1;
+       }
+       if ((count < 0) && (pos == 0))
+          throw new EOFException
+            (Catalog.RECEIVE_INITIAL_BLOCK_TOO_SMALL_0.format());
        if (count < 0)
           throw new Exception
             (Catalog.RECEIVE_INITIAL_BLOCK_TOO_SMALL_0.format());
@@ -28,6 +28,21 @@ public interface RequestBuilder
     ;
 
 
+  /**
+   * Builds a request to list messages from the board,
+   * waiting for new ones if necessary.
+   *
+   * @param limit       the maximum batch size
+   * @param marker      the marker where to start, or
+   *                    <code>null</code> for the oldest available messages
+   * @param timeout     the maximum time to wait, in seconds
+   *
+   * @return a buffer containing the request PDU, backed by an array
+   */
+  public ByteBuffer buildAwaitMessages(int limit, String marker, int timeout)
+    ;
+
+
   /**
    * Builds a request to put a message on the board.
    *
@@ -73,5 +88,14 @@ public interface RequestBuilder
   public ByteBuffer buildReplaceTicket(String ticket)
     ;
 
-}
 
+  /**
+   * Builds a Keep Alive request.
+   * It asks the server to keep the connection open for more requests.
+   *
+   * @return a buffer containing the request PDU, backed by an array
+   */
+  public ByteBuffer buildKeepAlive()
+    ;
+
+}
@@ -31,6 +31,40 @@ public interface SocketBackendHandler extends HostPortBackendHandler
     ;
 
 
+  /**
+   * Disconnects from the backend.
+   * Closes the socket returned by the last call to {@link #connect},
+   * if there is one.
+   *
+   * @throws IOException   in case of a problem
+   */
+  public void disconnect()
+    throws IOException
+    ;
+
+
+  /**
+   * Enables or disables keep-alive.
+   * If enabled, {@link #connect} returns the current socket while it
+   * is open, instead of connecting again.
+   *
+   * @param keep  <code>true</code> to reuse connections,
+   *              <code>false</code> to connect for each request
+   */
+  public void setKeepAlive(boolean keep)
+    ;
+
+
+  /**
+   * Checks whether keep-alive is enabled.
+   *
+   * @return  <code>true</code> if connections are reused,
+   *          <code>false</code> otherwise
+   */
+  public boolean isKeepAlive()
+    ;
+
+
   /**
    * Obtains the socket connected to the backend.
    *
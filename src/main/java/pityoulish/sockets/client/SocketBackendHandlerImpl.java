@@ -22,11 +22,17 @@ public class SocketBackendHandlerImpl extends HostPortBackendHandlerImpl
 {
   protected Socket currentSocket;
 
+  /** Whether to reuse {@link #currentSocket} while it is open. */
+  protected boolean keepAlive;
+
 
   // non-javadoc, see interface SocketBackendHandler
   public Socket connect(boolean nio)
     throws IOException
   {
+    if (keepAlive && (currentSocket != null) && !currentSocket.isClosed())
+       return currentSocket;
+
     Socket sock = null;
     if (nio)
        sock = connectAsynchronously();
@@ -38,6 +44,31 @@ public class SocketBackendHandlerImpl extends HostPortBackendHandlerImpl
   }
 
 
+  // non-javadoc, see interface SocketBackendHandler
+  public void disconnect()
+    throws IOException
+  {
+    Socket sock = currentSocket;
+    currentSocket = null;
+    if (sock != null)
+       sock.close();
+  }
+
+
+  // non-javadoc, see interface SocketBackendHandler
+  public void setKeepAlive(boolean keep)
+  {
+    keepAlive = keep;
+  }
+
+
+  // non-javadoc, see interface SocketBackendHandler
+  public boolean isKeepAlive()
+  {
+    return keepAlive;
+  }
+
+
   // non-javadoc, see interface SocketBackendHandler
   public Socket getSocket()
   {
@@ -74,6 +74,34 @@ public class TLVRequestBuilderImpl implements RequestBuilder
   }
 
 
+  // non-javadoc, see interface
+  public ByteBuffer buildAwaitMessages(int limit, String marker, int timeout)
+  {
+    int estimate = estimateLength(marker, false) + 10;
+    byte[] data = new byte[estimate];
+
+    MsgBoardTLV request = new MsgBoardTLV(MsgBoardType.AWAIT_MESSAGES,data,0);
+    MsgBoardTLV param = request.appendTLV(MsgBoardType.LIMIT);
+    param.setLength(1);
+    data[param.getValueStart()] = (byte)limit;
+    request.addToLength(param.getSize());
+
+    param = request.appendTLV(MsgBoardType.TIMEOUT);
+    param.setLength(1);
+    data[param.getValueStart()] = (byte)timeout;
+    request.addToLength(param.getSize());
+
+    if (marker != null)
+     {
+       param = request.appendTLV(MsgBoardType.MARKER);
+       param.setTextValue(marker, "US-ASCII");
+       request.addToLength(param.getSize());
+     }
+
+    return request.toBuffer();
+  }
+
+
   // non-javadoc, see interface
   public ByteBuffer buildPutMessage(String ticket, String text)
   {
@@ -135,6 +163,16 @@ public class TLVRequestBuilderImpl implements RequestBuilder
   }
 
 
+  // non-javadoc, see interface
+  public ByteBuffer buildKeepAlive()
+  {
+    MsgBoardTLV request =
+      new MsgBoardTLV(MsgBoardType.KEEP_ALIVE, new byte[4], 0);
+
+    return request.toBuffer();
+  }
+
+
   /**
    * Builds a request with a single string as argument.
    * The caller may choose to append more arguments afterwards.
@@ -34,6 +34,22 @@ public class FollowTheBoardHandler extends SingleCommandHandlerBase
   /** The marker from which to list subsequent messages. Initially null. */
   protected String listMarker;
 
+  /** Whether the server supports waiting for messages. Initially true. */
+  protected boolean awaitSupported = true;
+
+  /** The batch size, a magic number that reduces logging on the server. */
+  protected static final int BATCH_SIZE = 125;
+
+  /** The maximum timeout for waiting, as defined by the protocol. */
+  protected static final int MAX_TIMEOUT = 127;
+
+  /**
+   * The codes of errors with which servers reject unknown request types.
+   * The request type is checked when parsing the TLV header.
+   */
+  protected static final String[] UNKNOWN_REQUEST_CODES =
+    { "MBSS001", "MBSS002" };
+
 
   /**
    * Creates a new command handler.
@@ -91,6 +107,8 @@ public class FollowTheBoardHandler extends SingleCommandHandlerBase
   /**
    * Polls for messages, forever.
    * Actually, until an exception is thrown, for whatever reason.
+   * The server is asked to wait for new messages up to the polling interval.
+   * If it does not wait, the client sleeps for the rest of the interval.
    *
    * @throws Exception  in case of a problem
    */
@@ -99,14 +117,77 @@ public class FollowTheBoardHandler extends SingleCommandHandlerBase
   {
     while (true)
      {
-       listAvailableMessages();
+       long start = System.currentTimeMillis();
+       awaitAvailableMessages();
+       long elapsed = System.currentTimeMillis() - start;
+
+       // A waiting server returns an empty batch after at least a second.
+       if (!awaitSupported || !batchTracker.isBatch() ||
+           ((batchTracker.getSize() == 0) && (elapsed < 1000L)))
+        {
+          try {
+            Thread.sleep(Math.max(0L, pollingSeconds * 1000L - elapsed));
+          } catch (InterruptedException ix) {
+            // ignore
+          }
+        }
+     }
+  }
 
-       try {
-         Thread.sleep(pollingSeconds * 1000L);
-       } catch (InterruptedException ix) {
-         // ignore
-       }
+
+  /**
+   * Waits for messages, then lists as many messages as are available.
+   * If the server does not know the request to wait, {@link #awaitSupported}
+   * is cleared and messages are only listed from then on.
+   * If the server rejects waiting for other reasons, for example because
+   * all its workers are busy, messages are listed this time.
+   *
+   * @throws Exception  in case of a problem
+   */
+  protected void awaitAvailableMessages()
+    throws Exception
+  {
+    if (awaitSupported)
+     {
+       int timeout = Math.min(pollingSeconds, MAX_TIMEOUT);
+       mbcHandler.awaitMessages(BATCH_SIZE, listMarker, timeout);
+
+       if (batchTracker.isBatch())
+        {
+          listMarker = batchTracker.getMarker();
+          if (batchTracker.getSize() < BATCH_SIZE)
+             return; // nothing more available
+        }
+       else if (isUnknownRequest(batchTracker.getErrorText()))
+        {
+          awaitSupported = false; // server is too old
+        }
      }
+
+    listAvailableMessages();
+  }
+
+
+  /**
+   * Checks whether an error indicates an unknown request type.
+   *
+   * @param error   the error text, or <code>null</code>
+   *
+   * @return  <code>true</code> if the server does not know the request,
+   *          <code>false</code> otherwise
+   */
+  protected static boolean isUnknownRequest(String error)
+  {
+    if (error == null)
+       return false;
+
+    for (String code: UNKNOWN_REQUEST_CODES)
+     {
+       // the code may be preceded by the name of the exception class
+       if (error.contains(code+":"))
+          return true;
+     }
+    return false;
   }
 
 
@@ -120,14 +201,14 @@ public class FollowTheBoardHandler extends SingleCommandHandlerBase
   protected void listAvailableMessages()
     throws Exception
   {
-    final int BATCH_SIZE = 125; // magic number, reduces logging on server
-
     boolean more = true;
     while (more)
      {
        mbcHandler.listMessages(BATCH_SIZE, listMarker);
 
-       more       = (batchTracker.getSize() >= BATCH_SIZE);
+       // after an error, the tracker still holds the previous batch
+       more       = batchTracker.isBatch() &&
+                    (batchTracker.getSize() >= BATCH_SIZE);
        listMarker = batchTracker.getMarker();
      }
   }
@@ -54,6 +54,8 @@ public class Main
 
     // sbh connects to the backend, mbch sends requests and receives messages
     SocketBackendHandler sbh = new SocketBackendHandlerImpl();
+    // poll over a single connection, unless the server refuses keep-alive
+    sbh.setKeepAlive(true);
     MsgBoardClientHandler mbch =
       new MsgBoardClientHandlerImpl(sbh, rb, rp, tvi);
 
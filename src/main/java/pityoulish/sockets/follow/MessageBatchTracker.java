@@ -28,4 +28,23 @@ public interface MessageBatchTracker
   public int getSize()
     ;
 
+  /**
+   * Indicates whether the last response was a message batch.
+   * If it was not, the other information refers to an earlier batch.
+   *
+   * @return <code>true</code> if the last response was a message batch,
+   *         <code>false</code> if it was something else, like an error
+   */
+  public boolean isBatch()
+    ;
+
+  /**
+   * Obtains the text of the last response, if it was an error.
+   *
+   * @return the error text, or
+   *         <code>null</code> if the last response was not an error
+   */
+  public String getErrorText()
+    ;
+
 }
@@ -26,6 +26,12 @@ public class TrackingVisitorImpl
   /** The message count of the current or last batch. */
   protected int batchSize;
 
+  /** Whether the last response was a batch. */
+  protected boolean batchResponse;
+
+  /** The text of the last response, if it was an error. */
+  protected String errorText;
+
 
   /**
    * Creates a new visitor, printing to the given stream.
@@ -59,10 +65,24 @@ public class TrackingVisitorImpl
     return batchMarker;
   }
 
+  // non-javadoc, see interface MessageBatchTracker
+  public boolean isBatch()
+  {
+    return batchResponse;
+  }
+
+  // non-javadoc, see interface MessageBatchTracker
+  public String getErrorText()
+  {
+    return errorText;
+  }
+
 
   // non-javadoc, see interface ResponseParser.Visitor
   public void visitInfo(String text)
   {
+    batchResponse = false;
+    errorText = null;
     out.println(Catalog.CONSOLE_INFO_TEXT_1.format(text));
   }
 
@@ -70,6 +90,8 @@ public class TrackingVisitorImpl
   // non-javadoc, see interface ResponseParser.Visitor
   public void visitError(String text)
   {
+    batchResponse = false;
+    errorText = text;
     out.println(Catalog.CONSOLE_ERROR_TEXT_1.format(text));
   }
 
@@ -79,6 +101,8 @@ public class TrackingVisitorImpl
   {
     batchMarker = marker;
     batchSize   = 0;
+    batchResponse = true;
+    errorText = null;
 
     if (missed)
        System.out.println(Catalog.CONSOLE_MESSAGES_MISSED.lookup());
@@ -105,7 +129,8 @@ public class TrackingVisitorImpl
   // non-javadoc, see interface ResponseParser.Visitor
   public void visitTicketGrant(String ticket)
   {
-    // nothing
+    batchResponse = false;
+    errorText = null;
   }
 
 }
@@ -51,7 +51,15 @@ public enum Catalog implements TextEntry
    DESCRIBE_REQUEST_TICKET_TEXT_2,
    DESCRIBE_REQUEST_TICKET_1,
    DESCRIBE_MESSAGE_BATCH_2,
-   DESCRIBE_TICKET_GRANT_1
+   DESCRIBE_TICKET_GRANT_1,
+
+   NO_VIRTUAL_THREADS_0,
+   WORKERS_BUSY_0,
+   KEEP_ALIVE_UNSUPPORTED_0,
+   CHANNELS_UNSUPPORTED_0,
+   SEARCH_UNSUPPORTED_0,
+   DESCRIBE_MARKER_LIST_2,
+   HANDLER_RATE_LIMITED_1
    ;
 
 
@@ -6,6 +6,7 @@
 package pityoulish.sockets.server;
 
 import java.net.InetAddress;
+import java.util.List;
 
 import pityoulish.msgboard.MessageBatch;
 
@@ -29,6 +30,12 @@ public class ConsoleExpositorImpl implements Expositor
     if (mbreq.getText() != null)
        System.out.println(Catalog.DESCRIBE_REQUEST_TICKET_TEXT_2
                           .format(mbreq.getTicket(), mbreq.getText()));
+    else if (mbreq.getTexts() != null)
+     {
+       for (String text: mbreq.getTexts())
+          System.out.println(Catalog.DESCRIBE_REQUEST_TICKET_TEXT_2
+                             .format(mbreq.getTicket(), text));
+     }
     else if (mbreq.getTicket() != null)
        System.out.println(Catalog.DESCRIBE_REQUEST_TICKET_1
                           .format(mbreq.getTicket()));
@@ -61,6 +68,20 @@ public class ConsoleExpositorImpl implements Expositor
   }
 
 
+  public void describeMarkerList(MsgBoardResponse<List<String>> response)
+  {
+    if (response.isOK())
+     {
+       List<String> markers = response.getResult();
+       System.out.println(Catalog.DESCRIBE_MARKER_LIST_2
+                          .format(String.valueOf(markers.size()),
+                                  markers.get(markers.size()-1)));
+     }
+    else
+       System.out.println(response.getProblem()); // is a catalog message
+  }
+
+
   public void describeInfoResponse(MsgBoardResponse<String> response)
   {
     if (response.isOK())
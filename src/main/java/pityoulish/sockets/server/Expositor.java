@@ -6,6 +6,7 @@
 package pityoulish.sockets.server;
 
 import java.net.InetAddress;
+import java.util.List;
 
 import pityoulish.msgboard.MessageBatch;
 
@@ -46,6 +47,16 @@ public interface Expositor
     ;
 
 
+  /**
+   * Describe an outgoing list of markers.
+   *
+   * @param response    the response to describe,
+   *                    either marker list or error
+   */
+  public void describeMarkerList(MsgBoardResponse<List<String>> response)
+    ;
+
+
   /**
    * Describe an informational response.
    *
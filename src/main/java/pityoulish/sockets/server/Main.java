@@ -5,15 +5,19 @@
  */
 package pityoulish.sockets.server;
 
+import java.io.File;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
 import pityoulish.logutil.Log;
 import pityoulish.logutil.LogConfig;
+import pityoulish.msgboard.MessageChannels;
 import pityoulish.msgboard.MixedMessageBoard;
-import pityoulish.msgboard.MixedMessageBoardImpl;
+import pityoulish.msgboard.JournaledMessageBoardImpl;
+import pityoulish.msgboard.RingMessageBoardImpl;
 import pityoulish.tickets.TicketManager;
 import pityoulish.tickets.DefaultTicketManager;
+import pityoulish.tickets.LocalTicketStore;
 
 
 /**
@@ -24,6 +28,12 @@ public final class Main
 {
   protected final static Logger LOGGER = Log.getPackageLogger(Main.class);
 
+  /**
+   * The maximum time to wait for new messages, in seconds.
+   * Applies only to handler types with a thread per connection.
+   */
+  public final static int MAX_AWAIT_SECONDS = 30;
+
   /**
    * Main entry point.
    *
@@ -38,14 +48,21 @@ public final class Main
     //@@@ Use ArgsInterpreter and SingleCommandHandlerBase?
     int port = 2888; // default for the exercises
     int capacity = 8;
+    SocketHandlerType shtype = SocketHandlerType.SIMPLISTIC;
+    File journal = null;
 
     try {
       if (args.length > 0)
          port = Integer.parseInt(args[0]);
       if (args.length > 1)
          capacity = Integer.parseInt(args[1]);
-    } catch (NumberFormatException nfx) {
-      System.out.println(nfx);
+      if (args.length > 2)
+         shtype = SocketHandlerType.forName(args[2]);
+      if (args.length > 3)
+         journal = new File(args[3]);
+    } catch (IllegalArgumentException iax) {
+      // NumberFormatException is an IllegalArgumentException
+      System.out.println(iax);
       System.out.println(Catalog.fixEOL(Catalog.USAGE.lookup()));
       System.exit(1);
     }
@@ -53,13 +70,27 @@ public final class Main
     LogConfig.configure(Main.class);
     LOGGER.log(Level.INFO, "starting Message Board server");
 
-    MixedMessageBoard      mmb  = new MixedMessageBoardImpl(capacity);
-    TicketManager          tim  = new DefaultTicketManager();
+    // the board must be thread-safe for handlers with multiple threads
+    MixedMessageBoard      mmb  = null;
+    if (journal != null)
+     {
+       JournaledMessageBoardImpl jmb =
+         new JournaledMessageBoardImpl(capacity, journal);
+       jmb.startSnapshots(JournaledMessageBoardImpl.DEFAULT_SNAPSHOT_INTERVAL);
+       mmb = jmb;
+     }
+    else
+       mmb = new RingMessageBoardImpl(capacity);
+    LocalTicketStore       lts  = new LocalTicketStore();
+    lts.startReaper();
+    DefaultTicketManager   tim  = new DefaultTicketManager(lts);
 
     mmb.putSystemMessage(null, Catalog.SYSMSG_OPEN.lookup());
     mmb.putSystemMessage(null, Catalog.SYSMSG_CAPACITY_1.format(capacity));
 
-    SocketHandler shandler = createTLVSocketHandler(mmb, tim, true, true);
+    SocketHandler shandler = createTLVSocketHandler
+      (mmb, tim, new TLVHandlerOptions()
+       .setVerbose(true).setIPCheck(true).setHandlerType(shtype));
     shandler.startup(port, 0); // adjusting the backlog is pointless
 
     System.out.println(shandler);
@@ -90,16 +121,96 @@ public final class Main
                                                      boolean verbose,
                                                      boolean ipcheck)
   {
-    MsgBoardRequestHandler mbrh =
-      new MsgBoardRequestHandlerImpl(mmb, tim, ipcheck);
+    return createTLVSocketHandler(mmb, tim, new TLVHandlerOptions()
+                                  .setVerbose(verbose)
+                                  .setIPCheck(ipcheck));
+  }
+
+
+  /**
+   * Create a socket handler for the binary TLV protocol, with options.
+   *
+   * @param mmb   the message board to serve from
+   * @param tim   the ticket manager to serve from
+   * @param opts  the options for the handler
+   *
+   * @return the socket handler
+   */
+  public static SocketHandler createTLVSocketHandler(MixedMessageBoard mmb,
+                                                     TicketManager tim,
+                                                     TLVHandlerOptions opts)
+  {
+    MsgBoardRequestHandlerImpl mbrh = new MsgBoardRequestHandlerImpl
+      (mmb, tim, opts.checkClientIP, opts.getMaxAwaitSeconds());
+
+    return createTLVSocketHandler(mbrh, opts);
+  }
+
+
+  /**
+   * Create a socket handler for the binary TLV protocol, with options,
+   * serving several channels.
+   *
+   * @param mc    the message channels to serve from
+   * @param tim   the ticket manager to serve from
+   * @param opts  the options for the handler
+   *
+   * @return the socket handler
+   */
+  public static SocketHandler createTLVSocketHandler(MessageChannels mc,
+                                                     TicketManager tim,
+                                                     TLVHandlerOptions opts)
+  {
+    MsgBoardRequestHandlerImpl mbrh = new MsgBoardRequestHandlerImpl
+      (mc, tim, opts.checkClientIP, opts.getMaxAwaitSeconds());
+
+    return createTLVSocketHandler(mbrh, opts);
+  }
+
+
+  /**
+   * Create a socket handler for the binary TLV protocol,
+   * around an application-level request handler.
+   *
+   * @param mbrh  the application-level request handler
+   * @param opts  the options for the handler.
+   *              The IP check is already set in the request handler.
+   *
+   * @return the socket handler
+   */
+  protected static SocketHandler createTLVSocketHandler
+    (MsgBoardRequestHandlerImpl mbrh, TLVHandlerOptions opts)
+  {
+    mbrh.enableRateLimits(opts.userLimiter, opts.addressLimiter);
 
     RequestParser   reqp = new TLVRequestParserImpl();
-    ResponseBuilder rspb = new TLVResponseBuilderImpl();
+    ResponseBuilder rspb = new TLVResponseBuilderImpl(opts.cacheTLV);
 
     Expositor       ex = new ConsoleExpositorImpl();
     RequestHandler  rh = new RequestHandlerImpl(reqp, mbrh, rspb, ex);
 
-    SocketHandler shandler = new SimplisticSocketHandler(rh, verbose);
+    final boolean verbose = opts.beVerbose;
+    final WorkerPoolConfig wpc = opts.poolConfig;
+
+    SocketHandler shandler = null;
+    switch (opts.handlerType)
+     {
+       case SIMPLISTIC:
+         shandler = new SimplisticSocketHandler(rh, verbose);
+         break;
+       case NIO:
+         shandler = new NIOSocketHandler(rh, verbose);
+         break;
+       case POOLED:
+         shandler = new PooledSocketHandler(rh, verbose, wpc, false);
+         break;
+       case VIRTUAL:
+         shandler = new PooledSocketHandler(rh, verbose, wpc, true);
+         break;
+       default:
+         throw new UnsupportedOperationException
+           (String.valueOf(opts.handlerType));
+     }
 
     return shandler;
   }
@@ -5,6 +5,8 @@
  */
 package pityoulish.sockets.server;
 
+import java.util.List;
+
 
 /**
  * Represents a request to the Message Board Server.
@@ -23,7 +25,8 @@ public interface MsgBoardRequest
    */
   public enum ReqType {
     LIST_MESSAGES, PUT_MESSAGE,
-    OBTAIN_TICKET, RETURN_TICKET, REPLACE_TICKET;
+    OBTAIN_TICKET, RETURN_TICKET, REPLACE_TICKET,
+    KEEP_ALIVE, AWAIT_MESSAGES, SEARCH_MESSAGES, PUT_MESSAGES;
   };
 
 
@@ -43,6 +46,9 @@ public interface MsgBoardRequest
   public String getMarker()
     ;
 
+  public Integer getTimeout()
+    ;
+
   public String getTicket()
     ;
 
@@ -52,4 +58,34 @@ public interface MsgBoardRequest
   public String getOriginator()
     ;
 
+  /**
+   * Obtains the texts of several messages.
+   * Only requests to put several messages have texts,
+   * all others have at most one {@link #getText text}.
+   *
+   * @return    the texts, in order, or <code>null</code>
+   */
+  public List<String> getTexts()
+    ;
+
+  /**
+   * Obtains the channel name.
+   *
+   * @return    the channel, or
+   *            <code>null</code> for the default channel
+   */
+  public String getChannel()
+    ;
+
+  /**
+   * Checks whether only user messages are requested.
+   * In a request to list messages, the {@link #getOriginator originator}
+   * selects messages as well, if present.
+   *
+   * @return    <code>true</code> to list only user messages,
+   *            <code>false</code> to list system messages, too
+   */
+  public boolean isUserOnly()
+    ;
+
 }
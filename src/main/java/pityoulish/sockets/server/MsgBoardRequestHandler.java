@@ -6,6 +6,7 @@
 package pityoulish.sockets.server;
 
 import java.net.InetAddress;
+import java.util.List;
 
 import pityoulish.msgboard.MessageBatch;
 
@@ -45,6 +46,40 @@ public interface MsgBoardRequestHandler
     ;
 
     
+  /**
+   * Lists messages from the board, waiting for new ones if necessary.
+   *
+   * @param mbreq       the request to
+   *       {@link MsgBoardRequest.ReqType#AWAIT_MESSAGES AWAIT_MESSAGES}
+   * @param address     the network address of the client
+   *
+   * @return response holding a batch of listed messages or an error message
+   *
+   * @throws ProtocolException  in case of a problem
+   */
+  public MsgBoardResponse<MessageBatch>
+    awaitMessages(MsgBoardRequest mbreq, InetAddress address)
+    throws ProtocolException
+    ;
+
+    
+  /**
+   * Searches for messages on the board.
+   *
+   * @param mbreq       the request to
+   *       {@link MsgBoardRequest.ReqType#SEARCH_MESSAGES SEARCH_MESSAGES}
+   * @param address     the network address of the client
+   *
+   * @return response holding a batch of found messages or an error message
+   *
+   * @throws ProtocolException  in case of a problem
+   */
+  public MsgBoardResponse<MessageBatch>
+    searchMessages(MsgBoardRequest mbreq, InetAddress address)
+    throws ProtocolException
+    ;
+
+    
   /**
    * Puts a message on the board.
    *
@@ -62,6 +97,26 @@ public interface MsgBoardRequestHandler
     ;
 
     
+  /**
+   * Puts several messages on the board.
+   * Each message punches the ticket. If the ticket allows fewer actions
+   * than there are messages, only the first messages are put.
+   *
+   * @param mbreq       the request to
+   *       {@link MsgBoardRequest.ReqType#PUT_MESSAGES PUT_MESSAGES}
+   * @param address     the network address of the client
+   *
+   * @return response holding the markers of the new messages
+   *         or an error message
+   *
+   * @throws ProtocolException  in case of a problem
+   */
+  public MsgBoardResponse<List<String>>
+    putMessages(MsgBoardRequest mbreq, InetAddress address)
+    throws ProtocolException
+    ;
+
+    
   /**
    * Obtains a ticket for the board.
    *
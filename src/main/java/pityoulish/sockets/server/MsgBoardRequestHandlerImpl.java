@@ -6,17 +6,22 @@
 package pityoulish.sockets.server;
 
 import java.net.InetAddress;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import pityoulish.logutil.Log;
 import pityoulish.msgboard.MessageBatch;
+import pityoulish.msgboard.MessageChannels;
+import pityoulish.msgboard.MessageFilter;
+import pityoulish.msgboard.SearchableMessageBoard;
 import pityoulish.msgboard.UserMessageBoard;
 import pityoulish.msgboard.MSanityChecker;
 import pityoulish.tickets.Ticket;
 import pityoulish.tickets.TicketManager;
 import pityoulish.tickets.TicketException;
 import pityoulish.tickets.TSanityChecker;
+import pityoulish.mbserver.RateLimiter;
 import pityoulish.mbserver.StringProblemFactory;
 import pityoulish.sockets.server.MsgBoardRequest.ReqType;
 
@@ -30,14 +35,32 @@ public class MsgBoardRequestHandlerImpl implements MsgBoardRequestHandler
 
   protected final UserMessageBoard msgBoard;
 
+  /**
+   * The channels to serve from, or <code>null</code>.
+   * If present, {@link #msgBoard} is the default channel.
+   */
+  protected final MessageChannels msgChannels;
+
   protected final TicketManager ticketMgr;
 
   protected final boolean checkClientIP;
 
+  /**
+   * The maximum time to wait for new messages, in seconds.
+   * 0 if requests to await messages should not wait at all.
+   */
+  protected final int maxAwaitSeconds;
+
   protected final MSanityChecker<String> mboardSanityChecker;
 
   protected final TSanityChecker<String> ticketSanityChecker;
 
+  /** Limits write requests per username, or <code>null</code>. */
+  protected RateLimiter<String> userLimiter;
+
+  /** Limits write requests per client address, or <code>null</code>. */
+  protected RateLimiter<InetAddress> addressLimiter;
+
 
   /**
    * Creates a new application-level request handler.
@@ -51,6 +74,69 @@ public class MsgBoardRequestHandlerImpl implements MsgBoardRequestHandler
    */
   public MsgBoardRequestHandlerImpl(UserMessageBoard umb, TicketManager tm,
                                     boolean ipcheck)
+  {
+    this(umb, tm, ipcheck, 0);
+  }
+
+
+  /**
+   * Creates a new application-level request handler
+   * that can wait for new messages.
+   * Waiting blocks the calling thread. Socket handlers which serve all
+   * connections from a single thread must not wait for new messages.
+   *
+   * @param umb  the underlying message board
+   * @param tm   the underlying ticket manager
+   * @param ipcheck
+   *        <code>true</code> to check for unique client IP addresses
+   *        when granting tickets,
+   *        <code>false</code> to grant tickets regardless of client IP
+   * @param maxawait
+   *        the maximum time to wait for new messages, in seconds,
+   *        or 0 to never wait
+   */
+  public MsgBoardRequestHandlerImpl(UserMessageBoard umb, TicketManager tm,
+                                    boolean ipcheck, int maxawait)
+  {
+    this(umb, null, tm, ipcheck, maxawait);
+  }
+
+
+  /**
+   * Creates a new application-level request handler for several channels.
+   * Requests without a channel are served from the default channel.
+   *
+   * @param mc   the underlying message channels
+   * @param tm   the underlying ticket manager
+   * @param ipcheck
+   *        <code>true</code> to check for unique client IP addresses
+   *        when granting tickets,
+   *        <code>false</code> to grant tickets regardless of client IP
+   * @param maxawait
+   *        the maximum time to wait for new messages, in seconds,
+   *        or 0 to never wait
+   */
+  public MsgBoardRequestHandlerImpl(MessageChannels mc, TicketManager tm,
+                                    boolean ipcheck, int maxawait)
+  {
+    this(mc.getDefaultChannel(), mc, tm, ipcheck, maxawait);
+  }
+
+
+  /**
+   * Creates a new application-level request handler.
+   * Called by the public constructors.
+   *
+   * @param umb  the underlying message board, or default channel
+   * @param mc   the underlying message channels, or <code>null</code>
+   * @param tm   the underlying ticket manager
+   * @param ipcheck   see public constructors
+   * @param maxawait  see public constructors
+   */
+  protected MsgBoardRequestHandlerImpl(UserMessageBoard umb,
+                                       MessageChannels mc,
+                                       TicketManager tm,
+                                       boolean ipcheck, int maxawait)
   {
     if (umb == null)
        throw new NullPointerException("UserMessageBoard");
@@ -58,8 +144,10 @@ public class MsgBoardRequestHandlerImpl implements MsgBoardRequestHandler
        throw new NullPointerException("TicketManager");
 
     msgBoard  = umb;
+    msgChannels = mc;
     ticketMgr = tm;
     checkClientIP = ipcheck;
+    maxAwaitSeconds = Math.max(0, maxawait);
 
     StringProblemFactory spf = new StringProblemFactory();
     mboardSanityChecker = umb.newSanityChecker(spf);
@@ -67,6 +155,113 @@ public class MsgBoardRequestHandlerImpl implements MsgBoardRequestHandler
   }
 
 
+  /**
+   * Enables rate limits for write requests.
+   * Putting messages and obtaining, returning, or replacing tickets
+   * counts against the limits. Requests that exceed them are rejected
+   * before they reach the message board.
+   * Call this before the handler is used.
+   *
+   * @param users       the limits per username, or <code>null</code>
+   * @param addresses   the limits per client address, or <code>null</code>
+   */
+  public void enableRateLimits(RateLimiter<String> users,
+                               RateLimiter<InetAddress> addresses)
+  {
+    userLimiter    = users;
+    addressLimiter = addresses;
+  }
+
+
+  /**
+   * Checks the rate limits for a request.
+   *
+   * @param username    the username, or <code>null</code> to not check
+   * @param address     the client address, or <code>null</code> to not check
+   *
+   * @return    a problem description if a rate limit is exceeded,
+   *            <code>null</code> otherwise
+   */
+  protected String checkRateLimits(String username, InetAddress address)
+  {
+    return checkRateLimits(username, address, 1);
+  }
+
+
+  /**
+   * Checks the rate limits for a request that counts as several.
+   * The user takes one token for each message in a batch,
+   * the client address only one for the request.
+   *
+   * @param username    the username, or <code>null</code> to not check
+   * @param address     the client address, or <code>null</code> to not check
+   * @param permits     the number of tokens to take for the username
+   *
+   * @return    a problem description if a rate limit is exceeded,
+   *            <code>null</code> otherwise
+   */
+  protected String checkRateLimits(String username, InetAddress address,
+                                   int permits)
+  {
+    if ((address != null) && (addressLimiter != null) &&
+        !addressLimiter.tryAcquire(address))
+       return Catalog.HANDLER_RATE_LIMITED_1.format(address.getHostAddress());
+
+    if ((username != null) && (userLimiter != null) &&
+        !userLimiter.tryAcquire(username, permits))
+       return Catalog.HANDLER_RATE_LIMITED_1.format(username);
+
+    return null;
+  }
+
+
+  /**
+   * Checks the channel of a request, without creating it.
+   *
+   * @param channel     the channel from the request, or <code>null</code>
+   *
+   * @return    a problem description, or
+   *            <code>null</code> if the channel can be used
+   */
+  protected String checkChannel(String channel)
+  {
+    if (channel == null)
+       return null;
+
+    if (msgChannels == null)
+       return Catalog.CHANNELS_UNSUPPORTED_0.format();
+
+    return mboardSanityChecker.checkChannel(channel);
+  }
+
+
+  /**
+   * Selects the board for a request.
+   * Only requests with a valid ticket should create channels,
+   * because channels are never removed.
+   *
+   * @param channel     the channel from the request, or <code>null</code>
+   * @param create      whether to create the channel if it doesn't exist
+   *
+   * @return    the board of the channel, or
+   *            the default board if there is no channel
+   *
+   * @throws IllegalArgumentException
+   *    if the channel cannot be used, with a problem description
+   */
+  protected UserMessageBoard selectBoard(String channel, boolean create)
+  {
+    if (channel == null)
+       return msgBoard;
+
+    if (msgChannels == null)
+       throw new IllegalArgumentException
+         (Catalog.CHANNELS_UNSUPPORTED_0.format());
+
+    return msgChannels.getChannel(channel, create);
+  }
+
+
   // non-javadoc, see interface
   public MsgBoardResponse<MessageBatch>
     listMessages(MsgBoardRequest mbreq, InetAddress address)
@@ -79,7 +274,7 @@ public class MsgBoardRequestHandlerImpl implements MsgBoardRequestHandler
          ("MsgBoardRequest.getReqType()="+mbreq.getReqType());
     if (mbreq.getLimit() == null)
        throw new NullPointerException("MsgBoardRequest.getLimit()");
-    // getMarker() is optional, others will be ignored if present
+    // getMarker() and the filter are optional, others will be ignored
     if (address == null)
        throw new NullPointerException("InetAddress");
     // The value of adress is actually ignored, because no ticket is needed.
@@ -88,16 +283,134 @@ public class MsgBoardRequestHandlerImpl implements MsgBoardRequestHandler
     String problem = null;
     if (mbreq.getMarker() != null) // optional
        problem = mboardSanityChecker.checkMarker(mbreq.getMarker());
+    if ((problem == null) && (mbreq.getOriginator() != null)) // optional
+       problem = mboardSanityChecker.checkOriginator(mbreq.getOriginator());
     //@@@ sanity check for limit? Mustn't be zero or null.
     //@@@ sanity check for address? Mustn't be null.
+    UserMessageBoard umb = null;
+    if (problem == null)
+     {
+       try {
+         umb = selectBoard(mbreq.getChannel(), false);
+       } catch (IllegalArgumentException iax) {
+         problem = iax.getMessage();
+       }
+     }
+    if (problem != null)
+     {
+       logger.log(Level.WARNING, problem);
+       return new MsgBoardResponseImpl.BatchError(problem);
+     }
+
+    // the board applies the filter, only selected messages are sent
+    MessageFilter filter = null;
+    if ((mbreq.getOriginator() != null) || mbreq.isUserOnly())
+       filter = MessageFilter.newMixedFilter(mbreq.getOriginator(),
+                                             mbreq.isUserOnly());
+
+    return new MsgBoardResponseImpl.Batch
+      (umb.listMessages(mbreq.getLimit(), mbreq.getMarker(), filter));
+  }
+
+    
+  // non-javadoc, see interface
+  public MsgBoardResponse<MessageBatch>
+    awaitMessages(MsgBoardRequest mbreq, InetAddress address)
+    throws ProtocolException
+  {
+    if (mbreq == null)
+       throw new NullPointerException("MsgBoardRequest");
+    if (mbreq.getReqType() != ReqType.AWAIT_MESSAGES)
+       throw new IllegalArgumentException
+         ("MsgBoardRequest.getReqType()="+mbreq.getReqType());
+    if (mbreq.getLimit() == null)
+       throw new NullPointerException("MsgBoardRequest.getLimit()");
+    if (mbreq.getTimeout() == null)
+       throw new NullPointerException("MsgBoardRequest.getTimeout()");
+    // getMarker() is optional, others will be ignored if present
+    if (address == null)
+       throw new NullPointerException("InetAddress");
+
+    String problem = null;
+    if (mbreq.getMarker() != null) // optional
+       problem = mboardSanityChecker.checkMarker(mbreq.getMarker());
+    UserMessageBoard umb = null;
+    if (problem == null)
+     {
+       try {
+         umb = selectBoard(mbreq.getChannel(), false);
+       } catch (IllegalArgumentException iax) {
+         problem = iax.getMessage();
+       }
+     }
     if (problem != null)
      {
        logger.log(Level.WARNING, problem);
        return new MsgBoardResponseImpl.BatchError(problem);
      }
 
+    int seconds = Math.min(mbreq.getTimeout(), maxAwaitSeconds);
+
     return new MsgBoardResponseImpl.Batch
-      (msgBoard.listMessages(mbreq.getLimit(), mbreq.getMarker()));
+      (umb.awaitMessages(mbreq.getLimit(), mbreq.getMarker(),
+                         seconds * 1000L));
+  }
+
+    
+  // non-javadoc, see interface
+  public MsgBoardResponse<MessageBatch>
+    searchMessages(MsgBoardRequest mbreq, InetAddress address)
+    throws ProtocolException
+  {
+    if (mbreq == null)
+       throw new NullPointerException("MsgBoardRequest");
+    if (mbreq.getReqType() != ReqType.SEARCH_MESSAGES)
+       throw new IllegalArgumentException
+         ("MsgBoardRequest.getReqType()="+mbreq.getReqType());
+    if (mbreq.getLimit() == null)
+       throw new NullPointerException("MsgBoardRequest.getLimit()");
+    if (mbreq.getText() == null)
+       throw new NullPointerException("MsgBoardRequest.getText()");
+    // getMarker() is optional, others will be ignored if present
+    if (address == null)
+       throw new NullPointerException("InetAddress");
+
+    String problem = null;
+    if (mbreq.getMarker() != null) // optional
+       problem = mboardSanityChecker.checkMarker(mbreq.getMarker());
+    SearchableMessageBoard smb = null;
+    if (problem == null)
+     {
+       try {
+         UserMessageBoard umb = selectBoard(mbreq.getChannel(), false);
+         if ((umb instanceof SearchableMessageBoard) &&
+             ((SearchableMessageBoard) umb).isSearchEnabled())
+            smb = (SearchableMessageBoard) umb;
+         else
+            problem = Catalog.SEARCH_UNSUPPORTED_0.format();
+       } catch (IllegalArgumentException iax) {
+         problem = iax.getMessage();
+       }
+     }
+
+    MessageBatch batch = null;
+    if (problem == null)
+     {
+       try {
+         // the board checks the query
+         batch = smb.searchMessages(mbreq.getText(), mbreq.getLimit(),
+                                    mbreq.getMarker());
+       } catch (IllegalArgumentException iax) {
+         problem = iax.getMessage();
+       }
+     }
+    if (problem != null)
+     {
+       logger.log(Level.WARNING, problem);
+       return new MsgBoardResponseImpl.BatchError(problem);
+     }
+
+    return new MsgBoardResponseImpl.Batch(batch);
   }
 
     
@@ -122,6 +435,10 @@ public class MsgBoardRequestHandlerImpl implements MsgBoardRequestHandler
     if (problem == null)
        problem = mboardSanityChecker.checkText(mbreq.getText());
     //@@@ sanity check for address? Mustn't be null.
+    if (problem == null)
+       problem = checkRateLimits(null, address);
+    if (problem == null)
+       problem = checkChannel(mbreq.getChannel());
     if (problem != null)
      {
        logger.log(Level.WARNING, problem);
@@ -130,9 +447,26 @@ public class MsgBoardRequestHandlerImpl implements MsgBoardRequestHandler
 
     try {
       Ticket tick = ticketMgr.lookupTicket(mbreq.getTicket(), address, null);
+      problem = checkRateLimits(tick.getUsername(), null);
+      UserMessageBoard umb = null;
+      if (problem == null)
+       {
+         try {
+           // a valid ticket is needed to create a channel
+           umb = selectBoard(mbreq.getChannel(), true);
+         } catch (IllegalArgumentException iax) {
+           problem = iax.getMessage();
+         }
+       }
+      if (problem != null)
+       {
+         logger.log(Level.WARNING, problem);
+         return new MsgBoardResponseImpl.Error(problem);
+       }
+
       if (tick.punch())
        {
-         msgBoard.putMessage(tick.getUsername(), mbreq.getText());
+         umb.putMessage(tick.getUsername(), mbreq.getText());
        }
       else
        {
@@ -155,6 +489,86 @@ public class MsgBoardRequestHandlerImpl implements MsgBoardRequestHandler
   }
 
     
+  // non-javadoc, see interface
+  public MsgBoardResponse<List<String>>
+    putMessages(MsgBoardRequest mbreq, InetAddress address)
+    throws ProtocolException
+  {
+    if (mbreq == null)
+       throw new NullPointerException("MsgBoardRequest");
+    if (mbreq.getReqType() != ReqType.PUT_MESSAGES)
+       throw new IllegalArgumentException
+         ("MsgBoardRequest.getReqType()="+mbreq.getReqType());
+    if (mbreq.getTicket() == null)
+       throw new NullPointerException("MsgBoardRequest.getTicket()");
+    if (mbreq.getTexts() == null)
+       throw new NullPointerException("MsgBoardRequest.getTexts()");
+    if (address == null)
+       throw new NullPointerException("InetAddress");
+
+    List<String> texts = mbreq.getTexts();
+    String problem = ticketSanityChecker.checkToken(mbreq.getTicket());
+    if (problem == null)
+       problem = mboardSanityChecker.checkBatchSize(texts.size());
+    for (int i=0; (problem == null) && (i < texts.size()); i++)
+       problem = mboardSanityChecker.checkText(texts.get(i));
+    if (problem == null)
+       problem = checkRateLimits(null, address);
+    if (problem == null)
+       problem = checkChannel(mbreq.getChannel());
+    if (problem != null)
+     {
+       logger.log(Level.WARNING, problem);
+       return new MsgBoardResponseImpl.MarkersError(problem);
+     }
+
+    List<String> markers = null;
+    try {
+      Ticket tick = ticketMgr.lookupTicket(mbreq.getTicket(), address, null);
+      problem = checkRateLimits(tick.getUsername(), null, texts.size());
+      UserMessageBoard umb = null;
+      if (problem == null)
+       {
+         try {
+           // a valid ticket is needed to create a channel
+           umb = selectBoard(mbreq.getChannel(), true);
+         } catch (IllegalArgumentException iax) {
+           problem = iax.getMessage();
+         }
+       }
+      if (problem != null)
+       {
+         logger.log(Level.WARNING, problem);
+         return new MsgBoardResponseImpl.MarkersError(problem);
+       }
+
+      // each message punches the ticket, those paid for are put together
+      int punched = 0;
+      while ((punched < texts.size()) && tick.punch())
+         punched++;
+      if (punched == 0)
+         throw Log.log(logger, "putMessages",
+                       Catalog.HANDLER_TICKET_USED_UP_1.asPX(tick.getToken()));
+
+      try {
+        markers = umb.putMessages(tick.getUsername(),
+                                  texts.subList(0, punched));
+      } catch (RuntimeException rx) {
+        // the batch failed, the punches are given back
+        tick.refund(punched);
+        throw rx;
+      }
+
+    } catch (TicketException tx) {
+      throw Log.log(logger, "putMessages",
+                    Catalog.HANDLER_BAD_TICKET_2.asPXwithCause
+                    (tx, mbreq.getTicket(), tx.getLocalizedMessage()));
+    }
+
+    return new MsgBoardResponseImpl.Markers(markers);
+  }
+
+    
   // non-javadoc, see interface
   public MsgBoardResponse<String>
     obtainTicket(MsgBoardRequest mbreq, InetAddress address)
@@ -169,6 +583,8 @@ public class MsgBoardRequestHandlerImpl implements MsgBoardRequestHandler
        throw new NullPointerException("MsgBoardRequest.getOriginator()");
     // other values in mbreq will be ignored
 
+    // rate limits apply to the client address even without the IP check
+    final InetAddress client = address;
     if (checkClientIP)
      {
        // must have an address to check
@@ -187,6 +603,9 @@ public class MsgBoardRequestHandlerImpl implements MsgBoardRequestHandler
       mboardSanityChecker.checkOriginator(mbreq.getOriginator());
     if (problem == null)
        problem = ticketSanityChecker.checkUsername(mbreq.getOriginator());
+    // the originator is not authenticated, so only the address is charged
+    if (problem == null)
+       problem = checkRateLimits(null, client);
     if (problem != null)
      {
        logger.log(Level.WARNING, problem);
@@ -225,6 +644,8 @@ public class MsgBoardRequestHandlerImpl implements MsgBoardRequestHandler
 
     String problem = ticketSanityChecker.checkToken(mbreq.getTicket());
     //@@@ sanity check for address? Mustn't be null.
+    if (problem == null)
+       problem = checkRateLimits(null, address);
     if (problem != null)
      {
        logger.log(Level.WARNING, problem);
@@ -263,6 +684,8 @@ public class MsgBoardRequestHandlerImpl implements MsgBoardRequestHandler
 
     String problem = ticketSanityChecker.checkToken(mbreq.getTicket());
     //@@@ sanity check for address? Mustn't be null.
+    if (problem == null)
+       problem = checkRateLimits(null, address);
     if (problem != null)
      {
        logger.log(Level.WARNING, problem);
@@ -271,6 +694,12 @@ public class MsgBoardRequestHandlerImpl implements MsgBoardRequestHandler
 
     try {
       Ticket tick = ticketMgr.lookupTicket(mbreq.getTicket(), address, null);
+      problem = checkRateLimits(tick.getUsername(), null);
+      if (problem != null)
+       {
+         logger.log(Level.WARNING, problem);
+         return new MsgBoardResponseImpl.Error(problem);
+       }
       ticketMgr.returnTicket(tick);
 
       tick = ticketMgr.obtainTicket(tick.getUsername(), address, null);
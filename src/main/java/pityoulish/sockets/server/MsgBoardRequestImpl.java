@@ -5,6 +5,9 @@
  */
 package pityoulish.sockets.server;
 
+import java.util.Collections;
+import java.util.List;
+
 
 /**
  * Default implementation of {@link MsgBoardRequest}.
@@ -24,6 +27,14 @@ public class MsgBoardRequestImpl implements MsgBoardRequest
 
   public final String mbrOriginator;
 
+  public final Integer mbrTimeout;
+
+  public final String mbrChannel;
+
+  public final boolean mbrUserOnly;
+
+  public final List<String> mbrTexts;
+
 
   /**
    * Creates a new request object.
@@ -41,6 +52,112 @@ public class MsgBoardRequestImpl implements MsgBoardRequest
                              String tick,
                              String txt,
                              String orig)
+  {
+    this(rt, lim, mark, tick, txt, orig, null);
+  }
+
+
+  /**
+   * Creates a new request object with a timeout.
+   *
+   * @param rt    the request type
+   * @param lim   the limit, or <code>null</code>
+   * @param mark  the marker, or <code>null</code>
+   * @param tick  the ticket token, or <code>null</code>
+   * @param txt   the message text, or <code>null</code>
+   * @param orig  the originator, or <code>null</code>
+   * @param tmo   the timeout in seconds, or <code>null</code>
+   */
+  public MsgBoardRequestImpl(ReqType rt,
+                             Integer lim,
+                             String mark,
+                             String tick,
+                             String txt,
+                             String orig,
+                             Integer tmo)
+  {
+    this(rt, lim, mark, tick, txt, orig, tmo, null);
+  }
+
+
+  /**
+   * Creates a new request object with a timeout and a channel.
+   *
+   * @param rt    the request type
+   * @param lim   the limit, or <code>null</code>
+   * @param mark  the marker, or <code>null</code>
+   * @param tick  the ticket token, or <code>null</code>
+   * @param txt   the message text, or <code>null</code>
+   * @param orig  the originator, or <code>null</code>
+   * @param tmo   the timeout in seconds, or <code>null</code>
+   * @param chan  the channel, or <code>null</code>
+   */
+  public MsgBoardRequestImpl(ReqType rt,
+                             Integer lim,
+                             String mark,
+                             String tick,
+                             String txt,
+                             String orig,
+                             Integer tmo,
+                             String chan)
+  {
+    this(rt, lim, mark, tick, txt, orig, tmo, chan, false);
+  }
+
+
+  /**
+   * Creates a new request object with a timeout, a channel,
+   * and a selection of messages.
+   *
+   * @param rt    the request type
+   * @param lim   the limit, or <code>null</code>
+   * @param mark  the marker, or <code>null</code>
+   * @param tick  the ticket token, or <code>null</code>
+   * @param txt   the message text, or <code>null</code>
+   * @param orig  the originator, or <code>null</code>
+   * @param tmo   the timeout in seconds, or <code>null</code>
+   * @param chan  the channel, or <code>null</code>
+   * @param uo    <code>true</code> to select only user messages
+   */
+  public MsgBoardRequestImpl(ReqType rt,
+                             Integer lim,
+                             String mark,
+                             String tick,
+                             String txt,
+                             String orig,
+                             Integer tmo,
+                             String chan,
+                             boolean uo)
+  {
+    this(rt, lim, mark, tick, txt, orig, tmo, chan, uo, null);
+  }
+
+
+  /**
+   * Creates a new request object with all attributes,
+   * including the texts of several messages.
+   *
+   * @param rt    the request type
+   * @param lim   the limit, or <code>null</code>
+   * @param mark  the marker, or <code>null</code>
+   * @param tick  the ticket token, or <code>null</code>
+   * @param txt   the message text, or <code>null</code>
+   * @param orig  the originator, or <code>null</code>
+   * @param tmo   the timeout in seconds, or <code>null</code>
+   * @param chan  the channel, or <code>null</code>
+   * @param uo    <code>true</code> to select only user messages
+   * @param txts  the message texts, or <code>null</code>
+   */
+  public MsgBoardRequestImpl(ReqType rt,
+                             Integer lim,
+                             String mark,
+                             String tick,
+                             String txt,
+                             String orig,
+                             Integer tmo,
+                             String chan,
+                             boolean uo,
+                             List<String> txts)
   {
     if (rt == null)
        throw new NullPointerException("ReqType");
@@ -52,6 +169,10 @@ public class MsgBoardRequestImpl implements MsgBoardRequest
     mbrTicket = tick;
     mbrText = txt;
     mbrOriginator = orig;
+    mbrTimeout = tmo;
+    mbrChannel = chan;
+    mbrUserOnly = uo;
+    mbrTexts = (txts == null) ? null : Collections.unmodifiableList(txts);
   }
 
 
@@ -61,12 +182,34 @@ public class MsgBoardRequestImpl implements MsgBoardRequest
                                    lim, mark, null, null, null);
   }
 
+  public static MsgBoardRequest newAwaitMessages(Integer lim, String mark,
+                                                 Integer tmo)
+  {
+    return new MsgBoardRequestImpl(ReqType.AWAIT_MESSAGES,
+                                   lim, mark, null, null, null, tmo);
+  }
+
+  public static MsgBoardRequest newSearchMessages(Integer lim, String mark,
+                                                  String txt)
+  {
+    return new MsgBoardRequestImpl(ReqType.SEARCH_MESSAGES,
+                                   lim, mark, null, txt, null);
+  }
+
   public static MsgBoardRequest newPutMessage(String tick, String txt)
   {
     return new MsgBoardRequestImpl(ReqType.PUT_MESSAGE,
                                    null, null, tick, txt, null);
   }
 
+  public static MsgBoardRequest newPutMessages(String tick,
+                                               List<String> txts)
+  {
+    return new MsgBoardRequestImpl(ReqType.PUT_MESSAGES,
+                                   null, null, tick, null, null,
+                                   null, null, false, txts);
+  }
+
   public static MsgBoardRequest newObtainTicket(String orig)
   {
     return new MsgBoardRequestImpl(ReqType.OBTAIN_TICKET,
@@ -85,6 +228,12 @@ public class MsgBoardRequestImpl implements MsgBoardRequest
                                    null, null, tick, null, null);
   }
 
+  public static MsgBoardRequest newKeepAlive()
+  {
+    return new MsgBoardRequestImpl(ReqType.KEEP_ALIVE,
+                                   null, null, null, null, null);
+  }
+
 
 
   public final ReqType getReqType()
@@ -102,6 +251,11 @@ public class MsgBoardRequestImpl implements MsgBoardRequest
     return mbrMarker;
   }
 
+  public final Integer getTimeout()
+  {
+    return mbrTimeout;
+  }
+
   public final String getTicket()
   {
     return mbrTicket;
@@ -117,6 +271,21 @@ public class MsgBoardRequestImpl implements MsgBoardRequest
     return mbrOriginator;
   }
 
+  public final String getChannel()
+  {
+    return mbrChannel;
+  }
+
+  public final boolean isUserOnly()
+  {
+    return mbrUserOnly;
+  }
+
+  public final List<String> getTexts()
+  {
+    return mbrTexts;
+  }
+
 
   public String toString()
   {
@@ -134,6 +303,17 @@ public class MsgBoardRequestImpl implements MsgBoardRequest
        sb.append(":\"").append(mbrText).append("\"");
     if (mbrOriginator != null)
        sb.append('@').append(mbrOriginator);
+    if (mbrTimeout != null)
+       sb.append('~').append(mbrTimeout);
+    if (mbrChannel != null)
+       sb.append('/').append(mbrChannel);
+    if (mbrUserOnly)
+       sb.append('!');
+    if (mbrTexts != null)
+     {
+       for (String text: mbrTexts)
+          sb.append(":\"").append(text).append("\"");
+     }
 
     return sb.toString();
   }
@@ -5,6 +5,8 @@
  */
 package pityoulish.sockets.server;
 
+import java.util.List;
+
 import pityoulish.msgboard.MessageBatch;
 
 
@@ -97,6 +99,24 @@ public class MsgBoardResponseImpl<R> implements MsgBoardResponse<R>
   }
 
 
+  public static class Markers extends MsgBoardResponseImpl<List<String>>
+  {
+    public Markers(List<String> markers)
+    {
+      super(markers);
+    }
+  }
+
+
+  public static class MarkersError extends MsgBoardResponseImpl<List<String>>
+  {
+    public MarkersError(String problem)
+    {
+      super((Class<List<String>>) null, problem);
+    }
+  }
+
+
 
   // non-javadoc, see interface
   public final boolean isOK()
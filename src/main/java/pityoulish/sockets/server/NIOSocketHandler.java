@@ -0,0 +1,674 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.sockets.server;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.logging.Logger;
+
+import pityoulish.logutil.Log;
+import pityoulish.sockets.tlv.MsgBoardTLV;
+
+
+/**
+ * Socket IO handler for the example protocol, with non-blocking IO.
+ * A single thread uses a {@link Selector} to multiplex between the
+ * server socket and all connected clients. Requests are read in pieces
+ * as data arrives, so a slow client does not delay any other client.
+ * <br>
+ * The {@link RequestHandler} is invoked on the selector thread, too.
+ * That is acceptable only while it operates in memory. A request handler
+ * that waits for a journal on disk or for a remote ticket store would
+ * stall every connection while it waits, so this handler must not be
+ * used with either.
+ * Limits and deadlines are the same as in {@link SimplisticSocketHandler}.
+ * <br>
+ * Connections are kept alive if the client asks for it. Idle connections
+ * cost no thread, only a little memory, so this handler is well suited
+ * for many clients polling over long-lived connections.
+ */
+public class NIOSocketHandler extends SocketHandlerBase
+  implements Runnable
+{
+  protected final Logger logger = Log.getPackageLogger(this.getClass());
+
+  /** The thread executing this handler. */
+  protected volatile Thread handlerThread;
+
+  /** Whether to print info about incoming connections. */
+  protected final boolean printConnectionInfo;
+
+  /** The channel for accepting connections. */
+  protected ServerSocketChannel srvChannel;
+
+  /** The selector, for the server channel and all connections. */
+  protected Selector connSelector;
+
+  /** When to check for expired deadlines next, in milliseconds. */
+  protected long nextDeadlineCheck;
+
+
+  public final static int  MAX_REQUEST_SIZE =
+    SimplisticSocketHandler.MAX_REQUEST_SIZE;
+  public final static long RCV_DEADLINE     =
+    SimplisticSocketHandler.RCV_DEADLINE;
+
+  /** How often to check for expired deadlines, in milliseconds. */
+  public final static long DEADLINE_CHECK_INTERVAL =
+    SimplisticSocketHandler.RCV_SO_TIMEOUT;
+
+
+
+  /**
+   * Creates a new non-blocking handler for incoming requests.
+   *
+   * @param reqh        the underlying request handler
+   * @param verbose     whether to print info about incoming connections
+   */
+  public NIOSocketHandler(RequestHandler reqh, boolean verbose)
+  {
+    super(reqh);
+    printConnectionInfo = verbose;
+  }
+
+
+
+  /**
+   * Creates a socket and starts a thread servicing it.
+   *
+   * @param port        the port number, or 0 for some free port
+   * @param backlog     the length of the backlog,
+   *                    0 or negative for the default length
+   *
+   * @throws Exception  in case of a problem
+   */
+  public synchronized void startup(int port, int backlog)
+    throws Exception
+  {
+    if (handlerThread != null)
+       throw new IllegalStateException("already started");
+
+    initServerSocket(port, backlog);
+
+    handlerThread = new Thread(this);
+    handlerThread.setDaemon(true);
+    handlerThread.start();
+  }
+
+
+  /**
+   * Initializes {@link #srvChannel}, {@link #srvSocket},
+   * and {@link #connSelector}.
+   *
+   * @param port        the port number, or 0 for some free port
+   * @param backlog     the length of the backlog,
+   *                    0 or negative for the default length
+   *
+   * @throws IOException        in case of a problem
+   */
+  protected void initServerSocket(int port, int backlog)
+    throws IOException
+  {
+    srvChannel = ServerSocketChannel.open();
+    srvSocket  = srvChannel.socket();
+    srvSocket.setReuseAddress(true);
+    srvSocket.bind(new InetSocketAddress(port), backlog);
+    srvChannel.configureBlocking(false);
+
+    connSelector = Selector.open();
+    srvChannel.register(connSelector, SelectionKey.OP_ACCEPT);
+  }
+
+
+  /**
+   * Shuts down the thread and socket.
+   * Open connections are closed by the handler thread before it ends.
+   *
+   * @throws Exception  in case of a problem
+   */
+  public synchronized void shutdown()
+    throws Exception
+  {
+    handlerThread = null; // tell thread to die
+    if (connSelector != null)
+       connSelector.wakeup();
+
+    if (srvChannel != null)
+       srvChannel.close();
+  }
+
+
+  /**
+   * Executed by the thread running this handler.
+   */
+  public void run()
+  {
+    final Thread runner = Thread.currentThread();
+    nextDeadlineCheck = System.currentTimeMillis() + DEADLINE_CHECK_INTERVAL;
+
+    // access to handlerThread not synchronized, the attribute is volatile
+    while (handlerThread == runner)
+     {
+       try
+        {
+          selectAndServe();
+        }
+       catch (Exception x)
+        {
+          Log.log(logger, "SocketHandler", x);
+          System.out.println(x.toString());
+        }
+     }
+
+    closeAll();
+  }
+
+
+  /**
+   * Waits for ready channels and serves them.
+   * Repeatedly called by {@link #run}.
+   * Blocks until there is a ready channel or the deadline check is due.
+   *
+   * @throws IOException      in case of a problem with the selector
+   */
+  protected void selectAndServe()
+    throws IOException
+  {
+    connSelector.select(DEADLINE_CHECK_INTERVAL);
+
+    Iterator<SelectionKey> keys = connSelector.selectedKeys().iterator();
+    while (keys.hasNext())
+     {
+       SelectionKey key = keys.next();
+       keys.remove();
+
+       try
+        {
+          if (!key.isValid())
+             continue;
+
+          if (key.isAcceptable())
+             acceptConnection();
+          else if (key.isReadable())
+             readRequest(key);
+          else if (key.isWritable())
+             sendResponse(key);
+        }
+       catch (ProtocolException px)
+        {
+          // stack trace already logged when thrown
+          System.out.println(px.toString());
+        }
+       catch (Exception x)
+        {
+          Log.log(logger, "SocketHandler", x);
+          System.out.println(x.toString());
+          if (key.attachment() != null)
+             closeConnection(key, x);
+        }
+     }
+
+    long now = System.currentTimeMillis();
+    if (now >= nextDeadlineCheck)
+     {
+       expireConnections(now);
+       nextDeadlineCheck = now + DEADLINE_CHECK_INTERVAL;
+     }
+  }
+
+
+  /**
+   * Accepts pending connections and registers them with the selector.
+   *
+   * @throws IOException      in case of a problem
+   */
+  protected void acceptConnection()
+    throws IOException
+  {
+    SocketChannel chan = srvChannel.accept();
+    while (chan != null)
+     {
+       chan.configureBlocking(false);
+
+       if (printConnectionInfo)
+        {
+          StringBuilder sb = new StringBuilder(120);
+          sb.append(handlerName)
+            .append(": ")
+            .append(Catalog.RECEIVE_FROM_1
+                    .format(chan.socket().getRemoteSocketAddress()));
+          System.out.println(sb);
+        }
+
+       Connection conn = new Connection(chan.socket().getInetAddress(),
+                                        System.currentTimeMillis() +
+                                        RCV_DEADLINE);
+       chan.register(connSelector, SelectionKey.OP_READ, conn);
+
+       chan = srvChannel.accept();
+     }
+  }
+
+
+  /**
+   * Reads available data for a request.
+   * If the request is complete, it gets handled and
+   * sending of the response is started.
+   *
+   * @param key   the selection key of the connection
+   *
+   * @throws Exception  in case of a problem
+   */
+  protected void readRequest(SelectionKey key)
+    throws Exception
+  {
+    SocketChannel chan = (SocketChannel) key.channel();
+    Connection    conn = (Connection) key.attachment();
+
+    final boolean first = (conn.inbuf.position() == 0) && !conn.keepAlive;
+    int count = chan.read(conn.inbuf);
+
+    if (conn.idle)
+     {
+       if (count < 0)
+        {
+          // kept-alive connection closed by the client
+          closeConnection(key, null);
+          return;
+        }
+       if (conn.inbuf.position() > 0)
+          conn.startRequest(System.currentTimeMillis() + RCV_DEADLINE);
+     }
+
+    processRequest(key, first, (count < 0));
+  }
+
+
+  /**
+   * Checks the data received for a request.
+   * If the request is complete, it gets handled and
+   * sending of the response is started.
+   *
+   * @param key   the selection key of the connection
+   * @param first <code>true</code> if the data was received in the
+   *              first block of a new connection
+   * @param eof   <code>true</code> if the client closed the connection
+   *
+   * @throws Exception  in case of a problem
+   */
+  protected void processRequest(SelectionKey key, boolean first, boolean eof)
+    throws Exception
+  {
+    Connection conn = (Connection) key.attachment();
+
+    // Read the first 4 bytes of data, expected in first block of data.
+    // Clients that try to send data byte for byte will be kicked out.
+    // On kept-alive connections, requests may be split anywhere.
+    if (conn.inbuf.position() < 4)
+     {
+       if (first || (eof && (conn.inbuf.position() == 0)))
+          throw cancelRequest
+            (Catalog.RECEIVE_INITIAL_BLOCK_TOO_SMALL_0.format(), key);
+       if (eof)
+          throw cancelRequest(Catalog.RECEIVE_INCOMPLETE_0.format(), key);
+       return;
+     }
+
+    if (conn.expected < 0)
+       conn.expected = checkHeader(conn.inbuf.array(), key);
+
+    if (conn.inbuf.position() < conn.expected)
+     {
+       if (eof)
+          throw cancelRequest(Catalog.RECEIVE_INCOMPLETE_0.format(), key);
+       return;
+     }
+
+    ByteBuffer request = ByteBuffer.wrap(conn.inbuf.array(), 0, conn.expected);
+    ByteBuffer response = null;
+    try {
+      response = reqHandler.handle(request, conn.address);
+    } catch (RuntimeException rx) {
+      System.out.println(rx.toString());
+      closeConnection(key, rx);
+      throw rx;
+    }
+
+    if (!conn.keepAlive)
+       conn.keepAlive = isKeepAliveGranted(request, response);
+
+    // excess data beyond the request is ignored, unless kept alive
+    if (conn.keepAlive)
+       conn.consumeRequest();
+
+    conn.setResponse(response);
+    key.interestOps(SelectionKey.OP_WRITE);
+    sendResponse(key);
+  }
+
+
+  /**
+   * Checks the header of a request.
+   * Requests are in TLV format, see ASN.1 BER
+   * <br>byte 1: type of the request
+   * <br>byte 2: length of length, value 0x82 indicating 2 bytes for the length
+   * <br>byte 3: upper byte of length
+   * <br>byte 4: lower byte of length
+   *
+   * @param data  the first 4 bytes of the request
+   * @param key   the selection key of the connection
+   *
+   * @return    the total size of the request, including the header
+   *
+   * @throws ProtocolException  if the header is not acceptable
+   */
+  protected int checkHeader(byte[] data, SelectionKey key)
+    throws ProtocolException
+  {
+    if ((data[0] & 0xe0) != 0xe0) // expect bits: 111xxxx
+     {
+       throw cancelRequest(Catalog.RECEIVE_BAD_TYPE_1
+                           .format("0x"+Integer.toHexString(data[0] & 0xff)),
+                           key);
+     }
+
+    if (data[1] != MsgBoardTLV.LENGTH_OF_LENGTH_2)
+     {
+       throw cancelRequest(Catalog.RECEIVE_BAD_LEN_OF_LEN_1
+                           .format("0x"+Integer.toHexString(data[1] & 0xff)),
+                           key);
+     }
+
+    int length = ((data[2] & 0xff)<<8) + (data[3] & 0xff);
+    int size = length+4;
+    if (size > MAX_REQUEST_SIZE)
+     {
+       throw cancelRequest(Catalog.RECEIVE_TOO_LONG_2
+                           .format(length, MAX_REQUEST_SIZE), key);
+     }
+
+    return size;
+  }
+
+
+  /**
+   * Sends as much of the response as possible without blocking.
+   * Like {@link SimplisticSocketHandler#sendResponse}, the response is
+   * not sent in one go. The first part is written, and the rest only
+   * when the channel becomes writable again. After the response has
+   * been sent completely, the connection is closed, or kept alive for
+   * the next request. Requests that have already been received
+   * are processed immediately, in order.
+   *
+   * @param key   the selection key of the connection
+   *
+   * @throws Exception  in case of a problem
+   */
+  protected void sendResponse(SelectionKey key)
+    throws Exception
+  {
+    SocketChannel chan = (SocketChannel) key.channel();
+    Connection    conn = (Connection) key.attachment();
+
+    chan.write(conn.outbuf);
+    if (conn.outbuf.hasRemaining())
+       return;
+
+    if (conn.outbuf.limit() < conn.outlimit)
+     {
+       // first part is out, send the rest when writable next time
+       conn.outbuf.limit(conn.outlimit);
+       return;
+     }
+
+    if (!conn.keepAlive)
+     {
+       closeConnection(key, null);
+       return;
+     }
+
+    conn.outbuf = null;
+    key.interestOps(SelectionKey.OP_READ);
+    if (conn.inbuf.position() > 0)
+     {
+       // pipelined, the next request has been received partially or fully
+       conn.startRequest(System.currentTimeMillis() + RCV_DEADLINE);
+       processRequest(key, false, false);
+     }
+    else
+     {
+       conn.startIdle(System.currentTimeMillis() + KEEP_ALIVE_TIMEOUT);
+     }
+  }
+
+
+  /**
+   * Cancels a request.
+   * An error response is sent back to the client, if that is possible
+   * without blocking, then the connection is closed. An exception is
+   * returned and can be thrown by the caller.
+   *
+   * @param reason      the reason for cancelling this request
+   * @param key         the selection key of the connection
+   *
+   * @return    an exception with the given <code>reason</code>,
+   *            to be thrown by the caller
+   */
+  public ProtocolException cancelRequest(String reason, SelectionKey key)
+  {
+    ProtocolException result = new ProtocolException(reason);
+
+    try {
+      ByteBuffer response = reqHandler.buildErrorResponse(result);
+      ((SocketChannel) key.channel()).write(response);
+    } catch (Exception ignore) {
+      result.addSuppressed(ignore);
+    }
+    closeConnection(key, result);
+    Log.log(logger, "SocketHandler", result);
+
+    return result;
+  }
+
+
+  /**
+   * Closes expired connections.
+   * Clients have {@link #RCV_DEADLINE} milliseconds to send a request and
+   * receive the response. Sending byte by byte to avoid timeouts does not
+   * help, but it doesn't affect other clients either.
+   * Kept-alive connections may be idle for {@link #KEEP_ALIVE_TIMEOUT}
+   * milliseconds between requests.
+   *
+   * @param now   the current time, in milliseconds
+   */
+  protected void expireConnections(long now)
+  {
+    for (SelectionKey key : connSelector.keys())
+     {
+       Connection conn = (Connection) key.attachment();
+       if ((conn == null) || !key.isValid() || (now <= conn.deadline))
+          continue;
+
+       if (conn.idle)
+        {
+          // kept-alive connection without further requests
+          closeConnection(key, null);
+        }
+       else if (conn.outbuf == null)
+        {
+          ProtocolException px = cancelRequest
+            (Catalog.RECEIVE_DEADLINE_EXPIRED_0.format(), key);
+          System.out.println(px.toString());
+        }
+       else
+        {
+          // response partially sent, no point in sending an error
+          closeConnection(key, null);
+        }
+     }
+  }
+
+
+  /**
+   * Closes a connection.
+   *
+   * @param key     the selection key of the connection
+   * @param cause   the exception that causes closing, or <code>null</code>.
+   *                Problems while closing are added as suppressed.
+   */
+  protected void closeConnection(SelectionKey key, Throwable cause)
+  {
+    key.cancel();
+    try {
+      key.channel().close();
+    } catch (Exception x) {
+      if (cause != null)
+         cause.addSuppressed(x);
+    }
+  }
+
+
+  /**
+   * Closes the selector and all remaining connections.
+   * Called when the handler thread ends.
+   */
+  protected void closeAll()
+  {
+    try {
+      for (SelectionKey key : connSelector.keys())
+       {
+         if (key.attachment() != null)
+            closeConnection(key, null);
+       }
+      connSelector.close();
+    } catch (Exception x) {
+      Log.log(logger, "closeAll", x);
+    }
+  }
+
+
+  // non-javadoc, see base class SocketHandlerBase
+  protected void toString(StringBuilder sb)
+  {
+    Selector sel = connSelector;
+    if ((sel != null) && sel.isOpen())
+       sb.append(",connections=").append(sel.keys().size()-1);
+  }
+
+
+
+  /**
+   * The state of a connection, attached to its selection key.
+   */
+  protected static class Connection
+  {
+    /** The network address of the client. */
+    public final InetAddress address;
+
+    /**
+     * When the request must be handled, in milliseconds.
+     * While idle, when the connection will be closed.
+     */
+    public long deadline;
+
+    /** The buffer for receiving the request. */
+    public final ByteBuffer inbuf;
+
+    /** The expected size of the request, or -1 if not yet known. */
+    public int expected;
+
+    /** The buffer holding the response, or <code>null</code>. */
+    public ByteBuffer outbuf;
+
+    /** The limit of the complete response in {@link #outbuf}. */
+    public int outlimit;
+
+    /** Whether the connection is kept alive for more requests. */
+    public boolean keepAlive;
+
+    /** Whether a kept-alive connection is waiting for the next request. */
+    public boolean idle;
+
+
+    /**
+     * Creates the state for a new connection.
+     *
+     * @param addr      the address of the client
+     * @param deadline  the deadline for handling the request
+     */
+    public Connection(InetAddress addr, long deadline)
+    {
+      this.address  = addr;
+      this.deadline = deadline;
+      this.inbuf    = ByteBuffer.allocate(MAX_REQUEST_SIZE);
+      this.expected = -1;
+    }
+
+
+    /**
+     * Removes the current request from {@link #inbuf}.
+     * Data of subsequent requests that has already been received
+     * is moved to the start of the buffer.
+     */
+    public void consumeRequest()
+    {
+      inbuf.limit(inbuf.position());
+      inbuf.position(expected);
+      inbuf.compact();
+      expected = -1;
+    }
+
+
+    /**
+     * Starts reading the next request on a kept-alive connection.
+     *
+     * @param deadline  the deadline for handling the request
+     */
+    public void startRequest(long deadline)
+    {
+      this.deadline = deadline;
+      this.idle = false;
+    }
+
+
+    /**
+     * Starts waiting for the next request on a kept-alive connection.
+     *
+     * @param deadline  when to close the connection if no request arrives
+     */
+    public void startIdle(long deadline)
+    {
+      this.deadline = deadline;
+      this.idle = true;
+    }
+
+
+    /**
+     * Sets the response to send.
+     * The buffer limit is set to a random split point. At least the
+     * first tag and length (4 bytes) are in the first part.
+     *
+     * @param response  the response to send
+     */
+    public void setResponse(ByteBuffer response)
+    {
+      outbuf   = response;
+      outlimit = response.limit();
+
+      int split = 4 + (int)(Math.random() * (double)(response.remaining()-3));
+      if (split < response.remaining())
+         outbuf.limit(response.position()+split);
+    }
+  }
+
+}
@@ -0,0 +1,446 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.sockets.server;
+
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pityoulish.logutil.Log;
+
+
+/**
+ * Socket IO handler for the example protocol, with a pool of workers.
+ * One thread accepts connections and hands them over to a bounded
+ * executor. The workers read requests, handle them, and send responses
+ * with the blocking IO of {@link SimplisticSocketHandler}. A slow client
+ * keeps only one worker busy until the receive deadline expires.
+ * <br>
+ * Workers are platform threads from a fixed-size pool, or virtual threads
+ * if requested and supported by the Java runtime. With virtual threads,
+ * the number of connections served at the same time is limited to the
+ * sum of pool size and queue bound from the {@link WorkerPoolConfig}.
+ * <br>
+ * If the rejection policy is {@link WorkerPoolConfig.Rejection#CALLER CALLER},
+ * the accepting thread serves a single request and closes the connection.
+ * <br>
+ * The underlying {@link RequestHandler} must be thread-safe.
+ */
+public class PooledSocketHandler extends SimplisticSocketHandler
+{
+  /** The configuration of the worker pool. */
+  protected final WorkerPoolConfig poolConfig;
+
+  /** Whether to run the workers in virtual threads. */
+  protected final boolean useVirtualThreads;
+
+  /** The workers, while the handler is running. */
+  protected ExecutorService workerPool;
+
+  /**
+   * Permits for connections being served, or <code>null</code>.
+   * Used to bound the number of virtual threads.
+   */
+  protected Semaphore workerPermits;
+
+  /**
+   * Permits for kept-alive connections, which hold a worker while idle.
+   * Created with the worker pool, see {@link #createHoldPermits}.
+   */
+  protected Semaphore holdPermits;
+
+
+
+  /**
+   * Creates a new multi-threaded handler for incoming requests.
+   *
+   * @param reqh        the underlying request handler
+   * @param verbose     whether to print info about incoming connections
+   * @param wpc         the configuration of the worker pool
+   * @param virtual     <code>true</code> to use virtual threads as workers,
+   *                    <code>false</code> to use a pool of platform threads
+   */
+  public PooledSocketHandler(RequestHandler reqh, boolean verbose,
+                             WorkerPoolConfig wpc, boolean virtual)
+  {
+    super(reqh, verbose);
+
+    if (wpc == null)
+       throw new NullPointerException("WorkerPoolConfig");
+
+    poolConfig = wpc;
+    useVirtualThreads = virtual;
+  }
+
+
+
+  /**
+   * Creates the worker pool and a socket, and starts the accepting thread.
+   *
+   * @param port        the port number, or 0 for some free port
+   * @param backlog     the length of the backlog,
+   *                    0 or negative for the default length
+   *
+   * @throws Exception  in case of a problem
+   */
+  public synchronized void startup(int port, int backlog)
+    throws Exception
+  {
+    if (handlerThread != null)
+       throw new IllegalStateException("already started");
+
+    workerPool = createWorkerPool();
+    super.startup(port, backlog);
+  }
+
+
+  /**
+   * Shuts down the accepting thread, socket, and worker pool.
+   * Requests in progress are interrupted.
+   *
+   * @throws Exception  in case of a problem
+   */
+  public synchronized void shutdown()
+    throws Exception
+  {
+    super.shutdown();
+
+    ExecutorService pool = workerPool;
+    workerPool = null;
+    if (pool != null)
+       pool.shutdownNow();
+  }
+
+
+  /**
+   * Creates the executor for the workers.
+   * Also initializes {@link #workerPermits} if needed,
+   * and the {@link #holdPermits}.
+   *
+   * @return    the executor
+   */
+  protected ExecutorService createWorkerPool()
+  {
+    if (useVirtualThreads)
+     {
+       ExecutorService vtexec = newVirtualThreadExecutor();
+       if (vtexec != null)
+        {
+          workerPermits =
+            new Semaphore(poolConfig.poolSize + poolConfig.queueBound);
+          holdPermits = createHoldPermits(true);
+          return vtexec;
+        }
+       System.out.println(Catalog.NO_VIRTUAL_THREADS_0.format());
+     }
+
+    workerPermits = null;
+    holdPermits = createHoldPermits(false);
+
+    BlockingQueue<Runnable> queue = null;
+    if (poolConfig.queueBound > 0)
+       queue = new ArrayBlockingQueue<Runnable>(poolConfig.queueBound);
+    else
+       queue = new SynchronousQueue<Runnable>();
+
+    ThreadPoolExecutor tpe = new ThreadPoolExecutor
+      (poolConfig.poolSize, poolConfig.poolSize, 60L, TimeUnit.SECONDS,
+       queue, new WorkerThreadFactory(),
+       new ThreadPoolExecutor.AbortPolicy());
+    tpe.allowCoreThreadTimeOut(true);
+
+    return tpe;
+  }
+
+
+  /**
+   * Creates the permits for kept-alive connections.
+   * A platform thread is expensive, at most half of the pool may be held
+   * by idle connections. The rest remains available for short requests.
+   * A virtual thread is cheap while idle, every connection that gets one
+   * may be kept alive. Either way, there is at least one permit.
+   *
+   * @param virtual     whether the workers are virtual threads
+   *
+   * @return    the permits
+   */
+  protected Semaphore createHoldPermits(boolean virtual)
+  {
+    int count = poolConfig.poolSize / 2;
+    if (virtual)
+       count = poolConfig.poolSize + poolConfig.queueBound;
+
+    return new Semaphore(Math.max(1, count));
+  }
+
+
+  /**
+   * Creates an executor that starts a virtual thread for each task.
+   * Virtual threads are not available before Java 21. The executor is
+   * obtained by reflection, so that this class works on older runtimes.
+   *
+   * @return    the executor, or
+   *            <code>null</code> if virtual threads are not available
+   */
+  protected ExecutorService newVirtualThreadExecutor()
+  {
+    try {
+      Object vtexec = Executors.class
+        .getMethod("newVirtualThreadPerTaskExecutor")
+        .invoke(null);
+      return (ExecutorService) vtexec;
+    } catch (Exception x) {
+      Log.log(logger, "newVirtualThreadExecutor", x);
+      return null;
+    }
+  }
+
+
+  /**
+   * Accepts the next connection and hands it over to a worker.
+   * Repeatedly called by {@link #run}.
+   * Blocks until there is a connection or a problem.
+   *
+   * @throws Exception        in case of a problem
+   */
+  protected void acceptAndServeRequest()
+    throws Exception
+  {
+    Socket sock = srvSocket.accept();
+
+    Semaphore permits = workerPermits;
+    if ((permits != null) && !permits.tryAcquire())
+     {
+       rejectRequest(sock, null);
+       return;
+     }
+
+    try {
+      workerPool.execute(new Worker(sock, permits));
+    } catch (RejectedExecutionException rx) {
+      if (permits != null)
+         permits.release();
+      rejectRequest(sock, rx);
+    }
+  }
+
+
+  /**
+   * Handles a connection for which no worker is available.
+   * The behavior depends on {@link WorkerPoolConfig#rejection}.
+   *
+   * @param sock        the socket of the accepted connection
+   * @param cause       the reason for the rejection, or <code>null</code>
+   *
+   * @throws Exception        in case of a problem
+   */
+  protected void rejectRequest(Socket sock, Throwable cause)
+    throws Exception
+  {
+    switch (poolConfig.rejection)
+     {
+       case CALLER:
+         serveSingleRequest(sock);
+         break;
+
+       case DROP:
+         sock.close();
+         break;
+
+       case ERROR:
+       default:
+         throw cancelRequest(Catalog.WORKERS_BUSY_0.format(), cause, sock);
+     }
+  }
+
+
+  /**
+   * Reads requests from a connection, serves them, and closes the socket.
+   * Called by a worker for each connection it is handed.
+   * A connection that asks for keep-alive holds the worker while idle.
+   * That requires one of the {@link #holdPermits}, which the connection
+   * keeps until it is closed. If none is left, the request is rejected
+   * as busy, and the client falls back to a connection per request.
+   * Awaiting messages is not limited here, the wait is bounded by
+   * the timeout of the request.
+   *
+   * @param sock        the socket of the accepted connection
+   *
+   * @throws Exception        in case of a problem
+   */
+  protected void serveRequest(Socket sock)
+    throws Exception
+  {
+    prepareSocket(sock);
+
+    final Semaphore permits = holdPermits;
+    boolean holding = false;
+    try {
+      // the following calls close the socket on error, so let exceptions pass
+      ByteBuffer request   = readRequest(sock);
+      boolean    keepAlive = false;
+      while (request != null)
+       {
+         if (!holding && isKeepAliveRequest(request))
+          {
+            holding = permits.tryAcquire();
+            if (!holding)
+               throw cancelRequest(Catalog.WORKERS_BUSY_0.format(), null, sock);
+          }
+
+         ByteBuffer response = handleRequest(sock, request);
+         if (!keepAlive)
+            keepAlive = isKeepAliveGranted(request, response);
+
+         sendResponse(sock, response);
+
+         request = keepAlive ? readRequest(sock, true) : null;
+       }
+
+      sock.close();
+
+    } finally {
+      if (holding)
+         permits.release();
+    }
+  } // serveRequest
+
+
+  /**
+   * Serves exactly one request from a connection, and closes the socket.
+   * Called in the accepting thread if all workers are busy.
+   * Requests that could hold the connection open for a while, namely
+   * keep-alive and awaiting messages, are rejected. Otherwise, a single
+   * client could stop the accepting thread for the whole timeout.
+   *
+   * @param sock        the socket of the accepted connection
+   *
+   * @throws Exception        in case of a problem
+   */
+  protected void serveSingleRequest(Socket sock)
+    throws Exception
+  {
+    prepareSocket(sock);
+
+    // the following calls close the socket on error, so let exceptions pass
+    ByteBuffer request = readRequest(sock);
+    if (isKeepAliveRequest(request) || isAwaitRequest(request))
+       throw cancelRequest(Catalog.WORKERS_BUSY_0.format(), null, sock);
+
+    ByteBuffer response = handleRequest(sock, request);
+    sendResponse(sock, response);
+
+    sock.close();
+  }
+
+
+  /**
+   * Indicates that this handler keeps connections alive on request.
+   * A kept-alive connection occupies a worker while waiting for the
+   * next request, so {@link #serveRequest serveRequest} limits the
+   * number of such clients.
+   *
+   * @return  <code>true</code>
+   */
+  protected boolean supportsKeepAlive()
+  {
+    return true;
+  }
+
+
+  // non-javadoc, see base class SocketHandlerBase
+  protected void toString(StringBuilder sb)
+  {
+    sb.append(',').append(poolConfig);
+    if (useVirtualThreads)
+       sb.append(",virtual");
+  }
+
+
+
+  /**
+   * Serves a single connection in a worker thread.
+   */
+  protected class Worker implements Runnable
+  {
+    /** The connection to serve. */
+    protected final Socket connSocket;
+
+    /** The permits to release when done, or <code>null</code>. */
+    protected final Semaphore connPermits;
+
+
+    /**
+     * Creates a new worker.
+     *
+     * @param sock      the socket of the accepted connection
+     * @param permits   the permits to release when done, or
+     *                  <code>null</code>
+     */
+    public Worker(Socket sock, Semaphore permits)
+    {
+      connSocket  = sock;
+      connPermits = permits;
+    }
+
+
+    // non-javadoc, see interface Runnable
+    public void run()
+    {
+      try {
+        serveRequest(connSocket);
+
+      } catch (ProtocolException px) {
+        // stack trace already logged when thrown
+        System.out.println(px.toString());
+
+      } catch (Exception x) {
+        Log.log(logger, "SocketHandler", x);
+        System.out.println(x.toString());
+        try {
+          connSocket.close();
+        } catch (Exception ignore) {
+          x.addSuppressed(ignore);
+        }
+
+      } finally {
+        if (connPermits != null)
+           connPermits.release();
+      }
+    }
+  }
+
+
+  /**
+   * Creates daemon threads with recognizable names for the worker pool.
+   */
+  protected class WorkerThreadFactory implements ThreadFactory
+  {
+    /** The number of threads created so far. */
+    protected final AtomicInteger threadCount = new AtomicInteger();
+
+
+    // non-javadoc, see interface ThreadFactory
+    public Thread newThread(Runnable r)
+    {
+      Thread t = new Thread(r, handlerName+"-worker-"+
+                            threadCount.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+
+}
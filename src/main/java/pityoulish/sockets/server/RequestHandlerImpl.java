@@ -7,6 +7,7 @@ package pityoulish.sockets.server;
 
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
+import java.util.List;
 
 import pityoulish.msgboard.MessageBatch;
 
@@ -105,7 +106,8 @@ public class RequestHandlerImpl implements RequestHandler
     throws ProtocolException
    {
      boolean silent =
-       (mbreq.getReqType() == MsgBoardRequest.ReqType.LIST_MESSAGES) &&
+       ((mbreq.getReqType() == MsgBoardRequest.ReqType.LIST_MESSAGES) ||
+        (mbreq.getReqType() == MsgBoardRequest.ReqType.AWAIT_MESSAGES)) &&
        (mbreq.getLimit() == Integer.valueOf(125));
 
      if (!silent)
@@ -122,6 +124,21 @@ public class RequestHandlerImpl implements RequestHandler
          result = rspBuilder.buildMessageBatch(response);
        } break;
 
+       case AWAIT_MESSAGES: {
+         MsgBoardResponse<MessageBatch> response =
+           mbrHandler.awaitMessages(mbreq, address);
+         if (!silent)
+            rhExpositor.describeMessageBatch(response);
+         result = rspBuilder.buildMessageBatch(response);
+       } break;
+
+       case SEARCH_MESSAGES: {
+         MsgBoardResponse<MessageBatch> response =
+           mbrHandler.searchMessages(mbreq, address);
+         rhExpositor.describeMessageBatch(response);
+         result = rspBuilder.buildMessageBatch(response);
+       } break;
+
        case PUT_MESSAGE: {
          MsgBoardResponse<String> response =
            mbrHandler.putMessage(mbreq, address);
@@ -129,6 +146,13 @@ public class RequestHandlerImpl implements RequestHandler
          result = rspBuilder.buildInfoResponse(response);
        } break;
 
+       case PUT_MESSAGES: {
+         MsgBoardResponse<List<String>> response =
+           mbrHandler.putMessages(mbreq, address);
+         rhExpositor.describeMarkerList(response);
+         result = rspBuilder.buildMarkerList(response);
+       } break;
+
        case OBTAIN_TICKET: {
          MsgBoardResponse<String> response =
            mbrHandler.obtainTicket(mbreq, address);
@@ -150,6 +174,14 @@ public class RequestHandlerImpl implements RequestHandler
          result = rspBuilder.buildTicketGrant(response);
        } break;
 
+       case KEEP_ALIVE: {
+         // a transport concern, the application layer is not involved
+         MsgBoardResponse<String> response =
+           new MsgBoardResponseImpl.Info(Catalog.HANDLER_INFO_OK.lookup());
+         rhExpositor.describeInfoResponse(response);
+         result = rspBuilder.buildInfoResponse(response);
+       } break;
+
         //@@@ default case might be invoked after adding more request types
       }
 
@@ -6,6 +6,7 @@
 package pityoulish.sockets.server;
 
 import java.nio.ByteBuffer;
+import java.util.List;
 
 import pityoulish.msgboard.MessageBatch;
 
@@ -66,4 +67,16 @@ public interface ResponseBuilder
     ;
 
 
+  /**
+   * Builds a response with a list of markers.
+   *
+   * @param response    the response, holding either
+   *                    the markers of new messages or an error message
+   *
+   * @return a buffer containing the response PDU, backed by an array
+   */
+  public ByteBuffer buildMarkerList(MsgBoardResponse<List<String>> response)
+    ;
+
+
 }
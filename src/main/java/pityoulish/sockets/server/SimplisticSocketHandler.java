@@ -8,6 +8,7 @@ package pityoulish.sockets.server;
 import java.net.Socket;
 import java.net.ServerSocket;
 import java.net.InetAddress;
+import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.io.IOException;
 import java.io.InputStream;
@@ -136,7 +137,61 @@ public class SimplisticSocketHandler extends SocketHandlerBase
     throws Exception
   {
     Socket sock = srvSocket.accept();
+    serveRequest(sock);
+  }
+
+
+  /**
+   * Reads a request from a connection, serves it, and closes the socket.
+   * Called by {@link #acceptAndServeRequest} for each accepted connection.
+   * If the client asks for keep-alive and this handler
+   * {@link #supportsKeepAlive supports} it, further requests are read and
+   * served until the client closes the connection or remains idle for
+   * longer than {@link #KEEP_ALIVE_TIMEOUT}.
+   *
+   * @param sock        the socket of the accepted connection
+   *
+   * @throws Exception        in case of a problem
+   */
+  protected void serveRequest(Socket sock)
+    throws Exception
+  {
+    prepareSocket(sock);
 
+    // the following calls close the socket on error, so let exceptions pass
+    ByteBuffer request   = readRequest(sock);
+    boolean    keepAlive = false;
+    while (request != null)
+     {
+       if (!supportsKeepAlive() && isKeepAliveRequest(request))
+        {
+          throw cancelRequest
+            (Catalog.KEEP_ALIVE_UNSUPPORTED_0.format(), null, sock);
+        }
+
+       ByteBuffer response = handleRequest(sock, request);
+       if (!keepAlive)
+          keepAlive = isKeepAliveGranted(request, response);
+
+       sendResponse(sock, response);
+
+       request = keepAlive ? readRequest(sock, true) : null;
+     }
+
+    sock.close();
+
+  } // serveRequest
+
+
+  /**
+   * Prepares an accepted connection for serving requests.
+   * Shrinks the send buffer and prints info about the connection,
+   * if requested.
+   *
+   * @param sock        the socket of the accepted connection
+   */
+  protected void prepareSocket(Socket sock)
+  {
     try {
       // Of course it makes no sense to work without a send buffer. And
       // it's only a hint, which might be ignored by the implementation.
@@ -157,16 +212,22 @@ public class SimplisticSocketHandler extends SocketHandlerBase
          .append(Catalog.RECEIVE_FROM_1.format(sock.getRemoteSocketAddress()));
        System.out.println(sb);
      }
+  }
 
-    // the following calls close the socket on error, so let exceptions pass
-    ByteBuffer request  = readRequest(sock);
-    ByteBuffer response = handleRequest(sock, request);
-    sendResponse(sock, response);
 
-    // single thread + blocking IO means no keep-alive
-    sock.close();
-
-  } // acceptAndServeRequest
+  /**
+   * Indicates whether this handler keeps connections alive on request.
+   * A single thread with blocking IO cannot serve other clients while
+   * waiting for the next request on a kept-alive connection, so this
+   * handler does not. Derived classes with more threads may.
+   *
+   * @return  <code>true</code> if keep-alive is supported,
+   *          <code>false</code> otherwise
+   */
+  protected boolean supportsKeepAlive()
+  {
+    return false;
+  }
 
 
   /**
@@ -240,6 +301,51 @@ public class SimplisticSocketHandler extends SocketHandlerBase
   public ByteBuffer readRequest(Socket sock)
     throws Exception
   {
+    return readRequest(sock, false);
+  }
+
+
+  /**
+   * Reads a request from a socket and returns it,
+   * possibly waiting for the request on a kept-alive connection.
+   *
+   * @param sock        the socket to read the request from
+   * @param idle        <code>true</code> if the connection is kept alive
+   *                    and the client may take its time before sending
+   *                    the next request,
+   *                    <code>false</code> if the request is expected now
+   *
+   * @return a byte buffer holding the request, backed by an array.
+   *         The request begins at the current position and
+   *         extends to the limit of the buffer.
+   *         This value is a suitable parameter for {@link #handleRequest}.
+   *         If <code>idle</code> is <code>true</code>, the return value is
+   *         <code>null</code> if the client closed the connection or
+   *         did not send a request in time.
+   *
+   * @throws Exception  in case of a problem
+   */
+  public ByteBuffer readRequest(Socket sock, boolean idle)
+    throws Exception
+  {
+    byte[] data = new byte[MAX_REQUEST_SIZE];
+    int    pos  = 0;
+
+    InputStream is = sock.getInputStream();
+
+    if (idle)
+     {
+       // wait for the first data of the next request
+       sock.setSoTimeout(KEEP_ALIVE_TIMEOUT);
+       try {
+         pos = is.read(data, 0, 4);
+       } catch (SocketTimeoutException stx) {
+         return null;
+       }
+       if (pos < 0)
+          return null; // closed by the client
+     }
+
     // to avoid permanent blocking by misbehaving clients:
     // - set a timeout on the socket
     // - track how long it takes to receive the request, cancel if necessary
@@ -249,20 +355,40 @@ public class SimplisticSocketHandler extends SocketHandlerBase
     final long started = System.currentTimeMillis();
     final long deadline = started + RCV_DEADLINE;
 
-    byte[] data = new byte[MAX_REQUEST_SIZE];
-
-    InputStream is = sock.getInputStream();
-
     //@@@ This logic is specific to TLVs; also needed by clients... refactor!
     //@@@ Send error response to bogus request, or just drop the connection?
 
-    // Read the first 4 bytes of data, expected in first block of data.
-    // Clients that try to send data byte for byte will be kicked out.
-    int pos = is.read(data, 0, 4);
-    if (pos < 4)
+    if (!idle)
      {
-       throw cancelRequest
-         (Catalog.RECEIVE_INITIAL_BLOCK_TOO_SMALL_0.format(), null, sock);
+       // Read the first 4 bytes of data, expected in first block of data.
+       // Clients that try to send data byte for byte will be kicked out.
+       pos = is.read(data, 0, 4);
+       if (pos < 4)
+        {
+          throw cancelRequest
+            (Catalog.RECEIVE_INITIAL_BLOCK_TOO_SMALL_0.format(), null, sock);
+        }
+     }
+    else
+     {
+       // Subsequent requests on a kept-alive connection may have been sent
+       // back-to-back, so the header can be split across blocks.
+       while (pos < 4)
+        {
+          if (System.currentTimeMillis() > deadline)
+           {
+             throw cancelRequest
+               (Catalog.RECEIVE_DEADLINE_EXPIRED_0.format(), null, sock);
+           }
+
+          int count = is.read(data, pos, 4-pos);
+          if (count < 0)
+           {
+             throw cancelRequest
+               (Catalog.RECEIVE_INCOMPLETE_0.format(), null, sock);
+           }
+          pos += count;
+        }
      }
 
     // Requests are in TLV format, see ASN.1 BER
@@ -301,7 +427,8 @@ public class SimplisticSocketHandler extends SocketHandlerBase
             (Catalog.RECEIVE_DEADLINE_EXPIRED_0.format(), null, sock);
         }
 
-       int count = is.read(data, pos, data.length-pos);
+       // don't read beyond this request, the next one might follow
+       int count = is.read(data, pos, size-pos);
        if (count < 0)
         {
           throw cancelRequest
@@ -7,6 +7,9 @@ package pityoulish.sockets.server;
 
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+
+import pityoulish.sockets.tlv.MsgBoardType;
 
 /**
  * Base class for implementing {@link SocketHandler}.
@@ -24,6 +27,13 @@ public abstract class SocketHandlerBase
   protected ServerSocket srvSocket;
 
 
+  /**
+   * How long a kept-alive connection may be idle, in milliseconds.
+   * Clients polling less frequently have to connect again.
+   */
+  public final static int KEEP_ALIVE_TIMEOUT = 30000;
+
+
   /**
    * Creates a new socket handler.
    *
@@ -100,6 +110,59 @@ public abstract class SocketHandlerBase
   }
 
 
+  /**
+   * Checks whether a request asks to keep the connection alive.
+   * Transports that do not support keep-alive use this to reject
+   * such requests before they are handled.
+   *
+   * @param request   the request, as passed to the {@link RequestHandler}
+   *
+   * @return  <code>true</code> if the request is for keep-alive,
+   *          <code>false</code> otherwise
+   */
+  protected static boolean isKeepAliveRequest(ByteBuffer request)
+  {
+    return (request.get(request.position()) ==
+            MsgBoardType.KEEP_ALIVE.getTypeByte());
+  }
+
+
+  /**
+   * Checks whether a request asks to await new messages.
+   * The request handler may block for a while before responding.
+   *
+   * @param request   the request, as passed to the {@link RequestHandler}
+   *
+   * @return  <code>true</code> if the request is for awaiting messages,
+   *          <code>false</code> otherwise
+   */
+  protected static boolean isAwaitRequest(ByteBuffer request)
+  {
+    return (request.get(request.position()) ==
+            MsgBoardType.AWAIT_MESSAGES.getTypeByte());
+  }
+
+
+  /**
+   * Checks whether keep-alive was requested and granted.
+   * If so, the connection remains open after the response is sent,
+   * and the next request is read from it.
+   *
+   * @param request   the request, as passed to the {@link RequestHandler}
+   * @param response  the response, as returned by the {@link RequestHandler}
+   *
+   * @return  <code>true</code> if the connection is to be kept alive,
+   *          <code>false</code> otherwise
+   */
+  protected static boolean isKeepAliveGranted(ByteBuffer request,
+                                              ByteBuffer response)
+  {
+    return isKeepAliveRequest(request) &&
+      (response.get(response.position()) ==
+       MsgBoardType.INFO_RESPONSE.getTypeByte());
+  }
+
+
   /**
    * Generates a description of this handler.
    * Derived classes can enhance the description by overriding
@@ -0,0 +1,44 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.sockets.server;
+
+import java.util.Locale;
+
+
+/**
+ * The available implementations of {@link SocketHandler}.
+ * Selectable when {@link Main} creates the handler stack.
+ */
+public enum SocketHandlerType
+{
+  /** A {@link SimplisticSocketHandler}, with blocking IO. */
+  SIMPLISTIC,
+
+  /** A {@link NIOSocketHandler}, with non-blocking IO. */
+  NIO,
+
+  /** A {@link PooledSocketHandler} with a pool of platform threads. */
+  POOLED,
+
+  /** A {@link PooledSocketHandler} with virtual threads, if available. */
+  VIRTUAL;
+
+
+  /**
+   * Looks up a handler type by name, ignoring case.
+   *
+   * @param name  the name of the handler type, for example "nio"
+   *
+   * @return    the handler type
+   *
+   * @throws IllegalArgumentException   if there is no such handler type
+   */
+  public static SocketHandlerType forName(String name)
+  {
+    return valueOf(name.toUpperCase(Locale.ROOT));
+  }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.sockets.server;
+
+import java.net.InetAddress;
+
+import pityoulish.mbserver.RateLimiter;
+
+
+/**
+ * Options for creating a socket handler for the binary TLV protocol,
+ * see {@link Main#createTLVSocketHandler Main.createTLVSocketHandler}.
+ * A new object holds the defaults, the setters change them one by one.
+ * Each setter returns this object, so that calls can be chained.
+ */
+public class TLVHandlerOptions
+{
+  /** Whether to print info about incoming connections. */
+  protected boolean beVerbose;
+
+  /** Whether to check for unique client IP addresses for tickets. */
+  protected boolean checkClientIP;
+
+  /** The type of socket handler to create. */
+  protected SocketHandlerType handlerType = SocketHandlerType.SIMPLISTIC;
+
+  /** The worker pool, for handler types with a pool of workers. */
+  protected WorkerPoolConfig poolConfig = WorkerPoolConfig.DEFAULT;
+
+  /** Whether to encode each message only once and cache it. */
+  protected boolean cacheTLV;
+
+  /** The rate limits per username, or <code>null</code>. */
+  protected RateLimiter<String> userLimiter;
+
+  /** The rate limits per client address, or <code>null</code>. */
+  protected RateLimiter<InetAddress> addressLimiter;
+
+
+  /**
+   * Creates the default options.
+   * A {@link SocketHandlerType#SIMPLISTIC simplistic} handler that is
+   * silent, grants tickets regardless of client IP, encodes messages
+   * for each response, and has no rate limits.
+   */
+  public TLVHandlerOptions()
+  {
+    // defaults are in the field initializers
+  }
+
+
+  /**
+   * Sets whether to print info about incoming connections.
+   *
+   * @param verbose
+   *        <code>true</code> to print info about incoming connections,
+   *        <code>false</code> to omit them
+   *
+   * @return    this object
+   */
+  public TLVHandlerOptions setVerbose(boolean verbose)
+  {
+    beVerbose = verbose;
+    return this;
+  }
+
+
+  /**
+   * Sets whether to check client IP addresses when granting tickets.
+   *
+   * @param ipcheck
+   *        <code>true</code> to check for unique client IP addresses
+   *        when granting tickets,
+   *        <code>false</code> to grant tickets regardless of client IP
+   *
+   * @return    this object
+   */
+  public TLVHandlerOptions setIPCheck(boolean ipcheck)
+  {
+    checkClientIP = ipcheck;
+    return this;
+  }
+
+
+  /**
+   * Sets the type of socket handler to create.
+   *
+   * @param shtype      the type of socket handler
+   *
+   * @return    this object
+   */
+  public TLVHandlerOptions setHandlerType(SocketHandlerType shtype)
+  {
+    if (shtype == null)
+       throw new NullPointerException("SocketHandlerType");
+
+    handlerType = shtype;
+    return this;
+  }
+
+
+  /**
+   * Sets the worker pool configuration.
+   * It is used only by handler types with a pool of workers.
+   *
+   * @param wpc         the worker pool configuration
+   *
+   * @return    this object
+   */
+  public TLVHandlerOptions setWorkerPool(WorkerPoolConfig wpc)
+  {
+    if (wpc == null)
+       throw new NullPointerException("WorkerPoolConfig");
+
+    poolConfig = wpc;
+    return this;
+  }
+
+
+  /**
+   * Sets whether to cache encoded messages.
+   *
+   * @param cachetlv
+   *        <code>true</code> to encode each message only once and cache it,
+   *        <code>false</code> to encode messages for each response,
+   *        with elements in random order
+   *
+   * @return    this object
+   */
+  public TLVHandlerOptions setCacheTLV(boolean cachetlv)
+  {
+    cacheTLV = cachetlv;
+    return this;
+  }
+
+
+  /**
+   * Sets the rate limits.
+   *
+   * @param userlim     the rate limits per username, or <code>null</code>
+   * @param addrlim     the rate limits per client address,
+   *                    or <code>null</code>
+   *
+   * @return    this object
+   */
+  public TLVHandlerOptions setRateLimits(RateLimiter<String> userlim,
+                                         RateLimiter<InetAddress> addrlim)
+  {
+    userLimiter    = userlim;
+    addressLimiter = addrlim;
+    return this;
+  }
+
+
+  /**
+   * Determines how long the socket handler can wait for messages.
+   * Handlers with a thread per connection can afford to wait for messages.
+   * The others would block all connections while waiting.
+   *
+   * @return the maximum time to wait for new messages, in seconds
+   */
+  public int getMaxAwaitSeconds()
+  {
+    int maxawait = 0;
+    if ((handlerType == SocketHandlerType.POOLED) ||
+        (handlerType == SocketHandlerType.VIRTUAL))
+       maxawait = Main.MAX_AWAIT_SECONDS;
+
+    return maxawait;
+  }
+
+
+  // non-javadoc, see class Object
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder(80);
+    sb.append(getClass().getSimpleName())
+      .append('(').append(handlerType)
+      .append(',').append(poolConfig);
+    if (beVerbose)
+       sb.append(",verbose");
+    if (checkClientIP)
+       sb.append(",ipcheck");
+    if (cacheTLV)
+       sb.append(",cachetlv");
+    if (userLimiter != null)
+       sb.append(",userlim");
+    if (addressLimiter != null)
+       sb.append(",addrlim");
+    sb.append(')');
+
+    return sb.toString();
+  }
+
+}
@@ -6,8 +6,10 @@
 package pityoulish.sockets.server;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.EnumMap;
+import java.util.List;
 
 import pityoulish.sockets.tlv.MsgBoardTLV;
 import pityoulish.sockets.tlv.MsgBoardType;
@@ -53,6 +55,22 @@ public class TLVRequestParserImpl implements RequestParser
         result = parseReplaceTicket(reqtlv);
         break;
 
+      case KEEP_ALIVE:
+        result = parseKeepAlive(reqtlv);
+        break;
+
+      case AWAIT_MESSAGES:
+        result = parseAwaitMessages(reqtlv);
+        break;
+
+      case SEARCH_MESSAGES:
+        result = parseSearchMessages(reqtlv);
+        break;
+
+      case PUT_MESSAGES:
+        result = parsePutMessages(reqtlv);
+        break;
+
       default:
         throw Catalog.INVALID_TOP_TLV_TYPE_1.asPX(reqtlv.getType());
      }
@@ -104,8 +122,55 @@ public class TLVRequestParserImpl implements RequestParser
   protected MsgBoardRequest parseListMessages(MsgBoardTLV reqtlv)
     throws ProtocolException
   {
+    return parseMessageQuery(reqtlv, MsgBoardRequest.ReqType.LIST_MESSAGES);
+  }
+
+  protected MsgBoardRequest parseAwaitMessages(MsgBoardTLV reqtlv)
+    throws ProtocolException
+  {
+    return parseMessageQuery(reqtlv, MsgBoardRequest.ReqType.AWAIT_MESSAGES);
+  }
+
+  protected MsgBoardRequest parseSearchMessages(MsgBoardTLV reqtlv)
+    throws ProtocolException
+  {
+    return parseMessageQuery(reqtlv, MsgBoardRequest.ReqType.SEARCH_MESSAGES);
+  }
+
+
+  /**
+   * Parses a request to list, await, or search messages.
+   * All have a mandatory limit, an optional marker, and an optional channel.
+   * Only requests to await messages have a timeout, which is mandatory.
+   * Only requests to search messages have a text, which is mandatory.
+   * Only requests to list messages have an originator and a user only
+   * indicator, both optional, which select the messages to list.
+   *
+   * @param reqtlv      the request to parse
+   * @param retype      the type of the request, one of
+   *                    {@link MsgBoardRequest.ReqType#LIST_MESSAGES},
+   *                    {@link MsgBoardRequest.ReqType#AWAIT_MESSAGES}, or
+   *                    {@link MsgBoardRequest.ReqType#SEARCH_MESSAGES}
+   *
+   * @return the parsed request
+   *
+   * @throws ProtocolException  in case of a problem
+   */
+  protected MsgBoardRequest parseMessageQuery(MsgBoardTLV reqtlv,
+                                              MsgBoardRequest.ReqType retype)
+    throws ProtocolException
+  {
+    final boolean await  = (retype == MsgBoardRequest.ReqType.AWAIT_MESSAGES);
+    final boolean search = (retype == MsgBoardRequest.ReqType.SEARCH_MESSAGES);
+    final boolean list   = (retype == MsgBoardRequest.ReqType.LIST_MESSAGES);
+
     Integer limit = null;
     String  marker = null;
+    Integer timeout = null;
+    String  channel = null;
+    String  text = null;
+    String  originator = null;
+    boolean useronly = false;
 
     for (MsgBoardTLV nested = reqtlv.getNestedTLV();
          nested != null;
@@ -130,6 +195,47 @@ public class TLVRequestParserImpl implements RequestParser
            // protocol specifies printable characters, could check that too
            break;
 
+         case TIMEOUT:
+           if (!await)
+              throw failUnexpectedTLV(nested);
+           if (timeout != null)
+              throw failDuplicateTLV(nested);
+           timeout = Integer.valueOf(parseTimeout(nested));
+           break;
+
+         case CHANNEL:
+           if (channel != null)
+              throw failDuplicateTLV(nested);
+           channel = parseStringValue(nested, "US-ASCII");
+           break;
+
+         case TEXT:
+           if (!search)
+              throw failUnexpectedTLV(nested);
+           if (text != null)
+              throw failDuplicateTLV(nested);
+           text = parseStringValue(nested, "UTF-8");
+           break;
+
+         case ORIGINATOR:
+           if (!list)
+              throw failUnexpectedTLV(nested);
+           if (originator != null)
+              throw failDuplicateTLV(nested);
+           originator = parseStringValue(nested, "US-ASCII");
+           break;
+
+         case USER_ONLY:
+           if (!list)
+              throw failUnexpectedTLV(nested);
+           if (useronly)
+              throw failDuplicateTLV(nested);
+           if (nested.getLength() != 0)
+              throw Catalog.INVALID_TLV_LENGTH_2.asPX
+                (nested.getType(), nested.getStart());
+           useronly = true;
+           break;
+
          default:
            throw failUnexpectedTLV(nested);
         }
@@ -139,7 +245,17 @@ public class TLVRequestParserImpl implements RequestParser
        throw Catalog.MISSING_NESTED_TLV_3.asPX
          (reqtlv.getType(), reqtlv.getStart(), MsgBoardType.LIMIT);
 
-    return MsgBoardRequestImpl.newListMessages(limit, marker);
+    if (await && (timeout == null))
+       throw Catalog.MISSING_NESTED_TLV_3.asPX
+         (reqtlv.getType(), reqtlv.getStart(), MsgBoardType.TIMEOUT);
+
+    if (search && (text == null))
+       throw Catalog.MISSING_NESTED_TLV_3.asPX
+         (reqtlv.getType(), reqtlv.getStart(), MsgBoardType.TEXT);
+
+    return new MsgBoardRequestImpl
+      (retype, limit, marker, null, text, originator, timeout, channel,
+       useronly);
   }
 
 
@@ -147,7 +263,70 @@ public class TLVRequestParserImpl implements RequestParser
     throws ProtocolException
   {
     return parseGeneric(MsgBoardRequest.ReqType.PUT_MESSAGE, reqtlv,
-                        EnumSet.of(MsgBoardType.TICKET, MsgBoardType.TEXT));
+                        EnumSet.of(MsgBoardType.TICKET, MsgBoardType.TEXT),
+                        EnumSet.of(MsgBoardType.CHANNEL));
+  }
+
+  /**
+   * Parses a request to put several messages.
+   * It has a mandatory ticket, an optional channel, and one or more texts.
+   * The texts are the only elements that may be repeated.
+   *
+   * @param reqtlv      the request to parse
+   *
+   * @return the parsed request
+   *
+   * @throws ProtocolException  in case of a problem
+   */
+  protected MsgBoardRequest parsePutMessages(MsgBoardTLV reqtlv)
+    throws ProtocolException
+  {
+    String       ticket  = null;
+    String       channel = null;
+    List<String> texts   = new ArrayList<>();
+
+    for (MsgBoardTLV nested = reqtlv.getNestedTLV();
+         nested != null;
+         nested = nested.getNextTLV(reqtlv.getEnd())
+         )
+     {
+       if (nested.getEnd() > reqtlv.getEnd())
+          throw failOverlongTLV(nested);
+
+       switch (nested.getType())
+        {
+         case TICKET:
+           if (ticket != null)
+              throw failDuplicateTLV(nested);
+           ticket = parseStringValue(nested, "US-ASCII");
+           break;
+
+         case CHANNEL:
+           if (channel != null)
+              throw failDuplicateTLV(nested);
+           channel = parseStringValue(nested, "US-ASCII");
+           break;
+
+         case TEXT:
+           texts.add(parseStringValue(nested, "UTF-8"));
+           break;
+
+         default:
+           throw failUnexpectedTLV(nested);
+        }
+     }
+
+    if (ticket == null)
+       throw Catalog.MISSING_NESTED_TLV_3.asPX
+         (reqtlv.getType(), reqtlv.getStart(), MsgBoardType.TICKET);
+
+    if (texts.isEmpty())
+       throw Catalog.MISSING_NESTED_TLV_3.asPX
+         (reqtlv.getType(), reqtlv.getStart(), MsgBoardType.TEXT);
+
+    return new MsgBoardRequestImpl
+      (MsgBoardRequest.ReqType.PUT_MESSAGES, null, null, ticket, null, null,
+       null, channel, false, texts);
   }
 
   protected MsgBoardRequest parseObtainTicket(MsgBoardTLV reqtlv)
@@ -171,6 +350,13 @@ public class TLVRequestParserImpl implements RequestParser
                         EnumSet.of(MsgBoardType.TICKET));
   }
 
+  protected MsgBoardRequest parseKeepAlive(MsgBoardTLV reqtlv)
+    throws ProtocolException
+  {
+    return parseGeneric(MsgBoardRequest.ReqType.KEEP_ALIVE, reqtlv,
+                        EnumSet.noneOf(MsgBoardType.class));
+  }
+
 
   /**
    * Parses any request with all-mandatory, all-string parameters.
@@ -191,6 +377,33 @@ public class TLVRequestParserImpl implements RequestParser
                                          MsgBoardTLV reqtlv,
                                          EnumSet<MsgBoardType> expected)
     throws ProtocolException
+  {
+    return parseGeneric(retype, reqtlv, expected,
+                        EnumSet.noneOf(MsgBoardType.class));
+  }
+
+
+  /**
+   * Parses any request with mandatory and optional string parameters.
+   * Does not support non-string parameters.
+   *
+   * @param retype      the type for the object to return
+   * @param reqtlv      the request to parse
+   * @param expected    the mandatory string parameters.
+   *                    Only primitive TLV types that contain a string value
+   *                    are supported in this set.
+   * @param optional    the optional string parameters, with the same
+   *                    restrictions as for <code>expected</code>
+   *
+   * @return the parsed request
+   *
+   * @throws ProtocolException  in case of a problem
+   */
+  protected MsgBoardRequest parseGeneric(MsgBoardRequest.ReqType retype,
+                                         MsgBoardTLV reqtlv,
+                                         EnumSet<MsgBoardType> expected,
+                                         EnumSet<MsgBoardType> optional)
+    throws ProtocolException
   {
     EnumMap<MsgBoardType,String> params = new EnumMap<>(MsgBoardType.class);
 
@@ -201,7 +414,8 @@ public class TLVRequestParserImpl implements RequestParser
      {
        if (nested.getEnd() > reqtlv.getEnd())
           throw failOverlongTLV(nested);
-       if (!expected.contains(nested.getType()))
+       if (!expected.contains(nested.getType()) &&
+           !optional.contains(nested.getType()))
           throw failUnexpectedTLV(nested);
        if (params.containsKey(nested.getType()))
           throw failDuplicateTLV(nested);
@@ -216,10 +430,11 @@ public class TLVRequestParserImpl implements RequestParser
          case ORIGINATOR:
          case MARKER:
          case TICKET:
+         case CHANNEL:
            value = parseStringValue(nested, "US-ASCII");
            break;
 
-           // LIMIT is not a string value
+           // LIMIT and TIMEOUT are not string values
            // TIMESTAMP and MISSED do not appear in requests
 
          default:
@@ -246,7 +461,9 @@ public class TLVRequestParserImpl implements RequestParser
        params.get(MsgBoardType.MARKER),
        params.get(MsgBoardType.TICKET),
        params.get(MsgBoardType.TEXT),
-       params.get(MsgBoardType.ORIGINATOR)
+       params.get(MsgBoardType.ORIGINATOR),
+       null,
+       params.get(MsgBoardType.CHANNEL)
        );
   }
 
@@ -275,6 +492,23 @@ public class TLVRequestParserImpl implements RequestParser
   }
 
 
+  /**
+   * Parses the value of a {@link MsgBoardType#TIMEOUT TIMEOUT} TLV.
+   * The value is encoded like a {@link MsgBoardType#LIMIT LIMIT}.
+   *
+   * @param tlv   the TLV to parse
+   *
+   * @return the timeout, in seconds
+   *
+   * @throws ProtocolException if the value is invalid
+   */
+  protected int parseTimeout(MsgBoardTLV tlv)
+    throws ProtocolException
+  {
+    return parseLimit(tlv);
+  }
+
+
   /**
    * Parses the string value of a TLV.
    *
@@ -6,20 +6,62 @@
 package pityoulish.sockets.server;
 
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
+import pityoulish.msgboard.EncodableMessage;
 import pityoulish.msgboard.Message;
 import pityoulish.msgboard.MessageBatch;
+import pityoulish.msgboard.Utf8Message;
 import pityoulish.sockets.tlv.MsgBoardTLV;
 import pityoulish.sockets.tlv.MsgBoardType;
 
 
 /**
  * Implementation of {@link ResponseBuilder} for the Binary Protocol.
+ * <br>
+ * By default, every message in a batch is encoded anew, with the elements
+ * in random order. Optionally, the {@link MsgBoardType#MESSAGE MESSAGE}
+ * TLV of each message is encoded only once, with the elements in a fixed
+ * order, and cached on the {@link EncodableMessage message}.
+ * Batches are then assembled by copying the cached TLVs.
  */
 public class TLVResponseBuilderImpl implements ResponseBuilder
 {
-  // public default constructor
+  /** The key for caching MESSAGE TLVs on an {@link EncodableMessage}. */
+  public final static String MESSAGE_TLV_KEY =
+    "pityoulish.sockets.tlv.MESSAGE";
+
+  /** The order of elements in cached MESSAGE TLVs. */
+  protected final static MsgBoardType[] CACHED_ORDER = new MsgBoardType[]{
+    MsgBoardType.ORIGINATOR, MsgBoardType.TIMESTAMP, MsgBoardType.TEXT
+  };
+
+  /** Whether to cache encoded messages, instead of randomizing. */
+  protected final boolean cacheMessages;
+
+
+  /**
+   * Creates a new response builder which randomizes the order
+   * of elements in messages.
+   */
+  public TLVResponseBuilderImpl()
+  {
+    this(false);
+  }
+
+
+  /**
+   * Creates a new response builder.
+   *
+   * @param cached      <code>true</code> to cache encoded messages,
+   *                    <code>false</code> to encode messages for each
+   *                    response, with elements in random order
+   */
+  public TLVResponseBuilderImpl(boolean cached)
+  {
+    cacheMessages = cached;
+  }
 
 
   /**
@@ -65,9 +107,17 @@ public class TLVResponseBuilderImpl implements ResponseBuilder
        estimate += msg.getOriginator().length();
        estimate += msg.getTimestamp().length();
 
-       // text is Unicode
-       // encoding a Unicode character in UTF-8 may require up to three byte
-       estimate += msg.getText().length() * 3;
+       if (msg instanceof Utf8Message)
+        {
+          // the encoded length is known, don't decode the text
+          estimate += ((Utf8Message) msg).getTextLength();
+        }
+       else
+        {
+          // text is Unicode
+          // encoding a Unicode character in UTF-8 may require up to three byte
+          estimate += msg.getText().length() * 3;
+        }
      }
 
     return estimate;
@@ -102,6 +152,25 @@ public class TLVResponseBuilderImpl implements ResponseBuilder
   }
 
 
+  /**
+   * Appends the TLV-encoded text of a message to the content of a TLV.
+   * The text is copied in UTF-8 encoding, without decoding it.
+   *
+   * @param parent      the TLV to append to
+   * @param txttype     type of the TLV to append
+   * @param msg         the message with the text
+   */
+  protected void appendUtf8Text(MsgBoardTLV parent,
+                                MsgBoardType txttype,
+                                Utf8Message msg)
+  {
+    MsgBoardTLV content = parent.appendTLV(txttype);
+    content.setLength(msg.copyText(content.getData(),
+                                   content.getValueStart()));
+    parent.addToLength(content.getSize());
+  }
+
+
   /**
    * Appends a TLV-encoded message to the content of a TLV.
    *
@@ -140,6 +209,22 @@ public class TLVResponseBuilderImpl implements ResponseBuilder
      }
 
 
+    appendElements(msgtlv, msg, order);
+
+    parent.addToLength(msgtlv.getSize());
+  }
+
+
+  /**
+   * Appends the elements of a message to a MESSAGE TLV.
+   *
+   * @param msgtlv      the MESSAGE TLV to append to
+   * @param msg         the message to encode
+   * @param order       the order of the elements
+   */
+  protected void appendElements(MsgBoardTLV msgtlv, Message msg,
+                                MsgBoardType[] order)
+  {
     for (MsgBoardType mbt: order)
      {
        switch (mbt)
@@ -153,12 +238,45 @@ public class TLVResponseBuilderImpl implements ResponseBuilder
            break;
 
          case TEXT:
-           appendString(msgtlv, mbt, msg.getText(), true);
+           if (msg instanceof Utf8Message)
+              appendUtf8Text(msgtlv, mbt, (Utf8Message) msg);
+           else
+              appendString(msgtlv, mbt, msg.getText(), true);
            break;
         }
      }
+  }
 
-    parent.addToLength(msgtlv.getSize());
+
+  /**
+   * Obtains the encoded MESSAGE TLV of a message.
+   * If the message is an {@link EncodableMessage}, the encoding is cached
+   * there on first use, and the cached encoding returned afterwards.
+   *
+   * @param msg         the message to encode
+   *
+   * @return    the complete MESSAGE TLV. The array must not be modified.
+   */
+  protected byte[] getMessageTLV(Message msg)
+  {
+    EncodableMessage em = null;
+    if (msg instanceof EncodableMessage)
+     {
+       em = (EncodableMessage) msg;
+       byte[] cached = (byte[]) em.getEncoding(MESSAGE_TLV_KEY);
+       if (cached != null)
+          return cached;
+     }
+
+    byte[] data = new byte[estimateLength(msg)];
+    MsgBoardTLV msgtlv = new MsgBoardTLV(MsgBoardType.MESSAGE, data, 0);
+    appendElements(msgtlv, msg, CACHED_ORDER);
+    byte[] encoded = msgtlv.copyTLV();
+
+    if (em != null)
+       em.putEncoding(MESSAGE_TLV_KEY, encoded);
+
+    return encoded;
   }
 
 
@@ -245,12 +363,29 @@ public class TLVResponseBuilderImpl implements ResponseBuilder
 
     final MessageBatch msgbatch = response.getResult();
 
+    // cached encodings have exact sizes, no estimate needed for those
+    byte[][] encoded = null;
+    if (cacheMessages)
+     {
+       encoded = new byte[msgbatch.getMessages().size()][];
+       for (int i=0; i<encoded.length; i++)
+          encoded[i] = getMessageTLV(msgbatch.getMessages().get(i));
+     }
+
     int estimate = 8; // response TLV and nested marker
     estimate += msgbatch.getMarker().length(); // marker is ASCII
     if (msgbatch.isDiscontinuous())
        estimate += 4; // nested discontinuity indicator
-    for (Message msg: msgbatch.getMessages())
-       estimate += estimateLength(msg);
+    if (encoded != null)
+     {
+       for (byte[] msgtlv: encoded)
+          estimate += msgtlv.length;
+     }
+    else
+     {
+       for (Message msg: msgbatch.getMessages())
+          estimate += estimateLength(msg);
+     }
 
     byte[] data = new byte[estimate];
     MsgBoardTLV rsptlv =
@@ -268,9 +403,20 @@ public class TLVResponseBuilderImpl implements ResponseBuilder
        rsptlv.addToLength(content.getSize());
      }
 
-    for (Message msg: msgbatch.getMessages())
+    if (encoded != null)
      {
-       appendMessage(rsptlv, msg);
+       for (byte[] msgtlv: encoded)
+        {
+          System.arraycopy(msgtlv, 0, data, rsptlv.getEnd(), msgtlv.length);
+          rsptlv.addToLength(msgtlv.length);
+        }
+     }
+    else
+     {
+       for (Message msg: msgbatch.getMessages())
+        {
+          appendMessage(rsptlv, msg);
+        }
      }
 
     //System.out.println("@@@ "+rsptlv.toFullString());
@@ -294,4 +440,27 @@ public class TLVResponseBuilderImpl implements ResponseBuilder
     return pdu;
   }
 
+
+
+  // non-javadoc, see interface
+  public ByteBuffer buildMarkerList(MsgBoardResponse<List<String>> response)
+  {
+    if (!response.isOK())
+       return buildErrorResponse(response.getProblem());
+
+    final List<String> markers = response.getResult();
+
+    int estimate = 4; // response TLV
+    for (String marker: markers)
+       estimate += 4 + marker.length(); // marker is ASCII
+
+    byte[] data = new byte[estimate];
+    MsgBoardTLV rsptlv = new MsgBoardTLV(MsgBoardType.MARKER_LIST, data, 0);
+
+    for (String marker: markers)
+       appendString(rsptlv, MsgBoardType.MARKER, marker, false);
+
+    return rsptlv.toBuffer();
+  }
+
 }
@@ -0,0 +1,92 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.sockets.server;
+
+import java.util.Locale;
+
+
+/**
+ * Configuration of the worker pool for a {@link PooledSocketHandler}.
+ * Objects of this class are immutable.
+ */
+public class WorkerPoolConfig
+{
+  /**
+   * What to do with a connection when the worker pool is saturated.
+   */
+  public enum Rejection
+  {
+    /** Send an error response and close the connection. */
+    ERROR,
+
+    /** Close the connection without a response. */
+    DROP,
+
+    /** Serve the request on the accepting thread, like without a pool. */
+    CALLER;
+
+
+    /**
+     * Looks up a rejection behavior by name, ignoring case.
+     *
+     * @param name  the name of the behavior, for example "drop"
+     *
+     * @return    the rejection behavior
+     *
+     * @throws IllegalArgumentException   if there is no such behavior
+     */
+    public static Rejection forName(String name)
+    {
+      return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+  }
+
+
+  /** The default configuration. */
+  public final static WorkerPoolConfig DEFAULT =
+    new WorkerPoolConfig(16, 64, Rejection.ERROR);
+
+
+  /** The number of worker threads. */
+  public final int poolSize;
+
+  /** The number of accepted connections that may wait for a worker. */
+  public final int queueBound;
+
+  /** What to do when all workers are busy and the queue is full. */
+  public final Rejection rejection;
+
+
+
+  /**
+   * Creates a new worker pool configuration.
+   *
+   * @param size      the number of worker threads, at least 1
+   * @param bound     the number of connections that may wait for a worker,
+   *                  0 for direct hand-off to an idle worker
+   * @param reject    what to do with connections that cannot be served
+   */
+  public WorkerPoolConfig(int size, int bound, Rejection reject)
+  {
+    if (size < 1)
+       throw new IllegalArgumentException("size "+size);
+    if (bound < 0)
+       throw new IllegalArgumentException("bound "+bound);
+    if (reject == null)
+       throw new NullPointerException("Rejection");
+
+    poolSize   = size;
+    queueBound = bound;
+    rejection  = reject;
+  }
+
+
+  public String toString()
+  {
+    return "pool="+poolSize+",queue="+queueBound+",reject="+rejection;
+  }
+
+}
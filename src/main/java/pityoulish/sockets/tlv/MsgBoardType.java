@@ -56,6 +56,24 @@ public enum MsgBoardType
     */
    TICKET((byte)0xC6),
 
+   /**
+    * A timeout in seconds.
+    * The value is a single byte with a value in the range 1 to 127, inclusive.
+    */
+   TIMEOUT((byte)0xC7),
+
+   /**
+    * The name of a channel, that is a board of its own.
+    * The value of the TLV is a string of printable US-ASCII characters.
+    */
+   CHANNEL((byte)0xC8),
+
+   /**
+    * An indicator to select only user messages, without system messages.
+    * The value of the TLV is empty.
+    */
+   USER_ONLY((byte)0xC9),
+
 
    // constructed TLV =========================================================
 
@@ -85,6 +103,8 @@ public enum MsgBoardType
     * Request to obtain {@link #MESSAGE messages} from the board.
     * The request contains a {@link #LIMIT limit},
     * and may contain a {@link #MARKER marker}.
+    * It may also contain an {@link #ORIGINATOR originator} and a
+    * {@link #USER_ONLY user only} indicator, to select messages.
     * On success, the response is a {@link #MESSAGE_BATCH message batch}.
     */
    LIST_MESSAGES((byte)0xE3),
@@ -130,7 +150,55 @@ public enum MsgBoardType
     * That is the only element of this request.
     * On success, an {@link #INFO_RESPONSE info} response is returned.
     */
-   REPLACE_TICKET((byte)0xE9)
+   REPLACE_TICKET((byte)0xE9),
+
+   /**
+    * Request to keep the connection open for further requests.
+    * The request is empty.
+    * On success, an {@link #INFO_RESPONSE info} response is returned,
+    * and the server reads more requests from the same connection.
+    * Responses are sent in the order of the requests.
+    */
+   KEEP_ALIVE((byte)0xEA),
+
+   /**
+    * Request to obtain {@link #MESSAGE messages} from the board,
+    * waiting for new ones if necessary.
+    * The request contains a {@link #LIMIT limit} and a
+    * {@link #TIMEOUT timeout}, and may contain a {@link #MARKER marker}.
+    * If there are no messages newer than the marker, the server waits
+    * until new messages arrive or the timeout expires. The server may
+    * wait less than the timeout, or not at all.
+    * On success, the response is a {@link #MESSAGE_BATCH message batch}.
+    */
+   AWAIT_MESSAGES((byte)0xEB),
+
+   /**
+    * Request to search for {@link #MESSAGE messages} on the board.
+    * The request contains a {@link #LIMIT limit} and a {@link #TEXT text}
+    * with the words to search for, and may contain a {@link #MARKER marker}.
+    * Only messages that contain all the words are returned.
+    * On success, the response is a {@link #MESSAGE_BATCH message batch}.
+    * Its marker can be used to continue the search.
+    */
+   SEARCH_MESSAGES((byte)0xEC),
+
+   /**
+    * Request to put several messages on the board.
+    * The request contains a {@link #TICKET ticket}, and one or more
+    * {@link #TEXT texts} of the messages to publish, in order.
+    * Each message punches the ticket. If the ticket allows fewer
+    * actions than there are texts, only the first texts are published.
+    * On success, the response is a {@link #MARKER_LIST marker list}.
+    */
+   PUT_MESSAGES((byte)0xED),
+
+   /**
+    * Response with the {@link #MARKER markers} of published messages.
+    * Comprises one marker for each message, in the order of the texts
+    * in the request.
+    */
+   MARKER_LIST((byte)0xEE)
    ;
 
 
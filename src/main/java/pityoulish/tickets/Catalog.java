@@ -40,7 +40,11 @@ public enum Catalog implements TextEntry
    USERNAME_TOO_SHORT_1,
    USERNAME_TOO_LONG_1,
    USERNAME_BAD_CHARACTER,
-   TOKEN_EMPTY
+   TOKEN_EMPTY,
+   TOKEN_MALFORMED,
+
+   TICKET_STORE_FAILED_1,
+   TICKET_UNKNOWN
    ;
 
 
@@ -7,6 +7,7 @@ package pityoulish.tickets;
 
 import java.util.regex.Pattern;
 
+import pityoulish.mbserver.AsciiCharClass;
 import pityoulish.mbserver.ProblemFactory;
 import pityoulish.mbserver.SanityCheckerBase;
 
@@ -25,11 +26,16 @@ public class DefaultTSanityChecker<P> extends SanityCheckerBase<P>
   public final static
     Pattern DEFAULT_USERNAME_PATTERN = Pattern.compile("[A-Za-z0-9]+");
 
+  /** The characters of the {@link #DEFAULT_USERNAME_PATTERN}. */
+  protected final static
+    AsciiCharClass DEFAULT_USERNAME_CHARS = new AsciiCharClass("A-Za-z0-9");
+
 
   protected final int usernameMinLength;
 
   protected final int usernameMaxLength;
 
+  /** The custom username pattern, or <code>null</code> for the default. */
   protected final Pattern usernamePattern;
 
 
@@ -57,7 +63,7 @@ public class DefaultTSanityChecker<P> extends SanityCheckerBase<P>
 
     usernameMinLength = uminlen;
     usernameMaxLength = umaxlen;
-    usernamePattern = (upattern != null) ? upattern : DEFAULT_USERNAME_PATTERN;
+    usernamePattern = upattern; // default is checked without regex
   }
 
 
@@ -93,7 +99,10 @@ public class DefaultTSanityChecker<P> extends SanityCheckerBase<P>
        return problemFactory.newProblem(Catalog.USERNAME_TOO_LONG_1,
                                         String.valueOf(usernameMaxLength));
 
-    if (!usernamePattern.matcher(username).matches())
+    boolean valid = (usernamePattern != null) ?
+      usernamePattern.matcher(username).matches() :
+      DEFAULT_USERNAME_CHARS.matches(username);
+    if (!valid)
        return problemFactory.newProblem(Catalog.USERNAME_BAD_CHARACTER);
 
     return null;
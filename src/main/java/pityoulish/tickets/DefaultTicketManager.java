@@ -5,8 +5,10 @@
  */
 package pityoulish.tickets;
 
-import java.util.Map;
-import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 import java.net.InetAddress;
 
@@ -18,6 +20,16 @@ import pityoulish.mbserver.StringProblemFactory;
 /**
  * Default implementation of a {@link TicketManager}.
  * Ticket managers must be thread safe.
+ * <br>
+ * The issued tickets are kept in a {@link TicketStore}. By default, that is
+ * a {@link LocalTicketStore} in memory. Nodes that share a remote store,
+ * see {@link RemoteTicketStore}, accept each other's tickets.
+ * <br>
+ * Unknown tokens are turned away before the store is asked, if the store
+ * can tell that it has no such ticket, or if the token has been rejected
+ * recently. On this path, the exception has no stack trace and is not
+ * logged. Clients sending made-up or stale tokens don't keep the server
+ * busy.
  */
 public class DefaultTicketManager implements TicketManager
 {
@@ -25,30 +37,45 @@ public class DefaultTicketManager implements TicketManager
 
   public final static long TIME_TO_LIVE_MS = 128000; // milliseconds
 
+  /** How long to wait for the ticket store, in milliseconds. */
+  public final static long STORE_TIMEOUT_MS = 5000;
+
   /** Characters to be used in the random part of a token. */
   protected final static String RANDOM_TOKEN_CHARS =
     "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789._";
 
   protected final TSanityChecker<String> sanityChecker;
 
-  protected Map<String,TicketImpl>      ticketsByUsername;
-  protected Map<String,TicketImpl>      ticketsByToken;
-  // the following are for simulated sanity checks...
-  protected Map<InetAddress,TicketImpl> ticketsByAddress;
-  protected Map<String,TicketImpl>      ticketsByHost;
+  /** The issued tickets. */
+  protected final TicketStore ticketStore;
 
-  //@@@ no housekeeping implemented, expired tickets should get purged
+  /** Tokens for which the store had no ticket. */
+  protected final RejectedTokenCache rejectedTokens;
 
 
+  /**
+   * Creates a new ticket manager with a {@link LocalTicketStore}.
+   */
   public DefaultTicketManager()
   {
-    sanityChecker = newSanityChecker(new StringProblemFactory());
+    this(new LocalTicketStore());
+  }
 
-    ticketsByUsername = new HashMap<String,TicketImpl>();
-    ticketsByToken    = new HashMap<String,TicketImpl>();
 
-    ticketsByAddress  = new HashMap<InetAddress,TicketImpl>();
-    ticketsByHost     = new HashMap<String,TicketImpl>();
+  /**
+   * Creates a new ticket manager.
+   *
+   * @param store       the store for the issued tickets
+   */
+  public DefaultTicketManager(TicketStore store)
+  {
+    if (store == null)
+       throw new NullPointerException("TicketStore");
+
+    sanityChecker = newSanityChecker(new StringProblemFactory());
+    ticketStore = store;
+    ticketStore.attach(this);
+    rejectedTokens = new RejectedTokenCache();
   }
 
 
@@ -58,82 +85,79 @@ public class DefaultTicketManager implements TicketManager
   }
 
 
-  public synchronized Ticket obtainTicket(String username,
-                                          InetAddress address,
-                                          String host)
+  public Ticket obtainTicket(String username,
+                             InetAddress address,
+                             String host)
     throws TicketException
   {
     String problem = sanityChecker.checkUsername(username);
     if (problem != null)
        throw Log.log(logger, "obtainTicket", new TicketException(problem));
 
-    final long now = System.currentTimeMillis();
-
-    TicketImpl tick = ticketsByUsername.get(username);
-    if ((tick != null) && !tick.isExpired(now))
-       throw Log.log(logger, "obtainTicket", new TicketException
-                     (Catalog.USER_ALREADY_HAS_TICKET_1.format(username)));
-
-    if (address != null)
-     {
-       // Checking for a network address in this fashion is NOT a reasonable
-       // thing to do. Different clients may share the same network address,
-       // by means of SOCKS proxies or firewalls with NAT.
-       // This is just a placeholder for sanity checks that could be performed
-       // by a real application. It also isn't secure in any way, because a
-       // machine can have more than one network address, or use SOCKS proxies
-       // and firewalls with NAT.
-
-       tick = ticketsByAddress.get(address);
-       if ((tick != null) && !tick.isExpired(now))
-          throw Log.log(logger, "obtainTicket", new TicketException
-                        (Catalog.ADDRESS_ALREADY_HAS_TICKET_1.format(address))
-                        );
-     }
-
-    if (host != null)
-     {
-       // see comment on (address != null) above, same applies to hostname
-       tick = ticketsByHost.get(host);
-       if ((tick != null) && !tick.isExpired(now))
-          throw Log.log(logger, "obtainTicket", new TicketException
-                        (Catalog.HOST_ALREADY_HAS_TICKET_1.format(host))
-                        );
-     }
-
-    //@@@ trigger housekeeping if an expired ticket was found?
-
     final String token = computeToken(username);
-    final long  expiry = now + TIME_TO_LIVE_MS; //@@@ randomize?
+    final long  expiry = System.currentTimeMillis() + TIME_TO_LIVE_MS;
+    //@@@ randomize expiry?
     final int  actions = 3;                     //@@@ randomize? 2..5
-    tick = new TicketImpl(this, username, address, host, token,
-                          expiry, actions);
-    ticketsByUsername.put(username, tick);
-    ticketsByToken.put(token, tick);
+    TicketImpl tick = new TicketImpl(this, username, address, host, token,
+                                     expiry, actions);
+
+    // Checking for a network address or host in the store is NOT a
+    // reasonable thing to do. Different clients may share the same
+    // network address, by means of SOCKS proxies or firewalls with NAT.
+    // This is just a placeholder for sanity checks that could be
+    // performed by a real application. It also isn't secure in any way,
+    // because a machine can have more than one network address, or use
+    // SOCKS proxies and firewalls with NAT.
+
+    TicketStore.Conflict conflict =
+      await(ticketStore.add(tick), "obtainTicket");
+    if (conflict != null)
+     {
+       switch (conflict)
+        {
+          case USERNAME:
+            throw Log.log(logger, "obtainTicket", new TicketException
+                          (Catalog.USER_ALREADY_HAS_TICKET_1.format(username)));
+          case ADDRESS:
+            throw Log.log(logger, "obtainTicket", new TicketException
+                          (Catalog.ADDRESS_ALREADY_HAS_TICKET_1
+                           .format(address)));
+          default:
+            throw Log.log(logger, "obtainTicket", new TicketException
+                          (Catalog.HOST_ALREADY_HAS_TICKET_1.format(host)));
+        }
+     }
 
-    if (address != null)
-       ticketsByAddress.put(address, tick);
-    if (host != null)
-       ticketsByHost.put(host, tick);
+    // in the unlikely case that someone guessed it before
+    rejectedTokens.forget(token);
 
     return tick;
 
   } // obtainTicket
 
 
-  public synchronized Ticket lookupTicket(String token,
-                                          InetAddress address,
-                                          String host)
+  public Ticket lookupTicket(String token,
+                             InetAddress address,
+                             String host)
     throws TicketException
   {
     String problem = sanityChecker.checkToken(token);
     if (problem != null)
        throw Log.log(logger, "lookupTicket", new TicketException(problem));
 
-    TicketImpl tick = ticketsByToken.get(token);
+    // the fast way out, without a lookup and without logging
+    final long now = System.currentTimeMillis();
+    if (!ticketStore.mightContain(token) ||
+        rejectedTokens.contains(token, now))
+       throw new TicketException(Catalog.TICKET_UNKNOWN.lookup(), false);
+
+    TicketImpl tick = await(ticketStore.get(token), "lookupTicket");
     if (tick == null)
+     {
+       rejectedTokens.record(token, now);
        throw Log.log(logger, "lookupTicket", new TicketException
                      (Catalog.TICKET_NOT_FOUND_1.format(token)));
+     }
 
     tick.validate(this, null, address, host, token);
 
@@ -142,7 +166,7 @@ public class DefaultTicketManager implements TicketManager
   } // lookupTicket
 
 
-  public synchronized void returnTicket(Ticket tick)
+  public void returnTicket(Ticket tick)
     throws TicketException
   {
     if (tick == null)
@@ -156,13 +180,49 @@ public class DefaultTicketManager implements TicketManager
     // make sure that it is a ticket from here
     timp.validate(this, null, null, null, timp.getToken());
 
-    ticketsByUsername.remove(timp.getUsername());
-    ticketsByToken.remove(timp.getToken());
+    await(ticketStore.remove(timp), "returnTicket");
+  }
 
-    if (timp.getAddress() != null)
-       ticketsByAddress.remove(timp.getAddress());
-    if (timp.getHost() != null)
-       ticketsByHost.remove(timp.getHost());
+
+  /**
+   * Obtains the store for the issued tickets.
+   *
+   * @return    the ticket store
+   */
+  public TicketStore getTicketStore()
+  {
+    return ticketStore;
+  }
+
+
+  /**
+   * Waits for the result of an operation on the ticket store.
+   *
+   * @param future      the pending result
+   * @param method      the calling method, for logging
+   *
+   * @return    the result
+   *
+   * @throws TicketException    if the store failed or did not respond
+   */
+  protected <T> T await(CompletableFuture<T> future, String method)
+    throws TicketException
+  {
+    try {
+      return future.get(STORE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+    } catch (ExecutionException exx) {
+      throw Log.log(logger, method, new TicketException
+                    (Catalog.TICKET_STORE_FAILED_1.format(exx.getCause()),
+                     exx.getCause()));
+    } catch (TimeoutException tox) {
+      throw Log.log(logger, method, new TicketException
+                    (Catalog.TICKET_STORE_FAILED_1.format(tox), tox));
+    } catch (InterruptedException iex) {
+      Thread.currentThread().interrupt();
+      throw Log.log(logger, method, new TicketException
+                    (Catalog.TICKET_STORE_FAILED_1.format(iex), iex));
+    }
   }
 
 
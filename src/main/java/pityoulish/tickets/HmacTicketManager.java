@@ -0,0 +1,361 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import pityoulish.logutil.Log;
+import pityoulish.mbserver.ProblemFactory;
+import pityoulish.mbserver.StringProblemFactory;
+
+
+/**
+ * A {@link TicketManager} with stateless tickets.
+ * The token of a ticket holds the username, the expiry time, and
+ * tags for the address and host. It is signed with an HMAC.
+ * Looking up a ticket checks the signature, nothing is kept in a map.
+ * Only the number of actions performed is kept, in a {@link PunchStore}.
+ * Nodes that share the key and the punch store accept each other's tickets.
+ * <br>
+ * The token format is <code><i>username</i>@<i>expiry</i>.<i>nonce</i>.</code>
+ * <code><i>atag</i>.<i>htag</i>.<i>signature</i></code>.
+ * The expiry time and nonce are base 36. The tags and the signature are
+ * truncated HMACs in base64url. A tag is empty if the ticket is not bound
+ * to an address or host. Tags are checked only if the lookup provides
+ * the address or host, like in {@link TicketImpl#validate TicketImpl}.
+ * <br>
+ * Unlike the {@link DefaultTicketManager}, this manager does not know
+ * which tickets are valid. A user, address, or host can obtain a new ticket
+ * while the previous one is still valid.
+ */
+public class HmacTicketManager implements TicketManager
+{
+  protected final Logger logger = Log.getPackageLogger(this.getClass());
+
+  /** The algorithm for signing tokens. */
+  public final static String MAC_ALGORITHM = "HmacSHA256";
+
+  /** The minimum length of a key, in bytes. */
+  public final static int MIN_KEY_LENGTH = 16;
+
+  /** The number of bytes of the HMAC used as signature. */
+  protected final static int SIGNATURE_BYTES = 16;
+
+  /** The number of bytes of the HMAC used as address or host tag. */
+  protected final static int TAG_BYTES = 6;
+
+  /** Encodes signatures and tags. */
+  protected final static Base64.Encoder BASE64 =
+    Base64.getUrlEncoder().withoutPadding();
+
+  protected final TSanityChecker<String> sanityChecker;
+
+  /** The key for signing tokens. */
+  protected final SecretKeySpec macKey;
+
+  /** The MAC for each thread, MACs are not thread safe. */
+  protected final ThreadLocal<Mac> threadMac;
+
+  /** The number of actions performed with each ticket. */
+  protected final PunchStore punchStore;
+
+  /** The number of actions allowed per ticket. */
+  protected final int ticketActions;
+
+
+  /**
+   * Creates a new ticket manager.
+   *
+   * @param key         the key for signing tokens, shared by all nodes
+   * @param store       the punch store, shared by all nodes
+   */
+  public HmacTicketManager(byte[] key, PunchStore store)
+  {
+    if (key == null)
+       throw new NullPointerException("key");
+    if (store == null)
+       throw new NullPointerException("PunchStore");
+    if (key.length < MIN_KEY_LENGTH)
+       throw new IllegalArgumentException("key length "+key.length);
+
+    sanityChecker = newSanityChecker(new StringProblemFactory());
+    macKey        = new SecretKeySpec(key, MAC_ALGORITHM);
+    threadMac     = new MacThreadLocal();
+    punchStore    = store;
+    ticketActions = 3; //@@@ randomize? 2..5
+
+    // fail now rather than on the first ticket
+    threadMac.get();
+  }
+
+
+  public <P> TSanityChecker<P> newSanityChecker(ProblemFactory<P> pf)
+  {
+    return new DefaultTSanityChecker<P>(pf);
+  }
+
+
+  public Ticket obtainTicket(String username,
+                             InetAddress address,
+                             String host)
+    throws TicketException
+  {
+    String problem = sanityChecker.checkUsername(username);
+    if (problem != null)
+       throw Log.log(logger, "obtainTicket", new TicketException(problem));
+
+    final long expiry = System.currentTimeMillis() +
+      DefaultTicketManager.TIME_TO_LIVE_MS;
+    final long nonce = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+
+    StringBuilder sb = new StringBuilder(username.length()+64);
+    sb.append(username).append('@')
+      .append(Long.toString(expiry, 36)).append('.')
+      .append(Long.toString(nonce, 36));
+    final String core = sb.toString();
+
+    sb.append('.');
+    if (address != null)
+       sb.append(computeTag('a', core, address.getHostAddress()));
+    sb.append('.');
+    if (host != null)
+       sb.append(computeTag('h', core, host));
+
+    final String signature = computeSignature(sb.toString());
+    sb.append('.').append(signature);
+
+    return new HmacTicket(this, username, sb.toString(), signature, expiry);
+
+  } // obtainTicket
+
+
+  public Ticket lookupTicket(String token,
+                             InetAddress address,
+                             String host)
+    throws TicketException
+  {
+    String problem = sanityChecker.checkToken(token);
+    if (problem != null)
+       throw Log.log(logger, "lookupTicket", new TicketException(problem));
+
+    // username@expiry.nonce.atag.htag.signature
+    final int at = token.lastIndexOf('@');
+    final String[] parts = (at > 0) ?
+      token.substring(at+1).split("\\.", -1) : null;
+    if ((parts == null) || (parts.length != 5))
+       throw Log.log(logger, "lookupTicket", new TicketException
+                     (Catalog.TOKEN_MALFORMED.lookup()));
+
+    long expiry = 0;
+    try {
+      expiry = Long.parseLong(parts[0], 36);
+    } catch (NumberFormatException nfx) {
+      throw Log.log(logger, "lookupTicket", new TicketException
+                    (Catalog.TOKEN_MALFORMED.lookup()));
+    }
+
+    final String signature = parts[4];
+    final String signed =
+      token.substring(0, token.length()-signature.length()-1);
+    if (!isEqual(computeSignature(signed), signature))
+       throw Log.log(logger, "lookupTicket", new TicketException
+                     (Catalog.WRONG_TOKEN.lookup()));
+
+    // the signature is valid, the rest of the token is authentic
+    final String username = token.substring(0, at);
+    final String core = token.substring(0, at+2+parts[0].length()+
+                                        parts[1].length());
+    if ((address != null) && (parts[2].length() > 0) &&
+        !isEqual(computeTag('a', core, address.getHostAddress()), parts[2]))
+       throw Log.log(logger, "lookupTicket", new TicketException
+                     (Catalog.WRONG_NETWORK_ADDRESS.lookup()));
+    if ((host != null) && (parts[3].length() > 0) &&
+        !isEqual(computeTag('h', core, host), parts[3]))
+       throw Log.log(logger, "lookupTicket", new TicketException
+                     (Catalog.WRONG_NETWORK_HOST.lookup()));
+
+    if (expiry <= System.currentTimeMillis())
+       throw Log.log(logger, "lookupTicket", new TicketException
+                     (Catalog.TICKET_EXPIRED.lookup()));
+
+    if (punchStore.isRevoked(signature))
+       throw Log.log(logger, "lookupTicket", new TicketException
+                     (Catalog.TICKET_NOT_FOUND_1.format(token)));
+
+    return new HmacTicket(this, username, token, signature, expiry);
+
+  } // lookupTicket
+
+
+  public void returnTicket(Ticket tick)
+    throws TicketException
+  {
+    if (tick == null)
+       throw new NullPointerException("Ticket");
+    if (!(tick instanceof HmacTicket))
+       throw new IllegalArgumentException
+         ("wrong class of ticket: "+tick.getClass().getName());
+
+    HmacTicket htick = (HmacTicket) tick;
+    if (htick.issuedBy != this)
+       throw Log.log(logger, "returnTicket", new TicketException
+                     (Catalog.WRONG_TICKET_MANAGER.lookup()));
+
+    punchStore.revoke(htick.ticketId, htick.expiryTime);
+  }
+
+
+  /**
+   * Computes the signature of a token.
+   *
+   * @param signed      the part of the token to sign
+   *
+   * @return    the signature, in base64url
+   */
+  protected String computeSignature(String signed)
+  {
+    return computeMac(signed, SIGNATURE_BYTES);
+  }
+
+
+  /**
+   * Computes a tag for binding a ticket to an address or host.
+   *
+   * @param kind        'a' for an address, 'h' for a host
+   * @param core        the username, expiry, and nonce part of the token
+   * @param value       the address or host
+   *
+   * @return    the tag, in base64url
+   */
+  protected String computeTag(char kind, String core, String value)
+  {
+    StringBuilder sb = new StringBuilder(core.length()+value.length()+3);
+    sb.append(kind).append('|').append(core).append('|').append(value);
+    return computeMac(sb.toString(), TAG_BYTES);
+  }
+
+
+  /**
+   * Computes a truncated HMAC.
+   *
+   * @param input       the text to authenticate
+   * @param length      the number of bytes to keep
+   *
+   * @return    the truncated HMAC, in base64url
+   */
+  protected String computeMac(String input, int length)
+  {
+    Mac mac = threadMac.get();
+    byte[] hmac = mac.doFinal(input.getBytes(StandardCharsets.UTF_8));
+    return BASE64.encodeToString(Arrays.copyOf(hmac, length));
+  }
+
+
+  /**
+   * Compares two signatures or tags in constant time.
+   *
+   * @param expected    the computed value
+   * @param actual      the value from the token
+   *
+   * @return    <code>true</code> if they are equal,
+   *            <code>false</code> otherwise
+   */
+  protected static boolean isEqual(String expected, String actual)
+  {
+    return MessageDigest.isEqual
+      (expected.getBytes(StandardCharsets.US_ASCII),
+       actual.getBytes(StandardCharsets.US_ASCII));
+  }
+
+
+
+  /**
+   * Initializes the MAC for each thread.
+   */
+  protected class MacThreadLocal extends ThreadLocal<Mac>
+  {
+    // non-javadoc, see class ThreadLocal
+    protected Mac initialValue()
+    {
+      try {
+        Mac mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(macKey);
+        return mac;
+      } catch (GeneralSecurityException gsx) {
+        // HmacSHA256 is required on every Java platform
+        throw new IllegalStateException(gsx);
+      }
+    }
+  }
+
+
+  /**
+   * A ticket from a {@link HmacTicketManager}.
+   * Each lookup creates a new object, the ticket is in the token.
+   */
+  protected static class HmacTicket implements Ticket
+  {
+    /** The manager that issued or looked up this ticket. */
+    protected final HmacTicketManager issuedBy;
+
+    protected final String issuedToUsername;
+
+    protected final String ticketToken;
+
+    /** The identifier in the {@link PunchStore}, the signature. */
+    protected final String ticketId;
+
+    /** The time when this ticket expires. */
+    protected final long expiryTime;
+
+
+    protected HmacTicket(HmacTicketManager creator, String username,
+                         String token, String id, long expiry)
+    {
+      issuedBy = creator;
+      issuedToUsername = username;
+      ticketToken = token;
+      ticketId = id;
+      expiryTime = expiry;
+    }
+
+
+    public final String getUsername()
+    {
+      return issuedToUsername;
+    }
+
+    public final String getToken()
+    {
+      return ticketToken;
+    }
+
+    public final boolean punch()
+    {
+      return issuedBy.punchStore.punch(ticketId, issuedBy.ticketActions,
+                                       expiryTime);
+    }
+
+    public final void refund(int count)
+    {
+      if (count < 1)
+         throw new IllegalArgumentException("count "+count);
+
+      issuedBy.punchStore.refund(ticketId, count);
+    }
+  }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A {@link PunchStore} in memory, for a single node.
+ * Only tickets that have been punched or revoked get an entry.
+ * Expired entries are purged from time to time, when new ones are added.
+ */
+public class LocalPunchStore implements PunchStore
+{
+  /** The number of new entries between purges of expired ones. */
+  public final static int PURGE_INTERVAL = 256;
+
+  /** The value of {@link Entry#punched} for a revoked ticket. */
+  protected final static int REVOKED = Integer.MAX_VALUE;
+
+  /** The entries, by ticket identifier. */
+  protected final ConcurrentMap<String,Entry> punchEntries;
+
+  /** Counts new entries, to trigger a purge. */
+  protected final AtomicInteger newEntries;
+
+
+  /**
+   * Creates a new, empty punch store.
+   */
+  public LocalPunchStore()
+  {
+    punchEntries = new ConcurrentHashMap<String,Entry>();
+    newEntries   = new AtomicInteger();
+  }
+
+
+  // non-javadoc, see interface PunchStore
+  public boolean punch(String id, int actions, long expiry)
+  {
+    Entry entry = getOrCreate(id, expiry);
+
+    int punched = entry.punched.get();
+    while (punched < actions)
+     {
+       if (entry.punched.compareAndSet(punched, punched+1))
+          return true;
+       punched = entry.punched.get();
+     }
+
+    return false;
+  }
+
+
+  // non-javadoc, see interface PunchStore
+  public void refund(String id, int count)
+  {
+    Entry entry = punchEntries.get(id);
+    if (entry == null)
+       return; // never punched, or purged after expiry
+
+    int punched = entry.punched.get();
+    while ((punched != REVOKED) && (punched > 0))
+     {
+       if (entry.punched.compareAndSet(punched, Math.max(0, punched-count)))
+          return;
+       punched = entry.punched.get();
+     }
+  }
+
+
+  // non-javadoc, see interface PunchStore
+  public void revoke(String id, long expiry)
+  {
+    getOrCreate(id, expiry).punched.set(REVOKED);
+  }
+
+
+  // non-javadoc, see interface PunchStore
+  public boolean isRevoked(String id)
+  {
+    Entry entry = punchEntries.get(id);
+    return (entry != null) && (entry.punched.get() == REVOKED);
+  }
+
+
+  /**
+   * Obtains the number of entries.
+   *
+   * @return    the number of tickets with an entry in this store
+   */
+  public int size()
+  {
+    return punchEntries.size();
+  }
+
+
+  /**
+   * Obtains the entry for a ticket, creating it if necessary.
+   *
+   * @param id          the identifier of the ticket
+   * @param expiry      the time at which the ticket expires
+   *
+   * @return    the entry
+   */
+  protected Entry getOrCreate(String id, long expiry)
+  {
+    Entry entry = punchEntries.get(id);
+    if (entry != null)
+       return entry;
+
+    entry = new Entry(expiry);
+    Entry old = punchEntries.putIfAbsent(id, entry);
+    if (old != null)
+       return old;
+
+    if (newEntries.incrementAndGet() % PURGE_INTERVAL == 0)
+       purgeExpired(System.currentTimeMillis());
+
+    return entry;
+  }
+
+
+  /**
+   * Removes the entries of expired tickets.
+   *
+   * @param now   the current time
+   */
+  protected void purgeExpired(long now)
+  {
+    Iterator<Entry> it = punchEntries.values().iterator();
+    while (it.hasNext())
+     {
+       if (it.next().expiryTime <= now)
+          it.remove();
+     }
+  }
+
+
+
+  /**
+   * The actions performed with a ticket.
+   */
+  protected static class Entry
+  {
+    /** The time at which the ticket expires. */
+    public final long expiryTime;
+
+    /** The number of actions performed, or {@link #REVOKED}. */
+    public final AtomicInteger punched;
+
+    public Entry(long expiry)
+    {
+      expiryTime = expiry;
+      punched    = new AtomicInteger();
+    }
+  }
+
+}
@@ -0,0 +1,293 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * A {@link TicketStore} in memory, for a single node.
+ * Operations complete immediately.
+ * <br>
+ * The indexes are concurrent maps, so that {@link #get get}
+ * does not take any locks. Adding and removing tickets is serialized
+ * per username by striped locks. Tickets from different users can still
+ * compete for the same address or host, those index entries are claimed
+ * with atomic map operations.
+ * Expired tickets are removed by a {@link TicketReaper}.
+ * A {@link TokenFilter} over the tokens turns away most unknown tokens
+ * before they get to the index.
+ */
+public class LocalTicketStore implements TicketStore
+{
+  /** The number of locks for usernames, a power of 2. */
+  public final static int LOCK_STRIPES = 32;
+
+  /** The completed future for a successful {@link #add add}. */
+  protected final static CompletableFuture<Conflict> NO_CONFLICT =
+    CompletableFuture.completedFuture(null);
+
+  protected ConcurrentMap<String,TicketImpl>      ticketsByUsername;
+  protected ConcurrentMap<String,TicketImpl>      ticketsByToken;
+  // the following are for simulated sanity checks...
+  protected ConcurrentMap<InetAddress,TicketImpl> ticketsByAddress;
+  protected ConcurrentMap<String,TicketImpl>      ticketsByHost;
+
+  /** The locks for usernames, see {@link #lockFor lockFor}. */
+  protected final Object[] usernameLocks;
+
+  /** Removes expired tickets from the indexes. */
+  protected final TicketReaper ticketReaper;
+
+  /** The tokens in {@link #ticketsByToken}, or a few more. */
+  protected final TokenFilter tokenFilter;
+
+
+  /**
+   * Creates a new, empty ticket store.
+   */
+  public LocalTicketStore()
+  {
+    ticketsByUsername = new ConcurrentHashMap<String,TicketImpl>();
+    ticketsByToken    = new ConcurrentHashMap<String,TicketImpl>();
+
+    ticketsByAddress  = new ConcurrentHashMap<InetAddress,TicketImpl>();
+    ticketsByHost     = new ConcurrentHashMap<String,TicketImpl>();
+
+    usernameLocks = new Object[LOCK_STRIPES];
+    for (int i=0; i<usernameLocks.length; i++)
+       usernameLocks[i] = new Object();
+
+    ticketReaper = new TicketReaper(this);
+    tokenFilter  = new TokenFilter();
+  }
+
+
+  // non-javadoc, see interface TicketStore
+  public void attach(TicketManager owner)
+  {
+    // tickets are kept as they are, with the manager that created them
+  }
+
+
+  // non-javadoc, see interface TicketStore
+  public CompletableFuture<Conflict> add(TicketImpl tick)
+  {
+    if (tick == null)
+       throw new NullPointerException("TicketImpl");
+
+    synchronized (lockFor(tick.getUsername()))
+     {
+       final long now = System.currentTimeMillis();
+
+       TicketImpl old = ticketsByUsername.get(tick.getUsername());
+       if ((old != null) && !old.isExpired(now))
+          return CompletableFuture.completedFuture(Conflict.USERNAME);
+
+       final InetAddress address = tick.getAddress();
+       if ((address != null) &&
+           !claimIndex(ticketsByAddress, address, tick, now))
+          return CompletableFuture.completedFuture(Conflict.ADDRESS);
+
+       final String host = tick.getHost();
+       if ((host != null) && !claimIndex(ticketsByHost, host, tick, now))
+        {
+          if (address != null)
+             ticketsByAddress.remove(address, tick);
+          return CompletableFuture.completedFuture(Conflict.HOST);
+        }
+
+       if (old != null)
+          removeFromIndexes(old);
+
+       ticketsByUsername.put(tick.getUsername(), tick);
+       // the token goes last, lookups must find only complete tickets
+       // and the filter must not reject a token that is in the index
+       tokenFilter.add(tick.getToken());
+       if (ticketsByToken.put(tick.getToken(), tick) != null)
+          tokenFilter.remove(tick.getToken()); // counted already
+
+       ticketReaper.schedule(tick);
+
+       return NO_CONFLICT;
+     }
+  }
+
+
+  // non-javadoc, see interface TicketStore
+  public CompletableFuture<TicketImpl> get(String token)
+  {
+    // no locking, the token index is a concurrent map
+    return CompletableFuture.completedFuture(ticketsByToken.get(token));
+  }
+
+
+  /**
+   * Gets a ticket by token, without a future.
+   *
+   * @param token       the token of the ticket
+   *
+   * @return    the ticket, or <code>null</code> if there is none
+   */
+  public TicketImpl getNow(String token)
+  {
+    return ticketsByToken.get(token);
+  }
+
+
+  // non-javadoc, see interface TicketStore
+  public boolean mightContain(String token)
+  {
+    return tokenFilter.mightContain(token);
+  }
+
+
+  // non-javadoc, see interface TicketStore
+  public CompletableFuture<Boolean> remove(TicketImpl tick)
+  {
+    return CompletableFuture.completedFuture(Boolean.valueOf(removeNow(tick)));
+  }
+
+
+  /**
+   * Removes a ticket, without a future.
+   *
+   * @param tick        the ticket to remove
+   *
+   * @return    <code>true</code> if the ticket was removed,
+   *            <code>false</code> if it was not in the store
+   */
+  public boolean removeNow(TicketImpl tick)
+  {
+    synchronized (lockFor(tick.getUsername()))
+     {
+       boolean indexed = (ticketsByToken.get(tick.getToken()) == tick);
+       removeFromIndexes(tick);
+       return indexed;
+     }
+  }
+
+
+  // non-javadoc, see interface TicketStore
+  public void punched(TicketImpl tick)
+  {
+    // the ticket in the store has been punched itself
+  }
+
+
+  // non-javadoc, see interface TicketStore
+  public void refunded(TicketImpl tick, int count)
+  {
+    // the ticket in the store has been refunded itself
+  }
+
+
+  /**
+   * Starts removing expired tickets in a background thread.
+   * Without this, expired tickets stay in the indexes until
+   * the username, address or host obtains a new ticket.
+   */
+  public void startReaper()
+  {
+    ticketReaper.start();
+  }
+
+
+  /**
+   * Obtains the number of tickets in the indexes.
+   * These are the issued tickets that have been neither returned nor
+   * removed by the reaper. Some of them may have expired recently.
+   *
+   * @return    the number of tickets that can be looked up
+   */
+  public int getLiveTicketCount()
+  {
+    return ticketsByToken.size();
+  }
+
+
+  /**
+   * Obtains the number of expired tickets removed by the reaper.
+   *
+   * @return    the number of reaped tickets
+   */
+  public long getReapedTicketCount()
+  {
+    return ticketReaper.getReapedCount();
+  }
+
+
+  /**
+   * Obtains the lock for a username.
+   * Usernames are mapped onto a fixed number of locks.
+   *
+   * @param username    the username
+   *
+   * @return    the object to synchronize on
+   */
+  protected final Object lockFor(String username)
+  {
+    int hash = username.hashCode();
+    hash ^= (hash >>> 16);
+    return usernameLocks[hash & (usernameLocks.length-1)];
+  }
+
+
+  /**
+   * Claims an entry in an index for a new ticket.
+   * The entry is claimed if it is free, or if it belongs to a ticket
+   * that is expired. Tickets of other users may compete for the same entry,
+   * so this is atomic without a lock.
+   *
+   * @param index       the index in which to claim the entry
+   * @param key         the key of the entry
+   * @param tick        the new ticket
+   * @param now         the current time, for checking expiry
+   *
+   * @return    <code>true</code> if the entry was claimed,
+   *            <code>false</code> if it belongs to a valid ticket
+   */
+  protected static <K> boolean claimIndex(ConcurrentMap<K,TicketImpl> index,
+                                          K key, TicketImpl tick, long now)
+  {
+    while (true)
+     {
+       TicketImpl old = index.putIfAbsent(key, tick);
+       if (old == null)
+          return true;
+       if (!old.isExpired(now))
+          return false;
+       if (index.replace(key, old, tick))
+          return true;
+       // someone else got there first, check again
+     }
+  }
+
+
+  /**
+   * Removes a ticket from all indexes.
+   * Entries that have been claimed by a different ticket are kept.
+   * The caller holds the lock for the username of the ticket.
+   *
+   * @param timp        the ticket to remove
+   */
+  protected void removeFromIndexes(TicketImpl timp)
+  {
+    // the token goes first, lookups must not find an incomplete ticket
+    if (ticketsByToken.remove(timp.getToken(), timp))
+       tokenFilter.remove(timp.getToken());
+    ticketsByUsername.remove(timp.getUsername(), timp);
+
+    if (timp.getAddress() != null)
+       ticketsByAddress.remove(timp.getAddress(), timp);
+    if (timp.getHost() != null)
+       ticketsByHost.remove(timp.getHost(), timp);
+  }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+
+/**
+ * Counts the actions performed with stateless tickets.
+ * A {@link HmacTicketManager} does not keep its tickets, everything
+ * except the number of actions performed is in the signed token.
+ * The punch store keeps that number, for tickets that have been used.
+ * Nodes that share a punch store and a key share the tickets.
+ * <br>
+ * Tickets are identified by a string that is unique per ticket.
+ * Entries for expired tickets can be discarded.
+ * A punch store is thread safe.
+ */
+public interface PunchStore
+{
+  /**
+   * Counts an action for a ticket, if it has any actions left.
+   *
+   * @param id          the identifier of the ticket
+   * @param actions     the number of actions allowed with the ticket
+   * @param expiry      the time at which the ticket expires
+   *
+   * @return    <code>true</code> if the action is allowed,
+   *            <code>false</code> if the ticket is used up or revoked
+   */
+  public boolean punch(String id, int actions, long expiry)
+    ;
+
+
+  /**
+   * Gives back actions for a ticket, because they did not take place.
+   * Has no effect if the ticket has been revoked.
+   *
+   * @param id          the identifier of the ticket
+   * @param count       the number of actions to give back
+   */
+  public void refund(String id, int count)
+    ;
+
+
+  /**
+   * Revokes a ticket. It can no longer be looked up or punched.
+   *
+   * @param id          the identifier of the ticket
+   * @param expiry      the time at which the ticket expires
+   */
+  public void revoke(String id, long expiry)
+    ;
+
+
+  /**
+   * Checks whether a ticket has been revoked.
+   *
+   * @param id          the identifier of the ticket
+   *
+   * @return    <code>true</code> if the ticket has been revoked,
+   *            <code>false</code> otherwise
+   */
+  public boolean isRevoked(String id)
+    ;
+
+}
@@ -0,0 +1,139 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * A small cache of tokens for which no ticket was found.
+ * Clients that keep sending the same stale token are turned away
+ * without asking the {@link TicketStore} again.
+ * <br>
+ * The cache is direct-mapped. Each token has exactly one slot, and
+ * a newly rejected token evicts whichever token was there before.
+ * Entries expire after a while, in case a token gets issued after all.
+ * All operations are lock-free and take constant time.
+ */
+public class RejectedTokenCache
+{
+  /** The default number of slots, a power of 2. */
+  public final static int DEFAULT_SIZE = 1024;
+
+  /** The default time to keep a rejected token, in milliseconds. */
+  public final static long DEFAULT_TTL_MS = 60000;
+
+  /** The slots, indexed by hash code. */
+  protected final AtomicReferenceArray<Entry> cacheSlots;
+
+  /** The time to keep a rejected token, in milliseconds. */
+  protected final long entryTTL;
+
+
+  /**
+   * Creates a new, empty cache with default settings.
+   */
+  public RejectedTokenCache()
+  {
+    this(DEFAULT_SIZE, DEFAULT_TTL_MS);
+  }
+
+
+  /**
+   * Creates a new, empty cache.
+   *
+   * @param size        the number of slots, a power of 2
+   * @param ttl         the time to keep a rejected token, in milliseconds
+   */
+  public RejectedTokenCache(int size, long ttl)
+  {
+    if ((size < 1) || ((size & (size-1)) != 0))
+       throw new IllegalArgumentException("size "+size);
+    if (ttl < 1)
+       throw new IllegalArgumentException("ttl "+ttl);
+
+    cacheSlots = new AtomicReferenceArray<Entry>(size);
+    entryTTL   = ttl;
+  }
+
+
+  /**
+   * Checks whether a token has been rejected recently.
+   *
+   * @param token       the token to check
+   * @param now         the current time
+   *
+   * @return    <code>true</code> if the token is in the cache,
+   *            <code>false</code> otherwise
+   */
+  public boolean contains(String token, long now)
+  {
+    Entry entry = cacheSlots.get(slotFor(token));
+    return (entry != null) && (entry.expiryTime > now) &&
+      entry.rejectedToken.equals(token);
+  }
+
+
+  /**
+   * Records a rejected token.
+   *
+   * @param token       the token for which no ticket was found
+   * @param now         the current time
+   */
+  public void record(String token, long now)
+  {
+    cacheSlots.set(slotFor(token), new Entry(token, now + entryTTL));
+  }
+
+
+  /**
+   * Removes a token, because a ticket has been issued for it.
+   *
+   * @param token       the token of the new ticket
+   */
+  public void forget(String token)
+  {
+    final int slot = slotFor(token);
+    Entry entry = cacheSlots.get(slot);
+    if ((entry != null) && entry.rejectedToken.equals(token))
+       cacheSlots.compareAndSet(slot, entry, null);
+  }
+
+
+  /**
+   * Obtains the slot for a token.
+   *
+   * @param token       the token
+   *
+   * @return    the index of the slot
+   */
+  protected final int slotFor(String token)
+  {
+    int hash = token.hashCode();
+    hash ^= (hash >>> 16);
+    return hash & (cacheSlots.length()-1);
+  }
+
+
+
+  /**
+   * A rejected token.
+   */
+  protected static class Entry
+  {
+    public final String rejectedToken;
+
+    /** The time at which this entry expires. */
+    public final long expiryTime;
+
+    public Entry(String token, long expiry)
+    {
+      rejectedToken = token;
+      expiryTime    = expiry;
+    }
+  }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import pityoulish.logutil.Log;
+
+
+/**
+ * A {@link PunchStore} on a {@link TicketStoreServer}.
+ * Nodes that use the same server and the same key share the punch counts
+ * of their {@link HmacTicketManager stateless tickets}, and a ticket
+ * returned on one node is revoked on all of them.
+ * <br>
+ * This class uses the connection handling of {@link RemoteTicketStore}.
+ * Concurrent punches share a network round trip. There is no near-cache,
+ * every punch is counted on the server. If the server cannot be reached,
+ * punches are not allowed, but lookups do not fail.
+ * Refunds and revocations are sent without waiting.
+ */
+public class RemotePunchStore extends RemoteTicketStore
+  implements PunchStore
+{
+  /**
+   * Creates a new remote punch store.
+   * The connection is opened with the first request.
+   *
+   * @param host        the host of the ticket store server
+   * @param port        the port of the ticket store server
+   */
+  public RemotePunchStore(String host, int port)
+  {
+    super(host, port, 0L);
+  }
+
+
+  // non-javadoc, see interface PunchStore
+  public boolean punch(String id, int actions, long expiry)
+  {
+    PunchCountRequest request = new PunchCountRequest(id, actions, expiry);
+    submit(request);
+
+    // an action that cannot be counted is not allowed
+    Boolean allowed = await(request.future, "punch");
+    return (allowed != null) && allowed.booleanValue();
+  }
+
+
+  // non-javadoc, see interface PunchStore
+  public void refund(String id, int count)
+  {
+    submit(new RefundCountRequest(id, count));
+  }
+
+
+  // non-javadoc, see interface PunchStore
+  public void revoke(String id, long expiry)
+  {
+    submit(new RevokeRequest(id, expiry));
+  }
+
+
+  // non-javadoc, see interface PunchStore
+  public boolean isRevoked(String id)
+  {
+    IsRevokedRequest request = new IsRevokedRequest(id);
+    submit(request);
+
+    // punches are not allowed either, the ticket cannot be used
+    Boolean revoked = await(request.future, "isRevoked");
+    return (revoked != null) && revoked.booleanValue();
+  }
+
+
+  /**
+   * Waits for the result of an operation on the server.
+   *
+   * @param future      the pending result
+   * @param method      the calling method, for logging
+   *
+   * @return    the result, or
+   *            <code>null</code> if the server failed or did not respond
+   */
+  protected <T> T await(CompletableFuture<T> future, String method)
+  {
+    try {
+      return future.get(DefaultTicketManager.STORE_TIMEOUT_MS,
+                        TimeUnit.MILLISECONDS);
+
+    } catch (ExecutionException exx) {
+      Log.log(logger, method, exx.getCause());
+    } catch (TimeoutException tox) {
+      Log.log(logger, method, tox);
+    } catch (InterruptedException iex) {
+      Thread.currentThread().interrupt();
+      Log.log(logger, method, iex);
+    }
+    return null;
+  }
+
+
+
+  /** Counts an action for a ticket. */
+  protected class PunchCountRequest extends Request<Boolean>
+  {
+    protected final String id;
+
+    protected final int actions;
+
+    protected final long expiry;
+
+    public PunchCountRequest(String tid, int max, long exp)
+    {
+      super(TicketStoreProtocol.OP_PUNCH_COUNT, true);
+      id      = tid;
+      actions = max;
+      expiry  = exp;
+    }
+
+    public void writeArguments(DataOutputStream out)
+      throws IOException
+    {
+      out.writeUTF(id);
+      out.writeInt(actions);
+      out.writeLong(expiry);
+    }
+
+    protected Boolean parseResult(DataInputStream in)
+      throws IOException
+    {
+      return Boolean.valueOf(in.readBoolean());
+    }
+  }
+
+
+  /** Gives back counted actions, without a response. */
+  protected class RefundCountRequest extends Request<Void>
+  {
+    protected final String id;
+
+    protected final int count;
+
+    public RefundCountRequest(String tid, int cnt)
+    {
+      super(TicketStoreProtocol.OP_REFUND_COUNT, false);
+      id    = tid;
+      count = cnt;
+    }
+
+    public void writeArguments(DataOutputStream out)
+      throws IOException
+    {
+      out.writeUTF(id);
+      out.writeInt(count);
+    }
+
+    protected Void parseResult(DataInputStream in)
+    {
+      return null;
+    }
+  }
+
+
+  /** Revokes a ticket, without a response. */
+  protected class RevokeRequest extends Request<Void>
+  {
+    protected final String id;
+
+    protected final long expiry;
+
+    public RevokeRequest(String tid, long exp)
+    {
+      super(TicketStoreProtocol.OP_REVOKE, false);
+      id     = tid;
+      expiry = exp;
+    }
+
+    public void writeArguments(DataOutputStream out)
+      throws IOException
+    {
+      out.writeUTF(id);
+      out.writeLong(expiry);
+    }
+
+    protected Void parseResult(DataInputStream in)
+    {
+      return null;
+    }
+  }
+
+
+  /** Checks whether a ticket has been revoked. */
+  protected class IsRevokedRequest extends Request<Boolean>
+  {
+    protected final String id;
+
+    public IsRevokedRequest(String tid)
+    {
+      super(TicketStoreProtocol.OP_IS_REVOKED, true);
+      id = tid;
+    }
+
+    public void writeArguments(DataOutputStream out)
+      throws IOException
+    {
+      out.writeUTF(id);
+    }
+
+    protected Boolean parseResult(DataInputStream in)
+      throws IOException
+    {
+      return Boolean.valueOf(in.readBoolean());
+    }
+  }
+
+}
@@ -0,0 +1,717 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import pityoulish.logutil.Log;
+
+
+/**
+ * A {@link TicketStore} on a {@link TicketStoreServer}.
+ * Nodes that use the same server accept each other's tickets.
+ * <br>
+ * Requests are queued and sent by a writer thread. It sends all queued
+ * requests before flushing, so concurrent operations share a network
+ * round trip. A reader thread completes the futures as the responses
+ * arrive. If the connection fails, pending operations fail, and the
+ * next request opens a new connection.
+ * <br>
+ * Tickets that have been added or fetched recently are kept in a
+ * near-cache and served without a round trip. Punches are applied to
+ * the cached ticket and sent to the server without waiting.
+ * When a ticket is fetched again, the cached ticket keeps the lower
+ * number of remaining actions. Within the time to live of the cache,
+ * a ticket can be punched on several nodes more often than it should,
+ * and a returned ticket can still be used on other nodes.
+ */
+public class RemoteTicketStore implements TicketStore
+{
+  protected final Logger logger = Log.getPackageLogger(this.getClass());
+
+  /** The default time to live of the near-cache, in milliseconds. */
+  public final static long DEFAULT_CACHE_TTL_MS = 2000;
+
+  /** The maximum number of requests sent in one batch. */
+  public final static int MAX_BATCH = 256;
+
+  /** The number of cache insertions between purges of stale entries. */
+  public final static int PURGE_INTERVAL = 256;
+
+  /** The host of the ticket store server. */
+  protected final String serverHost;
+
+  /** The port of the ticket store server. */
+  protected final int serverPort;
+
+  /** The time to live of the near-cache, in milliseconds. */
+  protected final long cacheTTL;
+
+  /** The manager that issues the tickets fetched from the server. */
+  protected volatile TicketManager ticketOwner;
+
+  /** The requests waiting to be sent. */
+  protected final BlockingQueue<Request<?>> outbox;
+
+  /** The requests waiting for a response, by identifier. */
+  protected final ConcurrentMap<Integer,Request<?>> pendingRequests;
+
+  /** The identifier for the next request. 0 is for punches. */
+  protected final AtomicInteger nextId;
+
+  /** The near-cache, by token. */
+  protected final ConcurrentMap<String,CacheEntry> nearCache;
+
+  /** Counts cache insertions, to trigger a purge. */
+  protected final AtomicInteger cacheInserts;
+
+  /** The current connection, or <code>null</code>. Writer thread only. */
+  protected Connection currentConnection;
+
+  /** Whether the writer thread has been started. */
+  protected boolean writerStarted;
+
+
+  /**
+   * Creates a new remote ticket store with the default cache TTL.
+   *
+   * @param host        the host of the ticket store server
+   * @param port        the port of the ticket store server
+   */
+  public RemoteTicketStore(String host, int port)
+  {
+    this(host, port, DEFAULT_CACHE_TTL_MS);
+  }
+
+
+  /**
+   * Creates a new remote ticket store.
+   * The connection is opened with the first request.
+   *
+   * @param host        the host of the ticket store server
+   * @param port        the port of the ticket store server
+   * @param ttl         the time to live of the near-cache, in milliseconds,
+   *                    or 0 to disable the cache
+   */
+  public RemoteTicketStore(String host, int port, long ttl)
+  {
+    if (host == null)
+       throw new NullPointerException("host");
+    if ((port < 1) || (port > 65535))
+       throw new IllegalArgumentException("port "+port);
+    if (ttl < 0)
+       throw new IllegalArgumentException("ttl "+ttl);
+
+    serverHost      = host;
+    serverPort      = port;
+    cacheTTL        = ttl;
+    outbox          = new LinkedBlockingQueue<Request<?>>();
+    pendingRequests = new ConcurrentHashMap<Integer,Request<?>>();
+    nextId          = new AtomicInteger();
+    nearCache       = new ConcurrentHashMap<String,CacheEntry>();
+    cacheInserts    = new AtomicInteger();
+  }
+
+
+  // non-javadoc, see interface TicketStore
+  public synchronized void attach(TicketManager owner)
+  {
+    if (owner == null)
+       throw new NullPointerException("TicketManager");
+    if ((ticketOwner != null) && (ticketOwner != owner))
+       throw new IllegalStateException("already attached");
+
+    ticketOwner = owner;
+  }
+
+
+  // non-javadoc, see interface TicketStore
+  public CompletableFuture<Conflict> add(final TicketImpl tick)
+  {
+    if (tick == null)
+       throw new NullPointerException("TicketImpl");
+
+    // punches of the new ticket go to the server, too
+    tick.ticketStore = this;
+
+    AddRequest request = new AddRequest(tick);
+    submit(request);
+    return request.future.thenApply(new Function<Conflict,Conflict>() {
+        public Conflict apply(Conflict conflict)
+        {
+          if (conflict == null)
+             cache(tick, System.currentTimeMillis());
+          return conflict;
+        }
+      });
+  }
+
+
+  // non-javadoc, see interface TicketStore
+  public CompletableFuture<TicketImpl> get(final String token)
+  {
+    if (token == null)
+       throw new NullPointerException("token");
+
+    final long now = System.currentTimeMillis();
+    CacheEntry entry = nearCache.get(token);
+    if ((entry != null) && !entry.isStale(now, cacheTTL))
+       return CompletableFuture.completedFuture(entry.cachedTicket);
+
+    GetRequest request = new GetRequest(token);
+    submit(request);
+    return request.future.thenApply(new Function<TicketImpl,TicketImpl>() {
+        public TicketImpl apply(TicketImpl fetched)
+        {
+          return merge(token, fetched, now);
+        }
+      });
+  }
+
+
+  // non-javadoc, see interface TicketStore
+  public boolean mightContain(String token)
+  {
+    // tickets from other nodes are known only to the server
+    return true;
+  }
+
+
+  // non-javadoc, see interface TicketStore
+  public CompletableFuture<Boolean> remove(TicketImpl tick)
+  {
+    if (tick == null)
+       throw new NullPointerException("TicketImpl");
+
+    nearCache.remove(tick.getToken());
+
+    RemoveRequest request = new RemoveRequest(tick.getToken());
+    submit(request);
+    return request.future;
+  }
+
+
+  // non-javadoc, see interface TicketStore
+  public void punched(TicketImpl tick)
+  {
+    submit(new PunchRequest(tick.getToken()));
+  }
+
+
+  // non-javadoc, see interface TicketStore
+  public void refunded(TicketImpl tick, int count)
+  {
+    submit(new RefundRequest(tick.getToken(), count));
+  }
+
+
+  /**
+   * Obtains the number of tickets in the near-cache.
+   * Some of them may be stale.
+   *
+   * @return    the number of cached tickets
+   */
+  public int getCachedTicketCount()
+  {
+    return nearCache.size();
+  }
+
+
+  /**
+   * Puts a ticket into the near-cache.
+   *
+   * @param tick        the ticket
+   * @param now         the time at which the ticket was current
+   */
+  protected void cache(TicketImpl tick, long now)
+  {
+    if (cacheTTL == 0)
+       return;
+
+    nearCache.put(tick.getToken(), new CacheEntry(tick, now));
+    if (cacheInserts.incrementAndGet() % PURGE_INTERVAL == 0)
+       purgeCache(now);
+  }
+
+
+  /**
+   * Merges a ticket fetched from the server into the near-cache.
+   * A cached ticket is kept, because it may have been handed out
+   * already. It takes the lower number of remaining actions.
+   *
+   * @param token       the token that was looked up
+   * @param fetched     the ticket from the server, or <code>null</code>
+   * @param now         the time at which the lookup was made
+   *
+   * @return    the ticket to use, or <code>null</code>
+   */
+  protected TicketImpl merge(String token, TicketImpl fetched, long now)
+  {
+    if (fetched == null)
+     {
+       nearCache.remove(token);
+       return null;
+     }
+
+    CacheEntry entry = nearCache.get(token);
+    if (entry == null)
+     {
+       cache(fetched, now);
+       return fetched;
+     }
+
+    TicketImpl cached = entry.cachedTicket;
+    int actions = cached.actionsRemaining;
+    while ((actions > fetched.actionsRemaining) &&
+           !TicketImpl.ACTIONS.compareAndSet(cached, actions,
+                                             fetched.actionsRemaining))
+       actions = cached.actionsRemaining;
+
+    cache(cached, now);
+    return cached;
+  }
+
+
+  /**
+   * Removes stale entries from the near-cache.
+   *
+   * @param now   the current time
+   */
+  protected void purgeCache(long now)
+  {
+    Iterator<CacheEntry> it = nearCache.values().iterator();
+    while (it.hasNext())
+     {
+       if (it.next().isStale(now, cacheTTL))
+          it.remove();
+     }
+  }
+
+
+  /**
+   * Queues a request for the writer thread.
+   *
+   * @param request     the request to send
+   */
+  protected void submit(Request<?> request)
+  {
+    synchronized (this)
+     {
+       if (!writerStarted)
+        {
+          TicketStoreServer.startThread(new Writer(), "ticket-store-writer");
+          writerStarted = true;
+        }
+     }
+    outbox.add(request);
+  }
+
+
+  /**
+   * Sends a batch of requests.
+   * Called by the writer thread only.
+   *
+   * @param batch       the requests to send
+   *
+   * @throws IOException        in case of a problem
+   */
+  protected void send(ArrayList<Request<?>> batch)
+    throws IOException
+  {
+    if (currentConnection == null)
+     {
+       currentConnection = new Connection
+         (new Socket(serverHost, serverPort));
+       TicketStoreServer.startThread(new Reader(currentConnection),
+                                     "ticket-store-reader");
+     }
+
+    final DataOutputStream out = currentConnection.output;
+    for (Request<?> request: batch)
+     {
+       request.connection = currentConnection;
+       // the response may arrive before the loop ends
+       if (request.future != null)
+          pendingRequests.put(request.requestId, request);
+       out.writeInt(request.requestId);
+       out.writeByte(request.operation);
+       request.writeArguments(out);
+     }
+    out.flush();
+  }
+
+
+  /**
+   * Closes a failed connection and fails the pending requests.
+   *
+   * @param conn        the connection that failed
+   * @param cause       the reason
+   */
+  protected void disconnect(Connection conn, Throwable cause)
+  {
+    if (conn.close())
+       Log.log(logger, "disconnect", cause);
+
+    Iterator<Request<?>> it = pendingRequests.values().iterator();
+    while (it.hasNext())
+     {
+       Request<?> request = it.next();
+       if (request.connection == conn)
+        {
+          it.remove();
+          request.fail(cause);
+        }
+     }
+  }
+
+
+
+  /**
+   * Sends queued requests, in batches.
+   */
+  protected class Writer implements Runnable
+  {
+    // non-javadoc, see interface Runnable
+    public void run()
+    {
+      final ArrayList<Request<?>> batch = new ArrayList<Request<?>>();
+      while (true)
+       {
+         try {
+           batch.add(outbox.take());
+         } catch (InterruptedException iex) {
+           return;
+         }
+         outbox.drainTo(batch, MAX_BATCH-1);
+
+         try {
+           if ((currentConnection != null) && currentConnection.isClosed())
+              currentConnection = null; // the reader found it broken
+           send(batch);
+
+         } catch (IOException iox) {
+           Connection conn = currentConnection;
+           currentConnection = null;
+           if (conn != null)
+              disconnect(conn, iox);
+           for (Request<?> request: batch)
+              request.fail(iox);
+         }
+         batch.clear();
+       }
+    }
+  }
+
+
+  /**
+   * Reads responses from a connection.
+   */
+  protected class Reader implements Runnable
+  {
+    protected final Connection readConnection;
+
+    public Reader(Connection conn)
+    {
+      readConnection = conn;
+    }
+
+    // non-javadoc, see interface Runnable
+    public void run()
+    {
+      try {
+        final DataInputStream in = readConnection.input;
+        while (true)
+         {
+           Request<?> request = pendingRequests.remove(in.readInt());
+           if (request == null)
+              throw new IOException("unexpected response");
+           request.readResult(in);
+         }
+      } catch (IOException iox) {
+        disconnect(readConnection, iox);
+      }
+    }
+  }
+
+
+  /**
+   * A connection to the server.
+   */
+  protected static class Connection
+  {
+    protected final Socket socket;
+
+    public final DataInputStream  input;
+
+    public final DataOutputStream output;
+
+    protected boolean closed;
+
+    public Connection(Socket sock)
+      throws IOException
+    {
+      socket = sock;
+      socket.setTcpNoDelay(true);
+      input  = new DataInputStream
+        (new BufferedInputStream(socket.getInputStream()));
+      output = new DataOutputStream
+        (new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /** Closes the connection, returns <code>false</code> if closed already. */
+    public synchronized boolean close()
+    {
+      if (closed)
+         return false;
+
+      closed = true;
+      try {
+        socket.close();
+      } catch (IOException iox) {
+        // ignore
+      }
+      return true;
+    }
+
+    public synchronized boolean isClosed()
+    {
+      return closed;
+    }
+  }
+
+
+  /**
+   * A ticket in the near-cache.
+   */
+  protected static class CacheEntry
+  {
+    public final TicketImpl cachedTicket;
+
+    /** The time at which the ticket was current. */
+    public final long fetchedAt;
+
+    public CacheEntry(TicketImpl tick, long when)
+    {
+      cachedTicket = tick;
+      fetchedAt    = when;
+    }
+
+    public boolean isStale(long now, long ttl)
+    {
+      return (now - fetchedAt >= ttl) || cachedTicket.isExpired(now);
+    }
+  }
+
+
+  /**
+   * A request to the server.
+   *
+   * @param <T>   the class of the result
+   */
+  protected abstract class Request<T>
+  {
+    public final int requestId;
+
+    public final byte operation;
+
+    /** The result, or <code>null</code> if there is no response. */
+    public final CompletableFuture<T> future;
+
+    /** The connection on which this request was sent. */
+    public Connection connection;
+
+    protected Request(byte op, boolean response)
+    {
+      operation = op;
+      if (response)
+       {
+         int id = nextId.incrementAndGet();
+         if (id == 0) // after overflow
+            id = nextId.incrementAndGet();
+         requestId = id;
+         future = new CompletableFuture<T>();
+       }
+      else
+       {
+         requestId = 0;
+         future = null;
+       }
+    }
+
+    public abstract void writeArguments(DataOutputStream out)
+      throws IOException
+      ;
+
+    protected abstract T parseResult(DataInputStream in)
+      throws IOException
+      ;
+
+    public void readResult(DataInputStream in)
+      throws IOException
+    {
+      try {
+        future.complete(parseResult(in));
+      } catch (RuntimeException rx) {
+        // the result has been read completely, the stream is in sync
+        future.completeExceptionally(rx);
+      }
+    }
+
+    public void fail(Throwable cause)
+    {
+      if (future != null)
+         future.completeExceptionally(cause);
+    }
+  }
+
+
+  /** Adds a ticket. */
+  protected class AddRequest extends Request<Conflict>
+  {
+    protected final TicketImpl ticket;
+
+    public AddRequest(TicketImpl tick)
+    {
+      super(TicketStoreProtocol.OP_ADD, true);
+      ticket = tick;
+    }
+
+    public void writeArguments(DataOutputStream out)
+      throws IOException
+    {
+      TicketStoreProtocol.writeTicket(out, ticket);
+    }
+
+    protected Conflict parseResult(DataInputStream in)
+      throws IOException
+    {
+      return TicketStoreProtocol.readConflict(in);
+    }
+  }
+
+
+  /** Gets a ticket. */
+  protected class GetRequest extends Request<TicketImpl>
+  {
+    protected final String token;
+
+    public GetRequest(String tok)
+    {
+      super(TicketStoreProtocol.OP_GET, true);
+      token = tok;
+    }
+
+    public void writeArguments(DataOutputStream out)
+      throws IOException
+    {
+      out.writeUTF(token);
+    }
+
+    protected TicketImpl parseResult(DataInputStream in)
+      throws IOException
+    {
+      if (!in.readBoolean())
+         return null;
+
+      TicketImpl tick = TicketStoreProtocol.readTicket(in, ticketOwner);
+      tick.ticketStore = RemoteTicketStore.this;
+      return tick;
+    }
+  }
+
+
+  /** Removes a ticket. */
+  protected class RemoveRequest extends Request<Boolean>
+  {
+    protected final String token;
+
+    public RemoveRequest(String tok)
+    {
+      super(TicketStoreProtocol.OP_REMOVE, true);
+      token = tok;
+    }
+
+    public void writeArguments(DataOutputStream out)
+      throws IOException
+    {
+      out.writeUTF(token);
+    }
+
+    protected Boolean parseResult(DataInputStream in)
+      throws IOException
+    {
+      return Boolean.valueOf(in.readBoolean());
+    }
+  }
+
+
+  /** Punches a ticket, without a response. */
+  protected class PunchRequest extends Request<Void>
+  {
+    protected final String token;
+
+    public PunchRequest(String tok)
+    {
+      super(TicketStoreProtocol.OP_PUNCH, false);
+      token = tok;
+    }
+
+    public void writeArguments(DataOutputStream out)
+      throws IOException
+    {
+      out.writeUTF(token);
+    }
+
+    protected Void parseResult(DataInputStream in)
+    {
+      return null;
+    }
+  }
+
+
+  /** Gives back punches of a ticket, without a response. */
+  protected class RefundRequest extends Request<Void>
+  {
+    protected final String token;
+
+    protected final int count;
+
+    public RefundRequest(String tok, int cnt)
+    {
+      super(TicketStoreProtocol.OP_REFUND, false);
+      token = tok;
+      count = cnt;
+    }
+
+    public void writeArguments(DataOutputStream out)
+      throws IOException
+    {
+      out.writeUTF(token);
+      out.writeInt(count);
+    }
+
+    protected Void parseResult(DataInputStream in)
+    {
+      return null;
+    }
+  }
+
+}
@@ -43,5 +43,16 @@ public interface Ticket
    */
   public boolean punch()
     ;
-}
 
+
+  /**
+   * Gives back punches for actions that did not take place.
+   * For example, if a message could not be put on the board after
+   * the ticket was punched for it.
+   * A ticket that has been returned remains unusable.
+   *
+   * @param count   the number of punches to give back
+   */
+  public void refund(int count)
+    ;
+}
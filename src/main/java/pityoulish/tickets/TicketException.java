@@ -65,5 +65,18 @@ public class TicketException extends Exception
   {
     super(msg, cause);
   }
+
+  /**
+   * Creates an exception, optionally without a stack trace.
+   * Filling in the stack trace is the expensive part of creating
+   * an exception. It can be skipped for expected, frequent problems.
+   *
+   * @param msg         the message
+   * @param trace       whether to fill in the stack trace
+   */
+  protected TicketException(String msg, boolean trace)
+  {
+    super(msg, null, false, trace);
+  }
 }
 
@@ -6,6 +6,7 @@
 package pityoulish.tickets;
 
 import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 
 /**
@@ -34,8 +35,22 @@ public class TicketImpl implements Ticket
    */
   protected final long expiryTime;
 
-  /** The number of actions remaining. */
-  protected int actionsRemaining;
+  /**
+   * The number of actions remaining.
+   * Decremented atomically by {@link #punch punch}, without locking.
+   */
+  protected volatile int actionsRemaining;
+
+  /**
+   * The store to notify when this ticket is punched, or <code>null</code>.
+   * Set by stores that keep the ticket elsewhere, before the ticket
+   * is handed out. See {@link TicketStore#punched TicketStore.punched}.
+   */
+  protected TicketStore ticketStore;
+
+  /** Atomic access to {@link #actionsRemaining}. */
+  protected final static AtomicIntegerFieldUpdater<TicketImpl> ACTIONS =
+    AtomicIntegerFieldUpdater.newUpdater(TicketImpl.class, "actionsRemaining");
 
 
   /**
@@ -171,13 +186,31 @@ public class TicketImpl implements Ticket
     return ticketToken;
   }
 
-  public final synchronized boolean punch()
+  public final boolean punch()
+  {
+    int actions = actionsRemaining;
+    while (actions > 0)
+     {
+       if (ACTIONS.compareAndSet(this, actions, actions-1))
+        {
+          if (ticketStore != null)
+             ticketStore.punched(this);
+          return true;
+        }
+       actions = actionsRemaining;
+     }
+
+    return false;
+  }
+
+  public final void refund(int count)
   {
-    if (actionsRemaining < 1)
-       return false;
+    if (count < 1)
+       throw new IllegalArgumentException("count "+count);
 
-    actionsRemaining--;
-    return true;
+    ACTIONS.getAndAdd(this, count);
+    if (ticketStore != null)
+       ticketStore.refunded(this, count);
   }
 
 
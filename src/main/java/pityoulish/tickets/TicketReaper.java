@@ -0,0 +1,258 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import pityoulish.logutil.Log;
+
+
+/**
+ * Removes expired tickets from a {@link LocalTicketStore}.
+ * This is a hashed timing wheel. Each ticket is put into the bucket
+ * for the tick after the one in which it expires, so that all tickets
+ * in a bucket have expired when the wheel reaches it. Advancing the wheel
+ * to the current time visits only the buckets of the elapsed ticks.
+ * Tickets that expire more than one revolution ahead stay in their bucket
+ * until the wheel comes round to them again.
+ * Scheduling and reaping cost O(1) per ticket.
+ * <br>
+ * The wheel is advanced by a background thread, see {@link #start start}.
+ * Tests can call {@link #advance advance} directly.
+ */
+public class TicketReaper
+{
+  protected final Logger logger = Log.getPackageLogger(this.getClass());
+
+  /** The default duration of a tick, in milliseconds. */
+  public final static long DEFAULT_TICK_MS = 1000;
+
+  /**
+   * The default number of buckets, a power of 2.
+   * One revolution of the default wheel exceeds
+   * {@link DefaultTicketManager#TIME_TO_LIVE_MS}.
+   */
+  public final static int DEFAULT_WHEEL_SIZE = 256;
+
+  /** The store from which to remove expired tickets. */
+  protected final LocalTicketStore ticketStore;
+
+  /** The duration of a tick, in milliseconds. */
+  protected final long tickMillis;
+
+  /** The buckets, indexed by tick modulo the wheel size. */
+  protected final List<ArrayList<TicketImpl>> wheelBuckets;
+
+  /** The last tick that has been processed. */
+  protected long lastTick;
+
+  /** The number of tickets removed from the store. */
+  protected final AtomicLong reapedCount;
+
+  /** The background thread, or <code>null</code>. */
+  protected ScheduledExecutorService reaperExecutor;
+
+
+  /**
+   * Creates a new reaper with default settings.
+   *
+   * @param store the ticket store from which to remove expired tickets
+   */
+  public TicketReaper(LocalTicketStore store)
+  {
+    this(store, DEFAULT_TICK_MS, DEFAULT_WHEEL_SIZE);
+  }
+
+
+  /**
+   * Creates a new reaper.
+   *
+   * @param store       the ticket store to reap
+   * @param tick        the duration of a tick, in milliseconds
+   * @param size        the number of buckets, a power of 2
+   */
+  public TicketReaper(LocalTicketStore store, long tick, int size)
+  {
+    if (store == null)
+       throw new NullPointerException("LocalTicketStore");
+    if (tick < 1)
+       throw new IllegalArgumentException("tick "+tick);
+    if ((size < 1) || ((size & (size-1)) != 0))
+       throw new IllegalArgumentException("size "+size);
+
+    ticketStore   = store;
+    tickMillis    = tick;
+    wheelBuckets  = new ArrayList<ArrayList<TicketImpl>>(size);
+    for (int i=0; i<size; i++)
+       wheelBuckets.add(new ArrayList<TicketImpl>());
+
+    lastTick    = System.currentTimeMillis() / tickMillis;
+    reapedCount = new AtomicLong();
+  }
+
+
+  /**
+   * Schedules a ticket for removal when it expires.
+   *
+   * @param tick  the ticket to schedule
+   */
+  public void schedule(TicketImpl tick)
+  {
+    // in the tick of the expiry, the ticket may still be valid
+    ArrayList<TicketImpl> bucket =
+      bucketFor(tick.expiryTime / tickMillis + 1);
+    synchronized (bucket)
+     {
+       bucket.add(tick);
+     }
+  }
+
+
+  /**
+   * Advances the wheel to a point in time.
+   * Expired tickets in the buckets of the elapsed ticks are removed
+   * from the ticket store.
+   *
+   * @param now   the current time
+   *
+   * @return    the number of tickets removed from the store
+   */
+  public synchronized int advance(long now)
+  {
+    final long current = now / tickMillis;
+    if (current <= lastTick)
+       return 0;
+
+    // after a long pause, one revolution visits every bucket
+    long first = Math.max(lastTick+1, current-wheelBuckets.size()+1);
+    lastTick = current;
+
+    int reaped = 0;
+    for (long t=first; t<=current; t++)
+     {
+       ArrayList<TicketImpl> bucket = bucketFor(t);
+       ArrayList<TicketImpl> due = null;
+       synchronized (bucket)
+        {
+          if (bucket.isEmpty())
+             continue;
+          due = new ArrayList<TicketImpl>(bucket);
+          bucket.clear();
+        }
+
+       for (TicketImpl tick: due)
+        {
+          if (!tick.isExpired(now))
+             schedule(tick); // not in this revolution
+          else if (ticketStore.removeNow(tick))
+             reaped++;
+        }
+     }
+
+    if (reaped > 0)
+       reapedCount.addAndGet(reaped);
+
+    return reaped;
+  }
+
+
+  /**
+   * Obtains the number of tickets removed so far.
+   * Tickets that were returned before they expired are not counted.
+   *
+   * @return    the number of expired tickets removed from the store
+   */
+  public long getReapedCount()
+  {
+    return reapedCount.get();
+  }
+
+
+  /**
+   * Starts advancing the wheel in a background thread, once per tick.
+   */
+  public synchronized void start()
+  {
+    if (reaperExecutor != null)
+       throw new IllegalStateException("already started");
+
+    reaperExecutor =
+      Executors.newSingleThreadScheduledExecutor(new ReaperThreadFactory());
+    reaperExecutor.scheduleWithFixedDelay
+      (new ReaperTask(), tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+  }
+
+
+  /**
+   * Stops the background thread, if started.
+   */
+  public void stop()
+  {
+    ScheduledExecutorService executor = null;
+    synchronized (this)
+     {
+       executor = reaperExecutor;
+       reaperExecutor = null;
+     }
+    if (executor != null)
+       executor.shutdownNow();
+  }
+
+
+  /**
+   * Obtains the bucket for a tick.
+   *
+   * @param tick  the tick, time divided by tick duration
+   *
+   * @return    the bucket
+   */
+  protected final ArrayList<TicketImpl> bucketFor(long tick)
+  {
+    return wheelBuckets.get((int) (tick & (wheelBuckets.size()-1)));
+  }
+
+
+
+  /**
+   * Advances the wheel, when scheduled.
+   */
+  protected class ReaperTask implements Runnable
+  {
+    // non-javadoc, see interface Runnable
+    public void run()
+    {
+      try {
+        advance(System.currentTimeMillis());
+      } catch (Exception x) {
+        // try again next time
+        Log.log(logger, "advance", x);
+      }
+    }
+  }
+
+
+  /**
+   * Creates the daemon thread for reaping.
+   */
+  protected static class ReaperThreadFactory implements ThreadFactory
+  {
+    // non-javadoc, see interface ThreadFactory
+    public Thread newThread(Runnable r)
+    {
+      Thread t = new Thread(r, "ticket-reaper");
+      t.setDaemon(true);
+      return t;
+    }
+  }
+
+}
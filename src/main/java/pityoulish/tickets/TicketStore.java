@@ -0,0 +1,121 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * Keeps the issued tickets for a {@link DefaultTicketManager}.
+ * The store indexes tickets by token, username, address, and host.
+ * It decides whether a new ticket conflicts with a valid one.
+ * <br>
+ * Operations are asynchronous, so that a store can batch them, for example
+ * into a single network round trip. The futures complete exceptionally
+ * if the store fails. A store that keeps tickets in memory completes them
+ * immediately.
+ * Ticket stores are thread safe.
+ */
+public interface TicketStore
+{
+  /** The index in which a new ticket conflicts with a valid one. */
+  public enum Conflict
+   {
+     USERNAME, ADDRESS, HOST
+   }
+
+
+  /**
+   * Attaches this store to the ticket manager that uses it.
+   * Tickets obtained from the store are issued by that manager.
+   * A store can be attached to only one manager.
+   *
+   * @param owner       the ticket manager
+   */
+  public void attach(TicketManager owner)
+    ;
+
+
+  /**
+   * Adds a new ticket.
+   * The ticket is not added if its username, address, or host
+   * already has a valid ticket. Expired tickets are replaced.
+   *
+   * @param tick        the new ticket
+   *
+   * @return    a future for <code>null</code> if the ticket was added,
+   *            or for the index with a conflicting ticket
+   */
+  public CompletableFuture<Conflict> add(TicketImpl tick)
+    ;
+
+
+  /**
+   * Gets a ticket by token.
+   * The ticket is returned even if it is expired.
+   *
+   * @param token       the token of the ticket
+   *
+   * @return    a future for the ticket,
+   *            or for <code>null</code> if there is none
+   */
+  public CompletableFuture<TicketImpl> get(String token)
+    ;
+
+
+  /**
+   * Checks quickly whether there might be a ticket for a token.
+   * This does not wait and does not take locks. A store that cannot
+   * tell without a round trip returns <code>true</code>.
+   *
+   * @param token       the token of the ticket
+   *
+   * @return    <code>false</code> if there is definitely no ticket,
+   *            <code>true</code> if there might be one
+   */
+  public boolean mightContain(String token)
+    ;
+
+
+  /**
+   * Removes a ticket.
+   *
+   * @param tick        the ticket to remove
+   *
+   * @return    a future for <code>true</code> if the ticket was removed,
+   *            or for <code>false</code> if it was not in the store
+   */
+  public CompletableFuture<Boolean> remove(TicketImpl tick)
+    ;
+
+
+  /**
+   * Records that a ticket has been punched.
+   * Called by {@link TicketImpl#punch TicketImpl.punch} for tickets
+   * that have been obtained from a store which sets itself as the
+   * {@link TicketImpl#ticketStore ticketStore}.
+   * This operation does not wait for a result.
+   *
+   * @param tick        the punched ticket
+   */
+  public void punched(TicketImpl tick)
+    ;
+
+
+
+  /**
+   * Records that punches of a ticket have been given back.
+   * Called by {@link TicketImpl#refund TicketImpl.refund}, like
+   * {@link #punched punched}.
+   * This operation does not wait for a result.
+   *
+   * @param tick        the refunded ticket
+   * @param count       the number of punches given back
+   */
+  public void refunded(TicketImpl tick, int count)
+    ;
+
+}
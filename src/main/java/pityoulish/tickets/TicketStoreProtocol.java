@@ -0,0 +1,224 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.InetAddress;
+
+
+/**
+ * The protocol between a {@link RemoteTicketStore} and a
+ * {@link TicketStoreServer}. A {@link RemotePunchStore} uses it, too.
+ * <br>
+ * A request is an <code>int</code> identifier, a <code>byte</code> operation,
+ * and the arguments of the operation. A response is the identifier of the
+ * request, followed by the result. Requests are pipelined, a client sends
+ * many of them before reading the responses. The server answers requests
+ * in order. Punches, refunds, and revocations do not get a response,
+ * but counted punches do.
+ * <table>
+ * <caption>Operations</caption>
+ * <tr><th>operation</th><th>arguments</th><th>result</th></tr>
+ * <tr><td>{@link #OP_ADD ADD}</td><td>ticket</td>
+ *     <td>byte, 0 or conflict ordinal + 1</td></tr>
+ * <tr><td>{@link #OP_GET GET}</td><td>token</td>
+ *     <td>boolean, then ticket if true</td></tr>
+ * <tr><td>{@link #OP_REMOVE REMOVE}</td><td>token</td>
+ *     <td>boolean</td></tr>
+ * <tr><td>{@link #OP_PUNCH PUNCH}</td><td>token</td><td>none</td></tr>
+ * <tr><td>{@link #OP_REFUND REFUND}</td><td>token, int</td><td>none</td></tr>
+ * <tr><td>{@link #OP_PUNCH_COUNT PUNCH_COUNT}</td><td>id, int, long</td>
+ *     <td>boolean</td></tr>
+ * <tr><td>{@link #OP_REFUND_COUNT REFUND_COUNT}</td><td>id, int</td>
+ *     <td>none</td></tr>
+ * <tr><td>{@link #OP_REVOKE REVOKE}</td><td>id, long</td><td>none</td></tr>
+ * <tr><td>{@link #OP_IS_REVOKED IS_REVOKED}</td><td>id</td>
+ *     <td>boolean</td></tr>
+ * </table>
+ * Tickets are sent with the number of actions remaining,
+ * see {@link #writeTicket writeTicket}.
+ */
+public final class TicketStoreProtocol
+{
+  /** Adds a ticket, see {@link TicketStore#add TicketStore.add}. */
+  public final static byte OP_ADD    = 1;
+
+  /** Gets a ticket, see {@link TicketStore#get TicketStore.get}. */
+  public final static byte OP_GET    = 2;
+
+  /** Removes a ticket, see {@link TicketStore#remove TicketStore.remove}. */
+  public final static byte OP_REMOVE = 3;
+
+  /** Punches a ticket, see {@link TicketStore#punched TicketStore.punched}. */
+  public final static byte OP_PUNCH  = 4;
+
+  /** Refunds punches, see {@link TicketStore#refunded TicketStore.refunded}. */
+  public final static byte OP_REFUND = 5;
+
+  /** Counts a punch, see {@link PunchStore#punch PunchStore.punch}. */
+  public final static byte OP_PUNCH_COUNT  = 6;
+
+  /** Gives back punches, see {@link PunchStore#refund PunchStore.refund}. */
+  public final static byte OP_REFUND_COUNT = 7;
+
+  /** Revokes a ticket, see {@link PunchStore#revoke PunchStore.revoke}. */
+  public final static byte OP_REVOKE       = 8;
+
+  /** Checks a ticket, see {@link PunchStore#isRevoked PunchStore.isRevoked}. */
+  public final static byte OP_IS_REVOKED   = 9;
+
+
+  /** No instances of this class. */
+  private TicketStoreProtocol()
+  {
+    // nothing
+  }
+
+
+  /**
+   * Writes a ticket.
+   *
+   * @param out         where to write the ticket
+   * @param tick        the ticket to write
+   *
+   * @throws IOException        in case of a problem
+   */
+  public static void writeTicket(DataOutput out, TicketImpl tick)
+    throws IOException
+  {
+    out.writeUTF(tick.getUsername());
+    writeAddress(out, tick.getAddress());
+    writeOptional(out, tick.getHost());
+    out.writeUTF(tick.getToken());
+    out.writeLong(tick.expiryTime);
+    out.writeInt(tick.actionsRemaining);
+  }
+
+
+  /**
+   * Reads a ticket.
+   *
+   * @param in          where to read the ticket from
+   * @param creator     the ticket manager to issue the ticket
+   *
+   * @return    the ticket
+   *
+   * @throws IOException        in case of a problem
+   */
+  public static TicketImpl readTicket(DataInput in, TicketManager creator)
+    throws IOException
+  {
+    final String      username = in.readUTF();
+    final InetAddress address  = readAddress(in);
+    final String      host     = readOptional(in);
+    final String      token    = in.readUTF();
+    final long        expiry   = in.readLong();
+    final int         actions  = in.readInt();
+
+    return new TicketImpl(creator, username, address, host, token,
+                          expiry, actions);
+  }
+
+
+  /**
+   * Writes a conflict, or its absence.
+   *
+   * @param out         where to write
+   * @param conflict    the conflict, or <code>null</code>
+   *
+   * @throws IOException        in case of a problem
+   */
+  public static void writeConflict(DataOutput out,
+                                   TicketStore.Conflict conflict)
+    throws IOException
+  {
+    out.writeByte((conflict == null) ? 0 : conflict.ordinal()+1);
+  }
+
+
+  /**
+   * Reads a conflict, or its absence.
+   *
+   * @param in          where to read from
+   *
+   * @return    the conflict, or <code>null</code>
+   *
+   * @throws IOException        in case of a problem
+   */
+  public static TicketStore.Conflict readConflict(DataInput in)
+    throws IOException
+  {
+    final int code = in.readByte();
+    if (code == 0)
+       return null;
+
+    final TicketStore.Conflict[] values = TicketStore.Conflict.values();
+    if ((code < 0) || (code > values.length))
+       throw new IOException("bad conflict "+code);
+    return values[code-1];
+  }
+
+
+  /**
+   * Writes a string that may be <code>null</code>.
+   */
+  protected static void writeOptional(DataOutput out, String value)
+    throws IOException
+  {
+    out.writeBoolean(value != null);
+    if (value != null)
+       out.writeUTF(value);
+  }
+
+
+  /**
+   * Reads a string that may be <code>null</code>.
+   */
+  protected static String readOptional(DataInput in)
+    throws IOException
+  {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+
+  /**
+   * Writes an address that may be <code>null</code>.
+   * The length of the raw address comes first, 0 for <code>null</code>.
+   */
+  protected static void writeAddress(DataOutput out, InetAddress address)
+    throws IOException
+  {
+    if (address == null)
+     {
+       out.writeByte(0);
+       return;
+     }
+
+    final byte[] raw = address.getAddress();
+    out.writeByte(raw.length);
+    out.write(raw);
+  }
+
+
+  /**
+   * Reads an address that may be <code>null</code>.
+   */
+  protected static InetAddress readAddress(DataInput in)
+    throws IOException
+  {
+    final int length = in.readUnsignedByte();
+    if (length == 0)
+       return null;
+
+    final byte[] raw = new byte[length];
+    in.readFully(raw);
+    // throws UnknownHostException, an IOException, for bad lengths
+    return InetAddress.getByAddress(raw);
+  }
+
+}
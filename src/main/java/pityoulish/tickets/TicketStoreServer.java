@@ -0,0 +1,321 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pityoulish.logutil.Log;
+import pityoulish.logutil.LogConfig;
+
+
+/**
+ * Serves a {@link LocalTicketStore} to {@link RemoteTicketStore}s.
+ * Several nodes of the Message Board server, each with its own ticket
+ * manager, can share the tickets in this store.
+ * A {@link LocalPunchStore} is served to {@link RemotePunchStore}s,
+ * for nodes that share the key of their stateless tickets.
+ * See {@link TicketStoreProtocol} for the protocol.
+ * <br>
+ * There is a thread per connection. Requests on one connection are
+ * processed in order. Responses are flushed when no further requests
+ * are waiting, so a batch of requests is answered by a batch of responses.
+ */
+public class TicketStoreServer
+{
+  protected final Logger logger = Log.getPackageLogger(this.getClass());
+
+  /** The default port to listen on. */
+  public final static int DEFAULT_PORT = 2889;
+
+  /** The store to serve. */
+  protected final LocalTicketStore ticketStore;
+
+  /** Creates the tickets received from clients. */
+  protected final TicketManager ticketCreator;
+
+  /** The punch counts of stateless tickets. */
+  protected final PunchStore punchStore;
+
+  /** The listening socket, or <code>null</code>. */
+  protected ServerSocket serverSocket;
+
+
+  /**
+   * Creates a new ticket store server.
+   *
+   * @param store       the store to serve
+   */
+  public TicketStoreServer(LocalTicketStore store)
+  {
+    if (store == null)
+       throw new NullPointerException("LocalTicketStore");
+
+    ticketStore   = store;
+    ticketCreator = new DefaultTicketManager(store);
+    punchStore    = new LocalPunchStore();
+  }
+
+
+  /**
+   * Starts listening for connections, in a background thread.
+   *
+   * @param port        the port to listen on, 0 for any free port
+   *
+   * @throws IOException        if the port cannot be opened
+   */
+  public synchronized void startup(int port)
+    throws IOException
+  {
+    if (serverSocket != null)
+       throw new IllegalStateException("already started");
+
+    serverSocket = new ServerSocket(port);
+    startThread(new Acceptor(serverSocket), "ticket-store-acceptor");
+  }
+
+
+  /**
+   * Stops listening for connections.
+   * Established connections are served until the clients close them.
+   */
+  public synchronized void shutdown()
+  {
+    if (serverSocket == null)
+       return;
+
+    try {
+      serverSocket.close();
+    } catch (IOException iox) {
+      Log.log(logger, "shutdown", iox);
+    }
+    serverSocket = null;
+  }
+
+
+  /**
+   * Obtains the port on which this server listens.
+   *
+   * @return    the local port, or -1 if not started
+   */
+  public synchronized int getPort()
+  {
+    return (serverSocket == null) ? -1 : serverSocket.getLocalPort();
+  }
+
+
+  /**
+   * Serves requests on a connection, until it is closed.
+   *
+   * @param socket      the connection to a client
+   *
+   * @throws IOException        in case of a problem
+   */
+  protected void serve(Socket socket)
+    throws IOException
+  {
+    socket.setTcpNoDelay(true);
+    DataInputStream in = new DataInputStream
+      (new BufferedInputStream(socket.getInputStream()));
+    DataOutputStream out = new DataOutputStream
+      (new BufferedOutputStream(socket.getOutputStream()));
+
+    while (true)
+     {
+       int id = 0;
+       try {
+         id = in.readInt();
+       } catch (EOFException eox) {
+         return; // client closed the connection
+       }
+       final byte op = in.readByte();
+
+       switch (op)
+        {
+          case TicketStoreProtocol.OP_ADD: {
+            TicketImpl tick =
+              TicketStoreProtocol.readTicket(in, ticketCreator);
+            TicketStore.Conflict conflict = ticketStore.add(tick).join();
+            out.writeInt(id);
+            TicketStoreProtocol.writeConflict(out, conflict);
+          } break;
+
+          case TicketStoreProtocol.OP_GET: {
+            TicketImpl tick = ticketStore.getNow(in.readUTF());
+            out.writeInt(id);
+            out.writeBoolean(tick != null);
+            if (tick != null)
+               TicketStoreProtocol.writeTicket(out, tick);
+          } break;
+
+          case TicketStoreProtocol.OP_REMOVE: {
+            TicketImpl tick = ticketStore.getNow(in.readUTF());
+            boolean removed = (tick != null) && ticketStore.removeNow(tick);
+            out.writeInt(id);
+            out.writeBoolean(removed);
+          } break;
+
+          case TicketStoreProtocol.OP_PUNCH: {
+            TicketImpl tick = ticketStore.getNow(in.readUTF());
+            if (tick != null)
+               tick.punch();
+          } break;
+
+          case TicketStoreProtocol.OP_REFUND: {
+            TicketImpl tick = ticketStore.getNow(in.readUTF());
+            int count = in.readInt();
+            if ((tick != null) && (count > 0))
+               tick.refund(count);
+          } break;
+
+          case TicketStoreProtocol.OP_PUNCH_COUNT: {
+            String tid  = in.readUTF();
+            int actions = in.readInt();
+            boolean allowed = punchStore.punch(tid, actions, in.readLong());
+            out.writeInt(id);
+            out.writeBoolean(allowed);
+          } break;
+
+          case TicketStoreProtocol.OP_REFUND_COUNT: {
+            String tid = in.readUTF();
+            int count  = in.readInt();
+            if (count > 0)
+               punchStore.refund(tid, count);
+          } break;
+
+          case TicketStoreProtocol.OP_REVOKE: {
+            String tid = in.readUTF();
+            punchStore.revoke(tid, in.readLong());
+          } break;
+
+          case TicketStoreProtocol.OP_IS_REVOKED: {
+            boolean revoked = punchStore.isRevoked(in.readUTF());
+            out.writeInt(id);
+            out.writeBoolean(revoked);
+          } break;
+
+          default:
+            throw new IOException("bad operation "+op);
+        }
+
+       // answer the whole batch at once
+       if (in.available() == 0)
+          out.flush();
+     }
+  }
+
+
+  /**
+   * Starts a daemon thread.
+   *
+   * @param r           what to run
+   * @param name        the name of the thread
+   */
+  protected static void startThread(Runnable r, String name)
+  {
+    Thread t = new Thread(r, name);
+    t.setDaemon(true);
+    t.start();
+  }
+
+
+  /**
+   * Main entry point, for a standalone ticket store.
+   *
+   * @param args        the command line arguments: [port]
+   *
+   * @throws Exception  in case of a problem
+   */
+  public static void main(String[] args)
+    throws Exception
+  {
+    int port = DEFAULT_PORT;
+    if (args.length > 0)
+       port = Integer.parseInt(args[0]);
+
+    LogConfig.configure(TicketStoreServer.class);
+
+    LocalTicketStore lts = new LocalTicketStore();
+    lts.startReaper();
+
+    TicketStoreServer server = new TicketStoreServer(lts);
+    server.startup(port);
+    server.logger.log(Level.INFO, "starting ticket store");
+    System.out.println("ticket store listening on port "+server.getPort());
+
+    // the threads are daemons, keep the JVM alive
+    Thread.currentThread().join();
+  }
+
+
+
+  /**
+   * Accepts connections and starts a thread for each.
+   */
+  protected class Acceptor implements Runnable
+  {
+    protected final ServerSocket acceptSocket;
+
+    public Acceptor(ServerSocket ss)
+    {
+      acceptSocket = ss;
+    }
+
+    // non-javadoc, see interface Runnable
+    public void run()
+    {
+      while (!acceptSocket.isClosed())
+       {
+         try {
+           Socket socket = acceptSocket.accept();
+           startThread(new Connection(socket), "ticket-store-connection");
+         } catch (IOException iox) {
+           if (!acceptSocket.isClosed())
+              Log.log(logger, "accept", iox);
+         }
+       }
+    }
+  }
+
+
+  /**
+   * Serves a connection.
+   */
+  protected class Connection implements Runnable
+  {
+    protected final Socket clientSocket;
+
+    public Connection(Socket socket)
+    {
+      clientSocket = socket;
+    }
+
+    // non-javadoc, see interface Runnable
+    public void run()
+    {
+      try {
+        serve(clientSocket);
+      } catch (Exception x) {
+        Log.log(logger, "serve", x);
+      } finally {
+        try {
+          clientSocket.close();
+        } catch (IOException iox) {
+          // ignore
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+
+/**
+ * A counting Bloom filter for ticket tokens.
+ * It tells whether a token might be in a {@link LocalTicketStore},
+ * or is definitely not. Tokens can be removed again, each token
+ * increments and decrements a few counters.
+ * <br>
+ * There are no false negatives for tokens that have been added and not
+ * removed. The rate of false positives depends on the number of tokens.
+ * With the default size and a thousand tokens, it is below 1%.
+ * All operations are lock-free and take constant time.
+ */
+public class TokenFilter
+{
+  /** The default number of counters, a power of 2. */
+  public final static int DEFAULT_SIZE = 1 << 15;
+
+  /** The number of counters per token. */
+  public final static int HASHES = 3;
+
+  /** The counters. */
+  protected final AtomicIntegerArray filterCounters;
+
+
+  /**
+   * Creates a new, empty filter with the default size.
+   */
+  public TokenFilter()
+  {
+    this(DEFAULT_SIZE);
+  }
+
+
+  /**
+   * Creates a new, empty filter.
+   *
+   * @param size        the number of counters, a power of 2
+   */
+  public TokenFilter(int size)
+  {
+    if ((size < HASHES) || ((size & (size-1)) != 0))
+       throw new IllegalArgumentException("size "+size);
+
+    filterCounters = new AtomicIntegerArray(size);
+  }
+
+
+  /**
+   * Adds a token.
+   *
+   * @param token       the token to add
+   */
+  public void add(String token)
+  {
+    final int h1 = token.hashCode();
+    final int h2 = secondHash(token);
+    for (int i=0; i<HASHES; i++)
+       filterCounters.incrementAndGet(indexFor(h1, h2, i));
+  }
+
+
+  /**
+   * Removes a token.
+   * The token must have been added before, and not removed since.
+   *
+   * @param token       the token to remove
+   */
+  public void remove(String token)
+  {
+    final int h1 = token.hashCode();
+    final int h2 = secondHash(token);
+    for (int i=0; i<HASHES; i++)
+       filterCounters.decrementAndGet(indexFor(h1, h2, i));
+  }
+
+
+  /**
+   * Checks whether a token might have been added.
+   *
+   * @param token       the token to check
+   *
+   * @return    <code>false</code> if the token has definitely not been
+   *            added, or has been removed again;
+   *            <code>true</code> if it might have been added
+   */
+  public boolean mightContain(String token)
+  {
+    final int h1 = token.hashCode();
+    final int h2 = secondHash(token);
+    for (int i=0; i<HASHES; i++)
+     {
+       if (filterCounters.get(indexFor(h1, h2, i)) <= 0)
+          return false;
+     }
+    return true;
+  }
+
+
+  /**
+   * Computes the index of a counter.
+   * The counters for a token are derived from two hash codes.
+   *
+   * @param h1          the first hash code
+   * @param h2          the second hash code
+   * @param i           which counter, 0 to {@link #HASHES}-1
+   *
+   * @return    the index of the counter
+   */
+  protected final int indexFor(int h1, int h2, int i)
+  {
+    // an odd step visits distinct counters
+    return (h1 + i*(h2|1)) & (filterCounters.length()-1);
+  }
+
+
+  /**
+   * Computes a second hash code, independent of {@link String#hashCode}.
+   * This is FNV-1a over the characters.
+   *
+   * @param token       the token
+   *
+   * @return    the hash code
+   */
+  protected static int secondHash(String token)
+  {
+    int hash = 0x811c9dc5;
+    for (int i=0; i<token.length(); i++)
+     {
+       hash ^= token.charAt(i);
+       hash *= 0x01000193;
+     }
+    return hash ^ (hash >>> 15);
+  }
+
+}
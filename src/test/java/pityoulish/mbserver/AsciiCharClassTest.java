@@ -0,0 +1,91 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.mbserver;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+public class AsciiCharClassTest
+{
+  /** Specifications of the character classes used by the sanity checkers. */
+  public final static String[] SPECS = {
+    "A-Za-z0-9", "A-Za-z0-9.@-", "A-Za-z0-9._-", "a-z", " -~\t-\r"
+  };
+
+
+  @Test public void create_badArgs()
+  {
+    try {
+      AsciiCharClass acc = new AsciiCharClass(null);
+      fail("missing spec not detected: "+acc);
+    } catch (RuntimeException expected) {
+    }
+
+    try {
+      AsciiCharClass acc = new AsciiCharClass("z-a");
+      fail("reverse range not detected: "+acc);
+    } catch (RuntimeException expected) {
+    }
+
+    try {
+      AsciiCharClass acc = new AsciiCharClass("a-\u00e4");
+      fail("non-ASCII range not detected: "+acc);
+    } catch (RuntimeException expected) {
+    }
+  }
+
+
+  @Test public void contains_allChars()
+  {
+    // exhaustive: every char, against the equivalent regex
+    for (String spec: SPECS)
+     {
+       AsciiCharClass acc = new AsciiCharClass(spec);
+       Pattern pattern = Pattern.compile("[" + spec + "]");
+
+       for (int c=0; c<=Character.MAX_VALUE; c++)
+        {
+          String s = String.valueOf((char) c);
+          assertEquals(spec+" differs for char "+Integer.toHexString(c),
+                       pattern.matcher(s).matches(),
+                       acc.contains((char) c));
+          assertEquals(spec+" differs for string "+Integer.toHexString(c),
+                       pattern.matcher(s).matches(),
+                       acc.matches(s));
+        }
+     }
+  }
+
+
+  @Test public void matches_randomStrings()
+  {
+    // property-based: random strings from a small alphabet near the edges
+    final String alphabet = "@AZ[`az{/09:.-_ \t\r\n~\u007f\u00e4";
+    Random random = new Random(4711);
+
+    for (String spec: SPECS)
+     {
+       AsciiCharClass acc = new AsciiCharClass(spec);
+       Pattern pattern = Pattern.compile("[" + spec + "]+");
+
+       for (int n=0; n<2000; n++)
+        {
+          char[] chars = new char[random.nextInt(6)];
+          for (int i=0; i<chars.length; i++)
+             chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+          String s = new String(chars);
+
+          assertEquals(spec+" differs for \""+s+"\"",
+                       pattern.matcher(s).matches(), acc.matches(s));
+        }
+     }
+  }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.mbserver;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+public class RateLimiterTest
+{
+  @Test public void create_badArgs()
+  {
+    try {
+      RateLimiter<String> rl = new RateLimiter<>(0, 1);
+      fail("invalid rate not detected: "+rl);
+    } catch (RuntimeException expected) {
+      // expected
+    }
+
+    try {
+      RateLimiter<String> rl = new RateLimiter<>(60, 0);
+      fail("invalid burst not detected: "+rl);
+    } catch (RuntimeException expected) {
+      // expected
+    }
+  }
+
+
+  @Test public void tryAcquire_burst()
+  {
+    // one per minute, refilling takes longer than this test
+    final int burst = 3;
+    RateLimiter<String> rl = new RateLimiter<>(1, burst);
+
+    for (int i=0; i<burst; i++)
+       assertTrue("request "+i+" rejected", rl.tryAcquire("rumour"));
+    assertFalse("burst exceeded", rl.tryAcquire("rumour"));
+    assertFalse("burst exceeded again", rl.tryAcquire("rumour"));
+    assertEquals("wrong #rejected", 2, rl.getRejectedCount());
+
+    // other keys have their own bucket
+    assertTrue("other key rejected", rl.tryAcquire("myself"));
+  }
+
+
+  @Test public void tryAcquire_permits()
+  {
+    // one per minute, refilling takes longer than this test
+    RateLimiter<String> rl = new RateLimiter<>(1, 5);
+
+    assertTrue("3 permits rejected", rl.tryAcquire("rumour", 3));
+    assertFalse("3 more permits granted", rl.tryAcquire("rumour", 3));
+    assertTrue("2 permits rejected", rl.tryAcquire("rumour", 2));
+    assertFalse("burst exceeded", rl.tryAcquire("rumour"));
+
+    // more than the burst never fits
+    assertFalse("6 permits granted", rl.tryAcquire("myself", 6));
+    assertTrue("other key rejected", rl.tryAcquire("myself", 5));
+
+    try {
+      boolean b = rl.tryAcquire("rumour", 0);
+      fail("invalid permits not detected: "+b);
+    } catch (RuntimeException expected) {
+      // expected
+    }
+  }
+
+
+  @Test public void tryAcquire_refill()
+    throws Exception
+  {
+    // 6000 per minute, one token every 10 ms
+    RateLimiter<String> rl = new RateLimiter<>(6000, 1);
+
+    assertTrue("first request rejected", rl.tryAcquire("rumour"));
+    assertFalse("burst exceeded", rl.tryAcquire("rumour"));
+
+    Thread.sleep(50);
+    assertTrue("bucket not refilled", rl.tryAcquire("rumour"));
+  }
+
+
+  @Test public void tryAcquire_concurrent()
+    throws Exception
+  {
+    final int burst = 100;
+    final RateLimiter<String> rl = new RateLimiter<>(1, burst);
+    final java.util.concurrent.atomic.AtomicInteger allowed =
+      new java.util.concurrent.atomic.AtomicInteger();
+
+    Thread[] workers = new Thread[8];
+    for (int i=0; i<workers.length; i++)
+     {
+       workers[i] = new Thread() {
+           public void run() {
+             for (int n=0; n<burst; n++)
+              {
+                if (rl.tryAcquire("rumour"))
+                   allowed.incrementAndGet();
+              }
+           }
+         };
+       workers[i].start();
+     }
+    for (Thread worker: workers)
+       worker.join();
+
+    assertEquals("wrong #allowed", burst, allowed.get());
+  }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+public class ArenaMessageBoardImplTest
+{
+  @Test public void constructor_args()
+  {
+    try {
+      ArenaMessageBoardImpl board = new ArenaMessageBoardImpl(0, 8192);
+      fail("capacity 0 not detected");
+    } catch (Exception expected) {
+    }
+
+    try {
+      ArenaMessageBoardImpl board =
+        new ArenaMessageBoardImpl(8, ArenaMessageBoardImpl.MIN_ARENA_BYTES-1);
+      fail("small arena not detected");
+    } catch (Exception expected) {
+    }
+
+    try {
+      ArenaMessageBoardImpl board = new ArenaMessageBoardImpl(8, null);
+      fail("missing arena not detected");
+    } catch (Exception expected) {
+    }
+  }
+
+
+  @Test public void putMessage_OK()
+  {
+    String originator = "myself";
+    String text = "total nonsense";
+    ArenaMessageBoardImpl board = new ArenaMessageBoardImpl(3, 8192);
+
+    Message msg = board.putMessage(originator, text);
+
+    assertNotNull("no message", msg);
+    assertNotNull("missing timestamp", msg.getTimestamp());
+    assertEquals("wrong originator", originator, msg.getOriginator());
+    assertEquals("wrong text", text, msg.getText());
+  }
+
+
+  @Test public void listMessages_all()
+  {
+    String originator = "rumour";
+    String[] texts = new String[]{ "nonsense", "rigmarole", "verbiage" };
+    ArenaMessageBoardImpl board = new ArenaMessageBoardImpl(8, 8192);
+    for (String text: texts)
+       board.putMessage(originator, text);
+
+    MessageBatch mb = board.listMessages(8, null);
+
+    assertNotNull("no message batch", mb);
+    assertEquals("wrong number of messages",
+                 texts.length, mb.getMessages().size());
+    assertNotNull("no marker", mb.getMarker());
+    assertEquals("discontinuous", false, mb.isDiscontinuous());
+    for (int i=0; i<texts.length; i++)
+     {
+       assertEquals("wrong message #"+i, texts[i],
+                    mb.getMessages().get(i).getText());
+       assertEquals("wrong originator #"+i, originator,
+                    mb.getMessages().get(i).getOriginator());
+     }
+
+    // the marker works for subsequent calls
+    board.putMessage(originator, "gibberish");
+    MessageBatch mb2 = board.listMessages(8, mb.getMarker());
+    assertEquals("wrong number of messages", 1, mb2.getMessages().size());
+    assertEquals("wrong message", "gibberish",
+                 mb2.getMessages().get(0).getText());
+  }
+
+
+  @Test public void testCapacity_userMessages()
+  {
+    final int capacity = 3;
+    ArenaMessageBoardImpl board = new ArenaMessageBoardImpl(capacity, 8192);
+
+    MessageBatch mb1 = board.listMessages(capacity, null);
+    for (int i=0; i<2*capacity+1; i++)
+       board.putMessage("rumour", "message "+i);
+
+    MessageBatch mb2 = board.listMessages(0, mb1.getMarker());
+    assertEquals("wrong number of messages",
+                 capacity, mb2.getMessages().size());
+    assertEquals("wrong discontinuous", true, mb2.isDiscontinuous());
+    assertEquals("wrong oldest message", "message "+(capacity+1),
+                 mb2.getMessages().get(0).getText());
+  }
+
+
+  @Test public void testArena_evictsByBytes()
+  {
+    // 40 records of more than 150 byte don't fit into 4096 byte
+    final int count = 40;
+    ArenaMessageBoardImpl board =
+      new ArenaMessageBoardImpl(count, ArenaMessageBoardImpl.MIN_ARENA_BYTES);
+
+    StringBuilder sb = new StringBuilder();
+    for (int i=0; i<150; i++)
+       sb.append('x');
+    String filler = sb.toString();
+
+    for (int i=0; i<count; i++)
+     {
+       board.putMessage("rumour", i+filler);
+       assertTrue("arena overflow",
+                  board.getArenaUsage() <= ArenaMessageBoardImpl.MIN_ARENA_BYTES);
+     }
+
+    MessageBatch mb = board.listMessages(0, null);
+    int listed = mb.getMessages().size();
+    assertTrue("nothing dropped", listed < count);
+    assertTrue("too much dropped", listed >= 10);
+
+    // the newest messages survive, in order
+    for (int i=0; i<listed; i++)
+       assertEquals("wrong message #"+i, (count-listed+i)+filler,
+                    mb.getMessages().get(i).getText());
+  }
+
+
+  @Test public void testArena_viewsSurviveEviction()
+  {
+    ArenaMessageBoardImpl board = new ArenaMessageBoardImpl(2, 8192);
+    board.putMessage("myself", "nonsense");
+    Message msg = board.listMessages(1, null).getMessages().get(0);
+
+    for (int i=0; i<8; i++)
+       board.putMessage("rumour", "overwrite "+i);
+
+    assertEquals("wrong text", "nonsense", msg.getText());
+    assertEquals("wrong originator", "myself", msg.getOriginator());
+  }
+
+
+  @Test public void testArena_copyText()
+  {
+    String text = "Gr\u00fc\u00dfe \u20ac";
+    byte[] expected = text.getBytes(StandardCharsets.UTF_8);
+    ArenaMessageBoardImpl board =
+      new ArenaMessageBoardImpl(4, ByteBuffer.allocate(4096));
+    board.putMessage("myself", text);
+
+    Message msg = board.listMessages(1, null).getMessages().get(0);
+    assertTrue("not a Utf8Message", msg instanceof Utf8Message);
+
+    Utf8Message um = (Utf8Message) msg;
+    assertEquals("wrong text length", expected.length, um.getTextLength());
+
+    byte[] dst = new byte[expected.length + 2];
+    assertEquals("wrong copied length",
+                 expected.length, um.copyText(dst, 1));
+    byte[] copied = new byte[expected.length];
+    System.arraycopy(dst, 1, copied, 0, copied.length);
+    assertArrayEquals("wrong text bytes", expected, copied);
+    assertEquals("wrong text", text, um.getText());
+  }
+
+
+  @Test public void putSystemMessage_mixed()
+  {
+    ArenaMessageBoardImpl board = new ArenaMessageBoardImpl(8, 8192);
+    board.putSystemMessage(null, "nonsense");
+    board.putMessage("myself", "rubbish");
+
+    MessageBatch mb = board.listMessages(0, null);
+    assertEquals("wrong number of messages", 2, mb.getMessages().size());
+    assertNotNull("missing originator",
+                  mb.getMessages().get(0).getOriginator());
+    assertEquals("wrong message", "nonsense",
+                 mb.getMessages().get(0).getText());
+    assertEquals("wrong message", "rubbish",
+                 mb.getMessages().get(1).getText());
+  }
+
+
+  @Test public void listMessages_filtered()
+  {
+    ArenaMessageBoardImpl board = new ArenaMessageBoardImpl(8, 8192);
+    board.putMessage("myself", "nonsense");
+    board.putSystemMessage(null, "rubbish");
+    board.putMessage("rumour", "gibberish");
+    board.putMessage("myself", "balderdash");
+
+    MessageBatch mb = board.listMessages
+      (0, null, MessageFilter.newMixedFilter("myself", true));
+    assertEquals("wrong number of messages", 2, mb.getMessages().size());
+    assertEquals("wrong message", "nonsense",
+                 mb.getMessages().get(0).getText());
+    assertEquals("wrong message", "balderdash",
+                 mb.getMessages().get(1).getText());
+
+    mb = board.listMessages(0, null, MessageFilter.newMixedFilter(null, true));
+    assertEquals("wrong number of messages", 3, mb.getMessages().size());
+  }
+
+
+  @Test public void subscribe_receivesMessages()
+  {
+    ArenaMessageBoardImpl board = new ArenaMessageBoardImpl(4, 8192);
+    board.putMessage("myself", "nonsense");
+
+    MessageSubscription sub = board.subscribe(8);
+    assertEquals("unexpected messages", 0,
+                 sub.poll(8, 0L).getMessages().size());
+
+    board.putMessage("myself", "rubbish");
+    MessageBatch mb = sub.poll(8, 0L);
+    assertEquals("wrong number of messages", 1, mb.getMessages().size());
+    assertEquals("wrong message", "rubbish", mb.getMessages().get(0).getText());
+
+    // the marker works on the board
+    assertEquals("unexpected messages after marker", 0,
+                 board.listMessages(4, mb.getMarker()).getMessages().size());
+  }
+
+
+
+  @Test public void putMessages_OK()
+  {
+    ArenaMessageBoardImpl board = new ArenaMessageBoardImpl(8, 8192);
+    List<String> markers = board.putMessages
+      ("rumour", Arrays.asList("nonsense", "rigmarole", "verbiage"));
+
+    assertEquals("wrong number of markers", 3, markers.size());
+
+    MessageBatch mb = board.listMessages(0, markers.get(0));
+    assertEquals("wrong number of messages", 2, mb.getMessages().size());
+    assertEquals("wrong message", "rigmarole",
+                 mb.getMessages().get(0).getText());
+    assertEquals("wrong marker", markers.get(2), mb.getMarker());
+  }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+public class CachedTimestamperImplTest
+{
+  @Test public void format_now()
+  {
+    Timestamper ts = new CachedTimestamperImpl();
+
+    String now = ts.getTimestamp();
+
+    assertNotNull("no timestamp", now);
+    assertEquals("wrong length", 20, now.length());
+    assertEquals("wrong timezone", 'Z', now.charAt(19));
+  }
+
+
+  @Test public void format_sometime()
+  {
+    Timestamper ts = new CachedTimestamperImpl();
+
+    String then = ts.getTimestamp(1468132300600L);
+
+    assertEquals("wrong timestamp", "2016-07-10T06:31:40Z", then);
+  }
+
+
+  @Test public void format_wayback()
+  {
+    Timestamper ts = new CachedTimestamperImpl();
+
+    String then = ts.getTimestamp(8L);
+
+    assertEquals("wrong timestamp", "1970-01-01T00:00:00Z", then);
+  }
+
+
+  @Test public void format_sameSecond()
+  {
+    Timestamper ts = new CachedTimestamperImpl();
+
+    String first = ts.getTimestamp(1468132300000L);
+    String last  = ts.getTimestamp(1468132300999L);
+    String next  = ts.getTimestamp(1468132301000L);
+
+    assertSame("not cached", first, last);
+    assertEquals("wrong timestamp", "2016-07-10T06:31:41Z", next);
+  }
+
+
+  @Test public void format_sameAsTimestamperImpl()
+  {
+    Timestamper expected = new TimestamperImpl();
+    Timestamper ts = new CachedTimestamperImpl();
+
+    for (long when = 0L; when < 4000000000000L; when += 98765432109L)
+       assertEquals("wrong timestamp for "+when,
+                    expected.getTimestamp(when), ts.getTimestamp(when));
+  }
+
+}
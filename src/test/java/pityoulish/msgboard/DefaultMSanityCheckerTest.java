@@ -212,4 +212,101 @@ public class DefaultMSanityCheckerTest
     assertNull("originator 'rw' not allowed", problem);
   }
 
+
+  @Test public void checkChannel()
+    throws Exception
+  {
+    DefaultMSanityChecker<String> checker = newChecker();
+
+    assertNull("good channel rejected", checker.checkChannel("java-2.lab_1"));
+
+    assertNotNull("empty channel accepted", checker.checkChannel(""));
+    assertNotNull("long channel accepted", checker.checkChannel
+                  ("abcdefghijklmnopqrstuvwxyz0123456"));
+    assertNotNull("bad character accepted", checker.checkChannel("a b"));
+    assertNotNull("bad character accepted", checker.checkChannel("a/b"));
+
+    try {
+      String problem = checker.checkChannel(null);
+      fail("missing channel not detected");
+    } catch (RuntimeException expected) {
+      // expected
+    }
+  }
+
+
+
+  @Test public void checkBatchSize()
+    throws Exception
+  {
+    DefaultMSanityChecker<String> checker = newChecker();
+    final int max = DefaultMSanityChecker.DEFAULT_BATCH_MAX_SIZE;
+
+    assertNull("single message rejected", checker.checkBatchSize(1));
+    assertNull("full batch rejected", checker.checkBatchSize(max));
+
+    assertNotNull("empty batch accepted", checker.checkBatchSize(0));
+    assertNotNull("large batch accepted", checker.checkBatchSize(max+1));
+  }
+
+
+
+  @Test public void isDefaultTextChar_allCodePoints()
+  {
+    // exhaustive: every code point, against the default pattern
+    for (int cp=0; cp<=Character.MAX_CODE_POINT; cp++)
+     {
+       String s = new String(Character.toChars(cp));
+       assertEquals("differs for code point "+Integer.toHexString(cp),
+                    DefaultMSanityChecker.DEFAULT_TEXT_PATTERN
+                    .matcher(s).matches(),
+                    DefaultMSanityChecker.isDefaultText(s));
+     }
+  }
+
+
+  @Test public void isDefaultText_randomStrings()
+  {
+    // property-based: mixed strings, including broken surrogate pairs
+    final String alphabet =
+      "aZ9 ~\t\n\u001f\u007f\u0085\u00a0\u00e4\u2028\u20ac\ud83d\ude00\uffff";
+    java.util.Random random = new java.util.Random(4711);
+
+    for (int n=0; n<20000; n++)
+     {
+       char[] chars = new char[random.nextInt(8)];
+       for (int i=0; i<chars.length; i++)
+          chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+       String s = new String(chars);
+
+       assertEquals("differs for \""+s+"\"",
+                    DefaultMSanityChecker.DEFAULT_TEXT_PATTERN
+                    .matcher(s).matches(),
+                    DefaultMSanityChecker.isDefaultText(s));
+     }
+  }
+
+
+  @Test public void checkOriginator_defaultPattern()
+  {
+    // the explicit default pattern and the fast path agree
+    DefaultMSanityChecker<String> fast = newChecker();
+    DefaultMSanityChecker<String> regex =
+      new DefaultMSanityChecker<>(new StringProblemFactory(),
+                                  new SimpleSequencerImpl(),
+                                  35, DefaultMSanityChecker.DEFAULT_TEXT_PATTERN,
+                                  16, DefaultMSanityChecker
+                                  .DEFAULT_ORIGINATOR_PATTERN);
+
+    String[] candidates = { "j.doe@example", "j_doe", "a-b", "a b", "\u00e4",
+                            "tab\there", "line\nfeed", "\u0000" };
+    for (String c: candidates)
+     {
+       assertEquals("originator differs for \""+c+"\"",
+                    regex.checkOriginator(c), fast.checkOriginator(c));
+       assertEquals("text differs for \""+c+"\"",
+                    regex.checkText(c), fast.checkText(c));
+     }
+  }
+
 }
@@ -0,0 +1,500 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+public class JournaledMessageBoardImplTest
+{
+  /**
+   * Creates an empty directory for a journal.
+   *
+   * @return  the new directory
+   */
+  public static File _createJournalDir()
+    throws Exception
+  {
+    File dir = Files.createTempDirectory("pityoulish-journal").toFile();
+    dir.deleteOnExit();
+    return dir;
+  }
+
+
+  /**
+   * Deletes a journal directory with all files.
+   *
+   * @param dir   the directory to delete
+   */
+  public static void _deleteJournalDir(File dir)
+  {
+    File[] files = dir.listFiles();
+    if (files != null)
+       for (File file: files)
+          file.delete();
+    dir.delete();
+  }
+
+
+  @Test public void constructor_OK()
+    throws Exception
+  {
+    File dir = _createJournalDir();
+    try {
+      JournaledMessageBoardImpl board = new JournaledMessageBoardImpl(8, dir);
+      board.close();
+    } finally {
+      _deleteJournalDir(dir);
+    }
+  }
+
+
+  @Test public void restart_keepsMessagesAndMarkers()
+    throws Exception
+  {
+    final int capacity = 8;
+    String originator = "myself";
+    String[] texts = new String[]{
+      "nonsense",
+      "rubbish",
+      "gibberish",
+      "balderdash",
+      "malarkey"
+    };
+
+    File dir = _createJournalDir();
+    try {
+      JournaledMessageBoardImpl board1 =
+        new JournaledMessageBoardImpl(capacity, dir);
+      board1.putSystemMessage(null, "open");
+      for (int i=0; i<3; i++)
+         board1.putMessage(originator, texts[i]);
+      MessageBatch mb1 = board1.listMessages(capacity, null);
+      for (int i=3; i<texts.length; i++)
+         board1.putMessage(originator, texts[i]);
+      MessageBatch all1 = board1.listMessages(capacity, null);
+      board1.close();
+
+      JournaledMessageBoardImpl board2 =
+        new JournaledMessageBoardImpl(capacity, dir);
+      MessageBatch all2 = board2.listMessages(capacity, null);
+
+      assertEquals("wrong number of messages",
+                   all1.getMessages().size(), all2.getMessages().size());
+      assertEquals("wrong marker", all1.getMarker(), all2.getMarker());
+      for (int i=0; i<all1.getMessages().size(); i++)
+       {
+         Message m1 = all1.getMessages().get(i);
+         Message m2 = all2.getMessages().get(i);
+         assertEquals("wrong text #"+i, m1.getText(), m2.getText());
+         assertEquals("wrong originator #"+i,
+                      m1.getOriginator(), m2.getOriginator());
+         assertEquals("wrong timestamp #"+i,
+                      m1.getTimestamp(), m2.getTimestamp());
+       }
+
+      // a follower continues with the marker from before the restart
+      MessageBatch mb2 = board2.listMessages(capacity, mb1.getMarker());
+      assertEquals("discontinuous", false, mb2.isDiscontinuous());
+      assertEquals("wrong number of messages",
+                   texts.length-3, mb2.getMessages().size());
+      assertEquals("wrong message", texts[3],
+                   mb2.getMessages().get(0).getText());
+
+      // new messages get new IDs
+      board2.putMessage(originator, "poppycock");
+      MessageBatch mb3 = board2.listMessages(capacity, mb2.getMarker());
+      assertEquals("wrong number of messages", 1, mb3.getMessages().size());
+      assertEquals("wrong message", "poppycock",
+                   mb3.getMessages().get(0).getText());
+      board2.close();
+
+    } finally {
+      _deleteJournalDir(dir);
+    }
+  }
+
+
+  @Test public void restart_droppedUserMessage()
+    throws Exception
+  {
+    final int capacity = 3;
+    String originator = "rumour";
+
+    File dir = _createJournalDir();
+    try {
+      JournaledMessageBoardImpl board1 =
+        new JournaledMessageBoardImpl(capacity, dir);
+      board1.putMessage(originator, "nonsense");
+      MessageBatch mb1 = board1.listMessages(capacity, null);
+      for (int i=0; i<2*capacity; i++)
+         board1.putMessage(originator, "gibberish "+i);
+      board1.close();
+
+      JournaledMessageBoardImpl board2 =
+        new JournaledMessageBoardImpl(capacity, dir);
+      MessageBatch mb2 = board2.listMessages(capacity, mb1.getMarker());
+      assertEquals("wrong discontinuous", true, mb2.isDiscontinuous());
+      assertEquals("wrong number of messages",
+                   capacity, mb2.getMessages().size());
+      board2.close();
+
+    } finally {
+      _deleteJournalDir(dir);
+    }
+  }
+
+
+  @Test public void restart_incompleteRecord()
+    throws Exception
+  {
+    final int capacity = 8;
+
+    File dir = _createJournalDir();
+    try {
+      JournaledMessageBoardImpl board1 =
+        new JournaledMessageBoardImpl(capacity, dir);
+      board1.putMessage("myself", "nonsense");
+      board1.putMessage("myself", "rubbish");
+      board1.close();
+
+      // cut off the end of the last record
+      File[] segments = dir.listFiles();
+      assertEquals("wrong number of segments", 1, segments.length);
+      try (RandomAccessFile raf = new RandomAccessFile(segments[0], "rw")) {
+        raf.setLength(raf.length()-3);
+      }
+
+      JournaledMessageBoardImpl board2 =
+        new JournaledMessageBoardImpl(capacity, dir);
+      MessageBatch mb2 = board2.listMessages(capacity, null);
+      assertEquals("wrong number of messages", 1, mb2.getMessages().size());
+      assertEquals("wrong message", "nonsense",
+                   mb2.getMessages().get(0).getText());
+      board2.close();
+
+    } finally {
+      _deleteJournalDir(dir);
+    }
+  }
+
+
+  @Test public void putMessage_concurrentWriters()
+    throws Exception
+  {
+    final int capacity = 64;
+    final int writers  = 4;
+    final int count    = 50;
+
+    File dir = _createJournalDir();
+    try {
+      final JournaledMessageBoardImpl board1 =
+        new JournaledMessageBoardImpl(capacity, dir);
+      Thread[] threads = new Thread[writers];
+      for (int t=0; t<writers; t++)
+       {
+         final String originator = "writer"+t;
+         threads[t] = new Thread(new Runnable() {
+           public void run()
+           {
+             for (int i=0; i<count; i++)
+                board1.putMessage(originator, "message "+i);
+           }
+         });
+         threads[t].start();
+       }
+      for (Thread thread: threads)
+         thread.join();
+
+      MessageBatch mb1 = board1.listMessages(capacity, null);
+      board1.close();
+
+      JournaledMessageBoardImpl board2 =
+        new JournaledMessageBoardImpl(capacity, dir);
+      MessageBatch mb2 = board2.listMessages(capacity, null);
+      assertEquals("wrong number of messages",
+                   capacity, mb2.getMessages().size());
+      assertEquals("wrong marker", mb1.getMarker(), mb2.getMarker());
+      board2.close();
+
+    } finally {
+      _deleteJournalDir(dir);
+    }
+  }
+
+
+  @Test public void snapshot_compactsJournal()
+    throws Exception
+  {
+    final int capacity = 4;
+    String originator = "rumour";
+
+    File dir = _createJournalDir();
+    try {
+      // tiny segments, a new one after every batch
+      JournaledMessageBoardImpl board1 = new JournaledMessageBoardImpl
+        (capacity, new MessageJournal(dir, 16));
+      board1.putMessage(originator, "nonsense");
+      MessageBatch mb1 = board1.listMessages(capacity, null);
+      for (int i=0; i<20; i++)
+         board1.putMessage(originator, "gibberish "+i);
+      int before = dir.list().length;
+
+      board1.writeSnapshot();
+      int after = dir.list().length;
+      assertTrue("not compacted: "+before+" -> "+after, after < 4);
+
+      board1.putMessage(originator, "balderdash");
+      MessageBatch all1 = board1.listMessages(capacity, null);
+      board1.close();
+
+      JournaledMessageBoardImpl board2 =
+        new JournaledMessageBoardImpl(capacity, dir);
+      MessageBatch all2 = board2.listMessages(capacity, null);
+      assertEquals("wrong number of messages",
+                   capacity, all2.getMessages().size());
+      assertEquals("wrong marker", all1.getMarker(), all2.getMarker());
+      for (int i=0; i<capacity; i++)
+         assertEquals("wrong text #"+i,
+                      all1.getMessages().get(i).getText(),
+                      all2.getMessages().get(i).getText());
+
+      MessageBatch mb2 = board2.listMessages(capacity, mb1.getMarker());
+      assertEquals("wrong discontinuous", true, mb2.isDiscontinuous());
+      board2.close();
+
+    } finally {
+      _deleteJournalDir(dir);
+    }
+  }
+
+
+  @Test public void snapshot_restartTwice()
+    throws Exception
+  {
+    final int capacity = 8;
+
+    File dir = _createJournalDir();
+    try {
+      JournaledMessageBoardImpl board1 =
+        new JournaledMessageBoardImpl(capacity, dir);
+      board1.putMessage("myself", "nonsense");
+      board1.putMessage("myself", "rubbish");
+      board1.writeSnapshot();
+      MessageBatch mb1 = board1.listMessages(capacity, null);
+      board1.close();
+
+      // the segment after the snapshot is empty
+      JournaledMessageBoardImpl board2 =
+        new JournaledMessageBoardImpl(capacity, dir);
+      board2.close();
+
+      JournaledMessageBoardImpl board3 =
+        new JournaledMessageBoardImpl(capacity, dir);
+      MessageBatch mb3 = board3.listMessages(capacity, null);
+      assertEquals("wrong number of messages", 2, mb3.getMessages().size());
+      assertEquals("wrong marker", mb1.getMarker(), mb3.getMarker());
+      board3.close();
+
+    } finally {
+      _deleteJournalDir(dir);
+    }
+  }
+
+
+  @Test public void putMessage_journalFails()
+    throws Exception
+  {
+    final int capacity = 8;
+
+    File dir = _createJournalDir();
+    try {
+      FailingJournal journal = new FailingJournal(dir);
+      JournaledMessageBoardImpl board =
+        new JournaledMessageBoardImpl(capacity, journal);
+      board.putMessage("myself", "nonsense");
+      String marker = board.listMessages(capacity, null).getMarker();
+
+      journal.failing = true;
+      try {
+        board.putMessage("myself", "rubbish");
+        fail("journal failure not reported");
+      } catch (UncheckedIOException expected) {
+        // expected
+      }
+      journal.failing = false;
+
+      // the failed message must not be published with the next one
+      board.putMessage("myself", "gibberish");
+      MessageBatch mb = board.listMessages(capacity, null);
+      assertEquals("wrong number of messages", 2, mb.getMessages().size());
+      assertEquals("wrong text #0",
+                   "nonsense", mb.getMessages().get(0).getText());
+      assertEquals("wrong text #1",
+                   "gibberish", mb.getMessages().get(1).getText());
+
+      // the number of the failed message was not used up
+      MessageBatch next = board.listMessages(capacity, marker);
+      assertEquals("wrong number of next messages",
+                   1, next.getMessages().size());
+      assertFalse("discontinuous", next.isDiscontinuous());
+      board.writeSnapshot();
+      board.close();
+
+      JournaledMessageBoardImpl board2 =
+        new JournaledMessageBoardImpl(capacity, dir);
+      MessageBatch mb2 = board2.listMessages(capacity, null);
+      assertEquals("wrong number of restored messages",
+                   2, mb2.getMessages().size());
+      assertEquals("wrong marker", mb.getMarker(), mb2.getMarker());
+      board2.close();
+
+    } finally {
+      _deleteJournalDir(dir);
+    }
+  }
+
+
+  @Test public void putMessages_journalFails()
+    throws Exception
+  {
+    final int capacity = 8;
+
+    File dir = _createJournalDir();
+    try {
+      FailingJournal journal = new FailingJournal(dir);
+      JournaledMessageBoardImpl board =
+        new JournaledMessageBoardImpl(capacity, journal);
+      MessageSubscription sub = board.subscribe(capacity);
+
+      journal.failing = true;
+      try {
+        board.putMessages("myself", Arrays.asList
+                          ("nonsense", "rubbish", "gibberish"));
+        fail("journal failure not reported");
+      } catch (UncheckedIOException expected) {
+        // expected
+      }
+      journal.failing = false;
+
+      board.putMessage("myself", "balderdash");
+      MessageBatch mb = board.listMessages(capacity, null);
+      assertEquals("wrong number of messages", 1, mb.getMessages().size());
+      assertEquals("wrong text", "balderdash",
+                   mb.getMessages().get(0).getText());
+
+      MessageBatch smb = sub.poll(capacity, 0L);
+      assertEquals("wrong number of delivered messages",
+                   1, smb.getMessages().size());
+      assertFalse("discontinuous", smb.isDiscontinuous());
+      assertEquals("wrong marker", mb.getMarker(), smb.getMarker());
+      board.close();
+
+    } finally {
+      _deleteJournalDir(dir);
+    }
+  }
+
+
+  @Test public void putMessage_syncFails()
+    throws Exception
+  {
+    final int capacity = 8;
+
+    File dir = _createJournalDir();
+    try {
+      FailingJournal journal = new FailingJournal(dir);
+      JournaledMessageBoardImpl board =
+        new JournaledMessageBoardImpl(capacity, journal);
+      board.putMessage("myself", "nonsense");
+      MessageSubscription sub = board.subscribe(capacity);
+
+      journal.failingSync = true;
+      try {
+        board.putMessage("myself", "rubbish");
+        fail("sync failure not reported");
+      } catch (UncheckedIOException expected) {
+        // expected
+      }
+
+      // the message that might not be on disk is neither listed nor pushed
+      assertEquals("wrong number of messages",
+                   1, board.listMessages(capacity, null)
+                              .getMessages().size());
+      assertEquals("wrong number of delivered messages",
+                   0, sub.poll(capacity, 0L).getMessages().size());
+
+      // the journal is broken, no more messages are accepted
+      journal.failingSync = false;
+      try {
+        board.putMessage("myself", "gibberish");
+        fail("broken journal not reported");
+      } catch (UncheckedIOException expected) {
+        // expected
+      }
+      assertEquals("wrong number of messages after broken journal",
+                   1, board.listMessages(capacity, null)
+                              .getMessages().size());
+
+    } finally {
+      _deleteJournalDir(dir);
+    }
+  }
+
+
+  /**
+   * A journal in which appending or syncing fails on demand.
+   */
+  public static class FailingJournal extends MessageJournal
+  {
+    public volatile boolean failing;
+
+    public volatile boolean failingSync;
+
+    public FailingJournal(File dir)
+      throws IOException
+    {
+      super(dir);
+    }
+
+    public synchronized void append(long first,
+                                    List<MixedMessageBoardImpl.MTMsg> msgs)
+      throws IOException
+    {
+      if (failing)
+         throw new IOException("simulated failure");
+      super.append(first, msgs);
+    }
+
+    protected void writeBatch(byte[] batch, long batchNumber)
+      throws IOException
+    {
+      if (!failingSync)
+       {
+         super.writeBatch(batch, batchNumber);
+         return;
+       }
+
+      synchronized (this)
+       {
+         flushing = false;
+         failure  = new IOException("simulated sync failure");
+         notifyAll();
+         throw failure;
+       }
+    }
+  }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+import java.util.Comparator;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+public class LongSequencerImplTest extends SequencerMustHave
+{
+  public LongSequencerImpl newTestSubject()
+  {
+    return new LongSequencerImpl();
+  }
+
+
+  @Test public void toMessageNumber_roundtrip()
+  {
+    LongSequencerImpl seq = newTestSubject();
+
+    long[] numbers = new long[]{
+      0L, 1L, 31L, 32L, 1023L, 1024L, 123456789L,
+      Integer.MAX_VALUE + 1L, Long.MAX_VALUE - 1L, Long.MAX_VALUE
+    };
+    for (long number: numbers)
+     {
+       String msgid = seq.toMessageID(number);
+       _checkMessageID(msgid);
+       assertTrue("not sane: "+msgid, seq.isSane(msgid));
+       assertEquals("wrong number for "+msgid,
+                    number, seq.toMessageNumber(msgid));
+     }
+  }
+
+
+  @Test public void isSane_malformed()
+  {
+    LongSequencerImpl seq = newTestSubject();
+    String msgid = seq.createMessageID();
+    String tag   = msgid.substring(0, 2);
+
+    assertFalse("tag only", seq.isSane(tag));
+    assertFalse("leading zero", seq.isSane(tag+"0"+msgid.substring(2)));
+    assertFalse("excluded letter", seq.isSane(tag+"1i"));
+    assertFalse("uppercase digit", seq.isSane(tag+"1A"));
+    assertFalse("non-ASCII digit", seq.isSane(tag+"1\u00e4"));
+    assertFalse("too long", seq.isSane(tag+"10000000000000"));
+    assertFalse("overflow", seq.isSane(tag+"8000000000000"));
+    assertTrue("max value", seq.isSane(tag+"7zzzzzzzzzzzz"));
+    assertTrue("zero", seq.isSane(tag+"0"));
+
+    char other = (tag.charAt(1) == 'A') ? 'B' : 'A';
+    assertFalse("other instance",
+                seq.isSane(tag.charAt(0)+""+other+msgid.substring(2)));
+  }
+
+
+  @Test public void getComparator_lengths()
+  {
+    LongSequencerImpl seq = newTestSubject();
+    Comparator<String> comp = seq.getComparator();
+
+    String short1 = seq.toMessageID(31L);
+    String long1  = seq.toMessageID(32L);
+    String long2  = seq.toMessageID(Long.MAX_VALUE);
+
+    assertTrue("short < long", comp.compare(short1, long1) < 0);
+    assertTrue("long > short", comp.compare(long1, short1) > 0);
+    assertTrue("long < max",   comp.compare(long1, long2) < 0);
+    assertTrue("max == max",   comp.compare(long2, long2) == 0);
+  }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+public class MessageIndexTest
+{
+  /** Creates a message with just a text. */
+  private static Message newMessage(String text)
+  {
+    return new MessageImpl("myself", "now", text);
+  }
+
+
+  @Test public void toWords()
+  {
+    assertEquals("wrong words", Arrays.asList("total", "nonsense", "42"),
+                 MessageIndex.toWords("Total nonsense, TOTAL: 42!"));
+    assertEquals("wrong words", Arrays.asList("gr\u00fc\u00dfe"),
+                 MessageIndex.toWords("  Gr\u00fc\u00dfe  "));
+    assertTrue("unexpected words",
+               MessageIndex.toWords(" -?! ").isEmpty());
+  }
+
+
+  @Test public void search_and()
+  {
+    MessageIndex index = new MessageIndex();
+    index.add(1, newMessage("total nonsense"));
+    index.add(2, newMessage("utter nonsense"));
+    index.add(3, newMessage("total rubbish"));
+    index.add(5, newMessage("nonsense in total"));
+
+    List<String> words = MessageIndex.toWords("nonsense total");
+    assertArrayEquals("wrong result", new long[]{ 1, 5 },
+                      index.search(words, 0, 0));
+    assertArrayEquals("wrong result after", new long[]{ 5 },
+                      index.search(words, 1, 0));
+    assertArrayEquals("wrong limited result", new long[]{ 1 },
+                      index.search(words, 0, 1));
+    assertArrayEquals("unexpected result", new long[0],
+                      index.search(MessageIndex.toWords("gibberish"), 0, 0));
+  }
+
+
+  @Test public void search_keysOnly()
+  {
+    MessageIndex index = new MessageIndex(false, true);
+    index.add(1, newMessage("total nonsense"));
+    index.add(2, new MessageImpl("others", "now", "utter nonsense"));
+
+    MessageFilter mine = new MessageFilter("myself", null);
+    assertArrayEquals("wrong result", new long[]{ 1 },
+                      index.search(MessageIndex.toKeys(mine), 0, 0));
+    assertArrayEquals("words indexed", new long[0],
+                      index.search(MessageIndex.toWords("nonsense"), 0, 0));
+    // two originators
+    assertEquals("wrong number of keys", 2, index.countKeys());
+  }
+
+
+  @Test public void remove_wrapAround()
+  {
+    MessageIndex index = new MessageIndex();
+    List<String> words = MessageIndex.toWords("nonsense");
+
+    // more adds and removes than the initial size of a posting list
+    for (long number=1; number<=40; number++)
+     {
+       index.add(number, newMessage("nonsense "+number));
+       if (number > 3)
+          index.remove(number-3, newMessage("nonsense "+(number-3)));
+     }
+
+    assertArrayEquals("wrong result", new long[]{ 38, 39, 40 },
+                      index.search(words, 0, 0));
+    // nonsense, 38, 39, 40, and originator
+    assertEquals("wrong number of keys", 5, index.countKeys());
+  }
+
+}
@@ -5,6 +5,9 @@
  */
 package pityoulish.msgboard;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.*;
 import static org.junit.Assert.*;
 
@@ -304,6 +307,79 @@ public class MixedMessageBoardImplTest
                     mb.getMessages().get(i).getText());
   }
 
+  @Test public void testCapacity_bytes()
+  {
+    String originator = "myself";
+    MixedMessageBoardImpl board = new MixedMessageBoardImpl(100);
+    board.putMessage(originator, "first");
+    final long size = board.getByteSize();
+    assertTrue("no byte size", size > MixedMessageBoardImpl.MESSAGE_OVERHEAD);
+
+    // room for two messages of the same length
+    board.setCapacity(100, 2*size + size/2);
+    board.putMessage(originator, "secnd");
+    board.putMessage(originator, "third");
+    assertEquals("wrong byte size", 2*size, board.getByteSize());
+
+    MessageBatch mb = board.listMessages(0, null);
+    assertEquals("unexpected message count", 2, mb.getMessages().size());
+    assertEquals("wrong first message", "secnd",
+                 mb.getMessages().get(0).getText());
+
+    // the newest message is kept despite the byte limit
+    board.setCapacity(100, size/2);
+    mb = board.listMessages(0, null);
+    assertEquals("unexpected message count", 1, mb.getMessages().size());
+    assertEquals("wrong message kept", "third",
+                 mb.getMessages().get(0).getText());
+    assertTrue("byte size not exceeded",
+               board.getByteSize() > board.getByteCapacity());
+  }
+
+
+  @Test public void testCapacity_resize()
+  {
+    String originator = "myself";
+    MixedMessageBoardImpl board = new MixedMessageBoardImpl(5);
+    for (int i=0; i<5; i++)
+       board.putMessage(originator, "message "+i);
+    MessageBatch before = board.listMessages(1, null);
+    final long size = board.getByteSize();
+
+    board.setCapacity(2, 0L);
+    assertEquals("wrong capacity", 2, board.getCapacity());
+    assertEquals("wrong byte capacity", 0L, board.getByteCapacity());
+    assertTrue("byte size not reduced", board.getByteSize() < size);
+
+    MessageBatch mb = board.listMessages(0, null);
+    assertEquals("unexpected message count", 2, mb.getMessages().size());
+    assertEquals("wrong first message", "message 3",
+                 mb.getMessages().get(0).getText());
+    mb = board.listMessages(0, before.getMarker());
+    assertEquals("drop not detected", true, mb.isDiscontinuous());
+
+    // growing does not bring back messages, but keeps new ones
+    board.setCapacity(4, 0L);
+    for (int i=5; i<8; i++)
+       board.putMessage(originator, "message "+i);
+    mb = board.listMessages(0, null);
+    assertEquals("unexpected message count", 4, mb.getMessages().size());
+    assertEquals("wrong first message", "message 4",
+                 mb.getMessages().get(0).getText());
+
+    try {
+      board.setCapacity(0, 0L);
+      fail("capacity 0 not detected");
+    } catch (Exception expected) {
+    }
+    try {
+      board.setCapacity(1, -1L);
+      fail("negative byte capacity not detected");
+    } catch (Exception expected) {
+    }
+  }
+
+
   //@@@ capacity with system messages
   //@@@ capacity with mixed user and system messages
 
@@ -394,4 +470,109 @@ public class MixedMessageBoardImplTest
      }
   }
 
+
+
+  @Test public void subscribe_receivesMessages()
+  {
+    MixedMessageBoardImpl board = new MixedMessageBoardImpl(4);
+    board.putMessage("myself", "nonsense");
+    MessageSubscription sub = board.subscribe(8);
+
+    board.putMessage("myself", "rubbish");
+    MessageBatch mb = sub.poll(8, 0L);
+    assertEquals("wrong number of messages", 1, mb.getMessages().size());
+    assertEquals("wrong message", "rubbish", mb.getMessages().get(0).getText());
+
+    // the marker works on the board
+    assertEquals("unexpected messages after marker", 0,
+                 board.listMessages(4, mb.getMarker()).getMessages().size());
+  }
+
+
+
+  @Test public void listMessages_filtered()
+  {
+    MixedMessageBoardImpl board = new MixedMessageBoardImpl(8);
+    board.putMessage("myself", "nonsense");
+    board.putSystemMessage(null, "gibberish");
+    board.putMessage("others", "rubbish");
+    board.putMessage("myself", "balderdash");
+
+    MessageBatch mine =
+      board.listMessages(8, null, MessageFilter.newMixedFilter("myself", false));
+    assertEquals("wrong number of messages", 2, mine.getMessages().size());
+    assertEquals("wrong message", "balderdash",
+                 mine.getMessages().get(1).getText());
+
+    MessageBatch users =
+      board.listMessages(2, null, MessageFilter.newMixedFilter(null, true));
+    assertEquals("wrong number of messages", 2, users.getMessages().size());
+    assertEquals("wrong message", "rubbish",
+                 users.getMessages().get(1).getText());
+
+    // the marker continues after the last selected message
+    MessageBatch more = board.listMessages
+      (2, users.getMarker(), MessageFilter.newMixedFilter(null, true));
+    assertEquals("wrong number of messages", 1, more.getMessages().size());
+    assertEquals("wrong message", "balderdash",
+                 more.getMessages().get(0).getText());
+  }
+
+
+
+  @Test public void listMessages_filteredEvicted()
+  {
+    MixedMessageBoardImpl board = new MixedMessageBoardImpl(3);
+    board.putMessage("others", "nonsense");
+    board.putSystemMessage(null, "gibberish");
+
+    for (int i=0; i<3; i++)
+       board.putMessage("myself", "rubbish "+i);
+
+    // the old messages dropped off the board, and out of the index
+    MessageBatch others =
+      board.listMessages(0, null, MessageFilter.newMixedFilter("others", false));
+    assertEquals("evicted message listed", 0, others.getMessages().size());
+    // originator and type of the remaining messages
+    assertEquals("keys of evicted messages still indexed", 2,
+                 board.boardKeyIndex.size());
+
+    // the marker covers the messages that are not selected
+    MessageBatch mine =
+      board.listMessages(0, null, MessageFilter.newMixedFilter("myself", true));
+    assertEquals("wrong number of messages", 3, mine.getMessages().size());
+    assertEquals("wrong marker", board.listMessages(0, null).getMarker(),
+                 mine.getMarker());
+    board.putSystemMessage(null, "drivel");
+    assertEquals("wrong marker", board.listMessages(0, null).getMarker(),
+                 board.listMessages(0, mine.getMarker(), MessageFilter
+                                    .newMixedFilter("myself", true))
+                 .getMarker());
+  }
+
+
+
+  @Test public void putMessages_OK()
+  {
+    MixedMessageBoardImpl board = new MixedMessageBoardImpl(8);
+    List<String> markers = board.putMessages
+      ("rumour", Arrays.asList("nonsense", "rigmarole", "verbiage"));
+
+    assertEquals("wrong number of markers", 3, markers.size());
+
+    MessageBatch mb = board.listMessages(0, markers.get(0));
+    assertEquals("wrong number of messages", 2, mb.getMessages().size());
+    assertEquals("wrong message", "rigmarole",
+                 mb.getMessages().get(0).getText());
+    assertEquals("wrong marker", markers.get(2), mb.getMarker());
+
+    try {
+      board.putMessages("rumour", Arrays.asList("gibberish", ""));
+      fail("empty text not detected");
+    } catch (IllegalArgumentException expected) {
+    }
+    assertEquals("unexpected messages", 3,
+                 board.listMessages(0, null).getMessages().size());
+  }
+
 }
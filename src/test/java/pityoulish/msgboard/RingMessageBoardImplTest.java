@@ -0,0 +1,849 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+public class RingMessageBoardImplTest
+{
+  @Test public void constructor_OK()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(8);
+  }
+
+
+  @Test public void constructor_args()
+  {
+    try {
+      RingMessageBoardImpl board = new RingMessageBoardImpl(0);
+      fail("capacity 0 not detected");
+    } catch (Exception expected) {
+    }
+
+    try {
+      RingMessageBoardImpl board = new RingMessageBoardImpl(-8);
+      fail("negative capacity not detected");
+    } catch (Exception expected) {
+    }
+  }
+
+
+  @Test public void putMessage_args()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(3);
+
+    try {
+      Message msg = board.putMessage(null, "nonsense");
+      fail("missing originator not detected");
+    } catch (Exception expected) {
+    }
+
+    try {
+      Message msg = board.putMessage("originator", null);
+      fail("missing text not detected");
+    } catch (Exception expected) {
+    }
+
+  }
+
+
+  @Test public void putMessage_OK()
+  {
+    String originator = "myself";
+    String text = "total nonsense";
+    RingMessageBoardImpl board = new RingMessageBoardImpl(3);
+
+    Message msg = board.putMessage(originator, text);
+
+    assertNotNull("no message", msg);
+    assertNotNull("missing timestamp", msg.getTimestamp());
+    assertEquals("wrong originator", originator, msg.getOriginator());
+    assertEquals("wrong text", text, msg.getText());
+  }
+
+
+  @Test public void putSystemMessage_args()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(3);
+
+    try {
+      Message msg = board.putSystemMessage(null, null);
+      fail("missing text not detected");
+    } catch (Exception expected) {
+    }
+
+    //@@@ check with non-null slot as well? currently not supported
+  }
+
+
+  @Test public void putSystemMessage_NoSlot()
+  {
+    String slot = null;
+    String text = "system info";
+    RingMessageBoardImpl board = new RingMessageBoardImpl(3);
+
+    Message msg = board.putSystemMessage(slot, text);
+
+    assertNotNull("no message", msg);
+    assertNotNull("missing originator", msg.getOriginator());
+    assertNotNull("missing timestamp", msg.getTimestamp());
+    assertEquals("wrong text", text, msg.getText());
+  }
+
+
+  @Test public void listMessages_args()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(3);
+
+    try {
+      MessageBatch mb = board.listMessages(8, "");
+      fail("empty marker not detected");
+    } catch (Exception expected) {
+    }
+
+    try {
+      MessageBatch mb = board.listMessages(8, "_:");
+      fail("invalid marker not detected");
+    } catch (Exception expected) {
+    }
+
+  }
+
+
+  @Test public void listMessages_emptyBoard()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(3);
+
+    MessageBatch mb = board.listMessages(8, null);
+
+    assertNotNull("no message batch", mb);
+    assertNotNull("no message list", mb.getMessages());
+    assertEquals("unexpected messages", 0, mb.getMessages().size());
+    assertNotNull("no marker", mb.getMarker());
+    assertEquals("discontinuous", false, mb.isDiscontinuous());
+  }
+
+
+  @Test public void listMessages_all()
+  {
+    final int capacity = 8;
+    final int limit = 8;
+    String originator = "junit";
+    String[] texts = new String[]{
+      "nonsense",
+      "hogwash",
+      "poppycock",
+      "tommyrot",
+      "bupkis"
+    };
+
+    RingMessageBoardImpl board = new RingMessageBoardImpl(capacity);
+    for (String text: texts)
+       board.putMessage(originator, text);
+
+    MessageBatch mb = board.listMessages(limit, null);
+
+    assertNotNull("no message batch", mb);
+    assertNotNull("no message list", mb.getMessages());
+    assertEquals("wrong number of messages",
+                 texts.length, mb.getMessages().size());
+    assertNotNull("no marker", mb.getMarker());
+    assertEquals("discontinuous", false, mb.isDiscontinuous());
+
+    for (int i=0; i<texts.length; i++)
+     {
+       assertEquals("wrong message #"+i, texts[i],
+                    mb.getMessages().get(i).getText());
+       assertEquals("wrong originator #"+i, originator,
+                    mb.getMessages().get(i).getOriginator());
+     }
+  }
+
+
+  @Test public void listMessages_some()
+  {
+    final int capacity = 8;
+    final int limit = 3;
+    String slot = null;
+    String[] texts = new String[]{
+      "nonsense",
+      "rubbish",
+      "gibberish",
+      "balderdash",
+      "malarkey"
+    };
+
+    RingMessageBoardImpl board = new RingMessageBoardImpl(capacity);
+    for (String text: texts)
+       board.putSystemMessage(slot, text);
+
+    MessageBatch mb = board.listMessages(limit, null);
+
+    assertNotNull("no message batch", mb);
+    assertNotNull("no message list", mb.getMessages());
+    assertEquals("wrong number of messages",
+                 limit, mb.getMessages().size());
+    assertNotNull("no marker", mb.getMarker());
+    assertEquals("discontinuous", false, mb.isDiscontinuous());
+
+    for (int i=0; i<limit; i++)
+     {
+       assertEquals("wrong message #"+i, texts[i],
+                    mb.getMessages().get(i).getText());
+       assertNotNull("missing originator #"+i,
+                     mb.getMessages().get(i).getOriginator());
+     }
+  }
+
+
+  @Test public void listMessages_continuous()
+  {
+    final int capacity = 8;
+    final int skip  = 3;
+    final int limit = 4;
+    String originator = "myself";
+    String[] texts = new String[]{
+      "nonsense",
+      "rubbish",
+      "gibberish",
+      "balderdash",
+      "malarkey"
+    };
+
+    RingMessageBoardImpl board = new RingMessageBoardImpl(capacity);
+    for (String text: texts)
+       board.putMessage(originator, text);
+
+    MessageBatch mb0 = board.listMessages(capacity, null);
+    MessageBatch mb1 = board.listMessages(skip, null);
+    MessageBatch mb2 = board.listMessages(limit, mb1.getMarker());
+
+    final int expected = texts.length - skip;
+    assertNotNull("no message batch", mb2);
+    assertNotNull("no message list", mb2.getMessages());
+    assertEquals("wrong number of messages",
+                 expected, mb2.getMessages().size());
+    assertNotNull("no marker", mb2.getMarker());
+    assertEquals("discontinuous", false, mb2.isDiscontinuous());
+
+    // mb0 has a marker that points at the end of the messages
+    // mb1 has a marker that points within the messages
+    assertEquals("wrong marker", mb0.getMarker(), mb2.getMarker());
+    assertNotEquals("unexpected marker", mb1.getMarker(), mb2.getMarker());
+
+    for (int i=0; i<expected; i++)
+     {
+       assertEquals("wrong message #"+i, texts[i + skip],
+                    mb2.getMessages().get(i).getText());
+       assertEquals("wrong originator #"+i, originator,
+                    mb2.getMessages().get(i).getOriginator());
+     }
+  }
+
+
+  @Test public void listMessages_no_more()
+  {
+    final int capacity = 8;
+    final int limit = capacity;
+    String originator = "myself";
+    String[] texts = new String[]{
+      "nonsense",
+      "rubbish",
+      "gibberish",
+      "balderdash",
+      "malarkey"
+    };
+
+    RingMessageBoardImpl board = new RingMessageBoardImpl(capacity);
+    for (String text: texts)
+       board.putMessage(originator, text);
+
+    // first batch contains all the messages
+    // second batch is empty
+
+    MessageBatch mb1 = board.listMessages(limit, null);
+    MessageBatch mb2 = board.listMessages(limit, mb1.getMarker());
+
+    final int expected = 0;
+    assertNotNull("no message batch", mb2);
+    assertNotNull("no message list", mb2.getMessages());
+    assertEquals("wrong number of messages",
+                 expected, mb2.getMessages().size());
+    assertEquals("wrong marker", mb1.getMarker(), mb2.getMarker());
+    assertEquals("discontinuous", false, mb2.isDiscontinuous());
+  }
+
+
+  @Test public void testCapacity_userMessages()
+  {
+    final int capacity = 3;
+    String originator = "myself";
+    String[] texts = new String[]{
+      "rigmarole",
+      "verbiage",
+      "flubdub",
+      "folderol"
+    };
+
+    RingMessageBoardImpl board = new RingMessageBoardImpl(capacity);
+    for (String text: texts)
+       board.putMessage(originator, text);
+
+    MessageBatch mb = board.listMessages(8, null);
+    assertEquals("unexpected message count",
+                 capacity, mb.getMessages().size());
+    assertEquals("discontinuous", false, mb.isDiscontinuous());
+
+    for (int i=0; i<capacity; i++)
+       assertEquals("wrong message #"+i, texts[i + texts.length - capacity],
+                    mb.getMessages().get(i).getText());
+  }
+
+  //@@@ capacity with system messages
+  //@@@ capacity with mixed user and system messages
+
+
+  @Test public void listMessages_droppedUserMessage()
+  {
+    final int capacity = 3;
+    String originator = "rumour";
+    String[] texts = new String[]{ // need more than twice the capacity!
+      "nonsense",
+      "rigmarole",
+      "verbiage",
+      "gibberish",
+      "balderdash",
+      "flubdub",
+      "folderol",
+      "malarkey"
+    };
+
+    RingMessageBoardImpl board = new RingMessageBoardImpl(capacity);
+    for (int i=0; i<capacity; i++)
+       board.putMessage(originator, texts[i]);
+
+    MessageBatch mb1 = board.listMessages(capacity, null);
+    for (int i=capacity; i<texts.length; i++)
+       board.putMessage(originator, texts[i]);
+    // some unread user message is dropped by now
+
+    MessageBatch mb2 = board.listMessages(capacity+1, mb1.getMarker());
+
+    assertNotNull("no message batch", mb2);
+    assertNotNull("no message list", mb2.getMessages());
+    assertEquals("wrong number of messages",
+                 capacity, mb2.getMessages().size());
+    assertNotNull("no marker", mb2.getMarker());
+    assertEquals("wrong discontinuous", true, mb2.isDiscontinuous());
+
+    for (int i=0; i<capacity; i++)
+     {
+       assertEquals("wrong message #"+i, texts[i + texts.length - capacity],
+                    mb2.getMessages().get(i).getText());
+       assertEquals("wrong originator #"+i, originator,
+                    mb2.getMessages().get(i).getOriginator());
+     }
+  }
+
+
+  @Test public void listMessages_droppedSystemMessage()
+  {
+    final int capacity = 3;
+    String    originator = "rumour";
+    String    slot = null;
+    String[]  texts = new String[]{ // need more than twice the capacity!
+      "nonsense",
+      "rigmarole",
+      "verbiage",
+      "gibberish",
+      "balderdash",
+      "flubdub",
+      "folderol",
+      "malarkey"
+    };
+
+    RingMessageBoardImpl board = new RingMessageBoardImpl(capacity);
+    for (int i=0; i<capacity; i++)
+       board.putMessage(originator, texts[i]);
+
+    MessageBatch mb1 = board.listMessages(capacity, null);
+    for (int i=capacity; i<texts.length; i++)
+       board.putSystemMessage(slot, texts[i]);
+    // some unread system message is dropped by now
+
+    MessageBatch mb2 = board.listMessages(capacity+1, mb1.getMarker());
+
+    assertNotNull("no message batch", mb2);
+    assertNotNull("no message list", mb2.getMessages());
+    assertEquals("wrong number of messages",
+                 capacity, mb2.getMessages().size());
+    assertNotNull("no marker", mb2.getMarker());
+    assertEquals("discontinuous", false, mb2.isDiscontinuous());
+
+    for (int i=0; i<capacity; i++)
+     {
+       assertEquals("wrong message #"+i, texts[i + texts.length - capacity],
+                    mb2.getMessages().get(i).getText());
+       assertNotNull("missing originator #"+i,
+                    mb2.getMessages().get(i).getOriginator());
+     }
+  }
+
+
+  @Test public void listMessages_concurrentWriters() throws Exception
+  {
+    final int capacity = 16;
+    final int writers  = 4;
+    final int count    = 500;
+
+    final RingMessageBoardImpl board = new RingMessageBoardImpl(capacity);
+    Thread[] threads = new Thread[writers];
+    for (int t=0; t<writers; t++)
+     {
+       final String originator = "writer"+t;
+       threads[t] = new Thread(new Runnable() {
+         public void run()
+         {
+           for (int i=0; i<count; i++)
+              board.putMessage(originator, "message "+i);
+         }
+       });
+       threads[t].start();
+     }
+
+    // a lock-free reader following the board while it is written
+    MessageBatch mb = board.listMessages(capacity, null);
+    boolean running = true;
+    while (running)
+     {
+       running = false;
+       for (Thread thread: threads)
+          running |= thread.isAlive();
+
+       MessageBatch next = board.listMessages(capacity, mb.getMarker());
+       assertNotNull("no message batch", next);
+       assertTrue("too many messages",
+                  next.getMessages().size() <= capacity);
+       mb = next;
+     }
+    for (Thread thread: threads)
+       thread.join();
+
+    mb = board.listMessages(capacity+1, null);
+    assertEquals("wrong number of messages",
+                 capacity, mb.getMessages().size());
+    assertEquals("unexpected messages after marker", 0,
+                 board.listMessages(capacity, mb.getMarker())
+                 .getMessages().size());
+  }
+
+
+
+  @Test public void awaitMessages_available()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(4);
+    board.putMessage("myself", "nonsense");
+
+    // returns without waiting, the timeout is never reached
+    MessageBatch mb = board.awaitMessages(4, null, 60000L);
+    assertEquals("wrong number of messages", 1, mb.getMessages().size());
+  }
+
+
+  @Test public void awaitMessages_timeout()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(4);
+    board.putMessage("myself", "nonsense");
+    MessageBatch mb = board.listMessages(4, null);
+
+    long start = System.currentTimeMillis();
+    MessageBatch next = board.awaitMessages(4, mb.getMarker(), 50L);
+    long elapsed = System.currentTimeMillis() - start;
+
+    assertEquals("unexpected messages", 0, next.getMessages().size());
+    assertEquals("wrong marker", mb.getMarker(), next.getMarker());
+    assertTrue("returned too early: "+elapsed, elapsed >= 50L);
+  }
+
+
+  @Test public void awaitMessages_woken() throws Exception
+  {
+    final RingMessageBoardImpl board = new RingMessageBoardImpl(4);
+    board.putMessage("myself", "nonsense");
+    MessageBatch mb = board.listMessages(4, null);
+
+    Thread writer = new Thread(new Runnable() {
+      public void run()
+      {
+        try {
+          Thread.sleep(50L);
+        } catch (InterruptedException ix) {
+          // ignore
+        }
+        board.putMessage("myself", "rubbish");
+      }
+    });
+    writer.start();
+
+    long start = System.currentTimeMillis();
+    MessageBatch next = board.awaitMessages(4, mb.getMarker(), 60000L);
+    long elapsed = System.currentTimeMillis() - start;
+    writer.join();
+
+    assertEquals("wrong number of messages", 1, next.getMessages().size());
+    assertEquals("wrong message", "rubbish",
+                 next.getMessages().get(0).getText());
+    assertTrue("not woken up: "+elapsed, elapsed < 30000L);
+  }
+
+
+
+  @Test public void subscribe_receivesMessages()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(4);
+    board.putMessage("myself", "nonsense");
+
+    MessageSubscription sub = board.subscribe(8);
+    assertEquals("unexpected messages", 0,
+                 sub.poll(8, 0L).getMessages().size());
+
+    board.putMessage("myself", "rubbish");
+    board.putSystemMessage(null, "gibberish");
+
+    MessageBatch mb = sub.poll(8, 0L);
+    assertEquals("wrong number of messages", 2, mb.getMessages().size());
+    assertEquals("wrong message", "rubbish", mb.getMessages().get(0).getText());
+    assertEquals("discontinuous", false, mb.isDiscontinuous());
+
+    // the marker works on the board
+    assertEquals("unexpected messages after marker", 0,
+                 board.listMessages(4, mb.getMarker()).getMessages().size());
+
+    sub.cancel();
+    board.putMessage("myself", "balderdash");
+    assertEquals("message after cancel", 0,
+                 sub.poll(8, 0L).getMessages().size());
+  }
+
+
+  @Test public void subscribe_slowSubscriber()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(16);
+    MessageSubscription sub = board.subscribe(3);
+
+    for (int i=0; i<5; i++)
+       board.putMessage("myself", "message "+i);
+
+    // the writers were not blocked, the queue kept the oldest ones
+    MessageBatch mb1 = sub.poll(8, 0L);
+    assertEquals("wrong number of messages", 3, mb1.getMessages().size());
+    assertEquals("discontinuous", false, mb1.isDiscontinuous());
+
+    board.putMessage("myself", "message 5");
+    MessageBatch mb2 = sub.poll(8, 0L);
+    assertEquals("wrong number of messages", 1, mb2.getMessages().size());
+    assertEquals("not discontinuous", true, mb2.isDiscontinuous());
+
+    // the missed messages are still on the board
+    MessageBatch missed = board.listMessages(8, mb1.getMarker());
+    assertEquals("wrong number of missed messages", 3,
+                 missed.getMessages().size());
+    assertEquals("wrong marker", mb2.getMarker(), missed.getMarker());
+  }
+
+
+  @Test public void subscribe_gapReportedOnce()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(16);
+    MessageSubscription sub = board.subscribe(1);
+
+    board.putMessage("myself", "nonsense");
+    board.putMessage("myself", "rubbish"); // missed, the queue is full
+
+    MessageBatch mb1 = sub.poll(8, 0L);
+    assertEquals("wrong number of messages", 1, mb1.getMessages().size());
+    assertEquals("discontinuous", false, mb1.isDiscontinuous());
+
+    MessageBatch mb2 = sub.poll(8, 0L);
+    assertEquals("wrong number of messages", 0, mb2.getMessages().size());
+    assertEquals("not discontinuous", true, mb2.isDiscontinuous());
+
+    board.putMessage("myself", "gibberish");
+    MessageBatch mb3 = sub.poll(8, 0L);
+    assertEquals("wrong number of messages", 1, mb3.getMessages().size());
+    assertEquals("gap reported twice", false, mb3.isDiscontinuous());
+  }
+
+
+  @Test public void subscribe_waitingSubscriber() throws Exception
+  {
+    final RingMessageBoardImpl board = new RingMessageBoardImpl(4);
+    MessageSubscription sub = board.subscribe(4);
+
+    Thread writer = new Thread(new Runnable() {
+      public void run()
+      {
+        try {
+          Thread.sleep(50L);
+        } catch (InterruptedException ix) {
+          // ignore
+        }
+        board.putMessage("myself", "nonsense");
+      }
+    });
+    writer.start();
+
+    MessageBatch mb = sub.poll(4, 60000L);
+    writer.join();
+
+    assertEquals("wrong number of messages", 1, mb.getMessages().size());
+    assertEquals("wrong message", "nonsense",
+                 mb.getMessages().get(0).getText());
+  }
+
+
+
+  @Test public void searchMessages_disabled()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(4);
+    board.putMessage("myself", "nonsense");
+    assertFalse("search enabled", board.isSearchEnabled());
+
+    try {
+      MessageBatch mb = board.searchMessages("nonsense", 4, null);
+      fail("search without index not detected: "+mb);
+    } catch (UnsupportedOperationException expected) {
+    }
+  }
+
+
+  @Test public void searchMessages_args()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(4);
+    board.enableSearch();
+
+    try {
+      MessageBatch mb = board.searchMessages(" ?! ", 4, null);
+      fail("query without words not detected: "+mb);
+    } catch (IllegalArgumentException expected) {
+    }
+
+    try {
+      MessageBatch mb = board.searchMessages("a b c d e f g h i", 4, null);
+      fail("query with too many words not detected: "+mb);
+    } catch (IllegalArgumentException expected) {
+    }
+
+    try {
+      MessageBatch mb = board.searchMessages("nonsense", 4, "no marker");
+      fail("bad marker not detected: "+mb);
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+
+  @Test public void searchMessages_OK()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(8);
+    board.putMessage("myself", "Total nonsense");
+    board.enableSearch(); // indexes the message already on the board
+    board.putMessage("myself", "utter rubbish");
+    board.putMessage("myself", "more nonsense, in total");
+    board.putMessage("myself", "total gibberish");
+
+    MessageBatch mb = board.searchMessages("nonsense TOTAL", 0, null);
+    assertEquals("wrong number of messages", 2, mb.getMessages().size());
+    assertEquals("wrong message", "Total nonsense",
+                 mb.getMessages().get(0).getText());
+    assertEquals("wrong message", "more nonsense, in total",
+                 mb.getMessages().get(1).getText());
+    assertFalse("discontinuous", mb.isDiscontinuous());
+
+    // limited, then continued from the marker
+    MessageBatch mb1 = board.searchMessages("total", 2, null);
+    assertEquals("wrong number of messages", 2, mb1.getMessages().size());
+    MessageBatch mb2 = board.searchMessages("total", 2, mb1.getMarker());
+    assertEquals("wrong number of messages", 1, mb2.getMessages().size());
+    assertEquals("wrong message", "total gibberish",
+                 mb2.getMessages().get(0).getText());
+
+    // the marker covers everything searched, also for listing
+    assertEquals("unexpected messages after marker", 0,
+                 board.listMessages(8, mb2.getMarker()).getMessages().size());
+    assertEquals("unexpected matches after marker", 0,
+                 board.searchMessages("total", 2, mb2.getMarker())
+                 .getMessages().size());
+
+    assertEquals("unexpected match", 0,
+                 board.searchMessages("nonsense rubbish", 0, null)
+                 .getMessages().size());
+  }
+
+
+  @Test public void searchMessages_evicted()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(3);
+    board.enableSearch();
+    MessageBatch first = board.searchMessages("nonsense", 0, null);
+    board.putMessage("myself", "old nonsense");
+
+    for (int i=0; i<3; i++)
+       board.putMessage("myself", "rubbish "+i);
+
+    // the old message dropped off the board, and out of the index
+    assertEquals("evicted message found", 0,
+                 board.searchMessages("nonsense", 0, null)
+                 .getMessages().size());
+    assertEquals("wrong number of messages", 3,
+                 board.searchMessages("rubbish", 0, null)
+                 .getMessages().size());
+    // rubbish, 0, 1, 2
+    assertEquals("words of evicted message still indexed", 4,
+                 board.boardIndex.countKeys());
+
+    MessageBatch mb = board.searchMessages("rubbish", 0, first.getMarker());
+    assertTrue("not discontinuous", mb.isDiscontinuous());
+  }
+
+
+
+  /**
+   * Lists filtered messages from a board, with or without search.
+   *
+   * @param board       the board to test
+   */
+  private static void checkFiltered(RingMessageBoardImpl board)
+  {
+    board.putMessage("myself", "nonsense");
+    board.putSystemMessage(null, "gibberish");
+    board.putMessage("others", "rubbish");
+    board.putMessage("myself", "balderdash");
+    board.putSystemMessage(null, "drivel");
+
+    MessageFilter mine = MessageFilter.newMixedFilter("myself", false);
+    MessageBatch mb = board.listMessages(0, null, mine);
+    assertEquals("wrong number of messages", 2, mb.getMessages().size());
+    assertEquals("wrong message", "nonsense",
+                 mb.getMessages().get(0).getText());
+    assertEquals("wrong message", "balderdash",
+                 mb.getMessages().get(1).getText());
+
+    // the marker covers the unselected system message at the end
+    assertEquals("wrong marker", board.listMessages(0, null).getMarker(),
+                 mb.getMarker());
+
+    MessageFilter users = MessageFilter.newMixedFilter(null, true);
+    MessageBatch mb1 = board.listMessages(2, null, users);
+    assertEquals("wrong number of messages", 2, mb1.getMessages().size());
+    assertEquals("wrong message", "rubbish",
+                 mb1.getMessages().get(1).getText());
+    MessageBatch mb2 = board.listMessages(2, mb1.getMarker(), users);
+    assertEquals("wrong number of messages", 1, mb2.getMessages().size());
+    assertEquals("wrong message", "balderdash",
+                 mb2.getMessages().get(0).getText());
+
+    MessageFilter none = MessageFilter.newMixedFilter("nobody", true);
+    assertEquals("unexpected messages", 0,
+                 board.listMessages(0, null, none).getMessages().size());
+  }
+
+
+  @Test public void listMessages_filtered()
+  {
+    checkFiltered(new RingMessageBoardImpl(8));
+  }
+
+
+  @Test public void listMessages_filteredSearch()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(8);
+    board.enableSearch();
+    checkFiltered(board);
+  }
+
+
+
+  @Test public void listMessages_filteredEvicted()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(3);
+    board.putMessage("others", "nonsense");
+    board.putSystemMessage(null, "gibberish");
+
+    for (int i=0; i<3; i++)
+       board.putMessage("myself", "rubbish "+i);
+
+    // the old messages dropped off the board, and out of the index
+    MessageFilter others = MessageFilter.newMixedFilter("others", false);
+    assertEquals("evicted message listed", 0,
+                 board.listMessages(0, null, others).getMessages().size());
+    MessageFilter mine = MessageFilter.newMixedFilter("myself", true);
+    assertEquals("wrong number of messages", 3,
+                 board.listMessages(0, null, mine).getMessages().size());
+    // originator and type of the remaining messages
+    assertEquals("keys of evicted messages still indexed", 2,
+                 board.filterIndex.countKeys());
+    assertNull("search enabled", board.boardIndex);
+  }
+
+
+
+  @Test public void putMessages_OK()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(8);
+    board.putMessage("myself", "nonsense");
+    MessageBatch mb0 = board.listMessages(0, null);
+
+    List<String> markers = board.putMessages
+      ("rumour", Arrays.asList("rigmarole", "verbiage", "gibberish"));
+
+    assertEquals("wrong number of markers", 3, markers.size());
+
+    MessageBatch mb = board.listMessages(0, mb0.getMarker());
+    assertEquals("wrong number of messages", 3, mb.getMessages().size());
+    assertEquals("wrong marker", mb.getMarker(), markers.get(2));
+    assertEquals("wrong message", "rigmarole",
+                 mb.getMessages().get(0).getText());
+    assertEquals("wrong originator", "rumour",
+                 mb.getMessages().get(0).getOriginator());
+    assertEquals("different timestamps",
+                 mb.getMessages().get(0).getTimestamp(),
+                 mb.getMessages().get(2).getTimestamp());
+
+    // each marker lists the messages after its own
+    mb = board.listMessages(0, markers.get(0));
+    assertEquals("wrong number of messages", 2, mb.getMessages().size());
+    assertEquals("wrong message", "verbiage",
+                 mb.getMessages().get(0).getText());
+  }
+
+
+  @Test public void putMessages_args()
+  {
+    RingMessageBoardImpl board = new RingMessageBoardImpl(8);
+
+    try {
+      board.putMessages("rumour", Arrays.<String>asList());
+      fail("empty batch not detected");
+    } catch (IllegalArgumentException expected) {
+    }
+
+    try {
+      board.putMessages("rumour", Arrays.asList("nonsense", ""));
+      fail("empty text not detected");
+    } catch (IllegalArgumentException expected) {
+    }
+
+    // nothing of a bad batch is put on the board
+    assertEquals("unexpected messages", 0,
+                 board.listMessages(0, null).getMessages().size());
+  }
+
+}
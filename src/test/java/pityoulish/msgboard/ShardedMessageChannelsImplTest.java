@@ -0,0 +1,141 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.msgboard;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+public class ShardedMessageChannelsImplTest
+{
+  @Test public void constructor_args()
+  {
+    MixedMessageBoard mmb = new RingMessageBoardImpl(4);
+
+    try {
+      MessageChannels mch = new ShardedMessageChannelsImpl(null, 4, 2, 8);
+      fail("missing default board not detected");
+    } catch (Exception expected) {
+    }
+
+    try {
+      MessageChannels mch = new ShardedMessageChannelsImpl(mmb, 0, 2, 8);
+      fail("capacity 0 not detected");
+    } catch (Exception expected) {
+    }
+
+    try {
+      MessageChannels mch = new ShardedMessageChannelsImpl(mmb, 4, 0, 8);
+      fail("0 shards not detected");
+    } catch (Exception expected) {
+    }
+
+    try {
+      MessageChannels mch = new ShardedMessageChannelsImpl(mmb, 4, 2, -1);
+      fail("negative maximum not detected");
+    } catch (Exception expected) {
+    }
+  }
+
+
+  @Test public void getChannel_default()
+  {
+    MixedMessageBoard mmb = new RingMessageBoardImpl(4);
+    MessageChannels   mch = new ShardedMessageChannelsImpl(mmb, 4, 2, 8);
+
+    assertSame("wrong default channel", mmb, mch.getDefaultChannel());
+    assertSame("wrong null channel", mmb, mch.getChannel(null, false));
+    assertEquals("wrong count", 0, mch.countChannels());
+  }
+
+
+  @Test public void getChannel_separate()
+  {
+    MixedMessageBoard mmb = new RingMessageBoardImpl(4);
+    MessageChannels   mch = new ShardedMessageChannelsImpl(mmb, 4, 2, 8);
+
+    MixedMessageBoard one = mch.getChannel("one", true);
+    MixedMessageBoard two = mch.getChannel("two", true);
+    assertNotNull("no channel one", one);
+    assertNotNull("no channel two", two);
+    assertNotSame("channels not separate", one, two);
+    assertNotSame("channel is default", mmb, one);
+    assertSame("channel one not kept", one, mch.getChannel("one", true));
+    assertEquals("wrong count", 2, mch.countChannels());
+
+    one.putMessage("me", "only in one");
+    assertEquals("message not in channel one",
+                 1, one.listMessages(0, null).getMessages().size());
+    assertEquals("message leaked into channel two",
+                 0, two.listMessages(0, null).getMessages().size());
+    assertEquals("message leaked into default channel",
+                 0, mmb.listMessages(0, null).getMessages().size());
+  }
+
+
+  @Test public void getChannel_noCreate()
+  {
+    MixedMessageBoard mmb = new RingMessageBoardImpl(4);
+    MessageChannels   mch = new ShardedMessageChannelsImpl(mmb, 4, 2, 8);
+
+    try {
+      MixedMessageBoard board = mch.getChannel("one", false);
+      fail("unknown channel not detected: "+board);
+    } catch (IllegalArgumentException expected) {
+      assertTrue("wrong problem: "+expected.getMessage(),
+                 expected.getMessage().contains("MBRD019"));
+    }
+    assertEquals("channel created", 0, mch.countChannels());
+
+    MixedMessageBoard one = mch.getChannel("one", true);
+    assertSame("existing channel not found",
+               one, mch.getChannel("one", false));
+    assertEquals("wrong count", 1, mch.countChannels());
+  }
+
+
+  @Test public void getChannel_bad()
+  {
+    MixedMessageBoard mmb = new RingMessageBoardImpl(4);
+    MessageChannels   mch = new ShardedMessageChannelsImpl(mmb, 4, 2, 8);
+
+    try {
+      MixedMessageBoard board = mch.getChannel("no way", true);
+      fail("bad channel name not detected: "+board);
+    } catch (IllegalArgumentException expected) {
+    }
+
+    try {
+      MixedMessageBoard board = mch.getChannel("", true);
+      fail("empty channel name not detected: "+board);
+    } catch (IllegalArgumentException expected) {
+    }
+
+    assertEquals("wrong count", 0, mch.countChannels());
+  }
+
+
+  @Test public void getChannel_max()
+  {
+    MixedMessageBoard mmb = new RingMessageBoardImpl(4);
+    MessageChannels   mch = new ShardedMessageChannelsImpl(mmb, 4, 3, 5);
+
+    for (int i=0; i<5; i++)
+       mch.getChannel("ch"+i, true);
+    assertEquals("wrong count", 5, mch.countChannels());
+
+    try {
+      MixedMessageBoard board = mch.getChannel("ch5", true);
+      fail("too many channels not detected: "+board);
+    } catch (IllegalArgumentException expected) {
+    }
+
+    // existing channels remain available
+    assertNotNull("channel lost", mch.getChannel("ch3", true));
+    assertEquals("wrong count", 5, mch.countChannels());
+  }
+
+}
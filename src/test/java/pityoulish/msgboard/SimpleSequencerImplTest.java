@@ -16,8 +16,49 @@ public class SimpleSequencerImplTest extends SequencerMustHave
     return new SimpleSequencerImpl();
   }
 
+
+  @Test public void toMessageNumber_roundtrip()
+  {
+    SimpleSequencerImpl seq = newTestSubject();
+
+    for (int i=0; i<1000; i++)
+     {
+       long   number = seq.createMessageNumber();
+       String msgid  = seq.toMessageID(number);
+       assertTrue("not sane: "+msgid, seq.isSane(msgid));
+       assertEquals("wrong number for "+msgid,
+                    number, seq.toMessageNumber(msgid));
+     }
+  }
+
   // There's no guarantee that two sequencers have a different instance letter.
   // That makes it tricky to test isSane across instances.
   //@@@ Create test subjects until their first generated ID differs, then
   //@@@ run a set of tests against isSane()? Generalize into a base class.
+
+
+  @Test public void isSane_samePattern()
+  {
+    // property-based: random markers near the edges, against the pattern
+    // plus the instance identifier
+    final String alphabet = "@AMZ[`amz{0";
+    java.util.Random random = new java.util.Random(4711);
+    SimpleSequencerImpl seq = new SimpleSequencerImpl();
+
+    for (int n=0; n<5000; n++)
+     {
+       char[] chars = new char[random.nextInt(5)];
+       for (int i=0; i<chars.length; i++)
+          chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+       if ((chars.length > 0) && random.nextBoolean())
+          chars[0] = seq.instance;
+       String s = new String(chars);
+
+       assertEquals("differs for \""+s+"\"",
+                    SimpleSequencerImpl.SANITY_PATTERN.matcher(s).matches() &&
+                    (s.charAt(0) == seq.instance),
+                    seq.isSane(s));
+     }
+  }
+
 }
@@ -6,7 +6,10 @@
 package pityoulish.sockets.server;
 
 import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
 
+import pityoulish.mbserver.RateLimiter;
 import pityoulish.msgboard.MessageBatch;
 import pityoulish.msgboard.MixedMessageBoardImpl; //@@@ use JMockit instead
 import pityoulish.tickets.DefaultTicketManager; //@@@ use JMockit instead
@@ -106,4 +109,118 @@ public class MsgBoardRequestHandlerImplTest
 
 
   //@@@ test other handler methods as well
+
+
+  @Test public void obtainTicket_rateLimited()
+    throws Exception
+  {
+    MsgBoardRequestHandlerImpl mbrh = new MsgBoardRequestHandlerImpl
+      (new MixedMessageBoardImpl(8), new DefaultTicketManager(), false);
+    mbrh.enableRateLimits(null, new RateLimiter<InetAddress>(1, 2));
+
+    // the limit is per address, the usernames are different
+    MsgBoardResponse<String> rsp = mbrh.obtainTicket
+      (MsgBoardRequestImpl.newObtainTicket("testuser"), ADDRESS);
+    assertTrue("first request failed", rsp.isOK());
+    rsp = mbrh.obtainTicket
+      (MsgBoardRequestImpl.newObtainTicket("gooduser"), ADDRESS);
+    assertTrue("second request failed", rsp.isOK());
+
+    rsp = mbrh.obtainTicket
+      (MsgBoardRequestImpl.newObtainTicket("fineuser"), ADDRESS);
+    assertFalse("rate limit not applied", rsp.isOK());
+  }
+
+
+  @Test public void putMessage_rateLimited()
+    throws Exception
+  {
+    MixedMessageBoardImpl board = new MixedMessageBoardImpl(8);
+    MsgBoardRequestHandlerImpl mbrh = new MsgBoardRequestHandlerImpl
+      (board, new DefaultTicketManager(), false);
+    mbrh.enableRateLimits(new RateLimiter<String>(1, 2), null);
+
+    // obtaining the ticket does not take a token of the user
+    String token = mbrh.obtainTicket
+      (MsgBoardRequestImpl.newObtainTicket("testuser"), ADDRESS).getResult();
+    MsgBoardResponse<String> rsp = mbrh.putMessage
+      (MsgBoardRequestImpl.newPutMessage(token, "nonsense"), ADDRESS);
+    assertTrue("first message failed", rsp.isOK());
+    rsp = mbrh.putMessage
+      (MsgBoardRequestImpl.newPutMessage(token, "rubbish"), ADDRESS);
+    assertTrue("second message failed", rsp.isOK());
+
+    rsp = mbrh.putMessage
+      (MsgBoardRequestImpl.newPutMessage(token, "gibberish"), ADDRESS);
+    assertFalse("rate limit not applied", rsp.isOK());
+    assertEquals("wrong number of messages", 2,
+                 board.listMessages(8, null).getMessages().size());
+  }
+
+
+  @Test public void putMessages_rateLimitedPerMessage()
+    throws Exception
+  {
+    MixedMessageBoardImpl board = new MixedMessageBoardImpl(8);
+    MsgBoardRequestHandlerImpl mbrh = new MsgBoardRequestHandlerImpl
+      (board, new DefaultTicketManager(), false);
+    mbrh.enableRateLimits(new RateLimiter<String>(1, 2), null);
+
+    String token = mbrh.obtainTicket
+      (MsgBoardRequestImpl.newObtainTicket("testuser"), ADDRESS).getResult();
+
+    // three messages take three tokens, there are only two
+    MsgBoardResponse<List<String>> rsp = mbrh.putMessages
+      (MsgBoardRequestImpl.newPutMessages
+       (token, Arrays.asList("nonsense", "rubbish", "gibberish")), ADDRESS);
+    assertFalse("rate limit not applied to batch", rsp.isOK());
+    assertEquals("wrong number of messages", 0,
+                 board.listMessages(8, null).getMessages().size());
+
+    rsp = mbrh.putMessages
+      (MsgBoardRequestImpl.newPutMessages
+       (token, Arrays.asList("nonsense", "rubbish")), ADDRESS);
+    assertTrue("batch within limit failed", rsp.isOK());
+    assertEquals("wrong number of messages", 2,
+                 board.listMessages(8, null).getMessages().size());
+  }
+
+
+  @Test public void putMessages_boardFails()
+    throws Exception
+  {
+    final boolean[] failing = new boolean[]{ true };
+    MixedMessageBoardImpl board = new MixedMessageBoardImpl(8) {
+        public List<String> putMessages(String originator,
+                                        List<String> texts)
+        {
+          if (failing[0])
+             throw new IllegalStateException("simulated failure");
+          return super.putMessages(originator, texts);
+        }
+      };
+    MsgBoardRequestHandlerImpl mbrh = new MsgBoardRequestHandlerImpl
+      (board, new DefaultTicketManager(), false);
+
+    String token = mbrh.obtainTicket
+      (MsgBoardRequestImpl.newObtainTicket("testuser"), ADDRESS).getResult();
+    List<String> texts = Arrays.asList("nonsense", "rubbish", "gibberish");
+
+    try {
+      MsgBoardResponse<List<String>> rsp = mbrh.putMessages
+        (MsgBoardRequestImpl.newPutMessages(token, texts), ADDRESS);
+      fail("board failure not reported: "+rsp);
+    } catch (IllegalStateException expected) {
+      // expected
+    }
+
+    // the punches were given back, the ticket pays for all messages
+    failing[0] = false;
+    MsgBoardResponse<List<String>> rsp = mbrh.putMessages
+      (MsgBoardRequestImpl.newPutMessages(token, texts), ADDRESS);
+    assertTrue("batch after failure failed", rsp.isOK());
+    assertEquals("wrong number of messages", 3,
+                 board.listMessages(8, null).getMessages().size());
+  }
+
 }
@@ -0,0 +1,383 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.sockets.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import pityoulish.sockets.tlv.MsgBoardType;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+/**
+ * Loopback tests for {@link NIOSocketHandler}.
+ * The handler is started on an ephemeral port and serves requests with
+ * an {@link EchoRequestHandler}, which does not parse the requests.
+ */
+public class NIOSocketHandlerTest
+{
+  /** Time to wait for a response that should be there, in milliseconds. */
+  public final static int READ_TIMEOUT = 5000;
+
+  protected NIOSocketHandler handler;
+
+
+  @Before public void startHandler()
+    throws Exception
+  {
+    handler = new NIOSocketHandler(new EchoRequestHandler(), false);
+    handler.startup(0, 0);
+  }
+
+
+  @After public void stopHandler()
+    throws Exception
+  {
+    handler.shutdown();
+  }
+
+
+  @Test public void request_single() throws Exception
+  {
+    byte[] request = _buildRequest(MsgBoardType.LIST_MESSAGES, 1, 2, 3);
+
+    Socket sock = _connect(handler);
+    try {
+      sock.getOutputStream().write(request);
+
+      _assertEcho(request, _readResponse(sock));
+      assertNull("connection still open", _readResponse(sock));
+    } finally {
+      sock.close();
+    }
+  }
+
+
+  @Test public void request_partial() throws Exception
+  {
+    byte[] request = _buildRequest(MsgBoardType.LIST_MESSAGES,
+                                   1, 2, 3, 4, 5, 6, 7, 8);
+
+    Socket sock = _connect(handler);
+    try {
+      OutputStream os = sock.getOutputStream();
+      // the first block must hold the header, the rest may trickle in
+      os.write(request, 0, 5);
+      os.flush();
+      Thread.sleep(100);
+      for (int i=5; i<request.length; i++)
+       {
+         os.write(request[i]);
+         os.flush();
+         Thread.sleep(20);
+       }
+
+      _assertEcho(request, _readResponse(sock));
+      assertNull("connection still open", _readResponse(sock));
+    } finally {
+      sock.close();
+    }
+  }
+
+
+  @Test public void request_initialBlockTooSmall() throws Exception
+  {
+    Socket sock = _connect(handler);
+    try {
+      OutputStream os = sock.getOutputStream();
+      os.write(MsgBoardType.LIST_MESSAGES.getTypeByte());
+      os.flush();
+
+      _assertError("MBSS014", _readResponse(sock));
+      assertNull("connection still open", _readResponse(sock));
+    } finally {
+      sock.close();
+    }
+  }
+
+
+  @Test public void request_tooLong() throws Exception
+  {
+    // header only, announcing more than the handler accepts
+    byte[] header = new byte[]{
+      MsgBoardType.LIST_MESSAGES.getTypeByte(), (byte)0x82,
+      (byte)((NIOSocketHandler.MAX_REQUEST_SIZE >> 8) & 0xff),
+      (byte)(NIOSocketHandler.MAX_REQUEST_SIZE & 0xff)
+    };
+
+    Socket sock = _connect(handler);
+    try {
+      sock.getOutputStream().write(header);
+
+      _assertError("MBSS017", _readResponse(sock));
+      assertNull("connection still open", _readResponse(sock));
+    } finally {
+      sock.close();
+    }
+  }
+
+
+  @Test public void request_deadlineExpired() throws Exception
+  {
+    byte[] request = _buildRequest(MsgBoardType.LIST_MESSAGES, 1, 2, 3);
+
+    Socket sock = _connect(handler);
+    try {
+      // send all but the last byte, then wait for the deadline
+      sock.getOutputStream().write(request, 0, request.length-1);
+      final long start = System.currentTimeMillis();
+
+      _assertError("MBSS018", _readResponse(sock));
+      final long elapsed = System.currentTimeMillis() - start;
+      assertTrue("expired early after "+elapsed+" ms",
+                 elapsed >= NIOSocketHandler.RCV_DEADLINE - 100);
+      assertNull("connection still open", _readResponse(sock));
+    } finally {
+      sock.close();
+    }
+  }
+
+
+  @Test public void keepAlive_pipelined() throws Exception
+  {
+    byte[] keepalive = _buildRequest(MsgBoardType.KEEP_ALIVE);
+    byte[] request1  = _buildRequest(MsgBoardType.LIST_MESSAGES, 1);
+    byte[] request2  = _buildRequest(MsgBoardType.LIST_MESSAGES, 2, 2);
+    byte[] request3  = _buildRequest(MsgBoardType.LIST_MESSAGES, 3, 3, 3);
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    baos.write(keepalive);
+    baos.write(request1);
+    baos.write(request2);
+    // split the last request across two writes
+    baos.write(request3, 0, 2);
+
+    Socket sock = _connect(handler);
+    try {
+      OutputStream os = sock.getOutputStream();
+      os.write(baos.toByteArray());
+      os.flush();
+
+      _assertEcho(keepalive, _readResponse(sock));
+      _assertEcho(request1, _readResponse(sock));
+      _assertEcho(request2, _readResponse(sock));
+
+      os.write(request3, 2, request3.length-2);
+      os.flush();
+      _assertEcho(request3, _readResponse(sock));
+    } finally {
+      sock.close();
+    }
+  }
+
+
+  @Test public void keepAlive_idle() throws Exception
+  {
+    byte[] keepalive = _buildRequest(MsgBoardType.KEEP_ALIVE);
+    byte[] request   = _buildRequest(MsgBoardType.LIST_MESSAGES, 1, 2);
+
+    Socket sock = _connect(handler);
+    try {
+      OutputStream os = sock.getOutputStream();
+      os.write(keepalive);
+      _assertEcho(keepalive, _readResponse(sock));
+
+      // idle connections have a longer deadline than requests
+      Thread.sleep(NIOSocketHandler.RCV_DEADLINE +
+                   NIOSocketHandler.DEADLINE_CHECK_INTERVAL + 200);
+
+      os.write(request);
+      _assertEcho(request, _readResponse(sock));
+    } finally {
+      sock.close();
+    }
+  }
+
+
+  @Test public void keepAlive_closedByClient() throws Exception
+  {
+    byte[] keepalive = _buildRequest(MsgBoardType.KEEP_ALIVE);
+    byte[] request   = _buildRequest(MsgBoardType.LIST_MESSAGES, 7);
+
+    Socket sock = _connect(handler);
+    try {
+      sock.getOutputStream().write(keepalive);
+      _assertEcho(keepalive, _readResponse(sock));
+    } finally {
+      sock.close();
+    }
+
+    // the handler must still serve other connections
+    sock = _connect(handler);
+    try {
+      sock.getOutputStream().write(request);
+      _assertEcho(request, _readResponse(sock));
+    } finally {
+      sock.close();
+    }
+  }
+
+
+
+  /**
+   * Connects to a socket handler on the loopback interface.
+   *
+   * @param sh    the socket handler, started
+   *
+   * @return    the connected socket, with a read timeout
+   */
+  public static Socket _connect(SocketHandler sh)
+    throws Exception
+  {
+    Socket sock = new Socket(InetAddress.getLoopbackAddress(),
+                             sh.getServerSocket().getLocalPort());
+    sock.setSoTimeout(READ_TIMEOUT);
+    sock.setTcpNoDelay(true);
+    return sock;
+  }
+
+
+  /**
+   * Builds a request, without checking the content.
+   *
+   * @param type    the type of the request
+   * @param data    the content bytes of the request
+   *
+   * @return    the TLV with a 2-byte length
+   */
+  public static byte[] _buildRequest(MsgBoardType type, int... data)
+  {
+    byte[] request = new byte[4+data.length];
+    request[0] = type.getTypeByte();
+    request[1] = (byte) 0x82;
+    request[2] = (byte) ((data.length >> 8) & 0xff);
+    request[3] = (byte) (data.length & 0xff);
+    for (int i=0; i<data.length; i++)
+       request[4+i] = (byte) data[i];
+    return request;
+  }
+
+
+  /**
+   * Reads a response.
+   *
+   * @param sock    the socket to read from
+   *
+   * @return    the response TLV, or
+   *            <code>null</code> if the connection was closed before
+   *            a response started
+   */
+  public static byte[] _readResponse(Socket sock)
+    throws Exception
+  {
+    InputStream is = sock.getInputStream();
+    byte[] header = new byte[4];
+    int pos = 0;
+    while (pos < header.length)
+     {
+       int count = is.read(header, pos, header.length-pos);
+       if (count < 0)
+        {
+          if (pos == 0)
+             return null;
+          fail("incomplete response header: "+pos);
+        }
+       pos += count;
+     }
+    assertEquals("length of length", (byte)0x82, header[1]);
+
+    final int length = ((header[2] & 0xff) << 8) | (header[3] & 0xff);
+    byte[] response = new byte[4+length];
+    System.arraycopy(header, 0, response, 0, 4);
+    while (pos < response.length)
+     {
+       int count = is.read(response, pos, response.length-pos);
+       if (count < 0)
+          fail("incomplete response: "+pos+" < "+response.length);
+       pos += count;
+     }
+    return response;
+  }
+
+
+  /**
+   * Checks that a response echoes a request.
+   *
+   * @param request     the request
+   * @param response    the response
+   */
+  public static void _assertEcho(byte[] request, byte[] response)
+  {
+    assertNotNull("no response", response);
+    assertEquals("response type",
+                 MsgBoardType.INFO_RESPONSE.getTypeByte(), response[0]);
+    assertArrayEquals("response content",
+                      request, java.util.Arrays.copyOfRange
+                      (response, 4, response.length));
+  }
+
+
+  /**
+   * Checks that a response is an error with a specific message code.
+   *
+   * @param code        the message code, for example "MBSS017"
+   * @param response    the response
+   */
+  public static void _assertError(String code, byte[] response)
+  {
+    assertNotNull("no response", response);
+    assertEquals("response type",
+                 MsgBoardType.ERROR_RESPONSE.getTypeByte(), response[0]);
+    String text = new String(response, 4, response.length-4,
+                             StandardCharsets.UTF_8);
+    assertTrue("wrong error: "+text, text.contains(code+":"));
+  }
+
+
+
+  /**
+   * A request handler that does not parse requests.
+   * Each request is answered with an info response that holds the
+   * complete request as content, including the header.
+   * Errors are answered with their string representation.
+   */
+  public static class EchoRequestHandler implements RequestHandler
+  {
+    // non-javadoc, see interface RequestHandler
+    public ByteBuffer handle(ByteBuffer req, InetAddress address)
+    {
+      byte[] content = new byte[req.remaining()];
+      req.duplicate().get(content);
+      return wrap(MsgBoardType.INFO_RESPONSE, content);
+    }
+
+    // non-javadoc, see interface RequestHandler
+    public ByteBuffer buildErrorResponse(Throwable cause)
+    {
+      return wrap(MsgBoardType.ERROR_RESPONSE,
+                  String.valueOf(cause).getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected static ByteBuffer wrap(MsgBoardType type, byte[] content)
+    {
+      ByteBuffer buf = ByteBuffer.allocate(4+content.length);
+      buf.put(type.getTypeByte())
+        .put((byte) 0x82)
+        .putShort((short) content.length)
+        .put(content);
+      buf.flip();
+      return buf;
+    }
+  }
+
+}
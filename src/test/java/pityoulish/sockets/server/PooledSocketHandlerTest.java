@@ -0,0 +1,382 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.sockets.server;
+
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import pityoulish.sockets.tlv.MsgBoardType;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import static pityoulish.sockets.server.NIOSocketHandlerTest.*;
+
+
+/**
+ * Loopback tests for {@link PooledSocketHandler}.
+ * The pool is saturated with requests that block in a
+ * {@link HoldingRequestHandler} until the test releases them.
+ */
+public class PooledSocketHandlerTest
+{
+  /** The content byte of requests that block until released. */
+  public final static int HOLD = 0x7f;
+
+  protected HoldingRequestHandler reqHandler;
+
+  protected PooledSocketHandler handler;
+
+
+  @Before public void createRequestHandler()
+  {
+    reqHandler = new HoldingRequestHandler();
+  }
+
+
+  @After public void stopHandler()
+    throws Exception
+  {
+    reqHandler.release();
+    if (handler != null)
+       handler.shutdown();
+  }
+
+
+  /**
+   * Starts a handler with a pool of 1 worker and a queue of 1.
+   *
+   * @param reject      the rejection policy
+   * @param virtual     whether to ask for virtual threads
+   */
+  protected void startSmallPool(WorkerPoolConfig.Rejection reject,
+                                boolean virtual)
+    throws Exception
+  {
+    handler = new PooledSocketHandler(reqHandler, false,
+                                      new WorkerPoolConfig(1, 1, reject),
+                                      virtual);
+    handler.startup(0, 0);
+  }
+
+
+  /**
+   * Saturates the pool with two held connections.
+   * The first one occupies the worker, the second one the queue.
+   *
+   * @return    the two connections
+   */
+  protected Socket[] saturate()
+    throws Exception
+  {
+    byte[] hold = _buildRequest(MsgBoardType.LIST_MESSAGES, HOLD);
+
+    Socket[] socks = new Socket[]{ _connect(handler), _connect(handler) };
+    for (Socket sock : socks)
+       sock.getOutputStream().write(hold);
+    assertTrue("worker not busy", reqHandler.awaitEntered(1));
+
+    return socks;
+  }
+
+
+  /**
+   * Releases the held requests and checks their responses.
+   *
+   * @param socks       the connections from {@link #saturate}
+   */
+  protected void drain(Socket[] socks)
+    throws Exception
+  {
+    byte[] hold = _buildRequest(MsgBoardType.LIST_MESSAGES, HOLD);
+
+    reqHandler.release();
+    for (Socket sock : socks)
+     {
+       try {
+         _assertEcho(hold, _readResponse(sock));
+         assertNull("connection still open", _readResponse(sock));
+       } finally {
+         sock.close();
+       }
+     }
+  }
+
+
+  @Test public void request_notSaturated() throws Exception
+  {
+    startSmallPool(WorkerPoolConfig.Rejection.ERROR, false);
+    byte[] request = _buildRequest(MsgBoardType.LIST_MESSAGES, 1, 2, 3);
+
+    for (int i=0; i<3; i++)
+     {
+       Socket sock = _connect(handler);
+       try {
+         sock.getOutputStream().write(request);
+         _assertEcho(request, _readResponse(sock));
+         assertNull("connection still open", _readResponse(sock));
+       } finally {
+         sock.close();
+       }
+     }
+  }
+
+
+  @Test public void reject_ERROR() throws Exception
+  {
+    startSmallPool(WorkerPoolConfig.Rejection.ERROR, false);
+    Socket[] held = saturate();
+
+    Socket sock = _connect(handler);
+    try {
+      _assertError("MBSS029", _readResponse(sock));
+      assertNull("connection still open", _readResponse(sock));
+    } finally {
+      sock.close();
+    }
+
+    drain(held);
+  }
+
+
+  @Test public void reject_ERROR_virtual() throws Exception
+  {
+    // without virtual threads, this falls back to the same pool as above
+    startSmallPool(WorkerPoolConfig.Rejection.ERROR, true);
+    Socket[] held = saturate();
+
+    Socket sock = _connect(handler);
+    try {
+      _assertError("MBSS029", _readResponse(sock));
+      assertNull("connection still open", _readResponse(sock));
+    } finally {
+      sock.close();
+    }
+
+    drain(held);
+  }
+
+
+  @Test public void reject_DROP() throws Exception
+  {
+    startSmallPool(WorkerPoolConfig.Rejection.DROP, false);
+    Socket[] held = saturate();
+
+    Socket sock = _connect(handler);
+    try {
+      assertNull("response to dropped connection", _readResponse(sock));
+    } finally {
+      sock.close();
+    }
+
+    drain(held);
+  }
+
+
+  @Test public void reject_CALLER() throws Exception
+  {
+    startSmallPool(WorkerPoolConfig.Rejection.CALLER, false);
+    Socket[] held = saturate();
+    byte[] request = _buildRequest(MsgBoardType.LIST_MESSAGES, 1, 2, 3);
+
+    Socket sock = _connect(handler);
+    try {
+      sock.getOutputStream().write(request);
+      _assertEcho(request, _readResponse(sock));
+      assertNull("connection still open", _readResponse(sock));
+    } finally {
+      sock.close();
+    }
+    assertEquals("requests handled", 2, reqHandler.getEnteredCount());
+
+    drain(held);
+  }
+
+
+  @Test public void reject_CALLER_keepAlive() throws Exception
+  {
+    startSmallPool(WorkerPoolConfig.Rejection.CALLER, false);
+    Socket[] held = saturate();
+    byte[] keepalive = _buildRequest(MsgBoardType.KEEP_ALIVE);
+
+    Socket sock = _connect(handler);
+    try {
+      sock.getOutputStream().write(keepalive);
+      _assertError("MBSS029", _readResponse(sock));
+      assertNull("connection still open", _readResponse(sock));
+    } finally {
+      sock.close();
+    }
+    assertEquals("requests handled", 1, reqHandler.getEnteredCount());
+
+    drain(held);
+  }
+
+
+  @Test public void reject_CALLER_await() throws Exception
+  {
+    startSmallPool(WorkerPoolConfig.Rejection.CALLER, false);
+    Socket[] held = saturate();
+    byte[] await = _buildRequest(MsgBoardType.AWAIT_MESSAGES, 1, 2);
+
+    Socket sock = _connect(handler);
+    try {
+      sock.getOutputStream().write(await);
+      _assertError("MBSS029", _readResponse(sock));
+      assertNull("connection still open", _readResponse(sock));
+    } finally {
+      sock.close();
+    }
+    assertEquals("requests handled", 1, reqHandler.getEnteredCount());
+
+    drain(held);
+  }
+
+
+  @Test public void keepAlive_holdPermits() throws Exception
+  {
+    // 2 workers, 1 of them may be held by a kept-alive connection
+    handler = new PooledSocketHandler
+      (reqHandler, false,
+       new WorkerPoolConfig(2, 0, WorkerPoolConfig.Rejection.ERROR), false);
+    handler.startup(0, 0);
+    byte[] keepalive = _buildRequest(MsgBoardType.KEEP_ALIVE);
+    byte[] request   = _buildRequest(MsgBoardType.LIST_MESSAGES, 1, 2, 3);
+
+    Socket sock1 = _connect(handler);
+    try {
+      sock1.getOutputStream().write(keepalive);
+      _assertEcho(keepalive, _readResponse(sock1));
+
+      Socket sock2 = _connect(handler);
+      try {
+        sock2.getOutputStream().write(keepalive);
+        _assertError("MBSS029", _readResponse(sock2));
+        assertNull("connection still open", _readResponse(sock2));
+      } finally {
+        sock2.close();
+      }
+
+      // the kept-alive connection is still served
+      sock1.getOutputStream().write(request);
+      _assertEcho(request, _readResponse(sock1));
+    } finally {
+      sock1.close();
+    }
+
+    // the permit is returned when the connection closes
+    long deadline = System.currentTimeMillis() + READ_TIMEOUT;
+    while ((handler.holdPermits.availablePermits() < 1) &&
+           (System.currentTimeMillis() < deadline))
+       Thread.sleep(20);
+    assertEquals("hold permits", 1, handler.holdPermits.availablePermits());
+  }
+
+
+  @Test public void keepAlive_onePermitAtLeast() throws Exception
+  {
+    // a single worker may still be held by a kept-alive connection
+    handler = new PooledSocketHandler
+      (reqHandler, false,
+       new WorkerPoolConfig(1, 0, WorkerPoolConfig.Rejection.ERROR), false);
+    handler.startup(0, 0);
+    byte[] keepalive = _buildRequest(MsgBoardType.KEEP_ALIVE);
+    byte[] request   = _buildRequest(MsgBoardType.LIST_MESSAGES, 1, 2, 3);
+
+    Socket sock = _connect(handler);
+    try {
+      sock.getOutputStream().write(keepalive);
+      _assertEcho(keepalive, _readResponse(sock));
+      sock.getOutputStream().write(request);
+      _assertEcho(request, _readResponse(sock));
+    } finally {
+      sock.close();
+    }
+  }
+
+
+  @Test public void await_notLimited() throws Exception
+  {
+    // 2 workers, 1 of them held by a kept-alive connection
+    handler = new PooledSocketHandler
+      (reqHandler, false,
+       new WorkerPoolConfig(2, 0, WorkerPoolConfig.Rejection.ERROR), false);
+    handler.startup(0, 0);
+    byte[] keepalive = _buildRequest(MsgBoardType.KEEP_ALIVE);
+    byte[] await     = _buildRequest(MsgBoardType.AWAIT_MESSAGES, 1, 2);
+
+    Socket sock1 = _connect(handler);
+    try {
+      sock1.getOutputStream().write(keepalive);
+      _assertEcho(keepalive, _readResponse(sock1));
+
+      Socket sock2 = _connect(handler);
+      try {
+        sock2.getOutputStream().write(await);
+        _assertEcho(await, _readResponse(sock2));
+        assertNull("connection still open", _readResponse(sock2));
+      } finally {
+        sock2.close();
+      }
+    } finally {
+      sock1.close();
+    }
+  }
+
+
+
+  /**
+   * A request handler that echoes requests, like
+   * {@link NIOSocketHandlerTest.EchoRequestHandler}, but blocks on
+   * requests with content {@link #HOLD} until {@link #release released}.
+   */
+  public static class HoldingRequestHandler
+    extends NIOSocketHandlerTest.EchoRequestHandler
+  {
+    protected final CountDownLatch released = new CountDownLatch(1);
+
+    protected final Semaphore entered = new Semaphore(0);
+
+    // non-javadoc, see interface RequestHandler
+    public ByteBuffer handle(ByteBuffer req, InetAddress address)
+    {
+      entered.release();
+      if ((req.remaining() == 5) && (req.get(req.position()+4) == HOLD))
+       {
+         try {
+           released.await(2*READ_TIMEOUT, TimeUnit.MILLISECONDS);
+         } catch (InterruptedException ix) {
+           Thread.currentThread().interrupt();
+         }
+       }
+      return super.handle(req, address);
+    }
+
+    public void release()
+    {
+      released.countDown();
+    }
+
+    public boolean awaitEntered(int count)
+      throws InterruptedException
+    {
+      if (!entered.tryAcquire(count, READ_TIMEOUT, TimeUnit.MILLISECONDS))
+         return false;
+      entered.release(count);
+      return true;
+    }
+
+    public int getEnteredCount()
+    {
+      return entered.availablePermits();
+    }
+  }
+
+}
@@ -828,6 +828,509 @@ public class TLVRequestParserImplTest
   }
 
 
+  @Test public void parseKeepAlive()
+    throws ProtocolException
+  {
+    RequestParser rp = new TLVRequestParserImpl();
+    byte[] data = new byte[]{
+      MsgBoardType.KEEP_ALIVE.typeByte, MsgBoardTLV.LENGTH_OF_LENGTH_2,
+      (byte) 0, (byte) 0
+    };
+
+    MsgBoardRequest mbr = rp.parse(ByteBuffer.wrap(data));
+
+    assertNotNull("no result", mbr);
+    assertEquals("wrong type", ReqType.KEEP_ALIVE, mbr.getReqType());
+
+    assertNull("unexpected limit",      mbr.getLimit());
+    assertNull("unexpected marker",     mbr.getMarker());
+    assertNull("unexpected ticket",     mbr.getTicket());
+    assertNull("unexpected originator", mbr.getOriginator());
+    assertNull("unexpected text",       mbr.getText());
+  }
+
+
+  @Test public void parseKeepAlive_Tic()
+    throws ProtocolException
+  {
+    final String ticket = "pass";
+
+    RequestParser rp = new TLVRequestParserImpl();
+    byte[] data = new byte[]{
+      MsgBoardType.KEEP_ALIVE.typeByte, MsgBoardTLV.LENGTH_OF_LENGTH_2,
+      (byte) 0, (byte) (4 + ticket.length()),
+
+      MsgBoardType.TICKET.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) ticket.length(),
+      (byte)'p', (byte)'a', (byte)'s', (byte)'s'
+    };
+
+    try {
+      MsgBoardRequest mbr = rp.parse(ByteBuffer.wrap(data));
+      fail("unexpected ticket not detected: "+mbr);
+    } catch (Exception expected) {
+      // expected.printStackTrace(System.err);
+      assertPX(expected, MsgBoardType.TICKET);
+    }
+  }
+
+
+  @Test public void parseAwaitMessages_LTM()
+    throws ProtocolException
+  {
+    final Integer limit = Integer.valueOf(17);
+    final Integer timeout = Integer.valueOf(20);
+
+    RequestParser rp = new TLVRequestParserImpl();
+    byte[] data = new byte[]{
+      MsgBoardType.AWAIT_MESSAGES.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 17,
+
+      MsgBoardType.LIMIT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      limit.byteValue(),
+
+      MsgBoardType.TIMEOUT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      timeout.byteValue(),
+
+      MsgBoardType.MARKER.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 3,
+      (byte) 'a', (byte) 'b', (byte) 'c'
+    };
+
+    MsgBoardRequest mbr = rp.parse(ByteBuffer.wrap(data));
+
+    assertNotNull("no result", mbr);
+    assertEquals("wrong type", ReqType.AWAIT_MESSAGES, mbr.getReqType());
+    assertEquals("wrong limit", limit,  mbr.getLimit());
+    assertEquals("wrong timeout", timeout, mbr.getTimeout());
+    assertEquals("wrong marker", "abc", mbr.getMarker());
+
+    assertNull("unexpected ticket",     mbr.getTicket());
+    assertNull("unexpected text",       mbr.getText());
+    assertNull("unexpected originator", mbr.getOriginator());
+  }
+
+
+  @Test public void parseAwaitMessages_L()
+    throws ProtocolException
+  {
+    final Integer limit = Integer.valueOf(17);
+
+    RequestParser rp = new TLVRequestParserImpl();
+    byte[] data = new byte[]{
+      MsgBoardType.AWAIT_MESSAGES.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 5,
+
+      MsgBoardType.LIMIT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      limit.byteValue()
+    };
+
+    try {
+      MsgBoardRequest mbr = rp.parse(ByteBuffer.wrap(data));
+      fail("missing timeout not detected: "+mbr);
+    } catch (Exception expected) {
+      // expected.printStackTrace(System.err);
+      assertPX(expected, MsgBoardType.TIMEOUT);
+    }
+  }
+
+
+  @Test public void parseAwaitMessages_LT_high()
+    throws ProtocolException
+  {
+    final Integer limit = Integer.valueOf(17);
+
+    RequestParser rp = new TLVRequestParserImpl();
+    byte[] data = new byte[]{
+      MsgBoardType.AWAIT_MESSAGES.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 10,
+
+      MsgBoardType.LIMIT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      limit.byteValue(),
+
+      MsgBoardType.TIMEOUT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      (byte) 128
+    };
+
+    try {
+      MsgBoardRequest mbr = rp.parse(ByteBuffer.wrap(data));
+      fail("invalid timeout not detected: "+mbr);
+    } catch (Exception expected) {
+      // expected.printStackTrace(System.err);
+      assertPX(expected, MsgBoardType.TIMEOUT);
+    }
+  }
+
+
+  @Test public void parseListMessages_LTimeout()
+    throws ProtocolException
+  {
+    final Integer limit = Integer.valueOf(17);
+
+    RequestParser rp = new TLVRequestParserImpl();
+    byte[] data = new byte[]{
+      MsgBoardType.LIST_MESSAGES.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 10,
+
+      MsgBoardType.LIMIT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      limit.byteValue(),
+
+      MsgBoardType.TIMEOUT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      (byte) 20
+    };
+
+    try {
+      MsgBoardRequest mbr = rp.parse(ByteBuffer.wrap(data));
+      fail("unexpected timeout not detected: "+mbr);
+    } catch (Exception expected) {
+      // expected.printStackTrace(System.err);
+      assertPX(expected, MsgBoardType.TIMEOUT);
+    }
+  }
+
+
+  @Test public void parseListMessages_LC()
+    throws ProtocolException
+  {
+    final Integer limit = Integer.valueOf(9);
+
+    RequestParser rp = new TLVRequestParserImpl();
+    byte[] data = new byte[]{
+      MsgBoardType.LIST_MESSAGES.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 11,
+
+      MsgBoardType.LIMIT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      limit.byteValue(),
+
+      MsgBoardType.CHANNEL.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 2,
+      (byte) 'c', (byte) '1'
+    };
+
+    MsgBoardRequest mbr = rp.parse(ByteBuffer.wrap(data));
+
+    assertNotNull("no result", mbr);
+    assertEquals("wrong type", ReqType.LIST_MESSAGES, mbr.getReqType());
+    assertEquals("wrong limit", limit, mbr.getLimit());
+    assertEquals("wrong channel", "c1", mbr.getChannel());
+
+    assertNull("unexpected marker",     mbr.getMarker());
+    assertNull("unexpected timeout",    mbr.getTimeout());
+  }
+
+
+  @Test public void parseListMessages_CLC()
+    throws ProtocolException
+  {
+    RequestParser rp = new TLVRequestParserImpl();
+    byte[] data = new byte[]{
+      MsgBoardType.LIST_MESSAGES.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 15,
+
+      MsgBoardType.CHANNEL.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      (byte) 'a',
+
+      MsgBoardType.LIMIT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      (byte) 9,
+
+      MsgBoardType.CHANNEL.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 2,
+      (byte) 'b', (byte) 'c'
+    };
+
+    try {
+      MsgBoardRequest mbr = rp.parse(ByteBuffer.wrap(data));
+      fail("duplicate channel not detected: "+mbr);
+    } catch (Exception expected) {
+      // expected.printStackTrace(System.err);
+      assertPX(expected, MsgBoardType.CHANNEL);
+    }
+  }
+
+
+  @Test public void parsePutMessage_TicTxtC()
+    throws ProtocolException
+  {
+    final String ticket = "pass";
+    final String text   = "hi";
+
+    RequestParser rp = new TLVRequestParserImpl();
+    byte[] data = new byte[]{
+      MsgBoardType.PUT_MESSAGE.typeByte, MsgBoardTLV.LENGTH_OF_LENGTH_2,
+      (byte) 0, (byte) (12 + ticket.length() + text.length() + 3),
+
+      MsgBoardType.TICKET.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) ticket.length(),
+      (byte)'p', (byte)'a', (byte)'s', (byte)'s',
+
+      MsgBoardType.TEXT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) text.length(),
+      (byte)'h', (byte)'i',
+
+      MsgBoardType.CHANNEL.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 3,
+      (byte)'f', (byte)'o', (byte)'o'
+    };
+
+    MsgBoardRequest mbr = rp.parse(ByteBuffer.wrap(data));
+
+    assertNotNull("no result", mbr);
+    assertEquals("wrong type", ReqType.PUT_MESSAGE, mbr.getReqType());
+    assertEquals("wrong ticket", ticket, mbr.getTicket());
+    assertEquals("wrong text",   text,   mbr.getText());
+    assertEquals("wrong channel", "foo", mbr.getChannel());
+  }
+
+
+  @Test public void parseObtainTicket_OC()
+    throws ProtocolException
+  {
+    RequestParser rp = new TLVRequestParserImpl();
+    byte[] data = new byte[]{
+      MsgBoardType.OBTAIN_TICKET.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 10,
+
+      MsgBoardType.ORIGINATOR.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 2,
+      (byte)'m', (byte)'e',
+
+      MsgBoardType.CHANNEL.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 0
+    };
+
+    try {
+      MsgBoardRequest mbr = rp.parse(ByteBuffer.wrap(data));
+      fail("unexpected channel not detected: "+mbr);
+    } catch (Exception expected) {
+      // expected.printStackTrace(System.err);
+      assertPX(expected, MsgBoardType.CHANNEL);
+    }
+  }
+
+
+  @Test public void parseListMessages_LOU()
+    throws ProtocolException
+  {
+    RequestParser rp = new TLVRequestParserImpl();
+    byte[] data = new byte[]{
+      MsgBoardType.LIST_MESSAGES.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 15,
+
+      MsgBoardType.LIMIT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      (byte) 9,
+
+      MsgBoardType.ORIGINATOR.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 2,
+      (byte)'m', (byte)'e',
+
+      MsgBoardType.USER_ONLY.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 0
+    };
+
+    MsgBoardRequest mbr = rp.parse(ByteBuffer.wrap(data));
+
+    assertNotNull("no result", mbr);
+    assertEquals("wrong type", ReqType.LIST_MESSAGES, mbr.getReqType());
+    assertEquals("wrong originator", "me", mbr.getOriginator());
+    assertTrue("not user only", mbr.isUserOnly());
+
+    assertNull("unexpected marker",     mbr.getMarker());
+    assertNull("unexpected channel",    mbr.getChannel());
+  }
+
+
+  @Test public void parseAwaitMessages_LTU()
+    throws ProtocolException
+  {
+    RequestParser rp = new TLVRequestParserImpl();
+    byte[] data = new byte[]{
+      MsgBoardType.AWAIT_MESSAGES.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 14,
+
+      MsgBoardType.LIMIT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      (byte) 9,
+
+      MsgBoardType.TIMEOUT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      (byte) 9,
+
+      MsgBoardType.USER_ONLY.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 0
+    };
+
+    try {
+      MsgBoardRequest mbr = rp.parse(ByteBuffer.wrap(data));
+      fail("unexpected user only not detected: "+mbr);
+    } catch (Exception expected) {
+      // expected.printStackTrace(System.err);
+      assertPX(expected, MsgBoardType.USER_ONLY);
+    }
+  }
+
+
+  @Test public void parseSearchMessages_LTxtM()
+    throws ProtocolException
+  {
+    final Integer limit = Integer.valueOf(5);
+
+    RequestParser rp = new TLVRequestParserImpl();
+    byte[] data = new byte[]{
+      MsgBoardType.SEARCH_MESSAGES.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 16,
+
+      MsgBoardType.LIMIT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      limit.byteValue(),
+
+      MsgBoardType.TEXT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 2,
+      (byte)'h', (byte)'i',
+
+      MsgBoardType.MARKER.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      (byte) '7'
+    };
+
+    MsgBoardRequest mbr = rp.parse(ByteBuffer.wrap(data));
+
+    assertNotNull("no result", mbr);
+    assertEquals("wrong type", ReqType.SEARCH_MESSAGES, mbr.getReqType());
+    assertEquals("wrong limit", limit, mbr.getLimit());
+    assertEquals("wrong text", "hi", mbr.getText());
+    assertEquals("wrong marker", "7", mbr.getMarker());
+
+    assertNull("unexpected ticket",     mbr.getTicket());
+    assertNull("unexpected timeout",    mbr.getTimeout());
+    assertNull("unexpected channel",    mbr.getChannel());
+  }
+
+
+  @Test public void parseSearchMessages_L()
+    throws ProtocolException
+  {
+    RequestParser rp = new TLVRequestParserImpl();
+    byte[] data = new byte[]{
+      MsgBoardType.SEARCH_MESSAGES.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 5,
+
+      MsgBoardType.LIMIT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      (byte) 5
+    };
+
+    try {
+      MsgBoardRequest mbr = rp.parse(ByteBuffer.wrap(data));
+      fail("missing text not detected: "+mbr);
+    } catch (Exception expected) {
+      // expected.printStackTrace(System.err);
+      assertPX(expected, MsgBoardType.TEXT);
+    }
+  }
+
+
+  @Test public void parseListMessages_LTxt()
+    throws ProtocolException
+  {
+    RequestParser rp = new TLVRequestParserImpl();
+    byte[] data = new byte[]{
+      MsgBoardType.LIST_MESSAGES.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 11,
+
+      MsgBoardType.LIMIT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      (byte) 5,
+
+      MsgBoardType.TEXT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 2,
+      (byte)'h', (byte)'i'
+    };
+
+    try {
+      MsgBoardRequest mbr = rp.parse(ByteBuffer.wrap(data));
+      fail("unexpected text not detected: "+mbr);
+    } catch (Exception expected) {
+      // expected.printStackTrace(System.err);
+      assertPX(expected, MsgBoardType.TEXT);
+    }
+  }
+
+
+  @Test public void parsePutMessages_TTxtCTxt()
+    throws ProtocolException
+  {
+    RequestParser rp = new TLVRequestParserImpl();
+    byte[] data = new byte[]{
+      MsgBoardType.PUT_MESSAGES.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 24,
+
+      MsgBoardType.TICKET.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 2,
+      (byte)'t', (byte)'k',
+
+      MsgBoardType.TEXT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 2,
+      (byte)'h', (byte)'i',
+
+      MsgBoardType.CHANNEL.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 1,
+      (byte)'c',
+
+      MsgBoardType.TEXT.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 3,
+      (byte)'b', (byte)'y', (byte)'e'
+    };
+
+    MsgBoardRequest mbr = rp.parse(ByteBuffer.wrap(data));
+
+    assertNotNull("no result", mbr);
+    assertEquals("wrong type", ReqType.PUT_MESSAGES, mbr.getReqType());
+    assertEquals("wrong ticket", "tk", mbr.getTicket());
+    assertEquals("wrong channel", "c", mbr.getChannel());
+    assertNotNull("no texts", mbr.getTexts());
+    assertEquals("wrong number of texts", 2, mbr.getTexts().size());
+    assertEquals("wrong first text", "hi", mbr.getTexts().get(0));
+    assertEquals("wrong second text", "bye", mbr.getTexts().get(1));
+
+    assertNull("unexpected text",       mbr.getText());
+    assertNull("unexpected limit",      mbr.getLimit());
+    assertNull("unexpected marker",     mbr.getMarker());
+  }
+
+
+  @Test public void parsePutMessages_T()
+    throws ProtocolException
+  {
+    RequestParser rp = new TLVRequestParserImpl();
+    byte[] data = new byte[]{
+      MsgBoardType.PUT_MESSAGES.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 6,
+
+      MsgBoardType.TICKET.typeByte,
+      MsgBoardTLV.LENGTH_OF_LENGTH_2, (byte) 0, (byte) 2,
+      (byte)'t', (byte)'k'
+    };
+
+    try {
+      MsgBoardRequest mbr = rp.parse(ByteBuffer.wrap(data));
+      fail("missing text not detected: "+mbr);
+    } catch (Exception expected) {
+      assertPX(expected, MsgBoardType.TEXT);
+    }
+  }
+
+
   //@@@ There's one set of negative tests for PUT_MESSAGE:
   //@@@     missing TLV, duplicate TLV, unexpected TLV, overlong TLV
   //@@@ Add negative tests for other request types relying on parseGeneric?
@@ -6,9 +6,11 @@
 package pityoulish.sockets.server;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 
+import pityoulish.msgboard.ArenaMessageBoardImpl;
 import pityoulish.msgboard.Message;
 import pityoulish.msgboard.MessageImpl;
 import pityoulish.msgboard.MessageBatch;
@@ -280,6 +282,74 @@ public class TLVResponseBuilderImplTest
   }
 
 
+  @Test public void buildMessageBatch_cached()
+  {
+    // cached encodings are reused, and produce the same PDU size
+    ResponseBuilder rb = new TLVResponseBuilderImpl(true);
+    MessageImpl msg = new MessageImpl("me", "now", "sh\u00f6ut"); // o-umlaut
+    List<? extends Message> msgs =
+      Arrays.asList(msg, new MessageImpl("you", "then", "scream"));
+    String   marker = "arrow";
+    MessageBatch mb = new MessageBatchImpl(msgs, marker, true);
+    MsgBoardResponse<MessageBatch> rsp = new MsgBoardResponseImpl.Batch(mb);
+
+    byte[] pdu1 = toBytes(rb.buildMessageBatch(rsp));
+    Object encoding = msg.getEncoding(TLVResponseBuilderImpl.MESSAGE_TLV_KEY);
+    assertNotNull("message encoding not cached", encoding);
+
+    byte[] pdu2 = toBytes(rb.buildMessageBatch(rsp));
+    assertSame("message encoding replaced", encoding,
+               msg.getEncoding(TLVResponseBuilderImpl.MESSAGE_TLV_KEY));
+    assertArrayEquals("cached PDUs differ", pdu1, pdu2);
+
+    byte[] pdu3 = toBytes(new TLVResponseBuilderImpl().buildMessageBatch(rsp));
+    assertEquals("wrong PDU size", pdu3.length, pdu1.length);
+
+    // elements within a cached MESSAGE are in a fixed order
+    int pos = 12+marker.length();
+    assertEquals("wrong type of third nested TLV",
+                 MsgBoardType.MESSAGE.getTypeByte(), pdu1[pos]);
+    assertEquals("wrong type of first message element",
+                 MsgBoardType.ORIGINATOR.getTypeByte(), pdu1[pos+4]);
+    assertEquals("wrong type of second message element",
+                 MsgBoardType.TIMESTAMP.getTypeByte(), pdu1[pos+10]);
+  }
+
+
+  @Test public void buildMessageBatch_utf8()
+  {
+    // messages from the arena board copy their text without decoding it
+    ArenaMessageBoardImpl board = new ArenaMessageBoardImpl(4, 8192);
+    board.putMessage("me", "Gr\u00fc\u00dfe \u20ac");
+    MessageBatch mb = board.listMessages(4, null);
+    Message     msg = mb.getMessages().get(0);
+    byte[]     text = msg.getText().getBytes(StandardCharsets.UTF_8);
+
+    ResponseBuilder rb = new TLVResponseBuilderImpl();
+    MsgBoardResponse<MessageBatch> rsp = new MsgBoardResponseImpl.Batch(mb);
+
+    ByteBuffer buf = rb.buildMessageBatch(rsp);
+    byte[]     pdu = toBytes(buf);
+
+    assertEquals("wrong PDU length",
+                 8 + mb.getMarker().length() + 16 +
+                 msg.getOriginator().length() +
+                 msg.getTimestamp().length() + text.length,
+                 pdu.length);
+    assertCount(MsgBoardType.TEXT, pdu, 1);
+
+    int found = -1;
+    for (int i=0; (found < 0) && (i <= pdu.length-text.length); i++)
+     {
+       if (Arrays.equals(text, Arrays.copyOfRange(pdu, i, i+text.length)))
+          found = i;
+     }
+    assertTrue("text not found", found >= 4);
+    assertEquals("wrong TLV before text",
+                 MsgBoardType.TEXT.getTypeByte(), pdu[found-4]);
+  }
+
+
   @Test public void buildMessageBatch_bad()
   {
     ResponseBuilder rb = new TLVResponseBuilderImpl();
@@ -341,4 +411,27 @@ public class TLVResponseBuilderImplTest
     assertArrayEquals("wrong PDU", expected, pdu);
   }
 
+
+
+  @Test public void buildMarkerList_good()
+  {
+    ResponseBuilder rb = new TLVResponseBuilderImpl();
+    MsgBoardResponse<List<String>> rsp =
+      new MsgBoardResponseImpl.Markers(Arrays.asList("m7", "m8"));
+
+    ByteBuffer buf = rb.buildMarkerList(rsp);
+    byte[]     pdu = toBytes(buf);
+
+    byte[] expected = new byte[]{
+      MsgBoardType.MARKER_LIST.getTypeByte(),
+      (byte)0x82, (byte)0x00, (byte)0x0c,
+
+      MsgBoardType.MARKER.getTypeByte(), (byte)0x82, (byte)0x00, (byte)0x02,
+      (byte)'m', (byte)'7',
+      MsgBoardType.MARKER.getTypeByte(), (byte)0x82, (byte)0x00, (byte)0x02,
+      (byte)'m', (byte)'8'
+    };
+    assertArrayEquals("wrong PDU", expected, pdu);
+  }
+
 }
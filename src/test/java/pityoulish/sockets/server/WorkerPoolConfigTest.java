@@ -0,0 +1,114 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.sockets.server;
+
+import java.util.Locale;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+public class WorkerPoolConfigTest
+{
+  @Test public void constructor() throws Exception
+  {
+    WorkerPoolConfig wpc =
+      new WorkerPoolConfig(1, 0, WorkerPoolConfig.Rejection.DROP);
+
+    assertEquals("wrong pool size", 1, wpc.poolSize);
+    assertEquals("wrong queue bound", 0, wpc.queueBound);
+    assertEquals("wrong rejection",
+                 WorkerPoolConfig.Rejection.DROP, wpc.rejection);
+  }
+
+
+  @Test public void constructor_badSize() throws Exception
+  {
+    try {
+      WorkerPoolConfig wpc =
+        new WorkerPoolConfig(0, 1, WorkerPoolConfig.Rejection.ERROR);
+      fail("pool size 0 not detected: "+wpc);
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+
+  @Test public void constructor_badBound() throws Exception
+  {
+    try {
+      WorkerPoolConfig wpc =
+        new WorkerPoolConfig(1, -1, WorkerPoolConfig.Rejection.ERROR);
+      fail("negative queue bound not detected: "+wpc);
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+
+  @Test public void constructor_nullRejection() throws Exception
+  {
+    try {
+      WorkerPoolConfig wpc = new WorkerPoolConfig(1, 1, null);
+      fail("null rejection not detected: "+wpc);
+    } catch (NullPointerException expected) {
+      // expected
+    }
+  }
+
+
+  @Test public void rejection_forName() throws Exception
+  {
+    assertEquals(WorkerPoolConfig.Rejection.ERROR,
+                 WorkerPoolConfig.Rejection.forName("error"));
+    assertEquals(WorkerPoolConfig.Rejection.DROP,
+                 WorkerPoolConfig.Rejection.forName("Drop"));
+    assertEquals(WorkerPoolConfig.Rejection.CALLER,
+                 WorkerPoolConfig.Rejection.forName("CALLER"));
+  }
+
+
+  @Test public void rejection_forName_unknown() throws Exception
+  {
+    try {
+      WorkerPoolConfig.Rejection rej =
+        WorkerPoolConfig.Rejection.forName("ignore");
+      fail("unknown rejection not detected: "+rej);
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+
+  @Test public void rejection_forName_turkish() throws Exception
+  {
+    // in Turkish, "i".toUpperCase() is a dotted capital I
+    Locale saved = Locale.getDefault();
+    Locale.setDefault(new Locale("tr", "TR"));
+    try {
+      assertEquals(WorkerPoolConfig.Rejection.ERROR,
+                   WorkerPoolConfig.Rejection.forName("error"));
+      assertEquals(WorkerPoolConfig.Rejection.DROP,
+                   WorkerPoolConfig.Rejection.forName("drop"));
+      assertEquals(WorkerPoolConfig.Rejection.CALLER,
+                   WorkerPoolConfig.Rejection.forName("caller"));
+    } finally {
+      Locale.setDefault(saved);
+    }
+  }
+
+
+  @Test public void toString_values() throws Exception
+  {
+    String text = new WorkerPoolConfig
+      (3, 5, WorkerPoolConfig.Rejection.CALLER).toString();
+
+    assertTrue("no pool size: "+text, text.contains("pool=3"));
+    assertTrue("no queue bound: "+text, text.contains("queue=5"));
+    assertTrue("no rejection: "+text, text.contains("CALLER"));
+  }
+
+}
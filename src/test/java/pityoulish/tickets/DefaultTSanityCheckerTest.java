@@ -125,4 +125,22 @@ public class DefaultTSanityCheckerTest
     assertNull("username 'rw' not allowed", problem);
   }
 
+
+
+  @Test public void checkUsername_defaultPattern()
+  {
+    // the explicit default pattern and the fast path agree
+    DefaultTSanityChecker<String> fast = new DefaultTSanityChecker<>
+      (new StringProblemFactory(), 1, 32, null);
+    DefaultTSanityChecker<String> regex = new DefaultTSanityChecker<>
+      (new StringProblemFactory(), 1, 32,
+       DefaultTSanityChecker.DEFAULT_USERNAME_PATTERN);
+
+    String[] candidates = { "rw", "Roland42", "r.w", "r-w", "r w",
+                            "r\u00fcw", "r_w", "9z", "Z@" };
+    for (String c: candidates)
+       assertEquals("differs for \""+c+"\"",
+                    regex.checkUsername(c), fast.checkUsername(c));
+  }
+
 }
@@ -25,6 +25,7 @@ public class DefaultTicketManagerTest
     public String  getUsername() { return wrapped.getUsername(); }
     public String  getToken() { return wrapped.getToken(); }
     public boolean punch() { return wrapped.punch(); }
+    public void    refund(int count) { wrapped.refund(count); }
   }
 
 
@@ -138,6 +139,72 @@ public class DefaultTicketManagerTest
   }
 
 
+  @Test public void obtainTicket_concurrentAddress()
+    throws Exception
+  {
+    // different users, different locks, only one gets the address
+    final TicketManager manager = new DefaultTicketManager();
+    final InetAddress   address = InetAddress.getByName("127.0.0.1");
+    final int           threads = 16;
+    final java.util.concurrent.atomic.AtomicInteger obtained =
+      new java.util.concurrent.atomic.AtomicInteger();
+    final java.util.concurrent.CountDownLatch start =
+      new java.util.concurrent.CountDownLatch(1);
+
+    Thread[] workers = new Thread[threads];
+    for (int i=0; i<threads; i++)
+     {
+       final String username = "testuser"+i;
+       workers[i] = new Thread() {
+           public void run() {
+             try {
+               start.await();
+               manager.obtainTicket(username, address, null);
+               obtained.incrementAndGet();
+             } catch (Exception expected) {
+               // expected for all but one
+             }
+           }
+         };
+       workers[i].start();
+     }
+    start.countDown();
+    for (Thread worker: workers)
+       worker.join();
+
+    assertEquals("wrong #tickets", 1, obtained.get());
+  }
+
+
+  @Test public void returnTicket_reobtain()
+    throws Exception
+  {
+    final TicketManager manager = new DefaultTicketManager();
+    final InetAddress   address = InetAddress.getByName("127.0.0.1");
+    final String        host    = "remotehost";
+
+    Ticket t1 = manager.obtainTicket("testuser", address, host);
+    assertSame("lookup failed", t1,
+               manager.lookupTicket(t1.getToken(), address, host));
+    manager.returnTicket(t1);
+
+    try {
+      Ticket t = manager.lookupTicket(t1.getToken(), address, host);
+      fail("returned ticket found: "+t);
+    } catch (TicketException expected) {
+      // expected
+    }
+
+    // all indexes are free again
+    Ticket t2 = manager.obtainTicket("gooduser", address, host);
+    Ticket t3 = manager.obtainTicket("testuser", null, null);
+    assertSame("lookup failed", t2,
+               manager.lookupTicket(t2.getToken(), address, host));
+    assertSame("lookup failed", t3,
+               manager.lookupTicket(t3.getToken(), null, null));
+  }
+
+
   @Test public void lookupTicket_badArgs()
     throws Exception
   {
@@ -207,4 +274,82 @@ public class DefaultTicketManagerTest
   }
 
 
+  @Test public void lookupTicket_unknown()
+    throws Exception
+  {
+    final TicketManager manager = new DefaultTicketManager();
+
+    Ticket good = manager.obtainTicket("testuser", null, null);
+    assertSame("good ticket not found",
+               good, manager.lookupTicket(good.getToken(), null, null));
+
+    // the filter turns away unknown tokens, without a stack trace
+    try {
+      Ticket t = manager.lookupTicket("testuser@bogus", null, null);
+      fail("unknown token not detected: "+t);
+    } catch (TicketException expected) {
+      assertEquals("stack trace on fast path",
+                   0, expected.getStackTrace().length);
+    }
+
+    // stale tokens, too
+    manager.returnTicket(good);
+    try {
+      Ticket t = manager.lookupTicket(good.getToken(), null, null);
+      fail("returned token not detected: "+t);
+    } catch (TicketException expected) {
+      assertEquals("stack trace on fast path",
+                   0, expected.getStackTrace().length);
+    }
+  }
+
+
+  @Test public void lookupTicket_rejectedTwice()
+    throws Exception
+  {
+    // a store that cannot filter, like a remote one
+    final TicketManager manager =
+      new DefaultTicketManager(new LocalTicketStore() {
+          public boolean mightContain(String token)
+          {
+            return true;
+          }
+        });
+
+    try {
+      Ticket t = manager.lookupTicket("testuser@bogus", null, null);
+      fail("unknown token not detected: "+t);
+    } catch (TicketException expected) {
+      assertTrue("no stack trace on first rejection",
+                 expected.getStackTrace().length > 0);
+    }
+
+    // the second time, the token is in the negative cache
+    try {
+      Ticket t = manager.lookupTicket("testuser@bogus", null, null);
+      fail("unknown token not detected: "+t);
+    } catch (TicketException expected) {
+      assertEquals("stack trace on second rejection",
+                   0, expected.getStackTrace().length);
+    }
+  }
+
+
+  @Test public void punch_refund()
+    throws Exception
+  {
+    final TicketManager manager = new DefaultTicketManager();
+
+    Ticket t = manager.obtainTicket("testuser", null, null);
+    assertTrue ("action 1 should pass", t.punch());
+    assertTrue ("action 2 should pass", t.punch());
+    assertTrue ("action 3 should pass", t.punch());
+    assertFalse("action 4 should stop", t.punch());
+
+    t.refund(2);
+    assertTrue ("refunded action 1 should pass", t.punch());
+    assertTrue ("refunded action 2 should pass", t.punch());
+    assertFalse("action 6 should stop", t.punch());
+  }
+
 }
@@ -0,0 +1,182 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+public class HmacTicketManagerTest
+{
+  public final static byte[] KEY =
+    "not a very secret key".getBytes(StandardCharsets.UTF_8);
+
+
+  @Test public void create_badArgs()
+  {
+    try {
+      TicketManager manager = new HmacTicketManager(null,
+                                                    new LocalPunchStore());
+      fail("missing key not detected: "+manager);
+    } catch (RuntimeException expected) {
+      // expected
+    }
+
+    try {
+      TicketManager manager = new HmacTicketManager(new byte[8],
+                                                    new LocalPunchStore());
+      fail("short key not detected: "+manager);
+    } catch (RuntimeException expected) {
+      // expected
+    }
+
+    try {
+      TicketManager manager = new HmacTicketManager(KEY, null);
+      fail("missing punch store not detected: "+manager);
+    } catch (RuntimeException expected) {
+      // expected
+    }
+  }
+
+
+  @Test public void lookupTicket_otherNode()
+    throws Exception
+  {
+    // two nodes with the same key and punch store
+    final PunchStore    store   = new LocalPunchStore();
+    final TicketManager node1   = new HmacTicketManager(KEY, store);
+    final TicketManager node2   = new HmacTicketManager(KEY, store);
+    final InetAddress   address = InetAddress.getByName("127.0.0.1");
+    final String        host    = "remotehost";
+
+    Ticket t1 = node1.obtainTicket("testuser", address, host);
+    Ticket t2 = node2.lookupTicket(t1.getToken(), address, host);
+
+    assertEquals("wrong username", "testuser", t2.getUsername());
+    assertEquals("wrong token", t1.getToken(), t2.getToken());
+
+    // the actions are shared
+    assertTrue ("action 1 should pass", t1.punch());
+    assertTrue ("action 2 should pass", t2.punch());
+    assertTrue ("action 3 should pass",
+                node1.lookupTicket(t1.getToken(), null, null).punch());
+    assertFalse("action 4 should stop", t2.punch());
+  }
+
+
+  @Test public void lookupTicket_KO()
+    throws Exception
+  {
+    final TicketManager manager = new HmacTicketManager
+      (KEY, new LocalPunchStore());
+    final TicketManager other = new HmacTicketManager
+      ("another key, not secret".getBytes(StandardCharsets.UTF_8),
+       new LocalPunchStore());
+    final InetAddress   address = InetAddress.getByName("127.0.0.1");
+    final String        host    = "remotehost";
+
+    final String token = manager.obtainTicket("testuser", address, host)
+      .getToken();
+
+    String[] malformed = { "testuser", "testuser@x.y.z",
+                           "testuser@!!.0...sig" };
+    for (String bad: malformed)
+     {
+       try {
+         Ticket t = manager.lookupTicket(bad, null, null);
+         fail("malformed token not detected: "+bad+" "+t);
+       } catch (TicketException expected) {
+         // expected
+       }
+     }
+
+    try {
+      Ticket t = manager.lookupTicket(token.replace("testuser", "evilusr"),
+                                      null, null);
+      fail("modified token not detected: "+t);
+    } catch (TicketException expected) {
+      // expected
+    }
+
+    try {
+      Ticket t = other.lookupTicket(token, null, null);
+      fail("wrong key not detected: "+t);
+    } catch (TicketException expected) {
+      // expected
+    }
+
+    try {
+      Ticket t = manager.lookupTicket
+        (token, InetAddress.getByName("127.0.0.2"), null);
+      fail("wrong address not detected: "+t);
+    } catch (TicketException expected) {
+      // expected
+    }
+
+    try {
+      Ticket t = manager.lookupTicket(token, null, "farawayhost");
+      fail("wrong host not detected: "+t);
+    } catch (TicketException expected) {
+      // expected
+    }
+
+    // for reference: the good case
+    assertNotNull("no ticket", manager.lookupTicket(token, address, host));
+  }
+
+
+  @Test public void returnTicket_revokes()
+    throws Exception
+  {
+    final TicketManager manager = new HmacTicketManager
+      (KEY, new LocalPunchStore());
+
+    Ticket t = manager.obtainTicket("testuser", null, null);
+    manager.returnTicket(manager.lookupTicket(t.getToken(), null, null));
+
+    assertFalse("returned ticket punched", t.punch());
+    try {
+      Ticket t2 = manager.lookupTicket(t.getToken(), null, null);
+      fail("returned ticket found: "+t2);
+    } catch (TicketException expected) {
+      // expected
+    }
+
+    try {
+      new HmacTicketManager(KEY, new LocalPunchStore()).returnTicket(t);
+      fail("wrong manager not detected");
+    } catch (TicketException expected) {
+      // expected
+    }
+  }
+
+
+  @Test public void punch_refund()
+    throws Exception
+  {
+    final PunchStore    store   = new LocalPunchStore();
+    final TicketManager manager = new HmacTicketManager(KEY, store);
+
+    Ticket t = manager.obtainTicket("testuser", null, null);
+    assertTrue ("action 1 should pass", t.punch());
+    assertTrue ("action 2 should pass", t.punch());
+    assertTrue ("action 3 should pass", t.punch());
+    assertFalse("action 4 should stop", t.punch());
+
+    t.refund(1);
+    assertTrue ("refunded action should pass", t.punch());
+    assertFalse("action 5 should stop", t.punch());
+
+    // a returned ticket stays revoked
+    manager.returnTicket(t);
+    t.refund(3);
+    assertFalse("revoked ticket punched", t.punch());
+  }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+public class RejectedTokenCacheTest
+{
+  @Test public void create_badArgs()
+  {
+    try {
+      RejectedTokenCache cache = new RejectedTokenCache(100, 1000);
+      fail("invalid size not detected: "+cache);
+    } catch (RuntimeException expected) {
+      // expected
+    }
+
+    try {
+      RejectedTokenCache cache = new RejectedTokenCache(128, 0);
+      fail("invalid ttl not detected: "+cache);
+    } catch (RuntimeException expected) {
+      // expected
+    }
+  }
+
+
+  @Test public void record_expires()
+  {
+    final RejectedTokenCache cache = new RejectedTokenCache(128, 1000);
+    final long now = System.currentTimeMillis();
+
+    assertFalse("empty cache hit", cache.contains("testuser@bogus", now));
+    cache.record("testuser@bogus", now);
+    assertTrue("recorded token missing",
+               cache.contains("testuser@bogus", now+999));
+    assertFalse("expired token hit",
+                cache.contains("testuser@bogus", now+1000));
+    assertFalse("other token hit", cache.contains("testuser@other", now));
+  }
+
+
+  @Test public void forget()
+  {
+    final RejectedTokenCache cache = new RejectedTokenCache(1, 1000);
+    final long now = System.currentTimeMillis();
+
+    // a single slot, the second token evicts the first
+    cache.record("testuser@first", now);
+    cache.record("testuser@second", now);
+    assertFalse("evicted token hit", cache.contains("testuser@first", now));
+
+    cache.forget("testuser@first");
+    assertTrue("wrong token forgotten",
+               cache.contains("testuser@second", now));
+    cache.forget("testuser@second");
+    assertFalse("token not forgotten",
+                cache.contains("testuser@second", now));
+  }
+
+}
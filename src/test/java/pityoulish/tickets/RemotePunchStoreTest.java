@@ -0,0 +1,126 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+public class RemotePunchStoreTest
+{
+  /** The key shared by the nodes. */
+  public final static byte[] KEY =
+    "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+  protected TicketStoreServer server;
+
+
+  @Before public void startServer()
+    throws Exception
+  {
+    server = new TicketStoreServer(new LocalTicketStore());
+    server.startup(0);
+  }
+
+  @After public void stopServer()
+  {
+    server.shutdown();
+  }
+
+
+  protected TicketManager newNode()
+  {
+    return new HmacTicketManager
+      (KEY, new RemotePunchStore("localhost", server.getPort()));
+  }
+
+
+  @Test public void punch_otherNode()
+    throws Exception
+  {
+    final TicketManager node1 = newNode();
+    final TicketManager node2 = newNode();
+
+    Ticket t1 = node1.obtainTicket("testuser", null, null);
+    assertTrue("punch 1 failed", t1.punch());
+    assertTrue("punch 2 failed", t1.punch());
+
+    Ticket t2 = node2.lookupTicket(t1.getToken(), null, null);
+    assertTrue("punch 3 failed", t2.punch());
+    assertFalse("punch 4 succeeded", t2.punch());
+    assertFalse("punch on other node succeeded", t1.punch());
+  }
+
+
+  @Test public void refund_otherNode()
+    throws Exception
+  {
+    final TicketManager node1 = newNode();
+    final TicketManager node2 = newNode();
+
+    Ticket t1 = node1.obtainTicket("testuser", null, null);
+    assertTrue("punch 1 failed", t1.punch());
+    assertTrue("punch 2 failed", t1.punch());
+    assertTrue("punch 3 failed", t1.punch());
+
+    // refunds are not answered, a punch on the same connection follows them
+    t1.refund(2);
+    assertTrue("punch after refund failed", t1.punch());
+
+    Ticket t2 = node2.lookupTicket(t1.getToken(), null, null);
+    assertTrue("punch on other node failed", t2.punch());
+    assertFalse("punch 4 succeeded", t2.punch());
+  }
+
+
+  @Test public void returnTicket_otherNode()
+    throws Exception
+  {
+    final TicketManager node1 = newNode();
+    final TicketManager node2 = newNode();
+
+    Ticket t1 = node1.obtainTicket("testuser", null, null);
+    node2.lookupTicket(t1.getToken(), null, null);
+    node1.returnTicket(t1);
+
+    // revocations are not answered, a lookup on the same connection follows
+    try {
+      Ticket t = node1.lookupTicket(t1.getToken(), null, null);
+      fail("returned ticket found: "+t);
+    } catch (TicketException expected) {
+      // expected
+    }
+
+    try {
+      Ticket t = node2.lookupTicket(t1.getToken(), null, null);
+      fail("returned ticket found on other node: "+t);
+    } catch (TicketException expected) {
+      // expected
+    }
+  }
+
+
+  @Test public void punch_serverDown()
+    throws Exception
+  {
+    // a port on which nobody listens
+    ServerSocket ss = new ServerSocket(0);
+    final int port = ss.getLocalPort();
+    ss.close();
+
+    final TicketManager node =
+      new HmacTicketManager(KEY, new RemotePunchStore("localhost", port));
+
+    // the token can be checked, but no action is allowed
+    Ticket t = node.obtainTicket("testuser", null, null);
+    node.lookupTicket(t.getToken(), null, null);
+    assertFalse("punch without server succeeded", t.punch());
+  }
+
+}
@@ -0,0 +1,259 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+public class RemoteTicketStoreTest
+{
+  protected LocalTicketStore  serverStore;
+  protected TicketStoreServer server;
+
+
+  @Before public void startServer()
+    throws Exception
+  {
+    serverStore = new LocalTicketStore();
+    server = new TicketStoreServer(serverStore);
+    server.startup(0);
+  }
+
+  @After public void stopServer()
+  {
+    server.shutdown();
+  }
+
+
+  protected RemoteTicketStore newStore(long ttl)
+  {
+    return new RemoteTicketStore("localhost", server.getPort(), ttl);
+  }
+
+
+  @Test public void create_badArgs()
+  {
+    try {
+      RemoteTicketStore store = new RemoteTicketStore(null, 2889);
+      fail("missing host not detected: "+store);
+    } catch (RuntimeException expected) {
+      // expected
+    }
+
+    try {
+      RemoteTicketStore store = new RemoteTicketStore("localhost", 0);
+      fail("invalid port not detected: "+store);
+    } catch (RuntimeException expected) {
+      // expected
+    }
+
+    try {
+      RemoteTicketStore store = new RemoteTicketStore("localhost", 2889, -1);
+      fail("invalid ttl not detected: "+store);
+    } catch (RuntimeException expected) {
+      // expected
+    }
+  }
+
+
+  @Test public void lookupTicket_otherNode()
+    throws Exception
+  {
+    final TicketManager node1 = new DefaultTicketManager(newStore(0));
+    final TicketManager node2 = new DefaultTicketManager(newStore(0));
+    final InetAddress   address = InetAddress.getByName("127.0.0.1");
+    final String        host    = "remotehost";
+
+    Ticket t1 = node1.obtainTicket("testuser", address, host);
+    assertEquals("wrong #tickets on server",
+                 1, serverStore.getLiveTicketCount());
+
+    Ticket t2 = node2.lookupTicket(t1.getToken(), address, host);
+    assertEquals("wrong username", "testuser", t2.getUsername());
+    assertEquals("wrong token", t1.getToken(), t2.getToken());
+
+    // the ticket is bound to the address and host
+    try {
+      Ticket t = node2.lookupTicket(t1.getToken(),
+                                    InetAddress.getByName("127.0.0.2"), host);
+      fail("wrong address not detected: "+t);
+    } catch (TicketException expected) {
+      // expected
+    }
+  }
+
+
+  @Test public void obtainTicket_conflictOtherNode()
+    throws Exception
+  {
+    final TicketManager node1 = new DefaultTicketManager(newStore(0));
+    final TicketManager node2 = new DefaultTicketManager(newStore(0));
+    final InetAddress   address = InetAddress.getByName("127.0.0.1");
+
+    node1.obtainTicket("testuser", address, "remotehost");
+
+    try {
+      Ticket t = node2.obtainTicket("testuser", null, null);
+      fail("duplicate username not detected: "+t);
+    } catch (TicketException expected) {
+      // expected
+    }
+
+    try {
+      Ticket t = node2.obtainTicket("gooduser", address, null);
+      fail("duplicate address not detected: "+t);
+    } catch (TicketException expected) {
+      // expected
+    }
+
+    try {
+      Ticket t = node2.obtainTicket("gooduser", null, "remotehost");
+      fail("duplicate host not detected: "+t);
+    } catch (TicketException expected) {
+      // expected
+    }
+
+    assertEquals("wrong #tickets on server",
+                 1, serverStore.getLiveTicketCount());
+  }
+
+
+  @Test public void returnTicket_otherNode()
+    throws Exception
+  {
+    final TicketManager node1 = new DefaultTicketManager(newStore(0));
+    final TicketManager node2 = new DefaultTicketManager(newStore(0));
+
+    Ticket t1 = node1.obtainTicket("testuser", null, null);
+    Ticket t2 = node2.lookupTicket(t1.getToken(), null, null);
+    node2.returnTicket(t2);
+    assertEquals("wrong #tickets on server",
+                 0, serverStore.getLiveTicketCount());
+
+    try {
+      Ticket t = node1.lookupTicket(t1.getToken(), null, null);
+      fail("returned ticket found: "+t);
+    } catch (TicketException expected) {
+      // expected
+    }
+
+    // the username can obtain a new ticket
+    node1.obtainTicket("testuser", null, null);
+  }
+
+
+  @Test public void punch_otherNode()
+    throws Exception
+  {
+    final TicketManager node1 = new DefaultTicketManager(newStore(0));
+    final TicketManager node2 = new DefaultTicketManager(newStore(0));
+
+    Ticket t1 = node1.obtainTicket("testuser", null, null);
+    assertTrue("punch 1 failed", t1.punch());
+    assertTrue("punch 2 failed", t1.punch());
+
+    // punches are not answered, a lookup on the same connection follows them
+    node1.lookupTicket(t1.getToken(), null, null);
+
+    Ticket t2 = node2.lookupTicket(t1.getToken(), null, null);
+    assertTrue("punch 3 failed", t2.punch());
+    assertFalse("punch 4 succeeded", t2.punch());
+
+    node2.lookupTicket(t1.getToken(), null, null);
+    Ticket t3 = node1.lookupTicket(t1.getToken(), null, null);
+    assertFalse("punch on other node succeeded", t3.punch());
+  }
+
+
+  @Test public void get_nearCache()
+    throws Exception
+  {
+    final RemoteTicketStore store = newStore(60000);
+    final TicketManager     node  = new DefaultTicketManager(store);
+
+    Ticket t1 = node.obtainTicket("testuser", null, null);
+    assertEquals("wrong #cached", 1, store.getCachedTicketCount());
+
+    // removed on the server only, the cached ticket is still served
+    serverStore.removeNow(serverStore.getNow(t1.getToken()));
+    Ticket t2 = node.lookupTicket(t1.getToken(), null, null);
+    assertSame("not from cache", t1, t2);
+
+    // returning through the store removes it from the cache
+    node.returnTicket(t2);
+    assertEquals("wrong #cached", 0, store.getCachedTicketCount());
+  }
+
+
+  @Test public void get_batched()
+    throws Exception
+  {
+    final RemoteTicketStore store = newStore(0);
+    final TicketManager     node  = new DefaultTicketManager(store);
+
+    ArrayList<String> tokens = new ArrayList<String>();
+    for (int i=0; i<20; i++)
+       tokens.add(node.obtainTicket("testuser"+i, null, null).getToken());
+
+    // many requests in flight at once
+    ArrayList<CompletableFuture<TicketImpl>> futures =
+      new ArrayList<CompletableFuture<TicketImpl>>();
+    for (String token: tokens)
+       futures.add(store.get(token));
+    futures.add(store.get("nosuchuser@token"));
+
+    for (int i=0; i<tokens.size(); i++)
+       assertEquals("wrong ticket "+i,
+                    tokens.get(i), futures.get(i).get().getToken());
+    assertNull("unknown token found", futures.get(tokens.size()).get());
+  }
+
+
+  @Test public void obtainTicket_serverDown()
+    throws Exception
+  {
+    // a port on which nobody listens
+    ServerSocket ss = new ServerSocket(0);
+    final int port = ss.getLocalPort();
+    ss.close();
+
+    final TicketManager node =
+      new DefaultTicketManager(new RemoteTicketStore("localhost", port));
+    try {
+      Ticket t = node.obtainTicket("testuser", null, null);
+      fail("unreachable store not detected: "+t);
+    } catch (TicketException expected) {
+      // expected
+    }
+  }
+
+
+  @Test public void refund_otherNode()
+    throws Exception
+  {
+    final TicketManager node1 = new DefaultTicketManager(newStore(0));
+    final TicketManager node2 = new DefaultTicketManager(newStore(0));
+
+    Ticket t1 = node1.obtainTicket("testuser", null, null);
+    for (int i=0; i<3; i++)
+       assertTrue("punch "+i+" failed", t1.punch());
+    t1.refund(1);
+
+    // refunds are not answered, a lookup on the same connection follows them
+    node1.lookupTicket(t1.getToken(), null, null);
+
+    Ticket t2 = node2.lookupTicket(t1.getToken(), null, null);
+    assertTrue("refunded punch failed", t2.punch());
+    assertFalse("punch beyond refund succeeded", t2.punch());
+  }
+
+}
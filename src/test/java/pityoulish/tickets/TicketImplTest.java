@@ -183,6 +183,39 @@ public class TicketImplTest
   }
 
 
+  @Test public void punch_concurrent()
+    throws Exception
+  {
+    final int threads = 8;
+    final int perThread = 1000;
+    final int actions = threads*perThread/2;
+    final TicketImpl ti = newTicketImpl(null, null, null, null, null,
+                                        0L, actions);
+    final java.util.concurrent.atomic.AtomicInteger punched =
+      new java.util.concurrent.atomic.AtomicInteger();
+
+    Thread[] workers = new Thread[threads];
+    for (int i=0; i<threads; i++)
+     {
+       workers[i] = new Thread() {
+           public void run() {
+             for (int n=0; n<perThread; n++)
+              {
+                if (ti.punch())
+                   punched.incrementAndGet();
+              }
+           }
+         };
+       workers[i].start();
+     }
+    for (Thread worker: workers)
+       worker.join();
+
+    assertEquals("wrong #punched", actions, punched.get());
+    assertEquals("wrong #actions", 0, ti.actionsRemaining);
+  }
+
+
   @Test public void validate_OK()
     throws Exception
   {
@@ -0,0 +1,149 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+import java.net.InetAddress;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+public class TicketReaperTest
+{
+  @Test public void create_badArgs()
+  {
+    final LocalTicketStore store = new LocalTicketStore();
+
+    try {
+      TicketReaper reaper = new TicketReaper(null);
+      fail("missing store not detected: "+reaper);
+    } catch (RuntimeException expected) {
+      // expected
+    }
+
+    try {
+      TicketReaper reaper = new TicketReaper(store, 0, 16);
+      fail("invalid tick not detected: "+reaper);
+    } catch (RuntimeException expected) {
+      // expected
+    }
+
+    try {
+      TicketReaper reaper = new TicketReaper(store, 1000, 15);
+      fail("invalid size not detected: "+reaper);
+    } catch (RuntimeException expected) {
+      // expected
+    }
+  }
+
+
+  @Test public void advance_reapsExpired()
+    throws Exception
+  {
+    final LocalTicketStore     store   = new LocalTicketStore();
+    final DefaultTicketManager manager = new DefaultTicketManager(store);
+    final InetAddress          address = InetAddress.getByName("127.0.0.1");
+    final String               host    = "remotehost";
+    final long                 now     = System.currentTimeMillis();
+
+    Ticket t1 = manager.obtainTicket("testuser", address, host);
+    Ticket t2 = manager.obtainTicket("gooduser", null, null);
+    assertEquals("wrong #live", 2, store.getLiveTicketCount());
+
+    // nothing has expired yet
+    assertEquals("reaped too early", 0, store.ticketReaper.advance
+                 (now + DefaultTicketManager.TIME_TO_LIVE_MS/2));
+    assertEquals("wrong #live", 2, store.getLiveTicketCount());
+
+    final long later = now + DefaultTicketManager.TIME_TO_LIVE_MS +
+      2*TicketReaper.DEFAULT_TICK_MS;
+    int reaped = store.ticketReaper.advance(later);
+    assertEquals("wrong #reaped", 2, reaped);
+    assertEquals("wrong #reaped total", 2, store.getReapedTicketCount());
+    assertEquals("wrong #live", 0, store.getLiveTicketCount());
+    assertTrue("username index not empty",
+               store.ticketsByUsername.isEmpty());
+    assertTrue("address index not empty", store.ticketsByAddress.isEmpty());
+    assertTrue("host index not empty", store.ticketsByHost.isEmpty());
+
+    try {
+      Ticket t = manager.lookupTicket(t1.getToken(), address, host);
+      fail("reaped ticket found: "+t);
+    } catch (TicketException expected) {
+      // expected
+    }
+  }
+
+
+  @Test public void advance_skipsReturned()
+    throws Exception
+  {
+    final LocalTicketStore     store   = new LocalTicketStore();
+    final DefaultTicketManager manager = new DefaultTicketManager(store);
+    final long                 now     = System.currentTimeMillis();
+
+    Ticket t1 = manager.obtainTicket("testuser", null, null);
+    manager.returnTicket(t1);
+    Ticket t2 = manager.obtainTicket("testuser", null, null);
+    assertEquals("wrong #live", 1, store.getLiveTicketCount());
+
+    // both tickets are due, only the second one is still indexed
+    final long later = now + DefaultTicketManager.TIME_TO_LIVE_MS +
+      2*TicketReaper.DEFAULT_TICK_MS;
+    int reaped = store.ticketReaper.advance(later);
+    assertEquals("wrong #reaped", 1, reaped);
+    assertEquals("wrong #live", 0, store.getLiveTicketCount());
+  }
+
+
+  @Test public void advance_laterRevolution()
+    throws Exception
+  {
+    // a tiny wheel, tickets expire several revolutions ahead
+    final LocalTicketStore     store   = new LocalTicketStore();
+    final DefaultTicketManager manager = new DefaultTicketManager(store);
+    final TicketReaper         reaper  = new TicketReaper(store, 1000, 4);
+    final long                 now     = System.currentTimeMillis();
+
+    TicketImpl ti = new TicketImpl(manager, "testuser", null, null,
+                                   "testuser@token", now+10000, 3);
+    store.ticketsByUsername.put(ti.getUsername(), ti);
+    store.ticketsByToken.put(ti.getToken(), ti);
+    reaper.schedule(ti);
+
+    for (long t=now+1000; t<now+10000; t+=1000)
+       assertEquals("reaped too early at "+(t-now), 0, reaper.advance(t));
+
+    assertEquals("not reaped", 1, reaper.advance(now+11000));
+    assertEquals("wrong #reaped total", 1, reaper.getReapedCount());
+    assertTrue("token index not empty", store.ticketsByToken.isEmpty());
+  }
+
+
+  @Test public void advance_expiresInCurrentTick()
+    throws Exception
+  {
+    final LocalTicketStore     store   = new LocalTicketStore();
+    final DefaultTicketManager manager = new DefaultTicketManager(store);
+    final TicketReaper         reaper  = new TicketReaper(store, 1000, 4);
+    // the start of a tick that the reaper has not processed yet
+    final long base = (System.currentTimeMillis()/1000 + 5) * 1000;
+
+    TicketImpl ti = new TicketImpl(manager, "testuser", null, null,
+                                   "testuser@token", base+500, 3);
+    store.ticketsByUsername.put(ti.getUsername(), ti);
+    store.ticketsByToken.put(ti.getToken(), ti);
+    reaper.schedule(ti);
+
+    // the tick of the expiry is processed before the ticket expires
+    assertEquals("reaped too early", 0, reaper.advance(base+100));
+
+    // reaped in the next tick, not a revolution later
+    assertEquals("not reaped", 1, reaper.advance(base+1000));
+    assertTrue("token index not empty", store.ticketsByToken.isEmpty());
+  }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * This work is released into the Public Domain under the
+ * terms of the Creative Commons CC0 1.0 Universal license.
+ * https://creativecommons.org/publicdomain/zero/1.0/
+ */
+package pityoulish.tickets;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+
+public class TokenFilterTest
+{
+  @Test public void create_badArgs()
+  {
+    try {
+      TokenFilter filter = new TokenFilter(0);
+      fail("invalid size not detected: "+filter);
+    } catch (RuntimeException expected) {
+      // expected
+    }
+
+    try {
+      TokenFilter filter = new TokenFilter(1000);
+      fail("invalid size not detected: "+filter);
+    } catch (RuntimeException expected) {
+      // expected
+    }
+  }
+
+
+  @Test public void addRemove_noFalseNegatives()
+  {
+    final TokenFilter filter = new TokenFilter();
+
+    for (int i=0; i<1000; i++)
+       filter.add("testuser@"+i);
+    for (int i=0; i<1000; i++)
+       assertTrue("false negative "+i, filter.mightContain("testuser@"+i));
+
+    // removing half of them must not affect the others
+    for (int i=0; i<1000; i+=2)
+       filter.remove("testuser@"+i);
+    for (int i=1; i<1000; i+=2)
+       assertTrue("false negative "+i, filter.mightContain("testuser@"+i));
+  }
+
+
+  @Test public void mightContain_fewFalsePositives()
+  {
+    final TokenFilter filter = new TokenFilter();
+
+    for (int i=0; i<1000; i++)
+       filter.add("testuser@"+i);
+
+    int positives = 0;
+    for (int i=0; i<10000; i++)
+     {
+       if (filter.mightContain("otheruser@"+i))
+          positives++;
+     }
+    assertTrue("too many false positives: "+positives, positives < 100);
+  }
+
+
+  @Test public void remove_all()
+  {
+    final TokenFilter filter = new TokenFilter(64);
+
+    for (int i=0; i<100; i++)
+       filter.add("testuser@"+i);
+    for (int i=0; i<100; i++)
+       filter.remove("testuser@"+i);
+    for (int i=0; i<100; i++)
+       assertFalse("not removed "+i, filter.mightContain("testuser@"+i));
+  }
+
+}